@@ -2,6 +2,7 @@ package com.watermark;
 
 import com.watermark.controller.WebViewController;
 import com.watermark.service.DatabaseService;
+import com.watermark.service.HistoryService;
 import com.watermark.util.PathManager;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
@@ -69,6 +70,8 @@ public class WatermarkApplication extends Application {
                 try {
                     // 清理临时文件
                     PathManager.cleanupTempFiles();
+                    // 写完剩余的处理历史记录
+                    HistoryService.getInstance().shutdown(5000);
                     // 关闭数据库连接
                     DatabaseService.getInstance().close();
                 } catch (Exception e) {
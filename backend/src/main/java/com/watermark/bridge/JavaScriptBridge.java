@@ -2,10 +2,20 @@ package com.watermark.bridge;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.watermark.dto.BatchExportResult;
+import com.watermark.dto.ExportItemResult;
+import com.watermark.dto.ImageQuery;
+import com.watermark.model.ExportJob;
 import com.watermark.model.ImageInfo;
 import com.watermark.model.WatermarkConfig;
 import com.watermark.model.WatermarkTemplate;
 import com.watermark.service.*;
+import com.watermark.util.ExportReportWriter;
+import com.watermark.util.ImageHeader;
 import javafx.application.Platform;
 import javafx.concurrent.Task;
 import javafx.stage.DirectoryChooser;
@@ -15,10 +25,23 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * JavaScript-Java桥接器
@@ -31,14 +54,31 @@ public class JavaScriptBridge {
     
     private static final Logger logger = LoggerFactory.getLogger(JavaScriptBridge.class);
     
+    private static final int MAX_BATCH_OPERATIONS = 100; // 单次批量调用的最大操作数
+    private static final int MAX_RETURNED_FAILURES = 100; // 批量导出结果中最多返回的失败项
+    private static final int BATCH_THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    
+    // 可以通过批量调用执行的方法：只包括耗时短、不修改数据的查询。
+    // 打开文件对话框、导出图片和保存删除等方法需要单独调用，不能在批量线程池上执行或在调用线程上等待
+    private static final Set<String> BATCH_METHODS = new HashSet<>(Arrays.asList(
+            "getAllTemplates", "getTemplates", "getTemplatesPage", "getTemplateSummaries", "loadTemplate",
+            "getProcessHistory", "getProcessHistoryPage", "queryImages", "getImagesPage",
+            "getUserSettings", "getSystemInfo", "getBatchExportItems", "getQuarantinedSources"));
+    
     private final ObjectMapper objectMapper;
     private final ImageService imageService;
     private final WatermarkService watermarkService;
     private final TemplateService templateService;
     private final ExportService exportService;
+    private final HistoryService historyService;
+    private final BatchExportService batchExportService;
     
     private Stage stage; // 用于显示文件对话框
     
+    // 可批量调用的方法：方法名/参数个数 -> 方法
+    private final Map<String, Method> batchMethods = new HashMap<>();
+    private final ExecutorService batchExecutor;
+    
     public JavaScriptBridge() {
         System.out.println("=== JavaScriptBridge 构造函数被调用 ===");
         this.objectMapper = new ObjectMapper();
@@ -48,6 +88,20 @@ public class JavaScriptBridge {
         this.watermarkService = WatermarkService.getInstance();
         this.templateService = TemplateService.getInstance();
         this.exportService = ExportService.getInstance();
+        this.historyService = HistoryService.getInstance();
+        this.batchExportService = BatchExportService.getInstance();
+        
+        for (Method method : JavaScriptBridge.class.getDeclaredMethods()) {
+            if (Modifier.isPublic(method.getModifiers()) && BATCH_METHODS.contains(method.getName())) {
+                batchMethods.put(method.getName() + "/" + method.getParameterCount(), method);
+            }
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        this.batchExecutor = Executors.newFixedThreadPool(BATCH_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "bridge-batch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
         
         System.out.println("JavaScriptBridge 初始化完成");
         logger.info("JavaScript桥接器初始化完成");
@@ -72,15 +126,7 @@ public class JavaScriptBridge {
                 return null;
             }
             
-            FileChooser fileChooser = new FileChooser();
-            fileChooser.setTitle("选择图片文件");
-            fileChooser.getExtensionFilters().addAll(
-                new FileChooser.ExtensionFilter("所有图片", "*.jpg", "*.jpeg", "*.png", "*.bmp", "*.tiff"),
-                new FileChooser.ExtensionFilter("JPEG文件", "*.jpg", "*.jpeg"),
-                new FileChooser.ExtensionFilter("PNG文件", "*.png"),
-                new FileChooser.ExtensionFilter("BMP文件", "*.bmp"),
-                new FileChooser.ExtensionFilter("TIFF文件", "*.tiff")
-            );
+            FileChooser fileChooser = createImageFileChooser("选择图片文件");
             
             File selectedFile = fileChooser.showOpenDialog(stage);
             
@@ -128,11 +174,7 @@ public class JavaScriptBridge {
                 throw new IllegalArgumentException("不支持的图片格式，仅支持 JPG、JPEG、PNG、BMP、TIFF");
             }
             
-            // 验证文件大小（10MB限制）
-            long maxSize = 10 * 1024 * 1024; // 10MB
-            if (file.length() > maxSize) {
-                throw new IllegalArgumentException("文件大小超过限制（10MB）");
-            }
+            // 不限制文件大小：超大图片在预览和导出时分块处理
             
             // 创建图片信息对象（复现选择图片按钮的逻辑）
             ImageInfo imageInfo = new ImageInfo();
@@ -140,19 +182,19 @@ public class JavaScriptBridge {
             imageInfo.setFileName(file.getName());
             imageInfo.setFileSize(file.length());
             
-            // 尝试获取图片尺寸信息
+            // 尝试获取图片尺寸信息（只读取文件头，不解码像素数据）
             try {
-                java.awt.image.BufferedImage bufferedImage = javax.imageio.ImageIO.read(file);
-                if (bufferedImage != null) {
-                    imageInfo.setWidth(bufferedImage.getWidth());
-                    imageInfo.setHeight(bufferedImage.getHeight());
+                ImageHeader header = ImageHeader.read(file);
+                if (header != null) {
+                    imageInfo.setWidth(header.getWidth());
+                    imageInfo.setHeight(header.getHeight());
                     
                     // 检测图片格式
                     String extension = fileName.substring(fileName.lastIndexOf('.') + 1).toUpperCase();
                     imageInfo.setFormat(extension);
                     
                     // 检测是否有透明通道
-                    imageInfo.setHasAlphaChannel(bufferedImage.getColorModel().hasAlpha());
+                    imageInfo.setHasAlphaChannel(header.hasAlpha());
                 }
             } catch (Exception e) {
                 logger.warn("无法读取图片尺寸信息: {}", e.getMessage());
@@ -181,30 +223,8 @@ public class JavaScriptBridge {
      */
     public String selectImageFiles() {
         try {
-            if (stage == null) {
-                logger.warn("Stage未设置，无法显示文件对话框");
-                return null;
-            }
-            
-            FileChooser fileChooser = new FileChooser();
-            fileChooser.setTitle("选择图片文件");
-            fileChooser.getExtensionFilters().addAll(
-                new FileChooser.ExtensionFilter("所有图片", "*.jpg", "*.jpeg", "*.png", "*.bmp", "*.tiff"),
-                new FileChooser.ExtensionFilter("JPEG文件", "*.jpg", "*.jpeg"),
-                new FileChooser.ExtensionFilter("PNG文件", "*.png"),
-                new FileChooser.ExtensionFilter("BMP文件", "*.bmp"),
-                new FileChooser.ExtensionFilter("TIFF文件", "*.tiff")
-            );
-            
-            List<File> selectedFiles = fileChooser.showOpenMultipleDialog(stage);
-            
-            if (selectedFiles != null && !selectedFiles.isEmpty()) {
-                // 处理选中的文件
-                List<ImageInfo> imageInfos = imageService.processImageFiles(selectedFiles);
-                return objectMapper.writeValueAsString(imageInfos);
-            }
-            
-            return null;
+            List<ImageInfo> imageInfos = chooseImageFiles();
+            return imageInfos != null ? objectMapper.writeValueAsString(imageInfos) : null;
             
         } catch (Exception e) {
             logger.error("选择图片文件失败", e);
@@ -297,6 +317,84 @@ public class JavaScriptBridge {
         }
     }
     
+    // ==================== 图片列表分页 ====================
+    
+    /**
+     * 选择图片文件并导入，只返回第一页
+     * 返回 {items, nextCursor, hasMore, total}，后续页通过getImagesPage获取
+     * 
+     * @param limit 每页数量
+     */
+    public String selectImageFilesPage(int limit) {
+        try {
+            List<ImageInfo> imageInfos = chooseImageFiles();
+            return imageInfos != null
+                    ? objectMapper.writeValueAsString(imageService.openImagePage(imageInfos, limit)) : null;
+            
+        } catch (Exception e) {
+            logger.error("选择图片文件失败", e);
+            return createErrorResponse("选择文件失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 导入指定目录中的图片，只返回第一页
+     * 
+     * @param directoryPath 目录路径
+     * @param limit 每页数量
+     */
+    public String listImagesInDirectoryPage(String directoryPath, int limit) {
+        try {
+            if (directoryPath == null || directoryPath.isEmpty()) {
+                return createErrorResponse("目录路径不能为空");
+            }
+            
+            File directory = new File(directoryPath);
+            if (!directory.exists() || !directory.isDirectory()) {
+                return createErrorResponse("无效的目录路径: " + directoryPath);
+            }
+            
+            List<ImageInfo> imageInfos = imageService.processImageFolder(directory);
+            return objectMapper.writeValueAsString(imageService.openImagePage(imageInfos, limit));
+            
+        } catch (Exception e) {
+            logger.error("列出目录图片失败: {}", directoryPath, e);
+            return createErrorResponse("列出目录图片失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 按条件过滤、排序本次会话导入的图片，返回第一页
+     * 
+     * @param queryJson 查询条件（ImageQuery），为空时按导入顺序列出全部图片
+     * @param limit 每页数量
+     */
+    public String queryImages(String queryJson, int limit) {
+        try {
+            ImageQuery query = queryJson != null && !queryJson.trim().isEmpty()
+                    ? objectMapper.readValue(queryJson, ImageQuery.class) : null;
+            return objectMapper.writeValueAsString(imageService.openImagePage(query, limit));
+        } catch (Exception e) {
+            logger.error("查询图片列表失败: {}", queryJson, e);
+            return createErrorResponse("查询图片列表失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 获取图片列表的下一页
+     * 
+     * @param cursor 上一页返回的nextCursor
+     * @param limit 每页数量
+     */
+    public String getImagesPage(String cursor, int limit) {
+        try {
+            return objectMapper.writeValueAsString(imageService.getImagePage(cursor, limit));
+        } catch (Exception e) {
+            logger.error("获取图片列表分页失败: cursor={}", cursor, e);
+            return createErrorResponse("获取图片列表失败: " + e.getMessage());
+        }
+    }
+    
     /**
      * 选择多个图片文件（前端兼容性方法）
      */
@@ -307,15 +405,7 @@ public class JavaScriptBridge {
                 return null;
             }
             
-            FileChooser fileChooser = new FileChooser();
-            fileChooser.setTitle("选择多个图片文件");
-            fileChooser.getExtensionFilters().addAll(
-                new FileChooser.ExtensionFilter("所有图片", "*.jpg", "*.jpeg", "*.png", "*.bmp", "*.tiff"),
-                new FileChooser.ExtensionFilter("JPEG文件", "*.jpg", "*.jpeg"),
-                new FileChooser.ExtensionFilter("PNG文件", "*.png"),
-                new FileChooser.ExtensionFilter("BMP文件", "*.bmp"),
-                new FileChooser.ExtensionFilter("TIFF文件", "*.tiff")
-            );
+            FileChooser fileChooser = createImageFileChooser("选择多个图片文件");
             
             List<File> selectedFiles = fileChooser.showOpenMultipleDialog(stage);
             
@@ -539,14 +629,41 @@ public class JavaScriptBridge {
     public String getAllTemplates() {
         try {
             System.out.println("获取所有模板被调用");
-            List<WatermarkTemplate> templates = templateService.getAllTemplates();
-            return objectMapper.writeValueAsString(templates);
+            return templateService.getAllTemplatesJson();
         } catch (Exception e) {
             logger.error("获取模板列表失败", e);
             return createErrorResponse("获取模板失败: " + e.getMessage());
         }
     }
     
+    /**
+     * 分页获取完整模板（含配置），排序和游标与getTemplateSummaries相同
+     * @param cursor 上一页返回的nextCursor，首页传空
+     * @param limit 每页数量
+     */
+    public String getTemplatesPage(String cursor, int limit) {
+        try {
+            return objectMapper.writeValueAsString(templateService.getTemplatesPage(cursor, limit));
+        } catch (Exception e) {
+            logger.error("分页获取模板失败", e);
+            return createErrorResponse("获取模板失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 分页获取模板摘要（不含配置，完整配置通过loadTemplate获取）
+     * @param cursor 上一页返回的nextCursor，首页传空
+     * @param limit 每页数量
+     */
+    public String getTemplateSummaries(String cursor, int limit) {
+        try {
+            return objectMapper.writeValueAsString(templateService.getTemplateSummaries(cursor, limit));
+        } catch (Exception e) {
+            logger.error("获取模板摘要失败", e);
+            return createErrorResponse("获取模板摘要失败: " + e.getMessage());
+        }
+    }
+    
     /**
      * 删除模板
      */
@@ -610,12 +727,29 @@ public class JavaScriptBridge {
     }
     
     /**
-     * 获取处理历史
+     * 获取处理历史（最近的记录）
      */
     public String getProcessHistory() {
-        // 这里需要实现历史记录的获取逻辑
-        // 暂时返回空数组
-        return "[]";
+        try {
+            return objectMapper.writeValueAsString(historyService.getHistory(null, 100).getItems());
+        } catch (Exception e) {
+            logger.error("获取处理历史失败", e);
+            return "[]";
+        }
+    }
+    
+    /**
+     * 分页获取处理历史
+     * @param cursor 上一页返回的nextCursor，首页传空
+     * @param limit 每页数量
+     */
+    public String getProcessHistoryPage(String cursor, int limit) {
+        try {
+            return objectMapper.writeValueAsString(historyService.getHistory(cursor, limit));
+        } catch (Exception e) {
+            logger.error("分页获取处理历史失败", e);
+            return createErrorResponse("获取处理历史失败: " + e.getMessage());
+        }
     }
     
     /**
@@ -661,6 +795,7 @@ public class JavaScriptBridge {
             systemInfo.put("osVersion", System.getProperty("os.version"));
             systemInfo.put("userHome", System.getProperty("user.home"));
             systemInfo.put("appDataDir", com.watermark.util.PathManager.getAppDataDir());
+            systemInfo.put("imageRegistry", imageService.getRegistryMetrics());
             return objectMapper.writeValueAsString(systemInfo);
         } catch (Exception e) {
             logger.error("获取系统信息失败", e);
@@ -691,8 +826,191 @@ public class JavaScriptBridge {
         }
     }
     
+    // ==================== 批量调用 ====================
+    
+    /**
+     * 在一次桥接调用中执行多个操作，减少JS与Java之间的往返
+     * 
+     * 参数为操作数组，每个操作形如 {"id": "a", "method": "loadTemplate", "args": [3], "dependsOn": ["b"]}：
+     * method为BATCH_METHODS中的查询方法名，args按方法参数依次给出（String参数可直接传JSON对象），
+     * dependsOn列出必须先完成的前面操作的id。没有依赖关系的操作在批量线程池上并行执行
+     * 
+     * @param operationsJson 操作数组的JSON字符串
+     * @return 与操作顺序一致的结果数组，每项为 {"id", "result"} 或 {"id", "error"}；
+     *         方法返回JSON字符串时result为解析后的JSON
+     */
+    public String invokeBatch(String operationsJson) {
+        long startTime = System.currentTimeMillis();
+        try {
+            JsonNode operations = objectMapper.readTree(operationsJson);
+            if (operations == null || !operations.isArray()) {
+                return createErrorResponse("批量调用参数必须是数组");
+            }
+            if (operations.size() > MAX_BATCH_OPERATIONS) {
+                return createErrorResponse("批量调用的操作数超过上限: " + operations.size() + " > " + MAX_BATCH_OPERATIONS);
+            }
+            
+            Map<String, CompletableFuture<JsonNode>> futuresById = new HashMap<>();
+            List<String> ids = new ArrayList<>();
+            List<CompletableFuture<JsonNode>> futures = new ArrayList<>();
+            
+            for (int i = 0; i < operations.size(); i++) {
+                JsonNode operation = operations.get(i);
+                String id = operation.hasNonNull("id") ? operation.get("id").asText() : String.valueOf(i);
+                CompletableFuture<JsonNode> future;
+                if (futuresById.containsKey(id)) {
+                    future = failedFuture(new IllegalArgumentException("重复的操作id: " + id));
+                } else {
+                    future = scheduleOperation(operation, futuresById);
+                    futuresById.put(id, future);
+                }
+                ids.add(id);
+                futures.add(future);
+            }
+            
+            ArrayNode results = objectMapper.createArrayNode();
+            for (int i = 0; i < futures.size(); i++) {
+                ObjectNode result = results.addObject();
+                result.put("id", ids.get(i));
+                try {
+                    result.set("result", futures.get(i).join());
+                } catch (CompletionException | CancellationException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    result.put("error", cause.getMessage() != null ? cause.getMessage() : cause.toString());
+                }
+            }
+            
+            logger.debug("批量调用完成: {} 个操作, 耗时 {}ms", operations.size(), System.currentTimeMillis() - startTime);
+            return objectMapper.writeValueAsString(results);
+            
+        } catch (Exception e) {
+            logger.error("批量调用失败", e);
+            return createErrorResponse("批量调用失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 安排一个操作：依赖的操作完成后在批量线程池上执行
+     */
+    private CompletableFuture<JsonNode> scheduleOperation(JsonNode operation,
+                                                         Map<String, CompletableFuture<JsonNode>> futuresById) {
+        String methodName = operation.path("method").asText(null);
+        JsonNode args = operation.path("args");
+        int argCount = args.isArray() ? args.size() : 0;
+        Method method = methodName != null ? batchMethods.get(methodName + "/" + argCount) : null;
+        if (method == null) {
+            return failedFuture(new IllegalArgumentException("不支持批量调用的方法: " + methodName + "/" + argCount));
+        }
+        
+        List<CompletableFuture<JsonNode>> dependencies = new ArrayList<>();
+        for (JsonNode dependency : operation.path("dependsOn")) {
+            CompletableFuture<JsonNode> future = futuresById.get(dependency.asText());
+            if (future == null) {
+                return failedFuture(new IllegalArgumentException("依赖的操作不存在或不在当前操作之前: " + dependency.asText()));
+            }
+            dependencies.add(future);
+        }
+        CompletableFuture<Void> ready = CompletableFuture.allOf(dependencies.toArray(new CompletableFuture<?>[0]));
+        
+        return ready.handle((ignored, error) -> {
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                throw new CompletionException(new IllegalStateException("依赖的操作失败: " + cause.getMessage()));
+            }
+            return null;
+        }).thenApplyAsync(ignored -> {
+            try {
+                return invokeOperation(method, args);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, batchExecutor);
+    }
+    
+    /**
+     * 按方法参数类型转换参数并调用，返回值为JSON字符串时解析为JSON
+     */
+    private JsonNode invokeOperation(Method method, JsonNode args) throws Exception {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        Object[] values = new Object[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            JsonNode arg = args.get(i);
+            if (arg == null || arg.isNull()) {
+                if (parameterTypes[i].isPrimitive()) {
+                    throw new IllegalArgumentException(method.getName() + " 的第 " + (i + 1) + " 个参数不能为空");
+                }
+                values[i] = null;
+            } else if (parameterTypes[i] == String.class && !arg.isValueNode()) {
+                values[i] = arg.toString();
+            } else {
+                values[i] = objectMapper.convertValue(arg, parameterTypes[i]);
+            }
+        }
+        
+        Object value;
+        try {
+            value = method.invoke(this, values);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+        
+        if (value instanceof String) {
+            String text = ((String) value).trim();
+            if (text.startsWith("{") || text.startsWith("[")) {
+                try {
+                    return objectMapper.readTree(text);
+                } catch (Exception e) {
+                    // 不是JSON，按普通字符串返回
+                }
+            }
+            return TextNode.valueOf((String) value);
+        }
+        return objectMapper.valueToTree(value);
+    }
+    
+    private static CompletableFuture<JsonNode> failedFuture(Throwable error) {
+        CompletableFuture<JsonNode> future = new CompletableFuture<>();
+        future.completeExceptionally(error);
+        return future;
+    }
+    
     // ==================== 辅助方法 ====================
     
+    /**
+     * 显示多选图片文件对话框并导入选中的文件
+     * 
+     * @return 导入的图片信息，Stage未设置或未选择文件时返回null
+     */
+    private List<ImageInfo> chooseImageFiles() throws Exception {
+        if (stage == null) {
+            logger.warn("Stage未设置，无法显示文件对话框");
+            return null;
+        }
+        
+        List<File> selectedFiles = createImageFileChooser("选择图片文件").showOpenMultipleDialog(stage);
+        if (selectedFiles == null || selectedFiles.isEmpty()) {
+            return null;
+        }
+        return imageService.processImageFiles(selectedFiles);
+    }
+    
+    /**
+     * 创建带图片格式过滤器的文件选择对话框
+     */
+    private static FileChooser createImageFileChooser(String title) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle(title);
+        fileChooser.getExtensionFilters().addAll(
+            new FileChooser.ExtensionFilter("所有图片", "*.jpg", "*.jpeg", "*.png", "*.bmp", "*.tiff"),
+            new FileChooser.ExtensionFilter("JPEG文件", "*.jpg", "*.jpeg"),
+            new FileChooser.ExtensionFilter("PNG文件", "*.png"),
+            new FileChooser.ExtensionFilter("BMP文件", "*.bmp"),
+            new FileChooser.ExtensionFilter("TIFF文件", "*.tiff")
+        );
+        return fileChooser;
+    }
+    
     /**
      * 创建错误响应
      */
@@ -768,36 +1086,38 @@ public class JavaScriptBridge {
             
             logger.debug("更新后的配置JSON: {}", updatedConfigJson);
             
-            int successCount = 0;
-            int failureCount = 0;
-            
-            // 逐个处理图片
-            for (String imagePath : imagePaths) {
-                try {
-                    logger.debug("处理图片: {}", imagePath);
-                    String result = watermarkService.processImageWithWatermark(imagePath, updatedConfigJson);
-                    
-                    if (result != null && !result.isEmpty()) {
-                        successCount++;
-                        logger.debug("图片处理成功: {} -> {}", imagePath, result);
-                    } else {
-                        failureCount++;
-                        logger.warn("图片处理失败: {}", imagePath);
-                    }
-                    
-                } catch (Exception e) {
-                    failureCount++;
-                    logger.error("处理图片失败: {}", imagePath, e);
+            // 批量导出（未变化的图片会被跳过），逐张结果写入输出目录旁的报告，失败项另外返回给前端
+            List<ExportItemResult> failures = new ArrayList<>();
+            ExportReportWriter report = openReport(configMap, outputDirectory);
+            BatchExportResult batchResult;
+            try {
+                batchResult = batchExportService.exportImages(imagePaths, updatedConfigJson, item -> {
+                            if (report != null) {
+                                report.write(item);
+                            }
+                            if (ExportItemResult.STATUS_FAILED.equals(item.getStatus())
+                                    && failures.size() < MAX_RETURNED_FAILURES) {
+                                failures.add(item);
+                            }
+                        });
+            } finally {
+                if (report != null) {
+                    report.close();
                 }
             }
             
             // 构建返回结果
             Map<String, Object> result = new HashMap<>();
             result.put("success", true);
-            result.put("total", imagePaths.size());
-            result.put("successCount", successCount);
-            result.put("failureCount", failureCount);
-            result.put("message", String.format("批量处理完成：成功 %d 张，失败 %d 张", successCount, failureCount));
+            result.put("total", batchResult.getTotal());
+            result.put("successCount", batchResult.getSuccessCount());
+            result.put("failureCount", batchResult.getFailureCount());
+            result.put("skippedCount", batchResult.getSkippedCount());
+            result.put("deduplicatedCount", batchResult.getDeduplicatedCount());
+            result.put("quarantinedCount", batchResult.getQuarantinedCount());
+            result.put("message", batchResult.getMessage());
+            result.put("failures", failures);
+            result.put("reportPath", report != null ? report.getReportFile().getPath() : null);
             
             String resultJson = objectMapper.writeValueAsString(result);
             logger.info("批量处理完成: {}", resultJson);
@@ -808,4 +1128,150 @@ public class JavaScriptBridge {
             return createErrorResponse("批量处理失败: " + e.getMessage());
         }
     }
+    
+    /**
+     * 按清单文件批量处理图片
+     * 清单逐行写入任务表后分批导出，不需要把路径列表传给前端或一次载入内存，适合上百万张图片的归档任务
+     * @param manifestPath 清单文件路径（每行一个路径，或带path列和配置覆盖列的CSV）
+     * @param watermarkConfigJson 水印配置的JSON字符串
+     * @param outputDirectory 输出目录路径
+     * @return 处理结果的JSON字符串
+     */
+    public String batchProcessManifest(String manifestPath, String watermarkConfigJson, String outputDirectory) {
+        try {
+            logger.info("开始按清单批量处理图片: {}", manifestPath);
+            
+            if (outputDirectory == null || outputDirectory.trim().isEmpty()) {
+                return createErrorResponse("输出目录不能为空");
+            }
+            
+            // 界面仍在运行，渲染只使用四分之一的堆内存
+            ExportJob job = JobService.getInstance().runManifest(manifestPath, null, watermarkConfigJson,
+                    outputDirectory, Runtime.getRuntime().availableProcessors(),
+                    Runtime.getRuntime().maxMemory() / 4, null);
+            
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", !ExportJob.STATUS_FAILED.equals(job.getStatus()));
+            result.put("jobId", job.getId());
+            result.put("total", job.getTotal());
+            result.put("successCount", job.getSuccessCount());
+            result.put("failureCount", job.getFailureCount());
+            result.put("skippedCount", job.getSkippedCount());
+            result.put("deduplicatedCount", job.getDeduplicatedCount());
+            result.put("quarantinedCount", job.getQuarantinedCount());
+            result.put("message", job.getMessage());
+            result.put("reportPath", job.getReportPath());
+            
+            String resultJson = objectMapper.writeValueAsString(result);
+            logger.info("清单批量处理完成: {}", resultJson);
+            return resultJson;
+            
+        } catch (Exception e) {
+            logger.error("按清单批量处理图片失败", e);
+            return createErrorResponse("批量处理失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 在后台提交批量导出任务，立即返回任务状态，之后用getBatchExportItems逐步获取结果
+     * @param imagePathsJson 图片路径列表的JSON字符串
+     * @param watermarkConfigJson 水印配置的JSON字符串
+     * @param outputDirectory 输出目录路径
+     * @return 任务状态的JSON字符串
+     */
+    public String submitBatchExport(String imagePathsJson, String watermarkConfigJson, String outputDirectory) {
+        try {
+            @SuppressWarnings("unchecked")
+            List<String> imagePaths = objectMapper.readValue(imagePathsJson, List.class);
+            JobService jobService = JobService.getInstance();
+            // 界面中同时只执行一个任务
+            jobService.start(1, Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().maxMemory() / 4);
+            ExportJob job = jobService.submit(imagePaths, null, watermarkConfigJson, outputDirectory);
+            return objectMapper.writeValueAsString(job);
+        } catch (Exception e) {
+            logger.error("提交批量导出任务失败", e);
+            return createErrorResponse("提交批量导出失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 获取批量导出任务从from开始的逐张结果，不等待
+     * @param jobId submitBatchExport返回的任务ID
+     * @param from 已获取的结果数，首次传0
+     * @return {"job": 任务状态, "from": 第一条结果的序号, "next": 下次调用的from, "items": [...]}
+     */
+    public String getBatchExportItems(long jobId, int from) {
+        try {
+            JobService jobService = JobService.getInstance();
+            JobService.JobProgress progress = jobService.getProgress(jobId);
+            ExportJob job = progress != null ? progress.snapshot() : jobService.getJob(jobId);
+            if (job == null) {
+                return createErrorResponse("任务不存在: " + jobId);
+            }
+            
+            // 先取任务状态再取结果：状态为已结束时结果一定完整
+            List<ExportItemResult> items = new ArrayList<>();
+            int start = progress != null ? progress.awaitItems(from, 0, items) : from;
+            
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("job", job);
+            result.put("from", start);
+            result.put("next", start + items.size());
+            result.put("items", items);
+            return objectMapper.writeValueAsString(result);
+        } catch (Exception e) {
+            logger.error("获取批量导出结果失败: {}", jobId, e);
+            return createErrorResponse("获取导出结果失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 获取因解码超时或尺寸超限被隔离的源文件，批量导出时跳过这些文件
+     * @return 隔离记录数组（按隔离时间倒序）
+     */
+    public String getQuarantinedSources() {
+        try {
+            return objectMapper.writeValueAsString(QuarantineService.getInstance().findAll());
+        } catch (Exception e) {
+            logger.error("获取隔离文件列表失败", e);
+            return createErrorResponse("获取隔离文件列表失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 解除源文件的隔离，下次导出时重新处理
+     * @param sourcePath 源文件路径，为空时解除全部隔离
+     * @return {"success": true, "released": 解除的文件数}
+     */
+    public String releaseQuarantinedSource(String sourcePath) {
+        try {
+            QuarantineService quarantineService = QuarantineService.getInstance();
+            int released = sourcePath == null || sourcePath.trim().isEmpty()
+                    ? quarantineService.releaseAll()
+                    : (quarantineService.release(sourcePath) ? 1 : 0);
+            
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("success", true);
+            result.put("released", released);
+            return objectMapper.writeValueAsString(result);
+        } catch (Exception e) {
+            logger.error("解除隔离失败: {}", sourcePath, e);
+            return createErrorResponse("解除隔离失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 在输出目录旁创建导出报告，配置中 "report": false 或无法创建时返回null
+     */
+    private ExportReportWriter openReport(Map<String, Object> configMap, String outputDirectory) {
+        if (Boolean.FALSE.equals(configMap.get("report"))) {
+            return null;
+        }
+        try {
+            return new ExportReportWriter(ExportReportWriter.defaultReportFile(outputDirectory, null));
+        } catch (Exception e) {
+            logger.warn("无法创建导出报告: {}", e.getMessage());
+            return null;
+        }
+    }
 }
\ No newline at end of file
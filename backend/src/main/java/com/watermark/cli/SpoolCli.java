@@ -0,0 +1,303 @@
+package com.watermark.cli;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.watermark.service.DatabaseService;
+import com.watermark.service.HistoryService;
+import com.watermark.service.SpoolService;
+import com.watermark.util.PathManager;
+import com.watermark.util.SizeUtils;
+import com.watermark.util.SpoolDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 多进程分片导出命令行
+ * 一个JVM受堆内存和GC限制时，在同一台机器或共享文件系统的多台机器上启动多个工作进程共同处理一个任务：
+ * 
+ *   SpoolCli create --spool /shared/job1 --source "/data/in/**.jpg" --template 3 --output /data/out
+ *   SpoolCli work --spool /shared/job1 --threads 8 --memory 4g        （每个进程一个，可启动多个）
+ *   SpoolCli coordinate --spool /shared/job1                           （回收过期租约并汇总处理历史）
+ *   SpoolCli status --spool /shared/job1
+ * 
+ * 日志输出到标准错误，标准输出只输出一行JSON格式的结果
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class SpoolCli {
+    
+    static {
+        System.setProperty("java.awt.headless", System.getProperty("java.awt.headless", "true"));
+        System.setProperty("watermark.console.target", "System.err");
+    }
+    
+    // 实例字段：日志级别要在main中根据--verbose设置之后才能初始化logback
+    private final Logger logger = LoggerFactory.getLogger(SpoolCli.class);
+    
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_PARTIAL = 1;
+    private static final int EXIT_USAGE = 2;
+    private static final int EXIT_ERROR = 3;
+    
+    private static final int DEFAULT_CHUNK_SIZE = 200;
+    private static final long DEFAULT_LEASE_SECONDS = 60;
+    private static final long DEFAULT_INTERVAL_SECONDS = 5;
+    
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "用法: java -Djava.awt.headless=true -cp watermark-app.jar com.watermark.cli.SpoolCli <命令> --spool <dir> [选项]",
+            "",
+            "create       创建分片任务",
+            "  --source <glob> / --manifest <file>   源图片（可重复）",
+            "  --template <id> / --config <file>     水印配置（二选一）",
+            "  --output <dir>                        输出目录",
+            "  --chunk-size <n>                      每个分片的图片数，默认200",
+            "  --full                                不跳过未变化的图片",
+            "work         领取并处理分片，直到全部分片完成",
+            "  --worker-id <id>                      工作进程ID，默认为 主机名-进程号",
+            "  --threads <n>                         渲染线程数，默认为CPU核数",
+            "  --memory <size>                       内存预算，如 4g，默认为最大堆内存的一半",
+            "  --lease <seconds>                     租约时长，默认60秒",
+            "  --no-wait                             没有待处理分片时立即退出，不等待其他进程的租约",
+            "coordinate   回收过期租约并把已完成分片的结果汇总到处理历史，直到全部分片完成",
+            "  --lease <seconds>                     租约时长，默认60秒",
+            "  --interval <seconds>                  汇总间隔，默认5秒",
+            "  --once                                只汇总一轮",
+            "status       显示任务状态",
+            "",
+            "--verbose    在标准错误输出INFO级别日志");
+    
+    private String command;
+    private File spoolDir;
+    private final List<String> sources = new ArrayList<>();
+    private final List<String> manifests = new ArrayList<>();
+    private Long templateId;
+    private String configFile;
+    private String outputDirectory;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private boolean full;
+    private String workerId;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long memoryBudget = Runtime.getRuntime().maxMemory() / 2;
+    private long leaseMillis = DEFAULT_LEASE_SECONDS * 1000;
+    private long intervalMillis = DEFAULT_INTERVAL_SECONDS * 1000;
+    private boolean waitForLeases = true;
+    private boolean once;
+    
+    public static void main(String[] args) {
+        // 标准输出只留给结果JSON
+        PrintStream out = System.out;
+        System.setOut(System.err);
+        
+        boolean verbose = false;
+        for (String arg : args) {
+            verbose |= "--verbose".equals(arg);
+        }
+        if (System.getProperty("watermark.console.level") == null) {
+            System.setProperty("watermark.console.level", verbose ? "INFO" : "WARN");
+        }
+        System.exit(new SpoolCli().run(args, out));
+    }
+    
+    int run(String[] args, PrintStream out) {
+        try {
+            if (!parseArguments(args)) {
+                out.println(USAGE);
+                return EXIT_OK;
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("参数错误: " + e.getMessage());
+            System.err.println(USAGE);
+            return EXIT_USAGE;
+        }
+        
+        ObjectMapper objectMapper = new ObjectMapper();
+        SpoolService spoolService = SpoolService.getInstance();
+        try {
+            PathManager.initializeAppDirectories();
+            DatabaseService.getInstance().initialize();
+            
+            Map<String, Object> summary;
+            int exitCode = EXIT_OK;
+            switch (command) {
+                case "create":
+                    List<String> imagePaths = WatermarkCli.collectSources(sources, manifests);
+                    // 工作进程的逐张结果写入各自的账本，不另外生成报告
+                    String configJson = WatermarkCli.buildConfigJson(objectMapper, templateId, configFile,
+                                                                     outputDirectory, full, false, false);
+                    int chunks = spoolService.createJob(spoolDir, imagePaths, configJson, templateId, chunkSize);
+                    summary = new LinkedHashMap<>();
+                    summary.put("spool", spoolDir.getAbsolutePath());
+                    summary.put("total", imagePaths.size());
+                    summary.put("chunks", chunks);
+                    break;
+                case "work":
+                    summary = spoolService.runWorker(spoolDir, workerId, threads, memoryBudget,
+                                                     leaseMillis, waitForLeases);
+                    if (((Number) summary.get("failureCount")).intValue() > 0) {
+                        exitCode = EXIT_PARTIAL;
+                    }
+                    break;
+                case "coordinate":
+                    summary = spoolService.coordinate(spoolDir, leaseMillis, intervalMillis, once);
+                    break;
+                default:
+                    summary = spoolService.getStatus(new SpoolDirectory(spoolDir));
+                    break;
+            }
+            out.println(objectMapper.writeValueAsString(summary));
+            return exitCode;
+            
+        } catch (IllegalArgumentException e) {
+            System.err.println("参数错误: " + e.getMessage());
+            return EXIT_USAGE;
+        } catch (Exception e) {
+            logger.error("分片任务命令执行失败: {}", command, e);
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("status", "failed");
+            summary.put("message", e.getMessage());
+            try {
+                out.println(objectMapper.writeValueAsString(summary));
+            } catch (IOException ignored) {
+                // 只在无法序列化时发生，不影响退出码
+            }
+            return EXIT_ERROR;
+        } finally {
+            try {
+                HistoryService.getInstance().shutdown(5000);
+                DatabaseService.getInstance().close();
+            } catch (Exception e) {
+                logger.warn("释放资源失败: {}", e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * 解析命令行参数
+     * 
+     * @return false表示只需显示帮助
+     */
+    private boolean parseArguments(String[] args) {
+        if (args.length == 0 || "--help".equals(args[0]) || "-h".equals(args[0])) {
+            return false;
+        }
+        command = args[0];
+        if (!"create".equals(command) && !"work".equals(command)
+                && !"coordinate".equals(command) && !"status".equals(command)) {
+            throw new IllegalArgumentException("未知命令: " + command);
+        }
+        
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--help":
+                case "-h":
+                    return false;
+                case "--spool":
+                    spoolDir = new File(value(args, ++i, arg));
+                    break;
+                case "--source":
+                    sources.add(value(args, ++i, arg));
+                    break;
+                case "--manifest":
+                    manifests.add(value(args, ++i, arg));
+                    break;
+                case "--template":
+                    templateId = parseLong(value(args, ++i, arg), arg);
+                    break;
+                case "--config":
+                    configFile = value(args, ++i, arg);
+                    break;
+                case "--output":
+                    outputDirectory = value(args, ++i, arg);
+                    break;
+                case "--chunk-size":
+                    chunkSize = (int) parsePositive(value(args, ++i, arg), arg);
+                    break;
+                case "--full":
+                    full = true;
+                    break;
+                case "--worker-id":
+                    workerId = value(args, ++i, arg);
+                    break;
+                case "--threads":
+                    threads = (int) parsePositive(value(args, ++i, arg), arg);
+                    break;
+                case "--memory":
+                    memoryBudget = SizeUtils.parseSize(value(args, ++i, arg));
+                    break;
+                case "--lease":
+                    leaseMillis = parsePositive(value(args, ++i, arg), arg) * 1000;
+                    break;
+                case "--interval":
+                    intervalMillis = parsePositive(value(args, ++i, arg), arg) * 1000;
+                    break;
+                case "--no-wait":
+                    waitForLeases = false;
+                    break;
+                case "--once":
+                    once = true;
+                    break;
+                case "--verbose":
+                    // 已在main中初始化日志前处理
+                    break;
+                default:
+                    throw new IllegalArgumentException("未知参数: " + arg);
+            }
+        }
+        
+        if (spoolDir == null) {
+            throw new IllegalArgumentException("缺少 --spool");
+        }
+        if ("create".equals(command)) {
+            if (sources.isEmpty() && manifests.isEmpty()) {
+                throw new IllegalArgumentException("缺少 --source 或 --manifest");
+            }
+            if ((templateId == null) == (configFile == null)) {
+                throw new IllegalArgumentException("必须且只能指定 --template 或 --config 之一");
+            }
+            if (outputDirectory == null || outputDirectory.trim().isEmpty()) {
+                throw new IllegalArgumentException("缺少 --output");
+            }
+        } else if (!new File(spoolDir, SpoolDirectory.JOB_FILE).isFile()) {
+            throw new IllegalArgumentException("不是分片任务目录: " + spoolDir);
+        }
+        if (workerId == null) {
+            // RuntimeMXBean的名称为 进程号@主机名
+            String[] name = ManagementFactory.getRuntimeMXBean().getName().split("@", 2);
+            workerId = (name.length == 2 ? name[1] + "-" : "") + name[0];
+        }
+        return true;
+    }
+    
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(option + " 缺少参数值");
+        }
+        return args[index];
+    }
+    
+    private static long parseLong(String text, String option) {
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(option + " 必须是数字: " + text);
+        }
+    }
+    
+    private static long parsePositive(String text, String option) {
+        long value = parseLong(text, option);
+        if (value < 1) {
+            throw new IllegalArgumentException(option + " 必须大于0: " + text);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,427 @@
+package com.watermark.cli;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.watermark.dto.BatchExportResult;
+import com.watermark.model.ExportJob;
+import com.watermark.model.WatermarkTemplate;
+import com.watermark.service.BatchExportService;
+import com.watermark.service.DatabaseService;
+import com.watermark.service.HistoryService;
+import com.watermark.service.JobService;
+import com.watermark.service.TemplateService;
+import com.watermark.service.WatermarkService;
+import com.watermark.util.ExportReportWriter;
+import com.watermark.util.ManifestReader;
+import com.watermark.util.PathManager;
+import com.watermark.util.SizeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 命令行批量导出入口
+ * 不启动JavaFX，直接使用BatchExportService、TemplateService导出图片，可在没有显示器的服务器上运行：
+ * 
+ *   java -Djava.awt.headless=true -cp watermark-app.jar com.watermark.cli.WatermarkCli \
+ *        --source "/data/in/**.jpg" --template 3 --output /data/out --threads 8 --memory 2g
+ * 
+ * 只指定一个 --manifest 时清单逐行写入任务表后分批导出，不受堆内存限制，CSV清单可以逐行覆盖水印配置。
+ * 逐张结果写入输出目录旁的NDJSON报告（目录名.report-时间.ndjson），导出过程中即可读取。
+ * 日志输出到标准错误，标准输出只输出一行JSON格式的导出结果。
+ * 退出码：0 全部成功，1 部分失败，2 参数错误，3 执行失败
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class WatermarkCli {
+    
+    static {
+        System.setProperty("java.awt.headless", System.getProperty("java.awt.headless", "true"));
+        System.setProperty("watermark.console.target", "System.err");
+    }
+    
+    // 实例字段：日志级别要在main中根据--verbose设置之后才能初始化logback
+    private final Logger logger = LoggerFactory.getLogger(WatermarkCli.class);
+    
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_PARTIAL = 1;
+    private static final int EXIT_USAGE = 2;
+    private static final int EXIT_ERROR = 3;
+    
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "用法: java -Djava.awt.headless=true -cp watermark-app.jar com.watermark.cli.WatermarkCli [选项]",
+            "",
+            "源图片（至少一项，可重复）:",
+            "  --source <glob>       源图片路径或glob模式，如 /data/in/**.jpg",
+            "  --manifest <file>     清单文件，每行一个源图片路径（# 开头为注释），- 表示标准输入；",
+            "                        .csv清单首行为列名，path列为源图片，其余列逐行覆盖水印配置（如 text,opacity）",
+            "水印配置（二选一）:",
+            "  --template <id>       使用已保存的模板",
+            "  --config <file>       水印配置JSON文件（与界面导出时的配置格式相同）",
+            "输出:",
+            "  --output <dir>        输出目录",
+            "可选:",
+            "  --threads <n>         渲染线程数，默认为CPU核数",
+            "  --memory <size>       内存预算，如 512m、2g，默认为最大堆内存的一半",
+            "  --full                不跳过未变化的图片，全部重新导出",
+            "  --no-report           不生成逐张结果的NDJSON报告",
+            "  --retry-quarantined   重新处理此前因解码超时或尺寸超限被隔离的图片",
+            "  --verbose             在标准错误输出INFO级别日志",
+            "  --help                显示本帮助");
+    
+    private final List<String> sources = new ArrayList<>();
+    private final List<String> manifests = new ArrayList<>();
+    private Long templateId;
+    private String configFile;
+    private String outputDirectory;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long memoryBudget = Runtime.getRuntime().maxMemory() / 2;
+    private boolean full;
+    private boolean report = true;
+    private boolean retryQuarantined;
+    
+    public static void main(String[] args) {
+        // 标准输出只留给结果JSON，其他输出（如PathManager的提示）改到标准错误
+        PrintStream out = System.out;
+        System.setOut(System.err);
+        
+        boolean verbose = false;
+        for (String arg : args) {
+            verbose |= "--verbose".equals(arg);
+        }
+        if (System.getProperty("watermark.console.level") == null) {
+            System.setProperty("watermark.console.level", verbose ? "INFO" : "WARN");
+        }
+        System.exit(new WatermarkCli().run(args, out));
+    }
+    
+    /**
+     * 执行命令行导出
+     * 
+     * @return 退出码
+     */
+    int run(String[] args, PrintStream out) {
+        try {
+            if (!parseArguments(args)) {
+                out.println(USAGE);
+                return EXIT_OK;
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("参数错误: " + e.getMessage());
+            System.err.println(USAGE);
+            return EXIT_USAGE;
+        }
+        
+        ObjectMapper objectMapper = new ObjectMapper();
+        try {
+            PathManager.initializeAppDirectories();
+            DatabaseService.getInstance().initialize();
+            
+            if (sources.isEmpty() && manifests.size() == 1) {
+                return runManifest(objectMapper, out);
+            }
+            
+            List<String> imagePaths = collectSources(sources, manifests);
+            String configJson = buildConfigJson(objectMapper, templateId, configFile, outputDirectory, full, report,
+                                            retryQuarantined);
+            logger.info("命令行导出: {} 张图片 -> {} (threads={}, memory={})",
+                        imagePaths.size(), outputDirectory, threads, memoryBudget);
+            
+            BatchExportResult result;
+            ExportReportWriter reportWriter = report
+                    ? new ExportReportWriter(ExportReportWriter.defaultReportFile(outputDirectory, null)) : null;
+            try {
+                result = BatchExportService.getInstance().exportImages(imagePaths, configJson, threads, memoryBudget,
+                        reportWriter != null ? reportWriter::write : null);
+            } finally {
+                if (reportWriter != null) {
+                    reportWriter.close();
+                }
+            }
+            
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("status", result.getFailureCount() == 0 ? "ok" : "partial");
+            summary.put("total", result.getTotal());
+            summary.put("successCount", result.getSuccessCount());
+            summary.put("failureCount", result.getFailureCount());
+            summary.put("skippedCount", result.getSkippedCount());
+            summary.put("deduplicatedCount", result.getDeduplicatedCount());
+            summary.put("quarantinedCount", result.getQuarantinedCount());
+            summary.put("elapsedMs", result.getElapsedMs());
+            summary.put("outputDirectory", new File(outputDirectory).getAbsolutePath());
+            summary.put("reportPath", reportWriter != null ? reportWriter.getReportFile().getPath() : null);
+            summary.put("threads", threads);
+            summary.put("memoryBudgetBytes", memoryBudget);
+            out.println(objectMapper.writeValueAsString(summary));
+            
+            return result.getFailureCount() == 0 ? EXIT_OK : EXIT_PARTIAL;
+            
+        } catch (IllegalArgumentException e) {
+            System.err.println("参数错误: " + e.getMessage());
+            return EXIT_USAGE;
+        } catch (Exception e) {
+            logger.error("命令行导出失败", e);
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("status", "failed");
+            summary.put("message", e.getMessage());
+            try {
+                out.println(objectMapper.writeValueAsString(summary));
+            } catch (IOException ignored) {
+                // 只在无法序列化时发生，不影响退出码
+            }
+            return EXIT_ERROR;
+        } finally {
+            try {
+                HistoryService.getInstance().shutdown(5000);
+                DatabaseService.getInstance().close();
+            } catch (Exception e) {
+                logger.warn("释放资源失败: {}", e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * 流式导出单个清单：清单写入任务表后分批导出，内存占用与清单大小无关
+     */
+    private int runManifest(ObjectMapper objectMapper, PrintStream out) throws Exception {
+        String configJson = buildConfigJson(objectMapper, templateId, configFile, outputDirectory, full, report,
+                                            retryQuarantined);
+        logger.info("命令行清单导出: {} -> {} (threads={}, memory={})",
+                    manifests.get(0), outputDirectory, threads, memoryBudget);
+        
+        long startTime = System.currentTimeMillis();
+        ExportJob job = JobService.getInstance().runManifest(manifests.get(0), null, configJson, null,
+                                                             threads, memoryBudget, null);
+        if (ExportJob.STATUS_FAILED.equals(job.getStatus())) {
+            throw new IllegalStateException(job.getMessage());
+        }
+        
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("status", job.getFailureCount() == 0 ? "ok" : "partial");
+        summary.put("jobId", job.getId());
+        summary.put("total", job.getTotal());
+        summary.put("successCount", job.getSuccessCount());
+        summary.put("failureCount", job.getFailureCount());
+        summary.put("skippedCount", job.getSkippedCount());
+        summary.put("deduplicatedCount", job.getDeduplicatedCount());
+        summary.put("quarantinedCount", job.getQuarantinedCount());
+        summary.put("elapsedMs", System.currentTimeMillis() - startTime);
+        summary.put("outputDirectory", new File(outputDirectory).getAbsolutePath());
+        summary.put("reportPath", job.getReportPath());
+        summary.put("threads", threads);
+        summary.put("memoryBudgetBytes", memoryBudget);
+        out.println(objectMapper.writeValueAsString(summary));
+        
+        return job.getFailureCount() == 0 ? EXIT_OK : EXIT_PARTIAL;
+    }
+    
+    /**
+     * 解析命令行参数
+     * 
+     * @return false表示只需显示帮助
+     */
+    private boolean parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--help":
+                case "-h":
+                    return false;
+                case "--source":
+                    sources.add(value(args, ++i, arg));
+                    break;
+                case "--manifest":
+                    manifests.add(value(args, ++i, arg));
+                    break;
+                case "--template":
+                    try {
+                        templateId = Long.parseLong(value(args, ++i, arg));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("模板ID必须是数字: " + args[i]);
+                    }
+                    break;
+                case "--config":
+                    configFile = value(args, ++i, arg);
+                    break;
+                case "--output":
+                    outputDirectory = value(args, ++i, arg);
+                    break;
+                case "--threads":
+                    try {
+                        threads = Integer.parseInt(value(args, ++i, arg));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("线程数必须是数字: " + args[i]);
+                    }
+                    if (threads < 1) {
+                        throw new IllegalArgumentException("线程数必须大于0: " + threads);
+                    }
+                    break;
+                case "--memory":
+                    memoryBudget = SizeUtils.parseSize(value(args, ++i, arg));
+                    break;
+                case "--full":
+                    full = true;
+                    break;
+                case "--no-report":
+                    report = false;
+                    break;
+                case "--retry-quarantined":
+                    retryQuarantined = true;
+                    break;
+                case "--verbose":
+                    // 已在main中初始化日志前处理
+                    break;
+                default:
+                    throw new IllegalArgumentException("未知参数: " + arg);
+            }
+        }
+        
+        if (sources.isEmpty() && manifests.isEmpty()) {
+            throw new IllegalArgumentException("缺少 --source 或 --manifest");
+        }
+        if ((templateId == null) == (configFile == null)) {
+            throw new IllegalArgumentException("必须且只能指定 --template 或 --config 之一");
+        }
+        if (outputDirectory == null || outputDirectory.trim().isEmpty()) {
+            throw new IllegalArgumentException("缺少 --output");
+        }
+        return true;
+    }
+    
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(option + " 缺少参数值");
+        }
+        return args[index];
+    }
+    
+    /**
+     * 展开glob并读取清单，按出现顺序去重
+     */
+    static List<String> collectSources(List<String> sources, List<String> manifests) throws IOException {
+        Set<String> paths = new LinkedHashSet<>();
+        for (String source : sources) {
+            expandGlob(source, paths);
+        }
+        for (String manifest : manifests) {
+            readManifest(manifest, paths);
+        }
+        if (paths.isEmpty()) {
+            throw new IllegalArgumentException("没有找到源图片");
+        }
+        return new ArrayList<>(paths);
+    }
+    
+    /**
+     * 展开glob模式：从模式中第一个通配符之前的目录开始遍历，只收集支持的图片格式
+     */
+    private static void expandGlob(String pattern, Set<String> paths) throws IOException {
+        int wildcard = indexOfWildcard(pattern);
+        if (wildcard < 0) {
+            File file = new File(pattern);
+            if (!file.isFile()) {
+                throw new IllegalArgumentException("源图片不存在: " + pattern);
+            }
+            paths.add(file.getAbsolutePath());
+            return;
+        }
+        
+        int separator = Math.max(pattern.lastIndexOf('/', wildcard), pattern.lastIndexOf(File.separatorChar, wildcard));
+        Path baseDir = Paths.get(separator >= 0 ? pattern.substring(0, separator + 1) : ".").toAbsolutePath().normalize();
+        String relativePattern = pattern.substring(separator + 1);
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + relativePattern);
+        if (!Files.isDirectory(baseDir)) {
+            throw new IllegalArgumentException("目录不存在: " + baseDir);
+        }
+        
+        List<String> matched = new ArrayList<>();
+        Files.walkFileTree(baseDir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile() && matcher.matches(baseDir.relativize(file))
+                        && PathManager.isSupportedImageFormat(file.getFileName().toString())) {
+                    matched.add(file.toString());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+            
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                LoggerFactory.getLogger(WatermarkCli.class).warn("无法访问: {}", file, e);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        matched.sort(null);
+        paths.addAll(matched);
+    }
+    
+    private static int indexOfWildcard(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    private static void readManifest(String manifest, Set<String> paths) throws IOException {
+        try (ManifestReader reader = ManifestReader.open(manifest)) {
+            while (reader.hasNext()) {
+                ManifestReader.Entry entry = reader.next();
+                if (!entry.getOverrides().isEmpty()) {
+                    throw new IllegalArgumentException("带配置覆盖列的CSV清单只能作为唯一的 --manifest 使用: " + manifest);
+                }
+                paths.add(entry.getPath());
+            }
+        }
+    }
+    
+    /**
+     * 生成导出配置JSON：读取配置文件或转换模板，并写入输出目录、增量、报告和隔离选项
+     */
+    static String buildConfigJson(ObjectMapper objectMapper, Long templateId, String configFile,
+                                  String outputDirectory, boolean full, boolean report,
+                                  boolean retryQuarantined) throws Exception {
+        ObjectNode config;
+        if (configFile != null) {
+            config = (ObjectNode) objectMapper.readTree(new File(configFile));
+        } else {
+            WatermarkTemplate template = TemplateService.getInstance().getTemplate(templateId);
+            if (template == null || template.getConfig() == null) {
+                throw new IllegalArgumentException("模板不存在: " + templateId);
+            }
+            config = objectMapper.valueToTree(WatermarkService.getInstance().convertToConfigData(template.getConfig()));
+        }
+        
+        config.put("outputPath", new File(outputDirectory).getAbsolutePath());
+        if (full) {
+            config.put("incremental", false);
+        }
+        if (!report) {
+            config.put("report", false);
+        }
+        if (retryQuarantined) {
+            config.put("retryQuarantined", true);
+        }
+        return objectMapper.writeValueAsString(config);
+    }
+}
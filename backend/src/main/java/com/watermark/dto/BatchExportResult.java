@@ -0,0 +1,81 @@
+package com.watermark.dto;
+
+/**
+ * 批量导出结果数据传输对象
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class BatchExportResult {
+    
+    private int total;          // 总数
+    private int successCount;   // 成功导出数
+    private int failureCount;   // 失败数
+    private int skippedCount;   // 增量导出跳过的未变化项
+    private int deduplicatedCount; // 复用重复内容的导出结果（计入成功数）
+    private int quarantinedCount;  // 超过解码限制被隔离或因已隔离跳过的项（计入失败数）
+    private long elapsedMs;     // 总耗时（毫秒）
+    
+    public BatchExportResult() {
+    }
+    
+    public BatchExportResult(int total) {
+        this.total = total;
+    }
+    
+    // Getters and Setters
+    public int getTotal() { return total; }
+    public void setTotal(int total) { this.total = total; }
+    
+    public int getSuccessCount() { return successCount; }
+    public void setSuccessCount(int successCount) { this.successCount = successCount; }
+    
+    public int getFailureCount() { return failureCount; }
+    public void setFailureCount(int failureCount) { this.failureCount = failureCount; }
+    
+    public int getSkippedCount() { return skippedCount; }
+    public void setSkippedCount(int skippedCount) { this.skippedCount = skippedCount; }
+    
+    public int getDeduplicatedCount() { return deduplicatedCount; }
+    public void setDeduplicatedCount(int deduplicatedCount) { this.deduplicatedCount = deduplicatedCount; }
+    
+    public int getQuarantinedCount() { return quarantinedCount; }
+    public void setQuarantinedCount(int quarantinedCount) { this.quarantinedCount = quarantinedCount; }
+    
+    public long getElapsedMs() { return elapsedMs; }
+    public void setElapsedMs(long elapsedMs) { this.elapsedMs = elapsedMs; }
+    
+    public void incrementSuccess() { successCount++; }
+    public void incrementFailure() { failureCount++; }
+    public void incrementSkipped() { skippedCount++; }
+    public void incrementDeduplicated() { deduplicatedCount++; }
+    public void incrementQuarantined() { quarantinedCount++; }
+    
+    /**
+     * 获取结果描述
+     */
+    public String getMessage() {
+        if (quarantinedCount > 0) {
+            return String.format("批量处理完成：成功 %d 张，跳过 %d 张（未变化），失败 %d 张（其中 %d 张为隔离的异常文件）",
+                                 successCount, skippedCount, failureCount, quarantinedCount);
+        }
+        if (skippedCount > 0) {
+            return String.format("批量处理完成：成功 %d 张，跳过 %d 张（未变化），失败 %d 张",
+                                 successCount, skippedCount, failureCount);
+        }
+        return String.format("批量处理完成：成功 %d 张，失败 %d 张", successCount, failureCount);
+    }
+    
+    @Override
+    public String toString() {
+        return "BatchExportResult{" +
+                "total=" + total +
+                ", successCount=" + successCount +
+                ", failureCount=" + failureCount +
+                ", skippedCount=" + skippedCount +
+                ", deduplicatedCount=" + deduplicatedCount +
+                ", quarantinedCount=" + quarantinedCount +
+                ", elapsedMs=" + elapsedMs +
+                '}';
+    }
+}
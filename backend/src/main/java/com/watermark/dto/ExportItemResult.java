@@ -0,0 +1,84 @@
+package com.watermark.dto;
+
+/**
+ * 批量导出单张图片结果数据传输对象
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class ExportItemResult {
+    
+    public static final String STATUS_SUCCESS = "SUCCESS";
+    public static final String STATUS_SKIPPED = "SKIPPED";
+    public static final String STATUS_DEDUPLICATED = "DEDUPLICATED";
+    public static final String STATUS_FAILED = "FAILED";
+    public static final String STATUS_QUARANTINED = "QUARANTINED";
+    
+    private String sourcePath;  // 源图片路径
+    private String outputPath;  // 输出文件路径
+    private String status;      // 处理结果
+    private String message;     // 失败原因
+    private String errorClass;  // 失败时的异常类名
+    private long outputBytes;   // 输出文件大小（字节）
+    private long elapsedMs;     // 处理耗时（毫秒）
+    
+    // 各阶段耗时（毫秒）
+    private long readMs;        // 等待预读源文件和计算内容哈希
+    private long queueMs;       // 等待渲染线程和渲染内存预算
+    private long renderMs;      // 解码、绘制水印和编码
+    private long writeMs;       // 后写队列排队和写入磁盘（复用结果时为复制文件）
+    
+    public ExportItemResult() {
+    }
+    
+    public ExportItemResult(String sourcePath, String outputPath, String status, String message, long elapsedMs) {
+        this.sourcePath = sourcePath;
+        this.outputPath = outputPath;
+        this.status = status;
+        this.message = message;
+        this.elapsedMs = elapsedMs;
+    }
+    
+    // Getters and Setters
+    public String getSourcePath() { return sourcePath; }
+    public void setSourcePath(String sourcePath) { this.sourcePath = sourcePath; }
+    
+    public String getOutputPath() { return outputPath; }
+    public void setOutputPath(String outputPath) { this.outputPath = outputPath; }
+    
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    
+    public String getMessage() { return message; }
+    public void setMessage(String message) { this.message = message; }
+    
+    public String getErrorClass() { return errorClass; }
+    public void setErrorClass(String errorClass) { this.errorClass = errorClass; }
+    
+    public long getOutputBytes() { return outputBytes; }
+    public void setOutputBytes(long outputBytes) { this.outputBytes = outputBytes; }
+    
+    public long getElapsedMs() { return elapsedMs; }
+    public void setElapsedMs(long elapsedMs) { this.elapsedMs = elapsedMs; }
+    
+    public long getReadMs() { return readMs; }
+    public void setReadMs(long readMs) { this.readMs = readMs; }
+    
+    public long getQueueMs() { return queueMs; }
+    public void setQueueMs(long queueMs) { this.queueMs = queueMs; }
+    
+    public long getRenderMs() { return renderMs; }
+    public void setRenderMs(long renderMs) { this.renderMs = renderMs; }
+    
+    public long getWriteMs() { return writeMs; }
+    public void setWriteMs(long writeMs) { this.writeMs = writeMs; }
+    
+    @Override
+    public String toString() {
+        return "ExportItemResult{" +
+                "sourcePath='" + sourcePath + '\'' +
+                ", status='" + status + '\'' +
+                ", elapsedMs=" + elapsedMs +
+                '}';
+    }
+}
@@ -0,0 +1,89 @@
+package com.watermark.dto;
+
+import java.util.List;
+
+/**
+ * 图片列表查询条件数据传输对象
+ * 为空的条件不参与过滤；sortBy为空时按导入顺序排列
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class ImageQuery {
+    
+    public static final String SORT_NAME = "name";
+    public static final String SORT_SIZE = "size";
+    public static final String SORT_WIDTH = "width";
+    public static final String SORT_HEIGHT = "height";
+    public static final String SORT_PIXELS = "pixels";
+    public static final String SORT_FORMAT = "format";
+    public static final String SORT_MODIFIED = "modified";
+    public static final String SORT_IMPORTED = "imported";
+    
+    private String keyword;         // 文件名包含的关键字（不区分大小写）
+    private List<String> formats;   // 图片格式，如 JPG、PNG
+    private Long minFileSize;       // 最小文件大小（字节）
+    private Long maxFileSize;       // 最大文件大小（字节）
+    private Integer minWidth;       // 最小宽度
+    private Integer maxWidth;       // 最大宽度
+    private Integer minHeight;      // 最小高度
+    private Integer maxHeight;      // 最大高度
+    private Long modifiedAfter;     // 修改时间下限（毫秒，含）
+    private Long modifiedBefore;    // 修改时间上限（毫秒，不含）
+    private String sortBy;          // 排序字段
+    private boolean descending;     // 是否降序
+    
+    public ImageQuery() {
+    }
+    
+    // Getters and Setters
+    public String getKeyword() { return keyword; }
+    public void setKeyword(String keyword) { this.keyword = keyword; }
+    
+    public List<String> getFormats() { return formats; }
+    public void setFormats(List<String> formats) { this.formats = formats; }
+    
+    public Long getMinFileSize() { return minFileSize; }
+    public void setMinFileSize(Long minFileSize) { this.minFileSize = minFileSize; }
+    
+    public Long getMaxFileSize() { return maxFileSize; }
+    public void setMaxFileSize(Long maxFileSize) { this.maxFileSize = maxFileSize; }
+    
+    public Integer getMinWidth() { return minWidth; }
+    public void setMinWidth(Integer minWidth) { this.minWidth = minWidth; }
+    
+    public Integer getMaxWidth() { return maxWidth; }
+    public void setMaxWidth(Integer maxWidth) { this.maxWidth = maxWidth; }
+    
+    public Integer getMinHeight() { return minHeight; }
+    public void setMinHeight(Integer minHeight) { this.minHeight = minHeight; }
+    
+    public Integer getMaxHeight() { return maxHeight; }
+    public void setMaxHeight(Integer maxHeight) { this.maxHeight = maxHeight; }
+    
+    public Long getModifiedAfter() { return modifiedAfter; }
+    public void setModifiedAfter(Long modifiedAfter) { this.modifiedAfter = modifiedAfter; }
+    
+    public Long getModifiedBefore() { return modifiedBefore; }
+    public void setModifiedBefore(Long modifiedBefore) { this.modifiedBefore = modifiedBefore; }
+    
+    public String getSortBy() { return sortBy; }
+    public void setSortBy(String sortBy) { this.sortBy = sortBy; }
+    
+    public boolean isDescending() { return descending; }
+    public void setDescending(boolean descending) { this.descending = descending; }
+    
+    @Override
+    public String toString() {
+        return "ImageQuery{" +
+                "keyword='" + keyword + '\'' +
+                ", formats=" + formats +
+                ", fileSize=[" + minFileSize + ", " + maxFileSize + "]" +
+                ", width=[" + minWidth + ", " + maxWidth + "]" +
+                ", height=[" + minHeight + ", " + maxHeight + "]" +
+                ", modified=[" + modifiedAfter + ", " + modifiedBefore + ")" +
+                ", sortBy='" + sortBy + '\'' +
+                ", descending=" + descending +
+                '}';
+    }
+}
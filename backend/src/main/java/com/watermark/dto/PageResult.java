@@ -0,0 +1,60 @@
+package com.watermark.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分页结果数据传输对象
+ * 基于游标（keyset）的分页，nextCursor为空表示没有更多数据
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class PageResult<T> {
+    
+    private List<T> items = new ArrayList<>(); // 当前页数据
+    private String nextCursor;                 // 下一页游标
+    private boolean hasMore;                   // 是否还有更多数据
+    
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer total;                     // 总条数，无法预先得知时为空
+    
+    public PageResult() {
+    }
+    
+    public PageResult(List<T> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+        this.hasMore = nextCursor != null;
+    }
+    
+    public PageResult(List<T> items, String nextCursor, int total) {
+        this(items, nextCursor);
+        this.total = total;
+    }
+    
+    // Getters and Setters
+    public List<T> getItems() { return items; }
+    public void setItems(List<T> items) { this.items = items; }
+    
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+    
+    public boolean isHasMore() { return hasMore; }
+    public void setHasMore(boolean hasMore) { this.hasMore = hasMore; }
+    
+    public Integer getTotal() { return total; }
+    public void setTotal(Integer total) { this.total = total; }
+    
+    @Override
+    public String toString() {
+        return "PageResult{" +
+                "items=" + items.size() +
+                ", nextCursor='" + nextCursor + '\'' +
+                ", hasMore=" + hasMore +
+                ", total=" + total +
+                '}';
+    }
+}
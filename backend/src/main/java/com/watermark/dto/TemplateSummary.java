@@ -0,0 +1,58 @@
+package com.watermark.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import java.time.LocalDateTime;
+
+/**
+ * 模板摘要数据传输对象
+ * 仅包含模板列表展示所需的字段，不包含配置JSON
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class TemplateSummary {
+    
+    private Long id;
+    private String name;
+    private String description;
+    private String type;            // TEXT 或 IMAGE
+    
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime createdAt;
+    
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime updatedAt;
+    
+    public TemplateSummary() {
+    }
+    
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+    
+    public String getDescription() { return description; }
+    public void setDescription(String description) { this.description = description; }
+    
+    public String getType() { return type; }
+    public void setType(String type) { this.type = type; }
+    
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+    
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+    
+    @Override
+    public String toString() {
+        return "TemplateSummary{" +
+                "id=" + id +
+                ", name='" + name + '\'' +
+                ", type=" + type +
+                ", createdAt=" + createdAt +
+                '}';
+    }
+}
@@ -55,6 +55,19 @@ public class WatermarkConfigData {
         public String filePrefix = "wm_";     // 文件前缀
         public String fileSuffix = "_watermarked"; // 文件后缀
         
+        // JPEG编码参数
+        public int jpegQuality = 90;          // 质量 (1-100)
+        public boolean progressive = false;   // 渐进式编码
+        public String chromaSubsampling = "420"; // 色度子采样: 420, 422, 444
+        public boolean jpegBlockPatch = false; // JPEG源图片只重新编码水印覆盖的块
+        
+        // PNG/TIFF编码参数
+        public String pngPreset = null;       // 预设: fast, small，为空时使用默认参数（单核主机上改用较快的级别和过滤方式）
+        public int pngCompressionLevel = -1;  // 压缩级别 (0-9)，-1表示使用预设
+        public String pngFilter = null;       // 过滤方式: none, sub, up, average, paeth, adaptive
+        public boolean parallelEncoding = true; // 大图是否并行压缩
+        public String tiffCompression = "lzw"; // TIFF压缩: none, lzw, deflate, packbits
+        
         public OutputConfig() {
         }
         
@@ -0,0 +1,49 @@
+package com.watermark.encoder;
+
+/**
+ * 图片编码参数
+ * 汇总各输出格式的编码参数，按实际输出格式取用
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class ImageEncodeOptions {
+    
+    private JpegEncodeOptions jpeg = new JpegEncodeOptions();
+    private PngEncodeOptions png = new PngEncodeOptions();
+    private TiffEncodeOptions tiff = new TiffEncodeOptions();
+    
+    public ImageEncodeOptions() {
+    }
+    
+    public ImageEncodeOptions(JpegEncodeOptions jpeg, PngEncodeOptions png, TiffEncodeOptions tiff) {
+        setJpeg(jpeg);
+        setPng(png);
+        setTiff(tiff);
+    }
+    
+    // Getters and Setters
+    public JpegEncodeOptions getJpeg() { return jpeg; }
+    public void setJpeg(JpegEncodeOptions jpeg) { 
+        this.jpeg = jpeg != null ? jpeg : new JpegEncodeOptions(); 
+    }
+    
+    public PngEncodeOptions getPng() { return png; }
+    public void setPng(PngEncodeOptions png) { 
+        this.png = png != null ? png : new PngEncodeOptions(); 
+    }
+    
+    public TiffEncodeOptions getTiff() { return tiff; }
+    public void setTiff(TiffEncodeOptions tiff) { 
+        this.tiff = tiff != null ? tiff : new TiffEncodeOptions(); 
+    }
+    
+    @Override
+    public String toString() {
+        return "ImageEncodeOptions{" +
+                "jpeg=" + jpeg +
+                ", png=" + png +
+                ", tiff=" + tiff +
+                '}';
+    }
+}
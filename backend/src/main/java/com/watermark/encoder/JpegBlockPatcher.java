@@ -0,0 +1,1075 @@
+package com.watermark.encoder;
+
+import com.watermark.strategy.WatermarkRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JPEG DCT域修补器
+ * JPEG源图片输出为JPEG时，只对与水印相交的MCU解码、绘制水印并重新做DCT和量化，其余块的量化系数原样保留：
+ * 不含被修改MCU的重启区间按字节原样复制，含被修改MCU的区间只重新熵编码被修改的MCU及其后一个MCU（DC差分变化），
+ * 前后的熵编码数据按位复制。源图片的霍夫曼表无法编码新系数时，改为以最优霍夫曼表完整重新熵编码。
+ * 熵解码和重新编码的循环中检查线程中断，被中断（如解码超时）时抛出InterruptedIOException
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class JpegBlockPatcher {
+    
+    private static final Logger logger = LoggerFactory.getLogger(JpegBlockPatcher.class);
+    
+    // 之字形序号到块内行优先序号的映射
+    private static final int[] NATURAL_ORDER = {
+         0,  1,  8, 16,  9,  2,  3, 10,
+        17, 24, 32, 25, 18, 11,  4,  5,
+        12, 19, 26, 33, 40, 48, 41, 34,
+        27, 20, 13,  6,  7, 14, 21, 28,
+        35, 42, 49, 56, 57, 50, 43, 36,
+        29, 22, 15, 23, 30, 37, 44, 51,
+        58, 59, 52, 45, 38, 31, 39, 46,
+        53, 60, 61, 54, 47, 55, 62, 63
+    };
+    
+    // 正交DCT基函数 COS[x][u] = C(u) / 2 * cos((2x + 1) * u * PI / 16)，正变换和逆变换共用
+    private static final double[][] DCT_COS = new double[8][8];
+    
+    static {
+        for (int x = 0; x < 8; x++) {
+            for (int u = 0; u < 8; u++) {
+                double scale = u == 0 ? Math.sqrt(0.5) : 1.0;
+                DCT_COS[x][u] = scale / 2 * Math.cos((2 * x + 1) * u * Math.PI / 16);
+            }
+        }
+    }
+    
+    private static JpegBlockPatcher instance;
+    
+    private JpegBlockPatcher() {
+        // 私有构造函数，单例模式
+    }
+    
+    public static synchronized JpegBlockPatcher getInstance() {
+        if (instance == null) {
+            instance = new JpegBlockPatcher();
+        }
+        return instance;
+    }
+    
+    /**
+     * 在JPEG源图片上以DCT域修补的方式绘制水印并写入输出文件
+     * 
+     * @param sourceFile JPEG源图片
+     * @param outputFile 输出文件
+     * @param renderer 按源图片尺寸准备的水印绘制器，为null时原样复制
+     * @return 是否已完成输出；源图片不是支持的JPEG编码方式或水印覆盖了大部分图片时返回false，调用方需改为完整重新编码
+     */
+    public boolean patch(File sourceFile, File outputFile, WatermarkRenderer renderer) throws IOException {
+        byte[] output = patch(Files.readAllBytes(sourceFile.toPath()), renderer);
+        if (output == null) {
+            return false;
+        }
+        
+        // 确保输出目录存在
+        File parentDir = outputFile.getParentFile();
+        if (parentDir != null && !parentDir.exists()) {
+            parentDir.mkdirs();
+        }
+        try (OutputStream out = new FileOutputStream(outputFile)) {
+            out.write(output);
+        }
+        return true;
+    }
+    
+    /**
+     * 在内存中的JPEG数据上以DCT域修补的方式绘制水印
+     * 
+     * @param data JPEG源图片数据
+     * @param renderer 按源图片尺寸准备的水印绘制器，为null时原样返回
+     * @return 修补后的JPEG数据；不支持DCT域修补时返回null，调用方需改为完整重新编码
+     */
+    public byte[] patch(byte[] data, WatermarkRenderer renderer) throws IOException {
+        long startTime = System.currentTimeMillis();
+        
+        JpegCodestream stream;
+        try {
+            stream = JpegCodestream.parse(data);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("解析JPEG码流失败，改为完整重新编码: {}", e.getMessage());
+            return null;
+        }
+        if (stream.getUnsupportedReason() != null) {
+            logger.info("JPEG不支持DCT域修补，改为完整重新编码: {}", stream.getUnsupportedReason());
+            return null;
+        }
+        
+        McuGeometry geometry = new McuGeometry(stream);
+        Rectangle bounds = renderer != null
+                ? renderer.getBounds().intersection(new Rectangle(0, 0, stream.width, stream.height))
+                : new Rectangle();
+        if (bounds.isEmpty()) {
+            return data;
+        }
+        
+        Rectangle mcuRegion = geometry.toMcuRegion(bounds);
+        if ((long) mcuRegion.width * mcuRegion.height * 2 > geometry.mcuCount) {
+            logger.info("水印覆盖了图片的大部分区域，改为完整重新编码");
+            return null;
+        }
+        
+        ScanIndex index;
+        try {
+            index = new ScanIndex(stream, geometry, mcuRegion);
+        } catch (InterruptedIOException e) {
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("JPEG熵编码数据无法解析，改为完整重新编码: {}", e.getMessage());
+            return null;
+        }
+        
+        Map<Integer, int[][]> replacements = createReplacements(stream, geometry, index, renderer);
+        byte[] output = replacements.isEmpty() ? data : transcode(stream, geometry, index, replacements);
+        
+        logger.debug("JPEG DCT域修补完成: 重新编码 {}/{} 个MCU, 耗时 {}ms",
+                     replacements.size(), geometry.mcuCount, System.currentTimeMillis() - startTime);
+        return output;
+    }
+    
+    /**
+     * MCU划分
+     */
+    private static final class McuGeometry {
+        final int hMax;
+        final int vMax;
+        final int[] h; // 扫描中各分量在MCU内的水平块数
+        final int[] v; // 扫描中各分量在MCU内的垂直块数
+        final int blocksPerMcu;
+        final int mcuWidth;
+        final int mcuHeight;
+        final int mcusPerLine;
+        final int mcuCount;
+        final int mcusPerInterval;
+        final int intervalCount;
+        
+        McuGeometry(JpegCodestream stream) {
+            JpegCodestream.Component[] components = stream.scanComponents;
+            h = new int[components.length];
+            v = new int[components.length];
+            if (components.length == 1) {
+                // 单分量扫描不交错，每个MCU为一个块
+                hMax = 1;
+                vMax = 1;
+                h[0] = 1;
+                v[0] = 1;
+            } else {
+                hMax = stream.maxH();
+                vMax = stream.maxV();
+                for (int i = 0; i < components.length; i++) {
+                    h[i] = components[i].h;
+                    v[i] = components[i].v;
+                }
+            }
+            int blocks = 0;
+            for (int i = 0; i < components.length; i++) {
+                blocks += h[i] * v[i];
+            }
+            blocksPerMcu = blocks;
+            mcuWidth = 8 * hMax;
+            mcuHeight = 8 * vMax;
+            mcusPerLine = (stream.width + mcuWidth - 1) / mcuWidth;
+            mcuCount = mcusPerLine * ((stream.height + mcuHeight - 1) / mcuHeight);
+            mcusPerInterval = stream.restartInterval > 0 ? stream.restartInterval : mcuCount;
+            intervalCount = (mcuCount + mcusPerInterval - 1) / mcusPerInterval;
+        }
+        
+        /**
+         * 与像素区域相交的MCU范围（以MCU为单位）
+         */
+        Rectangle toMcuRegion(Rectangle bounds) {
+            int mx0 = bounds.x / mcuWidth;
+            int my0 = bounds.y / mcuHeight;
+            int mx1 = (bounds.x + bounds.width - 1) / mcuWidth;
+            int my1 = (bounds.y + bounds.height - 1) / mcuHeight;
+            return new Rectangle(mx0, my0, mx1 - mx0 + 1, my1 - my0 + 1);
+        }
+    }
+    
+    /**
+     * 扫描索引
+     * 记录各重启区间在码流中的位置，以及水印区域内每个MCU的量化系数、起始位偏移和DC预测值。
+     * 只解码包含水印区域MCU的重启区间，其余区间仅定位RST标记
+     */
+    private static final class ScanIndex {
+        final int[] intervalStart;  // 区间熵编码数据的起始位置
+        final int[] intervalEnd;    // 区间之后的标记位置
+        final long[] intervalBits;  // 区间的有效数据位数（不含末尾填充），未解码的区间为-1
+        final Rectangle mcuRegion;
+        final short[][] coefficients; // 区域内各MCU按扫描顺序排列的系数（之字形顺序，DC为绝对值）
+        final long[] bitOffsets;      // 区域内各MCU在所属区间中的起始位偏移
+        final int[][] predictions;    // 区域内各MCU开始时的DC预测值
+        
+        private final McuGeometry geometry;
+        
+        ScanIndex(JpegCodestream stream, McuGeometry geometry, Rectangle mcuRegion) throws IOException {
+            this.geometry = geometry;
+            this.mcuRegion = mcuRegion;
+            int regionMcus = mcuRegion.width * mcuRegion.height;
+            coefficients = new short[regionMcus][];
+            bitOffsets = new long[regionMcus];
+            predictions = new int[regionMcus][];
+            
+            int intervals = geometry.intervalCount;
+            intervalStart = new int[intervals];
+            intervalEnd = new int[intervals];
+            intervalBits = new long[intervals];
+            
+            EntropyDecoder decoder = new EntropyDecoder(stream);
+            int[] block = new int[64];
+            int start = stream.entropyStart;
+            for (int i = 0; i < intervals; i++) {
+                checkInterrupted();
+                int first = i * geometry.mcusPerInterval;
+                int last = Math.min(first + geometry.mcusPerInterval, geometry.mcuCount) - 1;
+                intervalStart[i] = start;
+                
+                int end;
+                if (containsRegion(first, last)) {
+                    decoder.reset(start);
+                    for (int mcu = first; mcu <= last; mcu++) {
+                        checkInterrupted();
+                        int r = regionIndex(mcu);
+                        if (r < 0) {
+                            for (int b = 0; b < geometry.blocksPerMcu; b++) {
+                                decoder.decodeBlock(componentOf(b), block);
+                            }
+                            continue;
+                        }
+                        bitOffsets[r] = decoder.consumedBits();
+                        predictions[r] = decoder.getPredictions();
+                        short[] values = new short[geometry.blocksPerMcu * 64];
+                        for (int b = 0; b < geometry.blocksPerMcu; b++) {
+                            decoder.decodeBlock(componentOf(b), block);
+                            for (int k = 0; k < 64; k++) {
+                                values[b * 64 + k] = (short) block[k];
+                            }
+                        }
+                        coefficients[r] = values;
+                    }
+                    intervalBits[i] = decoder.consumedBits();
+                    end = stream.nextMarker(decoder.position());
+                } else {
+                    intervalBits[i] = -1;
+                    end = stream.nextMarker(start);
+                }
+                
+                if (i == intervals - 1) {
+                    intervalEnd[i] = stream.entropyEnd;
+                } else {
+                    if ((stream.data[end + 1] & 0xF8) != JpegCodestream.RST0) {
+                        throw new IOException("JPEG缺少重启标记");
+                    }
+                    intervalEnd[i] = end;
+                    start = end + 2;
+                }
+            }
+        }
+        
+        /**
+         * MCU在水印区域中的序号，不在区域内时返回-1
+         */
+        int regionIndex(int mcu) {
+            int mx = mcu % geometry.mcusPerLine - mcuRegion.x;
+            int my = mcu / geometry.mcusPerLine - mcuRegion.y;
+            if (mx < 0 || my < 0 || mx >= mcuRegion.width || my >= mcuRegion.height) {
+                return -1;
+            }
+            return my * mcuRegion.width + mx;
+        }
+        
+        /**
+         * MCU序号范围内是否有水印区域的MCU
+         */
+        boolean containsRegion(int first, int last) {
+            int firstRow = first / geometry.mcusPerLine;
+            int lastRow = last / geometry.mcusPerLine;
+            int fromRow = Math.max(firstRow, mcuRegion.y);
+            int toRow = Math.min(lastRow, mcuRegion.y + mcuRegion.height - 1);
+            for (int row = fromRow; row <= toRow; row++) {
+                int from = row == firstRow ? first % geometry.mcusPerLine : 0;
+                int to = row == lastRow ? last % geometry.mcusPerLine : geometry.mcusPerLine - 1;
+                if (from < mcuRegion.x + mcuRegion.width && to >= mcuRegion.x) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        /**
+         * MCU内第b个块所属的扫描分量
+         */
+        int componentOf(int b) {
+            int i = 0;
+            while (b >= geometry.h[i] * geometry.v[i]) {
+                b -= geometry.h[i] * geometry.v[i];
+                i++;
+            }
+            return i;
+        }
+    }
+    
+    /**
+     * 计算被水印改变的MCU及其新的量化系数
+     * 
+     * @return MCU序号到各块系数（之字形顺序）的映射
+     */
+    private Map<Integer, int[][]> createReplacements(JpegCodestream stream, McuGeometry geometry, ScanIndex index,
+                                                     WatermarkRenderer renderer) throws IOException {
+        Rectangle mcuRegion = index.mcuRegion;
+        int regionX = mcuRegion.x * geometry.mcuWidth;
+        int regionY = mcuRegion.y * geometry.mcuHeight;
+        Rectangle region = new Rectangle(regionX, regionY,
+                Math.min((mcuRegion.x + mcuRegion.width) * geometry.mcuWidth, stream.width) - regionX,
+                Math.min((mcuRegion.y + mcuRegion.height) * geometry.mcuHeight, stream.height) - regionY);
+        
+        boolean gray = stream.components.length == 1;
+        int[] before = decodeRegion(stream, geometry, index, region, gray);
+        BufferedImage marked = new BufferedImage(region.width, region.height,
+                gray ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB);
+        if (gray) {
+            marked.getRaster().setSamples(0, 0, region.width, region.height, 0, before);
+        } else {
+            marked.setRGB(0, 0, region.width, region.height, before, 0, region.width);
+        }
+        Graphics2D g2d = marked.createGraphics();
+        try {
+            g2d.translate(-region.x, -region.y);
+            renderer.draw(g2d);
+        } finally {
+            g2d.dispose();
+        }
+        
+        int[] after = gray
+                ? marked.getRaster().getSamples(0, 0, region.width, region.height, 0, (int[]) null)
+                : marked.getRGB(0, 0, region.width, region.height, null, 0, region.width);
+        RegionPixels pixels = new RegionPixels(after, region, stream.width, stream.height, gray);
+        
+        Map<Integer, int[][]> replacements = new HashMap<>();
+        for (int my = mcuRegion.y; my < mcuRegion.y + mcuRegion.height; my++) {
+            checkInterrupted();
+            for (int mx = mcuRegion.x; mx < mcuRegion.x + mcuRegion.width; mx++) {
+                int x0 = mx * geometry.mcuWidth - region.x;
+                int y0 = my * geometry.mcuHeight - region.y;
+                int x1 = Math.min(x0 + geometry.mcuWidth, region.width);
+                int y1 = Math.min(y0 + geometry.mcuHeight, region.height);
+                if (changed(before, after, region.width, x0, y0, x1, y1)) {
+                    replacements.put(my * geometry.mcusPerLine + mx, encodeMcu(stream, geometry, pixels, mx, my));
+                }
+            }
+        }
+        return replacements;
+    }
+    
+    /**
+     * 由扫描索引中的系数解码水印区域的像素（色度按最近邻上采样）
+     * 
+     * @return 区域像素，彩色为RGB值，灰度为0-255的灰度值
+     */
+    private int[] decodeRegion(JpegCodestream stream, McuGeometry geometry, ScanIndex index, Rectangle region,
+                               boolean gray) throws IOException {
+        Rectangle mcuRegion = index.mcuRegion;
+        JpegCodestream.Component[] components = stream.scanComponents;
+        int[][] planes = new int[components.length][];
+        int[] planeWidths = new int[components.length];
+        int[] channels = new int[components.length];
+        for (int i = 0; i < components.length; i++) {
+            planeWidths[i] = mcuRegion.width * geometry.h[i] * 8;
+            planes[i] = new int[planeWidths[i] * mcuRegion.height * geometry.v[i] * 8];
+            channels[i] = Arrays.asList(stream.components).indexOf(components[i]);
+        }
+        
+        int[] block = new int[64];
+        for (int r = 0; r < index.coefficients.length; r++) {
+            checkInterrupted();
+            short[] values = index.coefficients[r];
+            int mx = r % mcuRegion.width;
+            int my = r / mcuRegion.width;
+            int b = 0;
+            for (int i = 0; i < components.length; i++) {
+                int[] quant = stream.quantTables[components[i].quantTable];
+                for (int by = 0; by < geometry.v[i]; by++) {
+                    for (int bx = 0; bx < geometry.h[i]; bx++, b++) {
+                        for (int k = 0; k < 64; k++) {
+                            block[k] = values[b * 64 + k];
+                        }
+                        int x = (mx * geometry.h[i] + bx) * 8;
+                        int y = (my * geometry.v[i] + by) * 8;
+                        inverseDct(block, quant, planes[i], y * planeWidths[i] + x, planeWidths[i]);
+                    }
+                }
+            }
+        }
+        
+        int[] pixels = new int[region.width * region.height];
+        int[] sample = new int[3];
+        for (int y = 0; y < region.height; y++) {
+            for (int x = 0; x < region.width; x++) {
+                for (int i = 0; i < components.length; i++) {
+                    int sx = x * geometry.h[i] / geometry.hMax;
+                    int sy = y * geometry.v[i] / geometry.vMax;
+                    sample[channels[i]] = planes[i][sy * planeWidths[i] + sx];
+                }
+                pixels[y * region.width + x] = gray ? sample[0] : toRgb(sample[0], sample[1], sample[2]);
+            }
+        }
+        return pixels;
+    }
+    
+    /**
+     * JFIF YCbCr转RGB
+     */
+    private static int toRgb(int luma, int cb, int cr) {
+        int r = clamp(Math.round(luma + 1.402f * (cr - 128)));
+        int g = clamp(Math.round(luma - 0.344136f * (cb - 128) - 0.714136f * (cr - 128)));
+        int b = clamp(Math.round(luma + 1.772f * (cb - 128)));
+        return r << 16 | g << 8 | b;
+    }
+    
+    private static int clamp(int value) {
+        return value < 0 ? 0 : Math.min(value, 255);
+    }
+    
+    private static boolean changed(int[] before, int[] after, int stride, int x0, int y0, int x1, int y1) {
+        for (int y = y0; y < y1; y++) {
+            int offset = y * stride;
+            for (int x = x0; x < x1; x++) {
+                if (before[offset + x] != after[offset + x]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * 绘制水印后的区域像素，按整幅图片坐标取各分量的采样值（超出图片的位置取边缘像素）
+     */
+    private static final class RegionPixels {
+        final int[] pixels;
+        final Rectangle region;
+        final int imageWidth;
+        final int imageHeight;
+        final boolean gray;
+        
+        RegionPixels(int[] pixels, Rectangle region, int imageWidth, int imageHeight, boolean gray) {
+            this.pixels = pixels;
+            this.region = region;
+            this.imageWidth = imageWidth;
+            this.imageHeight = imageHeight;
+            this.gray = gray;
+        }
+        
+        /**
+         * 获取指定位置的分量值（0为Y或灰度，1为Cb，2为Cr，JFIF转换公式）
+         */
+        double sample(int x, int y, int channel) {
+            x = Math.min(Math.max(x, 0), imageWidth - 1) - region.x;
+            y = Math.min(Math.max(y, 0), imageHeight - 1) - region.y;
+            int pixel = pixels[y * region.width + x];
+            if (gray) {
+                return pixel;
+            }
+            int r = pixel >> 16 & 0xFF;
+            int g = pixel >> 8 & 0xFF;
+            int b = pixel & 0xFF;
+            switch (channel) {
+                case 0:
+                    return 0.299 * r + 0.587 * g + 0.114 * b;
+                case 1:
+                    return -0.168736 * r - 0.331264 * g + 0.5 * b + 128;
+                default:
+                    return 0.5 * r - 0.418688 * g - 0.081312 * b + 128;
+            }
+        }
+    }
+    
+    /**
+     * 对一个MCU的各分量采样、DCT并量化，返回按扫描顺序排列的各块系数
+     */
+    private int[][] encodeMcu(JpegCodestream stream, McuGeometry geometry, RegionPixels pixels, int mx, int my) {
+        JpegCodestream.Component[] components = stream.scanComponents;
+        int[][] blocks = new int[geometry.blocksPerMcu][];
+        
+        double[] samples = new double[64];
+        int index = 0;
+        for (int i = 0; i < components.length; i++) {
+            int channel = Arrays.asList(stream.components).indexOf(components[i]);
+            int h = geometry.h[i];
+            int v = geometry.v[i];
+            int scaleX = geometry.hMax / h; // 每个分量采样覆盖的像素宽度
+            int scaleY = geometry.vMax / v;
+            int[] quant = stream.quantTables[components[i].quantTable];
+            
+            for (int by = 0; by < v; by++) {
+                for (int bx = 0; bx < h; bx++) {
+                    for (int y = 0; y < 8; y++) {
+                        int sampleY = ((my * v + by) * 8 + y) * scaleY;
+                        for (int x = 0; x < 8; x++) {
+                            int sampleX = ((mx * h + bx) * 8 + x) * scaleX;
+                            double sum = 0;
+                            for (int dy = 0; dy < scaleY; dy++) {
+                                for (int dx = 0; dx < scaleX; dx++) {
+                                    sum += pixels.sample(sampleX + dx, sampleY + dy, channel);
+                                }
+                            }
+                            samples[y * 8 + x] = sum / (scaleX * scaleY) - 128;
+                        }
+                    }
+                    blocks[index++] = forwardDct(samples, quant);
+                }
+            }
+        }
+        return blocks;
+    }
+    
+    /**
+     * 二维DCT并量化，结果为之字形顺序
+     */
+    private static int[] forwardDct(double[] samples, int[] quant) {
+        double[] rows = new double[64];
+        for (int y = 0; y < 8; y++) {
+            for (int u = 0; u < 8; u++) {
+                double sum = 0;
+                for (int x = 0; x < 8; x++) {
+                    sum += samples[y * 8 + x] * DCT_COS[x][u];
+                }
+                rows[y * 8 + u] = sum;
+            }
+        }
+        
+        int[] coefficients = new int[64];
+        for (int k = 0; k < 64; k++) {
+            int natural = NATURAL_ORDER[k];
+            int v = natural >> 3;
+            int u = natural & 7;
+            double sum = 0;
+            for (int y = 0; y < 8; y++) {
+                sum += rows[y * 8 + u] * DCT_COS[y][v];
+            }
+            coefficients[k] = (int) Math.round(sum / quant[k]);
+        }
+        return coefficients;
+    }
+    
+    /**
+     * 反量化并做二维逆DCT，结果（0-255）写入分量平面
+     */
+    private static void inverseDct(int[] coefficients, int[] quant, int[] plane, int offset, int stride) {
+        double[] dequantized = new double[64];
+        for (int k = 0; k < 64; k++) {
+            dequantized[NATURAL_ORDER[k]] = coefficients[k] * quant[k];
+        }
+        
+        double[] columns = new double[64];
+        for (int v = 0; v < 8; v++) {
+            for (int x = 0; x < 8; x++) {
+                double sum = 0;
+                for (int u = 0; u < 8; u++) {
+                    sum += dequantized[v * 8 + u] * DCT_COS[x][u];
+                }
+                columns[v * 8 + x] = sum;
+            }
+        }
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                double sum = 0;
+                for (int v = 0; v < 8; v++) {
+                    sum += columns[v * 8 + x] * DCT_COS[y][v];
+                }
+                plane[offset + y * stride + x] = clamp((int) Math.round(sum + 128));
+            }
+        }
+    }
+    
+    /**
+     * 重新熵编码并组装完整的JPEG文件
+     */
+    private byte[] transcode(JpegCodestream stream, McuGeometry geometry, ScanIndex index,
+                             Map<Integer, int[][]> replacements) throws IOException {
+        int capacity = stream.entropyEnd - stream.entropyStart + 1024;
+        EntropyEncoder encoder = new EntropyEncoder(stream.scanComponents.length, capacity);
+        patchScan(stream, geometry, index, replacements, encoder);
+        
+        JpegHuffmanTable[] dcTables = null;
+        JpegHuffmanTable[] acTables = null;
+        if (encoder.hasUnencodableSymbols()) {
+            // 原霍夫曼表缺少新系数需要的符号，统计频率生成最优表后完整重新熵编码
+            EntropyEncoder counter = new EntropyEncoder(stream.scanComponents.length, 0);
+            recodeScan(stream, geometry, index, replacements, counter, stream.dcTables, stream.acTables);
+            dcTables = new JpegHuffmanTable[4];
+            acTables = new JpegHuffmanTable[4];
+            for (JpegCodestream.Component component : stream.scanComponents) {
+                dcTables[component.dcTable] = JpegHuffmanTable.optimal(counter.dcFrequencies[component.dcTable]);
+                acTables[component.acTable] = JpegHuffmanTable.optimal(counter.acFrequencies[component.acTable]);
+            }
+            encoder = new EntropyEncoder(stream.scanComponents.length, capacity);
+            recodeScan(stream, geometry, index, replacements, encoder, dcTables, acTables);
+        }
+        
+        byte[] data = stream.data;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length + 1024);
+        out.write(data, 0, 2);
+        for (JpegCodestream.Segment segment : stream.segments) {
+            if (dcTables == null || segment.marker != JpegCodestream.DHT) {
+                out.write(data, segment.offset, segment.length);
+            }
+        }
+        if (dcTables != null) {
+            writeHuffmanSegment(out, dcTables, acTables);
+        }
+        out.write(data, stream.sos.offset, stream.sos.length);
+        encoder.writeTo(out);
+        out.write(data, stream.entropyEnd, data.length - stream.entropyEnd);
+        return out.toByteArray();
+    }
+    
+    /**
+     * 沿用原霍夫曼表修补扫描数据
+     * 不含被修改MCU的区间原样复制；其余区间复制第一个被修改MCU之前的数据位，
+     * 重新编码被修改的MCU直到最后一个被修改MCU的下一个MCU，再复制区间剩余的数据位
+     */
+    private void patchScan(JpegCodestream stream, McuGeometry geometry, ScanIndex index,
+                           Map<Integer, int[][]> replacements, EntropyEncoder encoder) throws IOException {
+        int[] changed = new int[replacements.size()];
+        int n = 0;
+        for (Integer mcu : replacements.keySet()) {
+            changed[n++] = mcu;
+        }
+        Arrays.sort(changed);
+        
+        EntropyDecoder decoder = new EntropyDecoder(stream);
+        int[] block = new int[64];
+        int next = 0; // changed中下一个待处理的位置
+        for (int i = 0; i < geometry.intervalCount; i++) {
+            checkInterrupted();
+            if (i > 0) {
+                encoder.restart((i - 1) & 7);
+            }
+            int last = Math.min((i + 1) * geometry.mcusPerInterval, geometry.mcuCount) - 1;
+            if (next >= changed.length || changed[next] > last) {
+                encoder.writeBytes(stream.data, index.intervalStart[i], index.intervalEnd[i] - index.intervalStart[i]);
+                continue;
+            }
+            
+            int firstChanged = changed[next];
+            int lastChanged = firstChanged;
+            while (next < changed.length && changed[next] <= last) {
+                lastChanged = changed[next++];
+            }
+            
+            int r = index.regionIndex(firstChanged);
+            decoder.reset(index.intervalStart[i]);
+            copyBits(decoder, encoder, index.bitOffsets[r]);
+            decoder.setPredictions(index.predictions[r]);
+            encoder.setPredictions(index.predictions[r]);
+            
+            // 最后一个被修改MCU之后的MCU的DC差分随之变化，需要一并重新编码
+            int recodeEnd = Math.min(lastChanged + 1, last);
+            for (int mcu = firstChanged; mcu <= recodeEnd; mcu++) {
+                checkInterrupted();
+                recodeMcu(stream, geometry, decoder, encoder, replacements.get(mcu), block,
+                          stream.dcTables, stream.acTables);
+            }
+            copyBits(decoder, encoder, index.intervalBits[i] - decoder.consumedBits());
+        }
+        encoder.finish();
+    }
+    
+    /**
+     * 完整重新熵编码扫描数据
+     */
+    private void recodeScan(JpegCodestream stream, McuGeometry geometry, ScanIndex index,
+                            Map<Integer, int[][]> replacements, EntropyEncoder encoder,
+                            JpegHuffmanTable[] dcTables, JpegHuffmanTable[] acTables) throws IOException {
+        EntropyDecoder decoder = new EntropyDecoder(stream);
+        int[] block = new int[64];
+        for (int i = 0; i < geometry.intervalCount; i++) {
+            if (i > 0) {
+                encoder.restart((i - 1) & 7);
+            }
+            decoder.reset(index.intervalStart[i]);
+            int first = i * geometry.mcusPerInterval;
+            int last = Math.min(first + geometry.mcusPerInterval, geometry.mcuCount) - 1;
+            for (int mcu = first; mcu <= last; mcu++) {
+                checkInterrupted();
+                recodeMcu(stream, geometry, decoder, encoder, replacements.get(mcu), block, dcTables, acTables);
+            }
+        }
+        encoder.finish();
+    }
+    
+    /**
+     * 解码一个MCU并重新编码，replacement不为null时以其替换解码得到的系数
+     */
+    private void recodeMcu(JpegCodestream stream, McuGeometry geometry, EntropyDecoder decoder,
+                           EntropyEncoder encoder, int[][] replacement, int[] block,
+                           JpegHuffmanTable[] dcTables, JpegHuffmanTable[] acTables) throws IOException {
+        JpegCodestream.Component[] components = stream.scanComponents;
+        int b = 0;
+        for (int i = 0; i < components.length; i++) {
+            JpegCodestream.Component component = components[i];
+            int blocks = geometry.h[i] * geometry.v[i];
+            for (int j = 0; j < blocks; j++, b++) {
+                decoder.decodeBlock(i, block);
+                encoder.encodeBlock(i, replacement != null ? replacement[b] : block,
+                                    component.dcTable, component.acTable,
+                                    dcTables[component.dcTable], acTables[component.acTable]);
+            }
+        }
+    }
+    
+    /**
+     * 当前线程被中断时中止修补
+     */
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("JPEG修补已取消");
+        }
+    }
+    
+    /**
+     * 将解码器当前位置之后的count位原样写入编码器
+     */
+    private static void copyBits(EntropyDecoder decoder, EntropyEncoder encoder, long count) {
+        while (count >= 16) {
+            encoder.writeBits(decoder.readBits(16), 16);
+            count -= 16;
+        }
+        if (count > 0) {
+            encoder.writeBits(decoder.readBits((int) count), (int) count);
+        }
+    }
+    
+    private void writeHuffmanSegment(ByteArrayOutputStream out, JpegHuffmanTable[] dcTables,
+                                     JpegHuffmanTable[] acTables) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (int id = 0; id < 4; id++) {
+            if (dcTables[id] != null) {
+                dcTables[id].writeTo(body, 0, id);
+            }
+        }
+        for (int id = 0; id < 4; id++) {
+            if (acTables[id] != null) {
+                acTables[id].writeTo(body, 1, id);
+            }
+        }
+        int length = body.size() + 2;
+        out.write(0xFF);
+        out.write(JpegCodestream.DHT);
+        out.write(length >> 8);
+        out.write(length & 0xFF);
+        out.write(body.toByteArray(), 0, body.size());
+    }
+    
+    /**
+     * 霍夫曼熵解码器
+     * 去除0xFF后的填充字节，遇到标记后以0补足；DC预测值在reset时清零
+     */
+    private static final class EntropyDecoder {
+        private final byte[] data;
+        private final int end;
+        private final JpegCodestream.Component[] components;
+        private final JpegHuffmanTable[] dcTables;
+        private final JpegHuffmanTable[] acTables;
+        private final int[] predictions;
+        private int pos;
+        private long fetched; // 已读入缓冲的字节数（去除填充字节后）
+        private long buffer;
+        private int bitCount;
+        
+        EntropyDecoder(JpegCodestream stream) {
+            this.data = stream.data;
+            this.end = stream.entropyEnd;
+            this.components = stream.scanComponents;
+            this.dcTables = stream.dcTables;
+            this.acTables = stream.acTables;
+            this.predictions = new int[components.length];
+        }
+        
+        /**
+         * 从指定位置开始一个新的重启区间
+         */
+        void reset(int start) {
+            pos = start;
+            fetched = 0;
+            buffer = 0;
+            bitCount = 0;
+            Arrays.fill(predictions, 0);
+        }
+        
+        /**
+         * 当前区间内已读取的数据位数
+         */
+        long consumedBits() {
+            return fetched * 8 - bitCount;
+        }
+        
+        /**
+         * 下一个尚未读入缓冲的字节位置
+         */
+        int position() {
+            return pos;
+        }
+        
+        int[] getPredictions() {
+            return predictions.clone();
+        }
+        
+        void setPredictions(int[] values) {
+            System.arraycopy(values, 0, predictions, 0, predictions.length);
+        }
+        
+        private void fill() {
+            while (bitCount <= 56) {
+                int b = 0;
+                if (pos < end) {
+                    b = data[pos] & 0xFF;
+                    if (b != 0xFF) {
+                        pos++;
+                    } else if ((data[pos + 1] & 0xFF) == 0x00) {
+                        pos += 2;
+                    } else {
+                        // 遇到标记，后续以0补足
+                        b = 0;
+                    }
+                }
+                buffer = buffer << 8 | b;
+                bitCount += 8;
+                fetched++;
+            }
+        }
+        
+        private int peek(int n) {
+            return (int) (buffer >>> (bitCount - n)) & ((1 << n) - 1);
+        }
+        
+        int readBits(int n) {
+            if (bitCount < n) {
+                fill();
+            }
+            int value = peek(n);
+            bitCount -= n;
+            return value;
+        }
+        
+        private int decodeSymbol(JpegHuffmanTable table) throws IOException {
+            if (bitCount < 16) {
+                fill();
+            }
+            int entry = table.lookahead(peek(JpegHuffmanTable.LOOKAHEAD_BITS));
+            if (entry != 0) {
+                bitCount -= entry >> 8;
+                return entry & 0xFF;
+            }
+            for (int length = JpegHuffmanTable.LOOKAHEAD_BITS + 1; length <= 16; length++) {
+                int code = peek(length);
+                if (code <= table.maxCode(length)) {
+                    bitCount -= length;
+                    return table.value(length, code);
+                }
+            }
+            throw new IOException("JPEG熵编码数据损坏");
+        }
+        
+        private int receiveExtend(int size) {
+            int value = readBits(size);
+            return value < (1 << (size - 1)) ? value - (1 << size) + 1 : value;
+        }
+        
+        /**
+         * 解码扫描中第component个分量的一个块，结果为之字形顺序，DC为绝对值
+         */
+        void decodeBlock(int component, int[] coefficients) throws IOException {
+            Arrays.fill(coefficients, 0);
+            int size = decodeSymbol(dcTables[components[component].dcTable]);
+            predictions[component] += size == 0 ? 0 : receiveExtend(size);
+            coefficients[0] = predictions[component];
+            
+            JpegHuffmanTable acTable = acTables[components[component].acTable];
+            for (int k = 1; k < 64; k++) {
+                int symbol = decodeSymbol(acTable);
+                int run = symbol >> 4;
+                size = symbol & 0x0F;
+                if (size == 0) {
+                    if (run != 15) {
+                        break;
+                    }
+                    k += 15;
+                    continue;
+                }
+                k += run;
+                if (k > 63) {
+                    throw new IOException("JPEG熵编码数据损坏");
+                }
+                coefficients[k] = receiveExtend(size);
+            }
+        }
+    }
+    
+    /**
+     * 霍夫曼熵编码器
+     * 容量为0时只统计符号频率，不输出数据；输出时遇到霍夫曼表中没有的符号会记录下来，由调用方改用最优表
+     */
+    private static final class EntropyEncoder {
+        final long[][] dcFrequencies = new long[4][256];
+        final long[][] acFrequencies = new long[4][256];
+        private final boolean counting;
+        private final int[] predictions;
+        private boolean unencodable;
+        private byte[] out;
+        private int size;
+        private long buffer;
+        private int bitCount;
+        
+        EntropyEncoder(int componentCount, int capacity) {
+            this.counting = capacity == 0;
+            this.predictions = new int[componentCount];
+            this.out = new byte[Math.max(capacity, 16)];
+        }
+        
+        void setPredictions(int[] values) {
+            System.arraycopy(values, 0, predictions, 0, predictions.length);
+        }
+        
+        boolean hasUnencodableSymbols() {
+            return unencodable;
+        }
+        
+        void encodeBlock(int component, int[] coefficients, int dcSlot, int acSlot,
+                         JpegHuffmanTable dcTable, JpegHuffmanTable acTable) {
+            int diff = coefficients[0] - predictions[component];
+            predictions[component] = coefficients[0];
+            int size = bitLength(diff);
+            emit(dcFrequencies[dcSlot], dcTable, size);
+            writeValue(diff, size);
+            
+            int run = 0;
+            for (int k = 1; k < 64; k++) {
+                int value = coefficients[k];
+                if (value == 0) {
+                    run++;
+                    continue;
+                }
+                while (run > 15) {
+                    emit(acFrequencies[acSlot], acTable, 0xF0);
+                    run -= 16;
+                }
+                size = bitLength(value);
+                emit(acFrequencies[acSlot], acTable, (run << 4) | size);
+                writeValue(value, size);
+                run = 0;
+            }
+            if (run > 0) {
+                emit(acFrequencies[acSlot], acTable, 0x00);
+            }
+        }
+        
+        /**
+         * 结束当前区间并写出RST标记
+         */
+        void restart(int index) {
+            Arrays.fill(predictions, 0);
+            if (!counting) {
+                flushBits();
+                put(0xFF);
+                put(JpegCodestream.RST0 + index);
+            }
+        }
+        
+        void finish() {
+            if (!counting) {
+                flushBits();
+            }
+        }
+        
+        /**
+         * 原样写出字节（当前必须位于字节边界）
+         */
+        void writeBytes(byte[] source, int offset, int length) {
+            if (counting) {
+                return;
+            }
+            if (size + length > out.length) {
+                out = Arrays.copyOf(out, Math.max(out.length * 2, size + length));
+            }
+            System.arraycopy(source, offset, out, size, length);
+            size += length;
+        }
+        
+        void writeTo(ByteArrayOutputStream target) {
+            target.write(out, 0, size);
+        }
+        
+        private void emit(long[] frequencies, JpegHuffmanTable table, int symbol) {
+            if (counting) {
+                frequencies[symbol]++;
+            } else if (table.canEncode(symbol)) {
+                writeBits(table.code(symbol), table.codeLength(symbol));
+            } else {
+                unencodable = true;
+            }
+        }
+        
+        private void writeValue(int value, int size) {
+            if (!counting && size > 0) {
+                writeBits(value < 0 ? value - 1 : value, size);
+            }
+        }
+        
+        void writeBits(int value, int count) {
+            buffer = buffer << count | (value & ((1L << count) - 1));
+            bitCount += count;
+            while (bitCount >= 8) {
+                int b = (int) (buffer >>> (bitCount - 8)) & 0xFF;
+                put(b);
+                if (b == 0xFF) {
+                    put(0x00);
+                }
+                bitCount -= 8;
+            }
+        }
+        
+        /**
+         * 以1填充到字节边界
+         */
+        private void flushBits() {
+            if (bitCount > 0) {
+                int padding = 8 - bitCount;
+                writeBits((1 << padding) - 1, padding);
+            }
+        }
+        
+        private void put(int b) {
+            if (size == out.length) {
+                out = Arrays.copyOf(out, out.length * 2);
+            }
+            out[size++] = (byte) b;
+        }
+        
+        private static int bitLength(int value) {
+            return 32 - Integer.numberOfLeadingZeros(Math.abs(value));
+        }
+    }
+}
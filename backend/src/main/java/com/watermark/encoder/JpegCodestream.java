@@ -0,0 +1,350 @@
+package com.watermark.encoder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JPEG码流结构
+ * 解析SOS之前的标记段（帧头、量化表、霍夫曼表、重启间隔等）并定位熵编码数据，不解码像素；
+ * 仅支持单次扫描的8位基线/扩展顺序霍夫曼编码，其他情况通过getUnsupportedReason说明
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+final class JpegCodestream {
+    
+    static final int SOF0 = 0xC0;
+    static final int SOF1 = 0xC1;
+    static final int DHT = 0xC4;
+    static final int RST0 = 0xD0;
+    static final int SOI = 0xD8;
+    static final int EOI = 0xD9;
+    static final int SOS = 0xDA;
+    static final int DQT = 0xDB;
+    static final int DRI = 0xDD;
+    static final int APP14 = 0xEE;
+    
+    /**
+     * 标记段在码流中的位置
+     */
+    static final class Segment {
+        final int marker;
+        final int offset; // 0xFF所在位置
+        final int length; // 含标记本身的总字节数
+        
+        Segment(int marker, int offset, int length) {
+            this.marker = marker;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+    
+    /**
+     * 图像分量
+     */
+    static final class Component {
+        final int id;
+        final int h;
+        final int v;
+        final int quantTable;
+        int dcTable;
+        int acTable;
+        
+        Component(int id, int h, int v, int quantTable) {
+            this.id = id;
+            this.h = h;
+            this.v = v;
+            this.quantTable = quantTable;
+        }
+    }
+    
+    final byte[] data;
+    final List<Segment> segments = new ArrayList<>(); // SOS之前的标记段（不含SOI）
+    final int[][] quantTables = new int[4][];          // 之字形顺序
+    final JpegHuffmanTable[] dcTables = new JpegHuffmanTable[4];
+    final JpegHuffmanTable[] acTables = new JpegHuffmanTable[4];
+    
+    int width;
+    int height;
+    Component[] components;     // 帧中的分量
+    Component[] scanComponents; // 扫描中的分量（按扫描顺序）
+    int restartInterval;
+    Segment sos;
+    int entropyStart;           // 熵编码数据起始位置
+    int entropyEnd;             // 熵编码数据之后的标记位置
+    
+    private int adobeTransform = -1;
+    private String unsupportedReason;
+    
+    private JpegCodestream(byte[] data) {
+        this.data = data;
+    }
+    
+    /**
+     * 解析码流
+     * 
+     * @throws IOException 码流结构损坏
+     */
+    static JpegCodestream parse(byte[] data) throws IOException {
+        JpegCodestream stream = new JpegCodestream(data);
+        stream.parse();
+        return stream;
+    }
+    
+    /**
+     * 不支持DCT域修补的原因，支持时返回null
+     */
+    String getUnsupportedReason() {
+        return unsupportedReason;
+    }
+    
+    private void parse() throws IOException {
+        if (data.length < 4 || (data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != SOI) {
+            throw new IOException("不是JPEG文件");
+        }
+        
+        int pos = 2;
+        while (true) {
+            pos = nextMarker(pos);
+            int marker = data[pos + 1] & 0xFF;
+            if (marker == EOI || pos + 3 >= data.length) {
+                throw new IOException("JPEG文件缺少扫描数据");
+            }
+            int length = readUnsigned16(pos + 2);
+            if (length < 2 || pos + 2 + length > data.length) {
+                throw new IOException("JPEG标记段长度无效: 0x" + Integer.toHexString(marker));
+            }
+            Segment segment = new Segment(marker, pos, length + 2);
+            int body = pos + 4;
+            int end = pos + 2 + length;
+            
+            if (marker == SOS) {
+                sos = segment;
+                parseScan(body);
+                entropyStart = end;
+                break;
+            }
+            
+            segments.add(segment);
+            if (marker == SOF0 || marker == SOF1) {
+                parseFrame(body);
+            } else if (marker >= 0xC2 && marker <= 0xCF && marker != DHT && marker != 0xC8 && marker != 0xCC) {
+                unsupported("不支持的编码方式（渐进式、无损或算术编码）");
+            } else if (marker == DHT) {
+                parseHuffmanTables(body, end);
+            } else if (marker == DQT) {
+                parseQuantTables(body, end);
+            } else if (marker == DRI) {
+                restartInterval = readUnsigned16(body);
+            } else if (marker == APP14 && length >= 14 && startsWith(body, "Adobe")) {
+                adobeTransform = data[body + 11] & 0xFF;
+            }
+            pos = end;
+        }
+        
+        entropyEnd = findEntropyEnd(entropyStart);
+        if ((data[entropyEnd + 1] & 0xFF) != EOI) {
+            unsupported("包含多次扫描");
+        }
+        validate();
+    }
+    
+    private void parseFrame(int body) {
+        if ((data[body] & 0xFF) != 8) {
+            unsupported("不支持的采样精度");
+        }
+        height = readUnsigned16(body + 1);
+        width = readUnsigned16(body + 3);
+        int count = data[body + 5] & 0xFF;
+        components = new Component[count];
+        for (int i = 0; i < count; i++) {
+            int p = body + 6 + i * 3;
+            int sampling = data[p + 1] & 0xFF;
+            components[i] = new Component(data[p] & 0xFF, sampling >> 4, sampling & 0x0F, data[p + 2] & 0x03);
+        }
+    }
+    
+    private void parseScan(int body) throws IOException {
+        if (components == null) {
+            throw new IOException("JPEG扫描之前缺少帧头");
+        }
+        int count = data[body] & 0xFF;
+        scanComponents = new Component[count];
+        for (int i = 0; i < count; i++) {
+            int id = data[body + 1 + i * 2] & 0xFF;
+            int tables = data[body + 2 + i * 2] & 0xFF;
+            Component component = findComponent(id);
+            if (component == null) {
+                throw new IOException("JPEG扫描引用了不存在的分量: " + id);
+            }
+            component.dcTable = tables >> 4 & 0x03;
+            component.acTable = tables & 0x03;
+            scanComponents[i] = component;
+        }
+        int p = body + 1 + count * 2;
+        int ss = data[p] & 0xFF;
+        int se = data[p + 1] & 0xFF;
+        int approximation = data[p + 2] & 0xFF;
+        if (ss != 0 || se != 63 || approximation != 0) {
+            unsupported("不支持的扫描参数");
+        }
+    }
+    
+    private void parseHuffmanTables(int p, int end) throws IOException {
+        while (p < end) {
+            int info = data[p] & 0xFF;
+            int tableClass = info >> 4;
+            int tableId = info & 0x0F;
+            int[] bits = new int[17];
+            int total = 0;
+            for (int i = 1; i <= 16; i++) {
+                bits[i] = data[p + i] & 0xFF;
+                total += bits[i];
+            }
+            if (tableClass > 1 || tableId > 3 || total > 256 || p + 17 + total > end) {
+                throw new IOException("JPEG霍夫曼表无效");
+            }
+            int[] values = new int[total];
+            for (int i = 0; i < total; i++) {
+                values[i] = data[p + 17 + i] & 0xFF;
+            }
+            JpegHuffmanTable table = new JpegHuffmanTable(bits, values);
+            if (tableClass == 0) {
+                dcTables[tableId] = table;
+            } else {
+                acTables[tableId] = table;
+            }
+            p += 17 + total;
+        }
+    }
+    
+    private void parseQuantTables(int p, int end) throws IOException {
+        while (p < end) {
+            int info = data[p] & 0xFF;
+            int precision = info >> 4;
+            int tableId = info & 0x0F;
+            if (tableId > 3 || p + 1 + 64 * (precision + 1) > end) {
+                throw new IOException("JPEG量化表无效");
+            }
+            int[] table = new int[64];
+            for (int i = 0; i < 64; i++) {
+                table[i] = precision == 0
+                        ? data[p + 1 + i] & 0xFF
+                        : readUnsigned16(p + 1 + i * 2);
+            }
+            quantTables[tableId] = table;
+            p += 1 + 64 * (precision + 1);
+        }
+    }
+    
+    /**
+     * 检查帧和扫描是否在支持范围内
+     */
+    private void validate() {
+        if (unsupportedReason != null) {
+            return;
+        }
+        if (components == null) {
+            unsupported("不支持的帧类型");
+        } else if (height == 0) {
+            unsupported("图片高度由DNL标记给出");
+        } else if (components.length != 1 && components.length != 3) {
+            unsupported("不支持的分量数: " + components.length);
+        } else if (scanComponents.length != components.length) {
+            unsupported("分量分多次扫描");
+        } else if (components.length == 3 && (adobeTransform == 0
+                || (components[0].id == 'R' && components[1].id == 'G' && components[2].id == 'B'))) {
+            unsupported("RGB色彩空间的JPEG");
+        } else {
+            int hMax = maxH();
+            int vMax = maxV();
+            for (Component component : components) {
+                if (component.h < 1 || component.v < 1 || hMax % component.h != 0 || vMax % component.v != 0) {
+                    unsupported("不支持的采样因子");
+                } else if (quantTables[component.quantTable] == null
+                        || dcTables[component.dcTable] == null || acTables[component.acTable] == null) {
+                    unsupported("缺少量化表或霍夫曼表");
+                }
+            }
+        }
+    }
+    
+    int maxH() {
+        int max = 1;
+        for (Component component : components) {
+            max = Math.max(max, component.h);
+        }
+        return max;
+    }
+    
+    int maxV() {
+        int max = 1;
+        for (Component component : components) {
+            max = Math.max(max, component.v);
+        }
+        return max;
+    }
+    
+    private Component findComponent(int id) {
+        for (Component component : components) {
+            if (component.id == id) {
+                return component;
+            }
+        }
+        return null;
+    }
+    
+    private void unsupported(String reason) {
+        if (unsupportedReason == null) {
+            unsupportedReason = reason;
+        }
+    }
+    
+    /**
+     * 定位从pos开始的下一个标记（跳过填充字节），返回标记的0xFF所在位置
+     */
+    int nextMarker(int pos) throws IOException {
+        while (pos + 1 < data.length) {
+            if ((data[pos] & 0xFF) == 0xFF) {
+                int next = data[pos + 1] & 0xFF;
+                if (next != 0xFF && next != 0x00) {
+                    return pos;
+                }
+            }
+            pos++;
+        }
+        throw new IOException("JPEG文件不完整");
+    }
+    
+    /**
+     * 定位熵编码数据之后的第一个非RST标记
+     */
+    private int findEntropyEnd(int pos) throws IOException {
+        while (pos + 1 < data.length) {
+            if ((data[pos] & 0xFF) == 0xFF) {
+                int next = data[pos + 1] & 0xFF;
+                if (next == 0x00 || next == 0xFF || (next >= RST0 && next <= RST0 + 7)) {
+                    pos += next == 0xFF ? 1 : 2;
+                    continue;
+                }
+                return pos;
+            }
+            pos++;
+        }
+        throw new IOException("JPEG文件不完整");
+    }
+    
+    private int readUnsigned16(int pos) {
+        return (data[pos] & 0xFF) << 8 | (data[pos + 1] & 0xFF);
+    }
+    
+    private boolean startsWith(int pos, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (data[pos + i] != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
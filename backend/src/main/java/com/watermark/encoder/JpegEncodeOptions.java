@@ -0,0 +1,79 @@
+package com.watermark.encoder;
+
+/**
+ * JPEG编码参数
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class JpegEncodeOptions {
+    
+    /**
+     * 色度子采样方式
+     */
+    public enum ChromaSubsampling {
+        YUV420, // 水平、垂直均为2:1，文件最小
+        YUV422, // 仅水平2:1
+        YUV444  // 不进行子采样，色彩边缘最清晰
+    }
+    
+    private int quality = 90;                  // 质量 (1-100)
+    private boolean progressive = false;       // 是否渐进式编码
+    private ChromaSubsampling chromaSubsampling = ChromaSubsampling.YUV420;
+    private boolean optimizeHuffman = true;    // 是否优化霍夫曼表
+    private boolean blockPatch = false;        // JPEG源图片是否只重新编码水印覆盖的块（沿用源图片的量化表）
+    
+    public JpegEncodeOptions() {
+    }
+    
+    public JpegEncodeOptions(int quality) {
+        setQuality(quality);
+    }
+    
+    // Getters and Setters
+    public int getQuality() { return quality; }
+    public void setQuality(int quality) { 
+        this.quality = Math.max(1, Math.min(100, quality)); 
+    }
+    
+    public boolean isProgressive() { return progressive; }
+    public void setProgressive(boolean progressive) { this.progressive = progressive; }
+    
+    public ChromaSubsampling getChromaSubsampling() { return chromaSubsampling; }
+    public void setChromaSubsampling(ChromaSubsampling chromaSubsampling) { 
+        this.chromaSubsampling = chromaSubsampling != null ? chromaSubsampling : ChromaSubsampling.YUV420; 
+    }
+    
+    public boolean isOptimizeHuffman() { return optimizeHuffman; }
+    public void setOptimizeHuffman(boolean optimizeHuffman) { this.optimizeHuffman = optimizeHuffman; }
+    
+    public boolean isBlockPatch() { return blockPatch; }
+    public void setBlockPatch(boolean blockPatch) { this.blockPatch = blockPatch; }
+    
+    /**
+     * 解析子采样字符串（"420"、"422"、"444"），无法识别时返回4:2:0
+     */
+    public static ChromaSubsampling parseChromaSubsampling(String value) {
+        if (value == null) {
+            return ChromaSubsampling.YUV420;
+        }
+        String normalized = value.replace(":", "").trim();
+        if (normalized.endsWith("444")) {
+            return ChromaSubsampling.YUV444;
+        } else if (normalized.endsWith("422")) {
+            return ChromaSubsampling.YUV422;
+        }
+        return ChromaSubsampling.YUV420;
+    }
+    
+    @Override
+    public String toString() {
+        return "JpegEncodeOptions{" +
+                "quality=" + quality +
+                ", progressive=" + progressive +
+                ", chromaSubsampling=" + chromaSubsampling +
+                ", optimizeHuffman=" + optimizeHuffman +
+                ", blockPatch=" + blockPatch +
+                '}';
+    }
+}
@@ -0,0 +1,236 @@
+package com.watermark.encoder;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * JPEG霍夫曼表
+ * 由DHT段中的码长计数和符号构造，同时提供解码所需的查找表和编码所需的码字表，
+ * 并可根据符号频率生成最优表（ITU T.81 附录K.2，码长不超过16位）
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+final class JpegHuffmanTable {
+    
+    static final int LOOKAHEAD_BITS = 9; // 快速解码查找表的位数
+    
+    private final int[] bits;   // bits[i]: 码长为i的码字个数 (i = 1..16)
+    private final int[] values; // 按码长排列的符号
+    
+    // 解码用
+    private final int[] maxCode = new int[18];
+    private final int[] valueOffset = new int[17];
+    private final int[] lookahead = new int[1 << LOOKAHEAD_BITS]; // (码长 << 8) | 符号，0表示需要慢速解码
+    
+    // 编码用
+    private final int[] codes = new int[256];
+    private final int[] codeLengths = new int[256]; // 0表示该符号没有码字
+    
+    JpegHuffmanTable(int[] bits, int[] values) {
+        this.bits = bits.clone();
+        this.values = values.clone();
+        build();
+    }
+    
+    /**
+     * 根据符号频率生成最优霍夫曼表
+     * 
+     * @param frequencies 长度为256的符号出现次数
+     */
+    static JpegHuffmanTable optimal(long[] frequencies) {
+        long[] freq = Arrays.copyOf(frequencies, 257);
+        freq[256] = 1; // 保留一个码点，保证没有全1的码字
+        int[] codeSize = new int[257];
+        int[] others = new int[257];
+        Arrays.fill(others, -1);
+        
+        while (true) {
+            // 找出频率最小的两个符号，频率相同时取值较大者
+            int c1 = -1;
+            long v = Long.MAX_VALUE;
+            for (int i = 0; i <= 256; i++) {
+                if (freq[i] != 0 && freq[i] <= v) {
+                    v = freq[i];
+                    c1 = i;
+                }
+            }
+            int c2 = -1;
+            v = Long.MAX_VALUE;
+            for (int i = 0; i <= 256; i++) {
+                if (freq[i] != 0 && freq[i] <= v && i != c1) {
+                    v = freq[i];
+                    c2 = i;
+                }
+            }
+            if (c2 < 0) {
+                break;
+            }
+            
+            freq[c1] += freq[c2];
+            freq[c2] = 0;
+            codeSize[c1]++;
+            while (others[c1] >= 0) {
+                c1 = others[c1];
+                codeSize[c1]++;
+            }
+            others[c1] = c2;
+            codeSize[c2]++;
+            while (others[c2] >= 0) {
+                c2 = others[c2];
+                codeSize[c2]++;
+            }
+        }
+        
+        int[] count = new int[33];
+        for (int i = 0; i <= 256; i++) {
+            if (codeSize[i] > 0) {
+                count[Math.min(codeSize[i], 32)]++;
+            }
+        }
+        
+        // 将超过16位的码长调整到16位以内（附录K.3）
+        for (int i = 32; i > 16; i--) {
+            while (count[i] > 0) {
+                int j = i - 2;
+                while (count[j] == 0) {
+                    j--;
+                }
+                count[i] -= 2;
+                count[i - 1]++;
+                count[j + 1] += 2;
+                count[j]--;
+            }
+        }
+        // 去掉保留码点
+        int longest = 16;
+        while (longest > 0 && count[longest] == 0) {
+            longest--;
+        }
+        if (longest > 0) {
+            count[longest]--;
+        }
+        
+        int[] bits = new int[17];
+        System.arraycopy(count, 1, bits, 1, 16);
+        
+        // 符号按码长从短到长、同码长按符号值升序排列
+        int total = 0;
+        for (int i = 1; i <= 16; i++) {
+            total += bits[i];
+        }
+        int[] values = new int[total];
+        int p = 0;
+        for (int length = 1; length <= 32; length++) {
+            for (int symbol = 0; symbol < 256; symbol++) {
+                if (codeSize[symbol] == length) {
+                    values[p++] = symbol;
+                }
+            }
+        }
+        return new JpegHuffmanTable(bits, values);
+    }
+    
+    /**
+     * 构造解码和编码表（附录C）
+     */
+    private void build() {
+        int[] huffSize = new int[257];
+        int[] huffCode = new int[257];
+        int k = 0;
+        for (int length = 1; length <= 16; length++) {
+            for (int i = 0; i < bits[length]; i++) {
+                huffSize[k++] = length;
+            }
+        }
+        int count = k;
+        
+        int code = 0;
+        int size = huffSize[0];
+        k = 0;
+        while (k < count) {
+            while (k < count && huffSize[k] == size) {
+                huffCode[k++] = code++;
+            }
+            code <<= 1;
+            size++;
+        }
+        
+        for (int i = 0; i < count; i++) {
+            codes[values[i]] = huffCode[i];
+            codeLengths[values[i]] = huffSize[i];
+        }
+        
+        k = 0;
+        for (int length = 1; length <= 16; length++) {
+            if (bits[length] > 0) {
+                valueOffset[length] = k - huffCode[k];
+                k += bits[length];
+                maxCode[length] = huffCode[k - 1];
+            } else {
+                maxCode[length] = -1;
+            }
+        }
+        maxCode[17] = Integer.MAX_VALUE;
+        
+        for (int i = 0; i < count; i++) {
+            int length = huffSize[i];
+            if (length <= LOOKAHEAD_BITS) {
+                int shift = LOOKAHEAD_BITS - length;
+                int first = huffCode[i] << shift;
+                for (int j = 0; j < (1 << shift); j++) {
+                    lookahead[first + j] = (length << 8) | values[i];
+                }
+            }
+        }
+    }
+    
+    /**
+     * 查找表项：(码长 << 8) | 符号，0表示码长超过LOOKAHEAD_BITS
+     */
+    int lookahead(int peekBits) {
+        return lookahead[peekBits];
+    }
+    
+    /**
+     * 码长为length的最大码字，没有该码长的码字时为-1
+     */
+    int maxCode(int length) {
+        return maxCode[length];
+    }
+    
+    /**
+     * 码长为length、值为code的码字对应的符号
+     */
+    int value(int length, int code) {
+        return values[code + valueOffset[length]];
+    }
+    
+    boolean canEncode(int symbol) {
+        return codeLengths[symbol] != 0;
+    }
+    
+    int code(int symbol) {
+        return codes[symbol];
+    }
+    
+    int codeLength(int symbol) {
+        return codeLengths[symbol];
+    }
+    
+    /**
+     * 写出DHT段中该表的内容（不含段头）
+     * 
+     * @param tableClass 0为DC表，1为AC表
+     * @param tableId 表号 (0-3)
+     */
+    void writeTo(ByteArrayOutputStream out, int tableClass, int tableId) {
+        out.write((tableClass << 4) | tableId);
+        for (int length = 1; length <= 16; length++) {
+            out.write(bits[length]);
+        }
+        for (int value : values) {
+            out.write(value);
+        }
+    }
+}
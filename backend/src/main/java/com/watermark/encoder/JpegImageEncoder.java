@@ -0,0 +1,254 @@
+package com.watermark.encoder;
+
+import com.watermark.util.ImageTypePolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+/**
+ * JPEG编码器
+ * 每个线程缓存一个已配置的ImageWriter和写入参数，避免每次编码都通过注册表查找写入器；
+ * 通过带缓冲的内存ImageOutputStream写出，不使用磁盘缓存
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class JpegImageEncoder {
+    
+    private static final Logger logger = LoggerFactory.getLogger(JpegImageEncoder.class);
+    
+    private static final String JPEG_METADATA_FORMAT = "javax_imageio_jpeg_image_1.0";
+    private static final String JDK_JPEG_WRITER = "com.sun.imageio.plugins.jpeg.JPEGImageWriter";
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+    
+    private static JpegImageEncoder instance;
+    
+    private final ThreadLocal<WriterHolder> writers = new ThreadLocal<>();
+    
+    private JpegImageEncoder() {
+        // 私有构造函数，单例模式
+    }
+    
+    public static synchronized JpegImageEncoder getInstance() {
+        if (instance == null) {
+            instance = new JpegImageEncoder();
+        }
+        return instance;
+    }
+    
+    /**
+     * 线程私有的写入器及参数
+     */
+    private static class WriterHolder {
+        final ImageWriter writer;
+        final JPEGImageWriteParam param;
+        
+        WriterHolder(ImageWriter writer) {
+            this.writer = writer;
+            this.param = (JPEGImageWriteParam) writer.getDefaultWriteParam();
+            this.param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        }
+    }
+    
+    /**
+     * 将图片编码为JPEG文件
+     */
+    public void write(BufferedImage image, File outputFile, JpegEncodeOptions options) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile), OUTPUT_BUFFER_SIZE)) {
+            write(image, out, options);
+        }
+    }
+    
+    /**
+     * 将图片编码为JPEG字节数组
+     */
+    public byte[] encode(BufferedImage image, JpegEncodeOptions options) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        write(image, baos, options);
+        return baos.toByteArray();
+    }
+    
+    /**
+     * 将图片编码为JPEG并写入输出流
+     */
+    public void write(BufferedImage image, OutputStream out, JpegEncodeOptions options) throws IOException {
+        // JPEG不支持透明通道，带alpha的图片先合成到不透明画布
+        image = ImageTypePolicy.toOpaque(image);
+        
+        WriterHolder holder = acquireWriter();
+        ImageWriter writer = holder.writer;
+        JPEGImageWriteParam param = configureParam(holder.param, options);
+        
+        boolean success = false;
+        try (ImageOutputStream ios = new MemoryCacheImageOutputStream(out)) {
+            IIOMetadata metadata = createMetadata(writer, image, param, options);
+            
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(image, null, metadata), param);
+            ios.flush();
+            success = true;
+            
+        } finally {
+            writer.setOutput(null);
+            if (!success) {
+                // 编码失败后写入器状态不可靠，丢弃并在下次重新创建
+                writers.remove();
+                writer.dispose();
+            }
+        }
+    }
+    
+    /**
+     * 获取当前线程的写入器
+     */
+    private WriterHolder acquireWriter() throws IOException {
+        WriterHolder holder = writers.get();
+        if (holder == null) {
+            holder = new WriterHolder(createWriter());
+            writers.set(holder);
+            logger.debug("为线程 {} 创建JPEG写入器: {}", Thread.currentThread().getName(),
+                         holder.writer.getClass().getName());
+        }
+        return holder;
+    }
+    
+    /**
+     * 创建JPEG写入器，优先使用JDK内置实现（支持原生元数据格式）
+     */
+    private ImageWriter createWriter() throws IOException {
+        ImageWriter fallback = null;
+        Iterator<ImageWriter> iterator = ImageIO.getImageWritersByFormatName("jpeg");
+        
+        while (iterator.hasNext()) {
+            ImageWriter candidate = iterator.next();
+            if (JDK_JPEG_WRITER.equals(candidate.getClass().getName())) {
+                if (fallback != null) {
+                    fallback.dispose();
+                }
+                return candidate;
+            }
+            if (fallback == null) {
+                fallback = candidate;
+            } else {
+                candidate.dispose();
+            }
+        }
+        
+        if (fallback == null) {
+            throw new IOException("没有可用的JPEG写入器");
+        }
+        return fallback;
+    }
+    
+    /**
+     * 将编码参数应用到写入参数
+     */
+    private JPEGImageWriteParam configureParam(JPEGImageWriteParam param, JpegEncodeOptions options) {
+        param.setCompressionQuality(options.getQuality() / 100f);
+        param.setOptimizeHuffmanTables(options.isOptimizeHuffman());
+        param.setProgressiveMode(options.isProgressive()
+            ? ImageWriteParam.MODE_DEFAULT
+            : ImageWriteParam.MODE_DISABLED);
+        return param;
+    }
+    
+    /**
+     * 创建包含色度子采样设置的图片元数据
+     */
+    private IIOMetadata createMetadata(ImageWriter writer, BufferedImage image,
+                                       ImageWriteParam param, JpegEncodeOptions options) {
+        IIOMetadata metadata = writer.getDefaultImageMetadata(
+            ImageTypeSpecifier.createFromRenderedImage(image), param);
+        
+        if (metadata == null || !isNativeFormatSupported(metadata)) {
+            return metadata;
+        }
+        
+        try {
+            Node tree = metadata.getAsTree(JPEG_METADATA_FORMAT);
+            Node sof = findNode(tree, "sof");
+            if (sof == null) {
+                return metadata;
+            }
+            
+            int lumaFactorH;
+            int lumaFactorV;
+            switch (options.getChromaSubsampling()) {
+                case YUV444:
+                    lumaFactorH = 1;
+                    lumaFactorV = 1;
+                    break;
+                case YUV422:
+                    lumaFactorH = 2;
+                    lumaFactorV = 1;
+                    break;
+                case YUV420:
+                default:
+                    lumaFactorH = 2;
+                    lumaFactorV = 2;
+                    break;
+            }
+            
+            // 第一个分量为亮度，其余色度分量采样因子为1
+            boolean first = true;
+            for (Node component = sof.getFirstChild(); component != null; component = component.getNextSibling()) {
+                if (!"componentSpec".equals(component.getNodeName())) {
+                    continue;
+                }
+                NamedNodeMap attributes = component.getAttributes();
+                attributes.getNamedItem("HsamplingFactor").setNodeValue(String.valueOf(first ? lumaFactorH : 1));
+                attributes.getNamedItem("VsamplingFactor").setNodeValue(String.valueOf(first ? lumaFactorV : 1));
+                first = false;
+            }
+            
+            metadata.setFromTree(JPEG_METADATA_FORMAT, tree);
+            
+        } catch (Exception e) {
+            logger.warn("设置JPEG色度子采样失败，使用默认设置: {}", e.getMessage());
+        }
+        
+        return metadata;
+    }
+    
+    /**
+     * 判断元数据是否支持JPEG原生格式
+     */
+    private boolean isNativeFormatSupported(IIOMetadata metadata) {
+        return JPEG_METADATA_FORMAT.equals(metadata.getNativeMetadataFormatName());
+    }
+    
+    /**
+     * 深度优先查找指定名称的节点
+     */
+    private Node findNode(Node node, String name) {
+        if (name.equals(node.getNodeName())) {
+            return node;
+        }
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            Node found = findNode(child, name);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+}
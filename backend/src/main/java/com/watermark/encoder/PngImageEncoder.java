@@ -0,0 +1,702 @@
+package com.watermark.encoder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * PNG编码器
+ * 输出8位RGB/RGBA的非交错PNG，支持选择压缩级别和扫描行过滤方式；
+ * 大图按行分块，各块在线程池中并行过滤和压缩后拼接为同一个zlib流
+ * （每块以前一块末尾32KB作为预设字典，压缩率与串行压缩基本一致）；
+ * 单核主机上默认参数改用较快的压缩级别和过滤方式（见 PngEncodeOptions）
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class PngImageEncoder {
+    
+    private static final Logger logger = LoggerFactory.getLogger(PngImageEncoder.class);
+    
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+    private static final int IDAT_CHUNK_SIZE = 64 * 1024;      // 单个IDAT块的最大数据长度
+    private static final int PARALLEL_BLOCK_BYTES = 1024 * 1024; // 并行压缩时每块的未压缩数据量
+    private static final int DICTIONARY_SIZE = 32 * 1024;      // deflate窗口大小
+    
+    private static final int COLOR_TYPE_RGB = 2;
+    private static final int COLOR_TYPE_RGBA = 6;
+    
+    private static PngImageEncoder instance;
+    
+    private final int workerCount;
+    private ExecutorService deflateExecutor;
+    
+    private PngImageEncoder() {
+        this.workerCount = Math.max(1, Runtime.getRuntime().availableProcessors());
+    }
+    
+    public static synchronized PngImageEncoder getInstance() {
+        if (instance == null) {
+            instance = new PngImageEncoder();
+        }
+        return instance;
+    }
+    
+    /**
+     * 将图片编码为PNG文件
+     */
+    public void write(RenderedImage image, File outputFile, PngEncodeOptions options) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile), OUTPUT_BUFFER_SIZE)) {
+            write(image, out, options);
+        }
+    }
+    
+    /**
+     * 将图片编码为PNG字节数组
+     */
+    public byte[] encode(RenderedImage image, PngEncodeOptions options) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        write(image, baos, options);
+        return baos.toByteArray();
+    }
+    
+    /**
+     * 将图片编码为PNG并写入输出流
+     * 源图片不是BufferedImage时（如按条带生成的超大图片）按行顺序读取并串行压缩
+     */
+    public void write(RenderedImage image, OutputStream out, PngEncodeOptions options) throws IOException {
+        if (workerCount < 2) {
+            options = options.forSingleCore();
+        }
+        
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean hasAlpha = image.getColorModel().hasAlpha();
+        
+        out.write(PNG_SIGNATURE);
+        writeHeader(out, width, height, hasAlpha);
+        
+        ChunkOutputStream idat = new ChunkOutputStream(out, "IDAT");
+        RowReader reader = new RowReader(image, hasAlpha);
+        int blockRows = Math.max(1, PARALLEL_BLOCK_BYTES / (reader.rowBytes + 1));
+        
+        if (options.isParallel() && workerCount > 1 && reader.isRandomAccess() && height > blockRows
+                && (long) width * height >= options.getParallelThreshold()) {
+            writeParallel(reader, idat, options, blockRows);
+        } else {
+            writeSerial(reader, idat, options);
+        }
+        
+        idat.finish();
+        writeChunk(out, "IEND", new byte[0], 0);
+        out.flush();
+    }
+    
+    /**
+     * 单线程过滤并压缩全部扫描行
+     */
+    private void writeSerial(RowReader reader, OutputStream idat, PngEncodeOptions options) throws IOException {
+        Deflater deflater = createDeflater(options, false);
+        try {
+            DeflaterOutputStream zlib = new DeflaterOutputStream(idat, deflater, OUTPUT_BUFFER_SIZE);
+            ScanlineFilter filter = new ScanlineFilter(reader, options.getFilterStrategy(), 0);
+            for (int y = 0; y < reader.height; y++) {
+                zlib.write(filter.next(y));
+            }
+            zlib.finish();
+        } finally {
+            deflater.end();
+        }
+    }
+    
+    /**
+     * 分块并行过滤并压缩，按块顺序拼接为一个zlib流
+     * 同时在途的块数限制为线程数的两倍，避免大图的压缩结果全部堆积在内存中
+     */
+    private void writeParallel(RowReader reader, OutputStream idat, PngEncodeOptions options,
+                               int blockRows) throws IOException {
+        int blockCount = (reader.height + blockRows - 1) / blockRows;
+        int window = workerCount * 2;
+        ExecutorService executor = getDeflateExecutor();
+        Deque<Future<CompressedBlock>> inFlight = new ArrayDeque<>();
+        
+        idat.write(zlibHeader(options.getCompressionLevel()));
+        long adler = 1L;
+        int nextBlock = 0;
+        
+        try {
+            while (nextBlock < blockCount || !inFlight.isEmpty()) {
+                while (nextBlock < blockCount && inFlight.size() < window) {
+                    int startRow = nextBlock * blockRows;
+                    int endRow = Math.min(reader.height, startRow + blockRows);
+                    boolean last = nextBlock == blockCount - 1;
+                    inFlight.addLast(executor.submit(() -> compressBlock(reader, options, startRow, endRow, last)));
+                    nextBlock++;
+                }
+                
+                CompressedBlock block = inFlight.removeFirst().get();
+                idat.write(block.data, 0, block.size);
+                adler = combineAdler32(adler, block.adler, block.inputLength);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("PNG压缩被中断");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("PNG并行压缩失败: " + cause.getMessage(), cause);
+        } finally {
+            for (Future<CompressedBlock> future : inFlight) {
+                future.cancel(true);
+            }
+        }
+        
+        idat.write(new byte[] {
+            (byte) (adler >>> 24), (byte) (adler >>> 16), (byte) (adler >>> 8), (byte) adler
+        });
+        logger.debug("PNG并行压缩完成: {}x{}, {} 块", reader.width, reader.height, blockCount);
+    }
+    
+    /**
+     * 压缩一块扫描行，输出不带zlib头尾的原始deflate数据
+     * 非最后一块以SYNC_FLUSH结束，保证字节对齐且不设置结束标记
+     */
+    private CompressedBlock compressBlock(RowReader reader, PngEncodeOptions options,
+                                         int startRow, int endRow, boolean last) throws IOException {
+        Deflater deflater = createDeflater(options, true);
+        try {
+            int rowLength = reader.rowBytes + 1;
+            int dictionaryRows = Math.min(startRow, (DICTIONARY_SIZE + rowLength - 1) / rowLength);
+            ScanlineFilter filter = new ScanlineFilter(reader, options.getFilterStrategy(), startRow - dictionaryRows);
+            
+            // 重新过滤前一块末尾的若干行作为预设字典（过滤结果与前一块完全相同）
+            if (dictionaryRows > 0) {
+                byte[] dictionary = new byte[dictionaryRows * rowLength];
+                for (int i = 0; i < dictionaryRows; i++) {
+                    System.arraycopy(filter.next(startRow - dictionaryRows + i), 0, dictionary, i * rowLength, rowLength);
+                }
+                int offset = Math.max(0, dictionary.length - DICTIONARY_SIZE);
+                deflater.setDictionary(dictionary, offset, dictionary.length - offset);
+            }
+            
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream((endRow - startRow) * rowLength / 2);
+            Adler32 adler = new Adler32();
+            byte[] buffer = new byte[OUTPUT_BUFFER_SIZE];
+            
+            for (int y = startRow; y < endRow; y++) {
+                byte[] row = filter.next(y);
+                adler.update(row, 0, rowLength);
+                deflater.setInput(row, 0, rowLength);
+                while (!deflater.needsInput()) {
+                    int count = deflater.deflate(buffer);
+                    compressed.write(buffer, 0, count);
+                }
+            }
+            
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int count = deflater.deflate(buffer);
+                    compressed.write(buffer, 0, count);
+                }
+            } else {
+                int count;
+                do {
+                    count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    compressed.write(buffer, 0, count);
+                } while (count == buffer.length);
+            }
+            
+            byte[] data = compressed.toByteArray();
+            return new CompressedBlock(data, data.length, adler.getValue(), (long) (endRow - startRow) * rowLength);
+            
+        } finally {
+            deflater.end();
+        }
+    }
+    
+    /**
+     * 创建压缩器
+     * 使用过滤时采用FILTERED策略（与libpng默认行为一致）
+     */
+    private Deflater createDeflater(PngEncodeOptions options, boolean raw) {
+        Deflater deflater = new Deflater(options.getCompressionLevel(), raw);
+        if (options.getFilterStrategy() != PngEncodeOptions.FilterStrategy.NONE
+                && options.getCompressionLevel() > 0) {
+            deflater.setStrategy(Deflater.FILTERED);
+        }
+        return deflater;
+    }
+    
+    /**
+     * 获取并行压缩线程池（守护线程，首次使用时创建）
+     */
+    private synchronized ExecutorService getDeflateExecutor() {
+        if (deflateExecutor == null) {
+            AtomicInteger threadIndex = new AtomicInteger();
+            deflateExecutor = Executors.newFixedThreadPool(workerCount, runnable -> {
+                Thread thread = new Thread(runnable, "png-deflate-" + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            logger.info("PNG并行压缩线程池已创建: {} 个线程", workerCount);
+        }
+        return deflateExecutor;
+    }
+    
+    /**
+     * 写入IHDR块
+     */
+    private void writeHeader(OutputStream out, int width, int height, boolean hasAlpha) throws IOException {
+        byte[] header = new byte[13];
+        writeInt(header, 0, width);
+        writeInt(header, 4, height);
+        header[8] = 8;                                              // 位深度
+        header[9] = (byte) (hasAlpha ? COLOR_TYPE_RGBA : COLOR_TYPE_RGB);
+        header[10] = 0;                                             // 压缩方式：deflate
+        header[11] = 0;                                             // 过滤方式：自适应过滤集
+        header[12] = 0;                                             // 不交错
+        writeChunk(out, "IHDR", header, header.length);
+    }
+    
+    /**
+     * 生成zlib流头（CMF、FLG）
+     */
+    private static byte[] zlibHeader(int level) {
+        int cmf = 0x78; // deflate, 32KB窗口
+        int levelFlag = level <= 1 ? 0 : level <= 5 ? 1 : level == 6 ? 2 : 3;
+        int flg = levelFlag << 6;
+        flg += (31 - ((cmf << 8) + flg) % 31) % 31;
+        return new byte[] {(byte) cmf, (byte) flg};
+    }
+    
+    /**
+     * 合并两段数据的Adler-32校验值（算法与zlib的adler32_combine相同）
+     */
+    static long combineAdler32(long adler1, long adler2, long length2) {
+        final long base = 65521L;
+        long remainder = length2 % base;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (remainder * sum1) % base;
+        sum1 += (adler2 & 0xFFFF) + base - 1;
+        sum2 += ((adler1 >>> 16) & 0xFFFF) + ((adler2 >>> 16) & 0xFFFF) + base - remainder;
+        if (sum1 >= base) sum1 -= base;
+        if (sum1 >= base) sum1 -= base;
+        if (sum2 >= (base << 1)) sum2 -= (base << 1);
+        if (sum2 >= base) sum2 -= base;
+        return sum1 | (sum2 << 16);
+    }
+    
+    /**
+     * 写入一个完整的PNG块
+     */
+    private static void writeChunk(OutputStream out, String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        byte[] lengthBytes = new byte[4];
+        writeInt(lengthBytes, 0, length);
+        
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        byte[] crcBytes = new byte[4];
+        writeInt(crcBytes, 0, (int) crc.getValue());
+        
+        out.write(lengthBytes);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.write(crcBytes);
+    }
+    
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+    
+    /**
+     * 一块压缩结果
+     */
+    private static class CompressedBlock {
+        final byte[] data;
+        final int size;
+        final long adler;
+        final long inputLength;
+        
+        CompressedBlock(byte[] data, int size, long adler, long inputLength) {
+            this.data = data;
+            this.size = size;
+            this.adler = adler;
+            this.inputLength = inputLength;
+        }
+    }
+    
+    /**
+     * 将写入的数据按固定大小切分为PNG块输出
+     */
+    private static class ChunkOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final String type;
+        private final byte[] buffer = new byte[IDAT_CHUNK_SIZE];
+        private int count = 0;
+        
+        ChunkOutputStream(OutputStream out, String type) {
+            this.out = out;
+            this.type = type;
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flushChunk();
+            }
+            buffer[count++] = (byte) b;
+        }
+        
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (count == buffer.length) {
+                    flushChunk();
+                }
+                int copy = Math.min(length, buffer.length - count);
+                System.arraycopy(data, offset, buffer, count, copy);
+                count += copy;
+                offset += copy;
+                length -= copy;
+            }
+        }
+        
+        /**
+         * 输出剩余数据，不关闭底层流
+         */
+        void finish() throws IOException {
+            if (count > 0) {
+                flushChunk();
+            }
+        }
+        
+        private void flushChunk() throws IOException {
+            writeChunk(out, type, buffer, count);
+            count = 0;
+        }
+    }
+    
+    /**
+     * 按行读取像素并转换为PNG的RGB/RGBA字节顺序
+     * 8位sRGB交错字节格式（三字节BGR、四字节ABGR等）和常见的int格式直接读取栅格数据，其他格式通过getRGB转换；
+     * 源图片不是BufferedImage时按分块（条带）顺序读取，同一时刻只持有一个条带
+     */
+    private static class RowReader {
+        final RenderedImage source;
+        final boolean hasAlpha;
+        final int width;
+        final int height;
+        final int bytesPerPixel;
+        final int rowBytes;
+        
+        private BufferedImage strip; // 当前条带（源图片为BufferedImage时即为源图片本身）
+        private int stripY;          // 当前条带第一行在源图片中的行号
+        private boolean stripBytes;  // 当前条带能否直接按波段顺序取出字节
+        
+        RowReader(RenderedImage source, boolean hasAlpha) {
+            this.source = source;
+            this.hasAlpha = hasAlpha;
+            this.width = source.getWidth();
+            this.height = source.getHeight();
+            this.bytesPerPixel = hasAlpha ? 4 : 3;
+            this.rowBytes = width * bytesPerPixel;
+            if (source instanceof BufferedImage) {
+                this.strip = (BufferedImage) source;
+                this.stripY = 0;
+                this.stripBytes = isRgbBytes(strip, hasAlpha);
+            }
+        }
+        
+        /**
+         * 是否可以随机访问任意行（并行压缩要求）
+         */
+        boolean isRandomAccess() {
+            return source instanceof BufferedImage;
+        }
+        
+        /**
+         * 读取一行像素
+         * 源图片为BufferedImage时可由多个线程同时调用（各自使用自己的缓冲区），否则只能按顺序单线程读取
+         */
+        void read(int y, byte[] dst, int[] pixels) {
+            if (!isRandomAccess() && (strip == null || y < stripY || y >= stripY + strip.getHeight())) {
+                loadStrip(y);
+            }
+            readRow(y - stripY, dst, pixels);
+        }
+        
+        /**
+         * 读取包含第y行的条带
+         */
+        private void loadStrip(int y) {
+            int minY = source.getMinY();
+            Raster data;
+            if (source.getNumXTiles() == 1) {
+                int tileY = Math.floorDiv(y + minY - source.getTileGridYOffset(), source.getTileHeight());
+                data = source.getTile(source.getMinTileX(), tileY);
+            } else {
+                int rows = Math.min(source.getTileHeight(), height - y);
+                data = source.getData(new Rectangle(source.getMinX(), y + minY, width, rows));
+            }
+            
+            WritableRaster raster;
+            if (data instanceof WritableRaster) {
+                raster = ((WritableRaster) data).createWritableTranslatedChild(0, 0);
+            } else {
+                raster = data.createCompatibleWritableRaster(data.getWidth(), data.getHeight());
+                raster.setRect(-data.getMinX(), -data.getMinY(), data);
+            }
+            
+            // 条带可能比图片宽（分块网格对齐），只取图片范围内的部分
+            if (raster.getWidth() > width) {
+                raster = raster.createWritableChild(source.getMinX() - data.getMinX(), 0, width, raster.getHeight(), 0, 0, null);
+            }
+            ColorModel colorModel = source.getColorModel();
+            strip = new BufferedImage(colorModel, raster, colorModel.isAlphaPremultiplied(), null);
+            stripY = data.getMinY() - minY;
+            stripBytes = isRgbBytes(strip, hasAlpha);
+        }
+        
+        /**
+         * 判断图片是否为8位sRGB交错字节格式，且透明通道与输出一致
+         * 这类格式按波段顺序取出即为R、G、B(、A)，与波段在内存中的排列顺序无关
+         */
+        private static boolean isRgbBytes(BufferedImage image, boolean hasAlpha) {
+            ColorModel colorModel = image.getColorModel();
+            SampleModel sampleModel = image.getSampleModel();
+            int bands = hasAlpha ? 4 : 3;
+            return sampleModel instanceof PixelInterleavedSampleModel
+                    && sampleModel.getDataType() == DataBuffer.TYPE_BYTE
+                    && sampleModel.getNumBands() == bands
+                    && colorModel instanceof ComponentColorModel
+                    && colorModel.getColorSpace().isCS_sRGB()
+                    && colorModel.hasAlpha() == hasAlpha
+                    && !colorModel.isAlphaPremultiplied()
+                    && colorModel.getPixelSize() == bands * 8;
+        }
+        
+        private void readRow(int y, byte[] dst, int[] pixels) {
+            BufferedImage image = strip;
+            Raster raster = image.getRaster();
+            if (stripBytes) {
+                raster.getDataElements(0, y, width, 1, dst);
+                return;
+            }
+            switch (image.getType()) {
+                case BufferedImage.TYPE_INT_ARGB:
+                case BufferedImage.TYPE_INT_RGB:
+                    raster.getDataElements(0, y, width, 1, pixels);
+                    break;
+                default:
+                    image.getRGB(0, y, width, 1, pixels, 0, width);
+                    break;
+            }
+            
+            int index = 0;
+            for (int x = 0; x < width; x++) {
+                int argb = pixels[x];
+                dst[index++] = (byte) (argb >>> 16);
+                dst[index++] = (byte) (argb >>> 8);
+                dst[index++] = (byte) argb;
+                if (hasAlpha) {
+                    dst[index++] = (byte) (argb >>> 24);
+                }
+            }
+        }
+    }
+    
+    /**
+     * 扫描行过滤器
+     * 依次生成各行的过滤结果（首字节为过滤类型），过滤依赖上一行的原始数据
+     */
+    private static class ScanlineFilter {
+        private static final int FILTER_NONE = 0;
+        private static final int FILTER_SUB = 1;
+        private static final int FILTER_UP = 2;
+        private static final int FILTER_AVERAGE = 3;
+        private static final int FILTER_PAETH = 4;
+        
+        private final RowReader reader;
+        private final PngEncodeOptions.FilterStrategy strategy;
+        private final int bpp;
+        private final int[] pixels;
+        private byte[] previous;
+        private byte[] current;
+        private byte[] output;
+        private byte[] candidate;
+        
+        /**
+         * @param firstRow 第一次调用next时的行号，会预先读取其上一行
+         */
+        ScanlineFilter(RowReader reader, PngEncodeOptions.FilterStrategy strategy, int firstRow) {
+            this.reader = reader;
+            this.strategy = strategy;
+            this.bpp = reader.bytesPerPixel;
+            this.pixels = new int[reader.width];
+            this.previous = new byte[reader.rowBytes];
+            this.current = new byte[reader.rowBytes];
+            this.output = new byte[reader.rowBytes + 1];
+            if (strategy == PngEncodeOptions.FilterStrategy.ADAPTIVE) {
+                this.candidate = new byte[reader.rowBytes + 1];
+            }
+            if (firstRow > 0) {
+                reader.read(firstRow - 1, previous, pixels);
+            }
+        }
+        
+        /**
+         * 过滤第y行，返回的数组在下次调用前有效
+         */
+        byte[] next(int y) {
+            reader.read(y, current, pixels);
+            
+            switch (strategy) {
+                case NONE:
+                    filter(FILTER_NONE, output);
+                    break;
+                case SUB:
+                    filter(FILTER_SUB, output);
+                    break;
+                case UP:
+                    filter(FILTER_UP, output);
+                    break;
+                case AVERAGE:
+                    filter(FILTER_AVERAGE, output);
+                    break;
+                case PAETH:
+                    filter(FILTER_PAETH, output);
+                    break;
+                case ADAPTIVE:
+                default:
+                    filterAdaptive();
+                    break;
+            }
+            
+            byte[] swap = previous;
+            previous = current;
+            current = swap;
+            return output;
+        }
+        
+        /**
+         * 对五种过滤方式分别计算，保留差值绝对值之和最小的结果
+         */
+        private void filterAdaptive() {
+            long best = filter(FILTER_NONE, output);
+            for (int type = FILTER_SUB; type <= FILTER_PAETH; type++) {
+                long sum = filter(type, candidate);
+                if (sum < best) {
+                    best = sum;
+                    byte[] swap = output;
+                    output = candidate;
+                    candidate = swap;
+                }
+            }
+        }
+        
+        /**
+         * 使用指定过滤方式过滤当前行
+         * 
+         * @return 自适应过滤时返回过滤结果按有符号字节计算的绝对值之和，否则返回0
+         */
+        private long filter(int type, byte[] dst) {
+            byte[] cur = current;
+            byte[] prev = previous;
+            int length = cur.length;
+            int head = Math.min(bpp, length);
+            dst[0] = (byte) type;
+            
+            // 每种过滤方式单独成循环，避免在逐字节循环中分支；每行第一个像素没有左侧像素
+            switch (type) {
+                case FILTER_SUB:
+                    System.arraycopy(cur, 0, dst, 1, head);
+                    for (int i = bpp; i < length; i++) {
+                        dst[i + 1] = (byte) (cur[i] - cur[i - bpp]);
+                    }
+                    break;
+                case FILTER_UP:
+                    for (int i = 0; i < length; i++) {
+                        dst[i + 1] = (byte) (cur[i] - prev[i]);
+                    }
+                    break;
+                case FILTER_AVERAGE:
+                    for (int i = 0; i < head; i++) {
+                        dst[i + 1] = (byte) (cur[i] - ((prev[i] & 0xFF) >>> 1));
+                    }
+                    for (int i = bpp; i < length; i++) {
+                        dst[i + 1] = (byte) (cur[i] - (((cur[i - bpp] & 0xFF) + (prev[i] & 0xFF)) >>> 1));
+                    }
+                    break;
+                case FILTER_PAETH:
+                    for (int i = 0; i < head; i++) {
+                        dst[i + 1] = (byte) (cur[i] - prev[i]);
+                    }
+                    for (int i = bpp; i < length; i++) {
+                        dst[i + 1] = (byte) (cur[i] - paeth(cur[i - bpp] & 0xFF, prev[i] & 0xFF, prev[i - bpp] & 0xFF));
+                    }
+                    break;
+                case FILTER_NONE:
+                default:
+                    System.arraycopy(cur, 0, dst, 1, length);
+                    break;
+            }
+            
+            if (strategy != PngEncodeOptions.FilterStrategy.ADAPTIVE) {
+                return 0;
+            }
+            long sum = 0;
+            for (int i = 1; i <= length; i++) {
+                sum += Math.abs(dst[i]);
+            }
+            return sum;
+        }
+        
+        private static int paeth(int left, int up, int upperLeft) {
+            int estimate = left + up - upperLeft;
+            int distanceLeft = Math.abs(estimate - left);
+            int distanceUp = Math.abs(estimate - up);
+            int distanceUpperLeft = Math.abs(estimate - upperLeft);
+            if (distanceLeft <= distanceUp && distanceLeft <= distanceUpperLeft) {
+                return left;
+            }
+            return distanceUp <= distanceUpperLeft ? up : upperLeft;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.watermark.encoder;
+
+/**
+ * TIFF编码参数
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class TiffEncodeOptions {
+    
+    /**
+     * 无损压缩方式
+     */
+    public enum Compression {
+        NONE("None"),
+        LZW("LZW"),
+        DEFLATE("Deflate"),
+        PACKBITS("PackBits");
+        
+        private final String typeName;
+        
+        Compression(String typeName) {
+            this.typeName = typeName;
+        }
+        
+        /**
+         * ImageWriteParam中使用的压缩类型名称
+         */
+        public String getTypeName() {
+            return typeName;
+        }
+    }
+    
+    private Compression compression = Compression.LZW;
+    
+    public TiffEncodeOptions() {
+    }
+    
+    public TiffEncodeOptions(Compression compression) {
+        setCompression(compression);
+    }
+    
+    // Getters and Setters
+    public Compression getCompression() { return compression; }
+    public void setCompression(Compression compression) { 
+        this.compression = compression != null ? compression : Compression.LZW; 
+    }
+    
+    /**
+     * 解析压缩方式字符串（"none"、"lzw"、"deflate"/"zip"、"packbits"），无法识别时返回LZW
+     */
+    public static Compression parseCompression(String value) {
+        if (value == null) {
+            return Compression.LZW;
+        }
+        String normalized = value.trim().toLowerCase();
+        switch (normalized) {
+            case "none":
+                return Compression.NONE;
+            case "deflate":
+            case "zip":
+            case "zlib":
+                return Compression.DEFLATE;
+            case "packbits":
+                return Compression.PACKBITS;
+            default:
+                return Compression.LZW;
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "TiffEncodeOptions{" +
+                "compression=" + compression +
+                '}';
+    }
+}
@@ -0,0 +1,62 @@
+package com.watermark.model;
+
+/**
+ * 导出指纹模型
+ * 记录某个输出文件由哪个源文件、哪份配置生成，用于增量导出时跳过未变化的项
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class ExportFingerprint {
+    
+    private String outputPath;      // 输出文件路径（主键）
+    private String outputDir;       // 输出目录
+    private String sourcePath;      // 源文件路径
+    private long sourceSize;        // 源文件大小
+    private long sourceMtime;       // 源文件修改时间（毫秒）
+    private String contentHash;     // 源文件内容哈希（可为空）
+    private String configHash;      // 规范化配置哈希
+    private long outputSize;        // 输出文件大小
+    private long outputMtime;       // 输出文件修改时间（毫秒）
+    
+    public ExportFingerprint() {
+    }
+    
+    // Getters and Setters
+    public String getOutputPath() { return outputPath; }
+    public void setOutputPath(String outputPath) { this.outputPath = outputPath; }
+    
+    public String getOutputDir() { return outputDir; }
+    public void setOutputDir(String outputDir) { this.outputDir = outputDir; }
+    
+    public String getSourcePath() { return sourcePath; }
+    public void setSourcePath(String sourcePath) { this.sourcePath = sourcePath; }
+    
+    public long getSourceSize() { return sourceSize; }
+    public void setSourceSize(long sourceSize) { this.sourceSize = sourceSize; }
+    
+    public long getSourceMtime() { return sourceMtime; }
+    public void setSourceMtime(long sourceMtime) { this.sourceMtime = sourceMtime; }
+    
+    public String getContentHash() { return contentHash; }
+    public void setContentHash(String contentHash) { this.contentHash = contentHash; }
+    
+    public String getConfigHash() { return configHash; }
+    public void setConfigHash(String configHash) { this.configHash = configHash; }
+    
+    public long getOutputSize() { return outputSize; }
+    public void setOutputSize(long outputSize) { this.outputSize = outputSize; }
+    
+    public long getOutputMtime() { return outputMtime; }
+    public void setOutputMtime(long outputMtime) { this.outputMtime = outputMtime; }
+    
+    @Override
+    public String toString() {
+        return "ExportFingerprint{" +
+                "outputPath='" + outputPath + '\'' +
+                ", sourcePath='" + sourcePath + '\'' +
+                ", sourceSize=" + sourceSize +
+                ", configHash='" + configHash + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,100 @@
+package com.watermark.model;
+
+/**
+ * 导出任务模型
+ * 任务服务接收的一次批量导出请求及其执行结果
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class ExportJob {
+    
+    public static final String STATUS_QUEUED = "QUEUED";
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_COMPLETED = "COMPLETED";
+    public static final String STATUS_FAILED = "FAILED";
+    
+    private long id;                // 任务ID（自增主键）
+    private String status;          // 任务状态
+    private Long templateId;        // 使用的模板ID（直接提交配置时为空）
+    private String configJson;      // 导出配置JSON（含outputPath）
+    private int total;              // 图片总数
+    private int successCount;       // 成功导出数
+    private int failureCount;       // 失败数
+    private int skippedCount;       // 增量导出跳过数
+    private int deduplicatedCount;  // 复用重复内容的导出结果数
+    private int quarantinedCount;   // 被隔离的异常源文件数（已计入失败数）
+    private String message;         // 任务失败原因
+    private String reportPath;      // 逐张结果的NDJSON报告文件（未生成时为空）
+    private long createdAt;         // 提交时间（毫秒）
+    private Long startedAt;         // 开始时间（毫秒）
+    private Long finishedAt;        // 结束时间（毫秒）
+    
+    public ExportJob() {
+    }
+    
+    /**
+     * 任务是否已结束
+     */
+    public boolean isFinished() {
+        return STATUS_COMPLETED.equals(status) || STATUS_FAILED.equals(status);
+    }
+    
+    // Getters and Setters
+    public long getId() { return id; }
+    public void setId(long id) { this.id = id; }
+    
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    
+    public Long getTemplateId() { return templateId; }
+    public void setTemplateId(Long templateId) { this.templateId = templateId; }
+    
+    public String getConfigJson() { return configJson; }
+    public void setConfigJson(String configJson) { this.configJson = configJson; }
+    
+    public int getTotal() { return total; }
+    public void setTotal(int total) { this.total = total; }
+    
+    public int getSuccessCount() { return successCount; }
+    public void setSuccessCount(int successCount) { this.successCount = successCount; }
+    
+    public int getFailureCount() { return failureCount; }
+    public void setFailureCount(int failureCount) { this.failureCount = failureCount; }
+    
+    public int getSkippedCount() { return skippedCount; }
+    public void setSkippedCount(int skippedCount) { this.skippedCount = skippedCount; }
+    
+    public int getDeduplicatedCount() { return deduplicatedCount; }
+    public void setDeduplicatedCount(int deduplicatedCount) { this.deduplicatedCount = deduplicatedCount; }
+    
+    public int getQuarantinedCount() { return quarantinedCount; }
+    public void setQuarantinedCount(int quarantinedCount) { this.quarantinedCount = quarantinedCount; }
+    
+    public String getMessage() { return message; }
+    public void setMessage(String message) { this.message = message; }
+    
+    public String getReportPath() { return reportPath; }
+    public void setReportPath(String reportPath) { this.reportPath = reportPath; }
+    
+    public long getCreatedAt() { return createdAt; }
+    public void setCreatedAt(long createdAt) { this.createdAt = createdAt; }
+    
+    public Long getStartedAt() { return startedAt; }
+    public void setStartedAt(Long startedAt) { this.startedAt = startedAt; }
+    
+    public Long getFinishedAt() { return finishedAt; }
+    public void setFinishedAt(Long finishedAt) { this.finishedAt = finishedAt; }
+    
+    @Override
+    public String toString() {
+        return "ExportJob{" +
+                "id=" + id +
+                ", status='" + status + '\'' +
+                ", total=" + total +
+                ", successCount=" + successCount +
+                ", failureCount=" + failureCount +
+                ", skippedCount=" + skippedCount +
+                '}';
+    }
+}
@@ -0,0 +1,66 @@
+package com.watermark.model;
+
+/**
+ * 导出任务项模型
+ * 清单任务中的一张源图片，保存在export_job_items表中，处理完成后记录结果
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class ExportJobItem {
+    
+    private long jobId;             // 所属任务ID
+    private long seq;               // 在清单中的序号（从1开始）
+    private String sourcePath;      // 源图片路径
+    private String overridesJson;   // 该项的配置覆盖项JSON（没有时为空）
+    private String status;          // 处理结果（未处理时为空）
+    private String outputPath;      // 输出文件路径
+    private String message;         // 失败原因
+    private String errorClass;      // 失败时的异常类名
+    private Long outputBytes;       // 输出文件大小（字节）
+    private Long elapsedMs;         // 处理耗时（毫秒）
+    
+    public ExportJobItem() {
+    }
+    
+    // Getters and Setters
+    public long getJobId() { return jobId; }
+    public void setJobId(long jobId) { this.jobId = jobId; }
+    
+    public long getSeq() { return seq; }
+    public void setSeq(long seq) { this.seq = seq; }
+    
+    public String getSourcePath() { return sourcePath; }
+    public void setSourcePath(String sourcePath) { this.sourcePath = sourcePath; }
+    
+    public String getOverridesJson() { return overridesJson; }
+    public void setOverridesJson(String overridesJson) { this.overridesJson = overridesJson; }
+    
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    
+    public String getOutputPath() { return outputPath; }
+    public void setOutputPath(String outputPath) { this.outputPath = outputPath; }
+    
+    public String getMessage() { return message; }
+    public void setMessage(String message) { this.message = message; }
+    
+    public String getErrorClass() { return errorClass; }
+    public void setErrorClass(String errorClass) { this.errorClass = errorClass; }
+    
+    public Long getOutputBytes() { return outputBytes; }
+    public void setOutputBytes(Long outputBytes) { this.outputBytes = outputBytes; }
+    
+    public Long getElapsedMs() { return elapsedMs; }
+    public void setElapsedMs(Long elapsedMs) { this.elapsedMs = elapsedMs; }
+    
+    @Override
+    public String toString() {
+        return "ExportJobItem{" +
+                "jobId=" + jobId +
+                ", seq=" + seq +
+                ", sourcePath='" + sourcePath + '\'' +
+                ", status='" + status + '\'' +
+                '}';
+    }
+}
@@ -21,6 +21,8 @@ public class ImageInfo {
     private int height;             // 图片高度
     private String format;          // 图片格式
     private boolean hasAlphaChannel; // 是否有透明通道
+    private long lastModified;      // 文件修改时间（毫秒）
+    private String contentHash;     // 文件内容哈希（SHA-256）
     
     @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
     private LocalDateTime importTime; // 导入时间
@@ -69,6 +71,12 @@ public class ImageInfo {
     public boolean isHasAlphaChannel() { return hasAlphaChannel; }
     public void setHasAlphaChannel(boolean hasAlphaChannel) { this.hasAlphaChannel = hasAlphaChannel; }
     
+    public long getLastModified() { return lastModified; }
+    public void setLastModified(long lastModified) { this.lastModified = lastModified; }
+    
+    public String getContentHash() { return contentHash; }
+    public void setContentHash(String contentHash) { this.contentHash = contentHash; }
+    
     public LocalDateTime getImportTime() { return importTime; }
     public void setImportTime(LocalDateTime importTime) { this.importTime = importTime; }
     
@@ -0,0 +1,65 @@
+package com.watermark.model;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import java.time.LocalDateTime;
+
+/**
+ * 处理历史记录模型
+ * 对应processing_history表中的一行
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class ProcessingRecord {
+    
+    private Long id;                // 记录ID
+    private String sourcePath;      // 源图片路径
+    private String outputPath;      // 输出图片路径
+    private Long templateId;        // 使用的模板ID（可为空）
+    private long processingTimeMs;  // 处理耗时（毫秒）
+    
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime processedAt; // 处理时间
+    
+    public ProcessingRecord() {
+        this.processedAt = LocalDateTime.now();
+    }
+    
+    public ProcessingRecord(String sourcePath, String outputPath, Long templateId, long processingTimeMs) {
+        this();
+        this.sourcePath = sourcePath;
+        this.outputPath = outputPath;
+        this.templateId = templateId;
+        this.processingTimeMs = processingTimeMs;
+    }
+    
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    
+    public String getSourcePath() { return sourcePath; }
+    public void setSourcePath(String sourcePath) { this.sourcePath = sourcePath; }
+    
+    public String getOutputPath() { return outputPath; }
+    public void setOutputPath(String outputPath) { this.outputPath = outputPath; }
+    
+    public Long getTemplateId() { return templateId; }
+    public void setTemplateId(Long templateId) { this.templateId = templateId; }
+    
+    public long getProcessingTimeMs() { return processingTimeMs; }
+    public void setProcessingTimeMs(long processingTimeMs) { this.processingTimeMs = processingTimeMs; }
+    
+    public LocalDateTime getProcessedAt() { return processedAt; }
+    public void setProcessedAt(LocalDateTime processedAt) { this.processedAt = processedAt; }
+    
+    @Override
+    public String toString() {
+        return "ProcessingRecord{" +
+                "id=" + id +
+                ", sourcePath='" + sourcePath + '\'' +
+                ", outputPath='" + outputPath + '\'' +
+                ", processingTimeMs=" + processingTimeMs +
+                '}';
+    }
+}
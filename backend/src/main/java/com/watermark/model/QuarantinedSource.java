@@ -0,0 +1,60 @@
+package com.watermark.model;
+
+/**
+ * 隔离的源文件模型
+ * 解码超时或超过尺寸限制的源文件，之后的导出在文件未变化时直接跳过
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class QuarantinedSource {
+    
+    public static final String REASON_TIMEOUT = "TIMEOUT";           // 解码渲染超时
+    public static final String REASON_SOURCE_SIZE = "SOURCE_SIZE";   // 文件字节数超过上限
+    public static final String REASON_PIXEL_LIMIT = "PIXEL_LIMIT";   // 文件头声明的尺寸无效或像素数超过上限
+    
+    private String sourcePath;      // 源文件路径（主键）
+    private long sourceSize;        // 隔离时的源文件大小
+    private long sourceMtime;       // 隔离时的源文件修改时间（毫秒）
+    private String reason;          // 隔离原因
+    private String message;         // 详细说明
+    private long quarantinedAt;     // 隔离时间（毫秒）
+    
+    public QuarantinedSource() {
+    }
+    
+    // Getters and Setters
+    public String getSourcePath() { return sourcePath; }
+    public void setSourcePath(String sourcePath) { this.sourcePath = sourcePath; }
+    
+    public long getSourceSize() { return sourceSize; }
+    public void setSourceSize(long sourceSize) { this.sourceSize = sourceSize; }
+    
+    public long getSourceMtime() { return sourceMtime; }
+    public void setSourceMtime(long sourceMtime) { this.sourceMtime = sourceMtime; }
+    
+    public String getReason() { return reason; }
+    public void setReason(String reason) { this.reason = reason; }
+    
+    public String getMessage() { return message; }
+    public void setMessage(String message) { this.message = message; }
+    
+    public long getQuarantinedAt() { return quarantinedAt; }
+    public void setQuarantinedAt(long quarantinedAt) { this.quarantinedAt = quarantinedAt; }
+    
+    /**
+     * 源文件是否仍是隔离时的文件（大小和修改时间都未变化），替换或修复后的文件不再跳过
+     */
+    public boolean matches(long size, long mtime) {
+        return sourceSize == size && sourceMtime == mtime;
+    }
+    
+    @Override
+    public String toString() {
+        return "QuarantinedSource{" +
+                "sourcePath='" + sourcePath + '\'' +
+                ", reason='" + reason + '\'' +
+                ", message='" + message + '\'' +
+                '}';
+    }
+}
@@ -71,16 +71,16 @@ public class TextWatermarkConfig extends WatermarkConfig {
         copy.fontSize = this.fontSize;
         copy.bold = this.bold;
         copy.italic = this.italic;
-        copy.color = new Color(this.color.getRGB());
+        copy.color = new Color(this.color.getRGB(), true);
         
         copy.hasShadow = this.hasShadow;
-        copy.shadowColor = new Color(this.shadowColor.getRGB());
+        copy.shadowColor = new Color(this.shadowColor.getRGB(), true);
         copy.shadowOffsetX = this.shadowOffsetX;
         copy.shadowOffsetY = this.shadowOffsetY;
         copy.shadowBlur = this.shadowBlur;
         
         copy.hasStroke = this.hasStroke;
-        copy.strokeColor = new Color(this.strokeColor.getRGB());
+        copy.strokeColor = new Color(this.strokeColor.getRGB(), true);
         copy.strokeWidth = this.strokeWidth;
         
         return copy;
@@ -76,6 +76,20 @@ public class WatermarkTemplate {
         return copy;
     }
     
+    /**
+     * 创建完全相同的独立对象（保留ID和时间戳，配置为新对象），修改后不影响原对象
+     */
+    public WatermarkTemplate deepCopy() {
+        WatermarkTemplate copy = new WatermarkTemplate();
+        copy.id = this.id;
+        copy.name = this.name;
+        copy.description = this.description;
+        copy.config = this.config != null ? this.config.copy() : null;
+        copy.createdAt = this.createdAt;
+        copy.updatedAt = this.updatedAt;
+        return copy;
+    }
+    
     @Override
     public String toString() {
         return "WatermarkTemplate{" +
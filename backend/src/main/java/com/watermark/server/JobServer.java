@@ -0,0 +1,531 @@
+package com.watermark.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.watermark.dto.ExportItemResult;
+import com.watermark.model.ExportJob;
+import com.watermark.service.DatabaseService;
+import com.watermark.service.HistoryService;
+import com.watermark.service.JobService;
+import com.watermark.util.PathManager;
+import com.watermark.util.SizeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 导出任务HTTP服务
+ * 只监听本机回环地址，供同一台机器上的其他程序提交批量导出任务，不启动JavaFX：
+ * 
+ *   java -Djava.awt.headless=true -cp watermark-app.jar com.watermark.server.JobServer --port 8765
+ * 
+ * 接口：
+ *   POST /jobs                 提交任务 {"templateId": 1 | "config": {...}, "files": [...], "outputPath": "..."}，
+ *                              大批量时用 "manifest": "/path/list.csv" 代替files，清单由服务端流式读取
+ *   GET  /jobs                 最近的任务
+ *   GET  /jobs/{id}            任务状态
+ *   GET  /jobs/{id}/events     逐张图片的处理结果（NDJSON流，?from=n 从第n条开始），任务结束时以任务状态结尾；
+ *                              清单任务只在内存中保留最近的结果，跳过的部分以gap行说明
+ *   GET  /jobs/{id}/results    任务状态和全部逐张结果
+ *   GET  /jobs/{id}/report     任务的NDJSON报告文件（每行一张图片的结果，含输出大小、各阶段耗时和异常类名）
+ *   GET  /health               服务状态
+ * 
+ * 访问控制：每次启动生成随机令牌，写入应用数据目录下仅当前用户可读的 job-server-{端口}.token 文件，
+ * /jobs 下的请求须在 X-Job-Token 请求头中携带该令牌；Host 必须是 127.0.0.1 或 localhost 加端口（防止DNS重绑定），
+ * 带 Origin 请求头的请求（浏览器发起的跨站请求）一律拒绝，提交任务的 Content-Type 必须是 application/json
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class JobServer {
+    
+    static {
+        System.setProperty("java.awt.headless", System.getProperty("java.awt.headless", "true"));
+    }
+    
+    private static final Logger logger = LoggerFactory.getLogger(JobServer.class);
+    
+    private static final int DEFAULT_PORT = 8765;
+    private static final int MAX_REQUEST_BYTES = 16 * 1024 * 1024; // 请求体上限
+    private static final int MAX_LIST_SIZE = 100;                   // 任务列表最多返回的条数
+    private static final long EVENT_POLL_MILLIS = 15000;            // 没有新结果时发送心跳的间隔
+    private static final String JSON_TYPE = "application/json; charset=utf-8";
+    private static final String NDJSON_TYPE = "application/x-ndjson; charset=utf-8";
+    private static final int TOKEN_BYTES = 32;
+    
+    public static final String TOKEN_HEADER = "X-Job-Token";
+    
+    private final JobService jobService;
+    private final ObjectMapper objectMapper;
+    private HttpServer server;
+    private ExecutorService httpExecutor;
+    private byte[] token;
+    private File tokenFile;
+    
+    public JobServer() {
+        this.jobService = JobService.getInstance();
+        this.objectMapper = new ObjectMapper();
+    }
+    
+    public static void main(String[] args) {
+        int port = DEFAULT_PORT;
+        int workers = 2;
+        Integer threads = null;
+        Long memory = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                switch (arg) {
+                    case "--port":
+                        port = Integer.parseInt(require(value, arg));
+                        i++;
+                        break;
+                    case "--workers":
+                        workers = Integer.parseInt(require(value, arg));
+                        i++;
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(require(value, arg));
+                        i++;
+                        break;
+                    case "--memory":
+                        memory = SizeUtils.parseSize(require(value, arg));
+                        i++;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("未知参数: " + arg);
+                }
+            }
+            if (workers < 1 || (threads != null && threads < 1)) {
+                throw new IllegalArgumentException("--workers 和 --threads 必须大于0");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("参数错误: " + e.getMessage());
+            System.err.println("用法: JobServer [--port 8765] [--workers 2] [--threads n] [--memory 2g]");
+            System.exit(2);
+            return;
+        }
+        
+        // 默认按同时执行的任务数平分CPU和内存
+        int renderThreads = threads != null ? threads
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / workers);
+        long memoryBudget = memory != null ? memory : Runtime.getRuntime().maxMemory() / 2 / workers;
+        
+        JobServer jobServer = new JobServer();
+        try {
+            PathManager.initializeAppDirectories();
+            DatabaseService.getInstance().initialize();
+            jobServer.start(port, workers, renderThreads, memoryBudget);
+        } catch (Exception e) {
+            logger.error("导出任务服务启动失败", e);
+            System.exit(3);
+            return;
+        }
+        
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            jobServer.stop();
+            HistoryService.getInstance().shutdown(5000);
+            DatabaseService.getInstance().close();
+        }, "job-server-shutdown"));
+    }
+    
+    private static String require(String value, String option) {
+        if (value == null) {
+            throw new IllegalArgumentException(option + " 缺少参数值");
+        }
+        return value;
+    }
+    
+    /**
+     * 启动任务服务和HTTP服务（端口为0时自动分配）
+     */
+    public void start(int port, int workers, int renderThreads, long memoryBudgetBytes) throws Exception {
+        jobService.start(workers, renderThreads, memoryBudgetBytes);
+        
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        // 进度流会长时间占用处理线程，使用按需创建的线程池
+        AtomicInteger threadCount = new AtomicInteger();
+        httpExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "job-server-http-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(httpExecutor);
+        server.createContext("/jobs", this::handleJobs);
+        server.createContext("/health", this::handleHealth);
+        
+        byte[] random = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(random);
+        token = toHex(random).getBytes(StandardCharsets.US_ASCII);
+        tokenFile = getTokenFile(getPort());
+        writeTokenFile(tokenFile.toPath(), token);
+        server.start();
+        
+        logger.info("导出任务服务已启动: http://{}:{}/，访问令牌文件: {}",
+                server.getAddress().getHostString(), getPort(), tokenFile);
+    }
+    
+    /**
+     * 指定端口的服务的令牌文件
+     */
+    public static File getTokenFile(int port) {
+        return new File(PathManager.getAppDataDir(), "job-server-" + port + ".token");
+    }
+    
+    /**
+     * 读取本机指定端口的服务的访问令牌
+     */
+    public static String readToken(int port) throws IOException {
+        return new String(Files.readAllBytes(getTokenFile(port).toPath()), StandardCharsets.US_ASCII).trim();
+    }
+    
+    /**
+     * 以仅当前用户可读写的权限新建令牌文件（先删除上次启动留下的文件，创建时即带权限，不存在可被他人读取的窗口）
+     */
+    private static void writeTokenFile(Path path, byte[] token) throws IOException {
+        Files.deleteIfExists(path);
+        try {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            // 非POSIX文件系统（Windows）：创建后收回其他用户的权限
+            Files.createFile(path);
+            File file = path.toFile();
+            file.setReadable(false, false);
+            file.setWritable(false, false);
+            file.setReadable(true, true);
+            file.setWritable(true, true);
+        } catch (FileAlreadyExistsException e) {
+            throw new IOException("令牌文件已被其他进程创建: " + path, e);
+        }
+        Files.write(path, token);
+    }
+    
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b & 0xff));
+        }
+        return hex.toString();
+    }
+    
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+    
+    /**
+     * 停止HTTP服务并等待执行中的任务完成
+     */
+    public void stop() {
+        if (server != null) {
+            server.stop(1);
+            httpExecutor.shutdownNow();
+            server = null;
+            if (!tokenFile.delete() && tokenFile.exists()) {
+                logger.warn("删除令牌文件失败: {}", tokenFile);
+            }
+        }
+        jobService.shutdown(60000);
+    }
+    
+    /**
+     * 检查请求来源：Host必须是本机回环地址加服务端口，不接受浏览器的跨站请求；需要令牌时检查令牌
+     * 
+     * @return 请求被拒绝时已发送错误响应，返回false
+     */
+    private boolean checkAccess(HttpExchange exchange, boolean requireToken) {
+        String host = exchange.getRequestHeaders().getFirst("Host");
+        int port = getPort();
+        if (host == null || !(host.equalsIgnoreCase("127.0.0.1:" + port) || host.equalsIgnoreCase("localhost:" + port))) {
+            sendError(exchange, 403, "不允许的Host: " + host);
+            return false;
+        }
+        if (exchange.getRequestHeaders().containsKey("Origin")) {
+            sendError(exchange, 403, "不接受跨站请求");
+            return false;
+        }
+        if (requireToken) {
+            String provided = exchange.getRequestHeaders().getFirst(TOKEN_HEADER);
+            // 按固定时间比较，不从响应时间泄露令牌内容
+            if (provided == null || !MessageDigest.isEqual(token, provided.getBytes(StandardCharsets.US_ASCII))) {
+                sendError(exchange, 401, "缺少或无效的访问令牌（" + TOKEN_HEADER + "）");
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        if (!checkAccess(exchange, false)) {
+            exchange.close();
+            return;
+        }
+        Map<String, Object> health = new LinkedHashMap<>();
+        health.put("status", "ok");
+        sendJson(exchange, 200, health);
+    }
+    
+    private void handleJobs(HttpExchange exchange) throws IOException {
+        try {
+            if (!checkAccess(exchange, true)) {
+                return;
+            }
+            String[] parts = exchange.getRequestURI().getPath().replaceAll("/+$", "").split("/");
+            String method = exchange.getRequestMethod();
+            
+            // parts: ["", "jobs", id, action]
+            if (parts.length == 2) {
+                if ("POST".equals(method)) {
+                    submitJob(exchange);
+                } else if ("GET".equals(method)) {
+                    sendJson(exchange, 200, jobService.getRecentJobs(MAX_LIST_SIZE));
+                } else {
+                    sendError(exchange, 405, "不支持的请求方法: " + method);
+                }
+                return;
+            }
+            
+            if (!"GET".equals(method)) {
+                sendError(exchange, 405, "不支持的请求方法: " + method);
+                return;
+            }
+            
+            long id;
+            try {
+                id = Long.parseLong(parts[2]);
+            } catch (NumberFormatException e) {
+                sendError(exchange, 404, "任务不存在: " + parts[2]);
+                return;
+            }
+            ExportJob job = jobService.getJob(id);
+            if (job == null) {
+                sendError(exchange, 404, "任务不存在: " + id);
+                return;
+            }
+            
+            String action = parts.length > 3 ? parts[3] : "";
+            switch (action) {
+                case "":
+                    sendJson(exchange, 200, job);
+                    break;
+                case "events":
+                    streamEvents(exchange, job, parseFrom(exchange.getRequestURI().getQuery()));
+                    break;
+                case "results":
+                    sendResults(exchange, job);
+                    break;
+                case "report":
+                    sendReport(exchange, job);
+                    break;
+                default:
+                    sendError(exchange, 404, "未知接口: " + exchange.getRequestURI().getPath());
+                    break;
+            }
+            
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (IllegalStateException e) {
+            sendError(exchange, 503, e.getMessage());
+        } catch (Exception e) {
+            logger.error("处理请求失败: {} {}", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+            sendError(exchange, 500, e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    private void submitJob(HttpExchange exchange) throws Exception {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        String mediaType = contentType != null ? contentType.split(";", 2)[0].trim() : "";
+        if (!"application/json".equalsIgnoreCase(mediaType)) {
+            sendError(exchange, 415, "Content-Type必须是application/json: " + contentType);
+            return;
+        }
+        
+        JsonNode request;
+        try {
+            request = objectMapper.readTree(readBody(exchange.getRequestBody()));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("请求体不是有效的JSON: " + e.getMessage());
+        }
+        if (request == null || !request.isObject()) {
+            throw new IllegalArgumentException("请求体必须是JSON对象");
+        }
+        
+        List<String> files = new ArrayList<>();
+        JsonNode filesNode = request.path("files");
+        if (filesNode.isArray()) {
+            for (JsonNode file : filesNode) {
+                files.add(file.asText());
+            }
+        }
+        Long templateId = request.hasNonNull("templateId") ? request.get("templateId").asLong() : null;
+        String configJson = request.hasNonNull("config") ? objectMapper.writeValueAsString(request.get("config")) : null;
+        String outputPath = request.hasNonNull("outputPath") ? request.get("outputPath").asText() : null;
+        String manifest = request.hasNonNull("manifest") ? request.get("manifest").asText() : null;
+        if (manifest != null && !files.isEmpty()) {
+            throw new IllegalArgumentException("files和manifest只能指定一个");
+        }
+        
+        ExportJob job = manifest != null
+                ? jobService.submitManifest(manifest, templateId, configJson, outputPath)
+                : jobService.submit(files, templateId, configJson, outputPath);
+        exchange.getResponseHeaders().set("Location", "/jobs/" + job.getId());
+        sendJson(exchange, 202, job);
+    }
+    
+    /**
+     * 以NDJSON流输出逐张结果，每条结果一行；长时间没有新结果时输出心跳行，任务结束时输出任务状态后关闭
+     */
+    private void streamEvents(HttpExchange exchange, ExportJob job, int from) throws Exception {
+        JobService.JobProgress progress = jobService.getProgress(job.getId());
+        exchange.getResponseHeaders().set("Content-Type", NDJSON_TYPE);
+        exchange.sendResponseHeaders(200, 0);
+        
+        OutputStream out = exchange.getResponseBody();
+        int next = from;
+        if (progress != null) {
+            while (true) {
+                boolean finished = progress.isFinished();
+                List<ExportItemResult> items = new ArrayList<>();
+                int start = progress.awaitItems(next, finished ? 0 : EVENT_POLL_MILLIS, items);
+                if (start > next) {
+                    ObjectNode gap = objectMapper.createObjectNode();
+                    gap.put("event", "gap");
+                    gap.put("from", next);
+                    gap.put("to", start);
+                    writeLine(out, gap);
+                    next = start;
+                }
+                for (ExportItemResult item : items) {
+                    ObjectNode line = objectMapper.valueToTree(item);
+                    line.put("event", "item");
+                    line.put("index", next++);
+                    writeLine(out, line);
+                }
+                if (items.isEmpty()) {
+                    if (finished) {
+                        break;
+                    }
+                    if (progress.isFinished()) {
+                        continue;
+                    }
+                    ObjectNode heartbeat = objectMapper.createObjectNode();
+                    heartbeat.put("event", "heartbeat");
+                    writeLine(out, heartbeat);
+                }
+                out.flush();
+            }
+            job = progress.snapshot();
+        }
+        
+        ObjectNode end = objectMapper.createObjectNode();
+        end.put("event", "job");
+        end.set("job", objectMapper.valueToTree(job));
+        writeLine(out, end);
+        out.flush();
+    }
+    
+    private void sendResults(HttpExchange exchange, ExportJob job) throws Exception {
+        JobService.JobProgress progress = jobService.getProgress(job.getId());
+        Map<String, Object> results = new LinkedHashMap<>();
+        results.put("job", progress != null ? progress.snapshot() : job);
+        // 逐张结果只在内存中保留最近的任务
+        results.put("items", progress != null ? progress.awaitItems(0, 0) : null);
+        sendJson(exchange, 200, results);
+    }
+    
+    /**
+     * 输出任务的报告文件，任务执行中时只包含已写入的部分
+     */
+    private void sendReport(HttpExchange exchange, ExportJob job) throws IOException {
+        File reportFile = job.getReportPath() != null ? new File(job.getReportPath()) : null;
+        if (reportFile == null || !reportFile.isFile()) {
+            sendError(exchange, 404, "任务没有报告文件: " + job.getId());
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", NDJSON_TYPE);
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            Files.copy(reportFile.toPath(), out);
+        }
+    }
+    
+    private void writeLine(OutputStream out, Object value) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(value));
+        out.write('\n');
+    }
+    
+    private static int parseFrom(String query) {
+        if (query != null) {
+            for (String param : query.split("&")) {
+                if (param.startsWith("from=")) {
+                    try {
+                        return Math.max(0, Integer.parseInt(param.substring(5)));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("无效的from参数: " + param);
+                    }
+                }
+            }
+        }
+        return 0;
+    }
+    
+    private static byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            buffer.write(chunk, 0, read);
+            if (buffer.size() > MAX_REQUEST_BYTES) {
+                throw new IllegalArgumentException("请求体过大");
+            }
+        }
+        return buffer.toByteArray();
+    }
+    
+    private void sendJson(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", JSON_TYPE);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+    
+    private void sendError(HttpExchange exchange, int status, String message) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("error", message);
+        try {
+            sendJson(exchange, status, error);
+        } catch (IOException e) {
+            // 响应头已发送（如进度流中途出错）或客户端已断开
+            logger.debug("发送错误响应失败: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,878 @@
+package com.watermark.service;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import com.watermark.dto.BatchExportResult;
+import com.watermark.dto.ExportItemResult;
+import com.watermark.dto.WatermarkConfigData;
+import com.watermark.encoder.ImageEncodeOptions;
+import com.watermark.model.ExportFingerprint;
+import com.watermark.model.QuarantinedSource;
+import com.watermark.model.WatermarkConfig;
+import com.watermark.util.DecodeLimits;
+import com.watermark.util.DecodeWatchdog;
+import com.watermark.util.ImageHeader;
+import com.watermark.util.OutputPathPlanner;
+import com.watermark.util.SourcePrefetcher;
+import com.watermark.util.WriteBehindWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量导出服务
+ * 对一组源图片应用同一份水印配置并导出，支持基于指纹的增量导出；
+ * 源文件由后台线程提前读入内存，编码结果交给后写队列写出，磁盘读写与渲染并行进行
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class BatchExportService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(BatchExportService.class);
+    
+    private static final int FINGERPRINT_FLUSH_SIZE = 500; // 指纹批量写入的条数
+    private static final int PREFETCH_DEPTH = 4;            // 预读的源文件个数
+    private static final long MAX_IO_BUFFER_BYTES = 128L * 1024 * 1024; // 预读和后写缓冲各自的字节上限
+    private static final int IN_FLIGHT_PER_THREAD = 2;      // 每个渲染线程最多排队的图片数
+    private static final int DECODED_BYTES_PER_PIXEL = 8;   // 估算渲染内存：解码图片和绘制/编码缓冲各约4字节每像素
+    
+    private static BatchExportService instance;
+    private final WatermarkService watermarkService;
+    private final FingerprintService fingerprintService;
+    private final ImageService imageService;
+    private final HistoryService historyService;
+    private final QuarantineService quarantineService;
+    
+    /**
+     * 单张图片处理结果的监听器，在调用exportImages的线程上按处理完成的顺序回调
+     */
+    public interface ItemListener {
+        void onItem(ExportItemResult item);
+    }
+    
+    /**
+     * 已提交渲染、尚未确认写完的导出结果
+     */
+    private static final class PendingWrite {
+        final File source;
+        final File output;
+        final String dedupeKey;
+        final String contentHash;
+        final long startTime;
+        final long itemStart;   // 开始处理该图片的时间（含读取）
+        final long readMs;      // 读取阶段耗时
+        // 渲染完成后得到后写队列的写入结果
+        CompletableFuture<Future<File>> rendered;
+        // 直接读写文件的渲染已自行记录处理历史
+        volatile boolean historyRecorded;
+        // 超过解码限制而被隔离时的原因
+        volatile String quarantineReason;
+        // 解码超时，已不再等待该图片
+        volatile boolean abandoned;
+        // 超时后是否为其补充了渲染线程
+        volatile boolean threadAdded;
+        // 各阶段完成的时间，未经过该阶段时为0
+        volatile long renderStartedAt;
+        volatile long renderFinishedAt;
+        volatile long writtenAt;
+        
+        PendingWrite(File source, File output, String dedupeKey, String contentHash, long startTime,
+                     long itemStart, long readMs) {
+            this.source = source;
+            this.output = output;
+            this.dedupeKey = dedupeKey;
+            this.contentHash = contentHash;
+            this.startTime = startTime;
+            this.itemStart = itemStart;
+            this.readMs = readMs;
+        }
+        
+        /**
+         * 生成单张图片的结果，按记录的时间计算各阶段耗时
+         */
+        ExportItemResult toItemResult(String status, Throwable error) {
+            long now = System.currentTimeMillis();
+            ExportItemResult item = newItemResult(source.getPath(), output.getPath(), status, now - itemStart, error);
+            item.setReadMs(readMs);
+            if (renderStartedAt > 0) {
+                item.setQueueMs(Math.max(0, renderStartedAt - itemStart - readMs));
+                if (renderFinishedAt > 0) {
+                    item.setRenderMs(renderFinishedAt - renderStartedAt);
+                    item.setWriteMs(writtenAt > 0 ? writtenAt - renderFinishedAt : 0);
+                }
+            }
+            return item;
+        }
+        
+        boolean isDone() {
+            if (!rendered.isDone()) {
+                return false;
+            }
+            if (rendered.isCompletedExceptionally()) {
+                return true;
+            }
+            return rendered.join().isDone();
+        }
+        
+        File await() throws InterruptedException, ExecutionException {
+            return rendered.get().get();
+        }
+    }
+    
+    /**
+     * 一次批量导出中各渲染任务共用的配置、内存预算、后写队列和解码看门狗
+     */
+    private static final class RenderStage {
+        final WatermarkConfig config;
+        final ImageEncodeOptions encodeOptions;
+        final Semaphore renderBudget;
+        final int budgetPermits;
+        final WriteBehindWriter writer;
+        final ThreadPoolExecutor executor;
+        final DecodeWatchdog watchdog;
+        final DecodeLimits limits;
+        final boolean quarantine;
+        final int maxAddedThreads;
+        private int addedThreads;
+        
+        RenderStage(WatermarkConfig config, ImageEncodeOptions encodeOptions, int budgetPermits,
+                    WriteBehindWriter writer, ThreadPoolExecutor executor, DecodeWatchdog watchdog,
+                    DecodeLimits limits, boolean quarantine, int maxAddedThreads) {
+            this.config = config;
+            this.encodeOptions = encodeOptions;
+            this.renderBudget = new Semaphore(budgetPermits);
+            this.budgetPermits = budgetPermits;
+            this.writer = writer;
+            this.executor = executor;
+            this.watchdog = watchdog;
+            this.limits = limits;
+            this.quarantine = quarantine;
+            this.maxAddedThreads = maxAddedThreads;
+        }
+        
+        /**
+         * 渲染线程被超时的解码占住时补充一个线程，使其余图片的渲染并行度不变；
+         * 补充的线程数不超过maxAddedThreads，避免无法中止的解码不断增加线程
+         * 
+         * @return 是否补充了线程
+         */
+        synchronized boolean addThread() {
+            if (addedThreads >= maxAddedThreads) {
+                return false;
+            }
+            addedThreads++;
+            executor.setMaximumPoolSize(executor.getMaximumPoolSize() + 1);
+            executor.setCorePoolSize(executor.getCorePoolSize() + 1);
+            return true;
+        }
+        
+        /**
+         * 超时的解码最终结束后收回补充的线程
+         */
+        synchronized void removeThread() {
+            addedThreads--;
+            executor.setCorePoolSize(executor.getCorePoolSize() - 1);
+            executor.setMaximumPoolSize(executor.getMaximumPoolSize() - 1);
+        }
+    }
+    
+    private BatchExportService() {
+        this.watermarkService = WatermarkService.getInstance();
+        this.fingerprintService = FingerprintService.getInstance();
+        this.imageService = ImageService.getInstance();
+        this.historyService = HistoryService.getInstance();
+        this.quarantineService = QuarantineService.getInstance();
+    }
+    
+    public static synchronized BatchExportService getInstance() {
+        if (instance == null) {
+            instance = new BatchExportService();
+        }
+        return instance;
+    }
+    
+    /**
+     * 批量导出图片
+     * 配置JSON中可选的 incremental（默认true）控制是否跳过未变化的项，
+     * verifyContent（默认false）控制是否额外比较源文件内容哈希，
+     * deduplicate（默认true）控制内容完全相同的源图片是否只渲染一次；
+     * maxSourceBytes、maxPixels、decodeTimeoutMs 限制单张图片的解码（见DecodeLimits），
+     * quarantine（默认true）控制超过限制的文件是否隔离、之后的导出不再处理，
+     * retryQuarantined（默认false）解除本批次中已隔离文件的隔离并重新处理
+     * 
+     * @param imagePaths 源图片路径列表
+     * @param configJson 水印配置JSON（需包含outputPath）
+     */
+    public BatchExportResult exportImages(List<String> imagePaths, String configJson) {
+        return exportImages(imagePaths, configJson, (ItemListener) null);
+    }
+    
+    /**
+     * 批量导出图片，并逐张报告处理结果
+     * 
+     * @param listener 单张图片结果监听器（可为null）
+     */
+    public BatchExportResult exportImages(List<String> imagePaths, String configJson, ItemListener listener) {
+        long bufferBytes = Math.min(MAX_IO_BUFFER_BYTES, Runtime.getRuntime().maxMemory() / 8);
+        return exportImages(imagePaths, configJson, 1, bufferBytes * 4, listener);
+    }
+    
+    /**
+     * 使用多个渲染线程批量导出图片
+     * 内存预算的四分之一用于预读、四分之一用于后写缓冲，其余一半按估算的像素内存分配给同时进行的渲染，
+     * 预算不足时大图片等待其他渲染完成后再开始
+     * 
+     * @param imagePaths 源图片路径列表
+     * @param configJson 水印配置JSON（需包含outputPath）
+     * @param renderThreads 渲染线程数
+     * @param memoryBudgetBytes 本次导出的内存预算（字节）
+     */
+    public BatchExportResult exportImages(List<String> imagePaths, String configJson,
+                                          int renderThreads, long memoryBudgetBytes) {
+        return exportImages(imagePaths, configJson, renderThreads, memoryBudgetBytes, null);
+    }
+    
+    /**
+     * 使用多个渲染线程批量导出图片，并逐张报告处理结果
+     * 
+     * @param listener 单张图片结果监听器（可为null）
+     */
+    public BatchExportResult exportImages(List<String> imagePaths, String configJson,
+                                          int renderThreads, long memoryBudgetBytes, ItemListener listener) {
+        long startTime = System.currentTimeMillis();
+        BatchExportResult result = new BatchExportResult(imagePaths.size());
+        
+        // 配置只解析一次，所有图片共用
+        WatermarkConfigData configData = watermarkService.parseWatermarkConfig(configJson);
+        WatermarkConfig config = watermarkService.convertToWatermarkConfig(configData);
+        ImageEncodeOptions encodeOptions = watermarkService.createEncodeOptions(configData);
+        
+        JSONObject options = JSON.parseObject(configJson);
+        boolean incremental = !options.containsKey("incremental") || options.getBooleanValue("incremental");
+        boolean verifyContent = options.getBooleanValue("verifyContent");
+        boolean deduplicate = !options.containsKey("deduplicate") || options.getBooleanValue("deduplicate");
+        boolean quarantine = !options.containsKey("quarantine") || options.getBooleanValue("quarantine");
+        DecodeLimits limits = DecodeLimits.fromOptions(options);
+        
+        String configHash = fingerprintService.computeConfigHash(configData);
+        Map<String, ExportFingerprint> storedFingerprints = loadFingerprints(imagePaths, configData, incremental);
+        List<ExportFingerprint> pendingFingerprints = new ArrayList<>();
+        // 本批次已渲染的结果：内容哈希+输出格式 -> 输出路径
+        Map<String, String> renderedOutputs = new HashMap<>();
+        
+        // 先为整个批次规划输出路径，再排除未变化的项（不比较内容哈希时增量判断只需要文件属性），只预读需要处理的源文件
+        Map<String, String> plannedOutputs = planOutputPaths(imagePaths, configData, storedFingerprints, incremental);
+        // 已隔离且未变化的源文件和超过字节上限的源文件不预读、不渲染
+        Map<String, QuarantinedSource> quarantined = quarantine
+                ? loadQuarantined(imagePaths, options.getBooleanValue("retryQuarantined"))
+                : Collections.emptyMap();
+        List<String> pendingPaths = new ArrayList<>();
+        for (String imagePath : imagePaths) {
+            File output = new File(plannedOutputs.get(imagePath));
+            String rejection = checkSource(new File(imagePath), quarantined, limits, quarantine);
+            if (rejection != null) {
+                result.incrementFailure();
+                ExportItemResult item = new ExportItemResult(imagePath, output.getPath(),
+                        quarantine ? ExportItemResult.STATUS_QUARANTINED : ExportItemResult.STATUS_FAILED, rejection, 0);
+                notifyItem(listener, item);
+                if (quarantine) {
+                    result.incrementQuarantined();
+                }
+            } else if (incremental && !verifyContent && fingerprintService.isUpToDate(
+                    storedFingerprints.get(output.getAbsolutePath()), new File(imagePath), output, configHash, null)) {
+                result.incrementSkipped();
+                notifyItem(listener, newItemResult(imagePath, output.getPath(), ExportItemResult.STATUS_SKIPPED, 0, null));
+                logger.debug("图片未变化，跳过: {}", imagePath);
+            } else {
+                pendingPaths.add(imagePath);
+            }
+        }
+        
+        int threads = Math.max(1, renderThreads);
+        int maxInFlight = threads * IN_FLIGHT_PER_THREAD;
+        long bufferBytes = Math.max(1, memoryBudgetBytes / 4);
+        Deque<PendingWrite> pendingWrites = new ArrayDeque<>();
+        Map<String, PendingWrite> pendingByKey = new HashMap<>();
+        ThreadPoolExecutor renderExecutor = createRenderExecutor(threads);
+        
+        try (SourcePrefetcher prefetcher = new SourcePrefetcher(pendingPaths, PREFETCH_DEPTH, bufferBytes);
+             WriteBehindWriter writer = new WriteBehindWriter(bufferBytes);
+             DecodeWatchdog watchdog = new DecodeWatchdog()) {
+            
+            RenderStage stage = new RenderStage(config, encodeOptions, budgetPermits(memoryBudgetBytes / 2),
+                                                writer, renderExecutor, watchdog, limits, quarantine, threads);
+            
+            for (String imagePath : pendingPaths) {
+                long itemStart = System.currentTimeMillis();
+                try {
+                    File source = new File(imagePath);
+                    String outputPath = plannedOutputs.get(imagePath);
+                    File output = new File(outputPath);
+                    byte[] sourceData = prefetcher.take(imagePath);
+                    String contentHash = verifyContent ? getContentHash(source, sourceData) : null;
+                    
+                    if (verifyContent && incremental && fingerprintService.isUpToDate(
+                            storedFingerprints.get(output.getAbsolutePath()), source, output, configHash, contentHash)) {
+                        result.incrementSkipped();
+                        ExportItemResult item = newItemResult(imagePath, outputPath, ExportItemResult.STATUS_SKIPPED,
+                                                              System.currentTimeMillis() - itemStart, null);
+                        item.setReadMs(item.getElapsedMs());
+                        notifyItem(listener, item);
+                        logger.debug("图片未变化，跳过: {}", imagePath);
+                        continue;
+                    }
+                    
+                    // 内容相同且配置相同的图片只渲染一次，其余直接复制结果
+                    String dedupeKey = null;
+                    if (deduplicate && contentHash == null) {
+                        contentHash = getContentHash(source, sourceData);
+                    }
+                    // 读取阶段只包括取得源文件内容和计算哈希，之后的等待计入排队时间
+                    long readMs = System.currentTimeMillis() - itemStart;
+                    if (deduplicate) {
+                        dedupeKey = contentHash + ":" + watermarkService.getOutputFormat(outputPath);
+                        
+                        // 相同内容的结果仍在处理中时，只等待该图片写完再复制，不等待队列中的其他图片
+                        long waitStart = System.currentTimeMillis();
+                        String batchOutput = renderedOutputs.get(dedupeKey);
+                        PendingWrite sameContent = pendingByKey.get(dedupeKey);
+                        if (sameContent != null) {
+                            batchOutput = awaitOutput(sameContent);
+                        }
+                        long copyStart = System.currentTimeMillis();
+                        if (reuseRenderedOutput(source, output, dedupeKey, batchOutput, contentHash, configHash)) {
+                            result.incrementSuccess();
+                            result.incrementDeduplicated();
+                            pendingFingerprints.add(fingerprintService.capture(source, output, configHash, contentHash));
+                            long now = System.currentTimeMillis();
+                            ExportItemResult item = newItemResult(imagePath, outputPath,
+                                    ExportItemResult.STATUS_DEDUPLICATED, now - itemStart, null);
+                            item.setReadMs(readMs);
+                            item.setQueueMs(copyStart - waitStart);
+                            item.setWriteMs(now - copyStart);
+                            notifyItem(listener, item);
+                            continue;
+                        }
+                    }
+                    
+                    // 同一输出路径（源列表中重复的路径）仍在处理时先等其写完，保证按提交顺序写入；
+                    // 处理中的图片达到上限时等待最早的一张完成
+                    int keep = isOutputPending(pendingWrites, output) ? 0 : maxInFlight - 1;
+                    drainPendingWrites(pendingWrites, pendingByKey, renderedOutputs, pendingFingerprints,
+                                       result, configHash, keep, listener);
+                    
+                    PendingWrite pending = new PendingWrite(source, output, dedupeKey, contentHash,
+                                                            System.currentTimeMillis(), itemStart, readMs);
+                    pending.rendered = renderAsync(pending, sourceData, outputPath, stage);
+                    sourceData = null;
+                    pendingWrites.add(pending);
+                    if (dedupeKey != null) {
+                        pendingByKey.put(dedupeKey, pending);
+                    }
+                    
+                    drainPendingWrites(pendingWrites, pendingByKey, renderedOutputs, pendingFingerprints,
+                                       result, configHash, Integer.MAX_VALUE, listener);
+                    
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    logger.warn("批量导出被中断: {}", imagePath);
+                    break;
+                } catch (Exception e) {
+                    result.incrementFailure();
+                    notifyItem(listener, newItemResult(imagePath, plannedOutputs.get(imagePath),
+                            ExportItemResult.STATUS_FAILED, System.currentTimeMillis() - itemStart, e));
+                    logger.error("处理图片失败: {}", imagePath, e);
+                }
+            }
+            
+            try {
+                drainPendingWrites(pendingWrites, pendingByKey, renderedOutputs, pendingFingerprints,
+                                   result, configHash, 0, listener);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("等待导出结果写入时被中断");
+            }
+        } finally {
+            renderExecutor.shutdownNow();
+        }
+        
+        flushFingerprints(pendingFingerprints);
+        
+        result.setElapsedMs(System.currentTimeMillis() - startTime);
+        logger.info("批量导出完成: {}", result);
+        return result;
+    }
+    
+    /**
+     * 规划整个批次的输出路径
+     * 每个输出目录只列出一次；批次内输出重名时第一个源图片使用原名称，其余改为 name_(n).ext，
+     * 磁盘上已有的同名文件只在是上次导出同一源图片的结果时覆盖，使重复导出得到相同的名称
+     * 
+     * @param incremental 是否按需查询改名候选文件的指纹（预加载的指纹只包含原名称的输出）
+     * @return 源图片路径 -> 输出路径
+     */
+    private Map<String, String> planOutputPaths(List<String> imagePaths, WatermarkConfigData configData,
+                                                Map<String, ExportFingerprint> storedFingerprints,
+                                                boolean incremental) {
+        OutputPathPlanner planner = new OutputPathPlanner();
+        Map<String, String> plannedOutputs = new HashMap<>(imagePaths.size() * 2);
+        for (String imagePath : imagePaths) {
+            if (plannedOutputs.containsKey(imagePath)) {
+                continue;
+            }
+            
+            String outputPath = watermarkService.resolveOutputPath(imagePath, configData);
+            if (!planner.claim(outputPath)) {
+                String sourcePath = new File(imagePath).getAbsolutePath();
+                String renamed = planner.reserveUnique(outputPath, existing -> {
+                    ExportFingerprint stored = incremental
+                            ? findFingerprint(storedFingerprints, existing.getAbsolutePath())
+                            : storedFingerprints.get(existing.getAbsolutePath());
+                    return stored != null && sourcePath.equals(stored.getSourcePath());
+                });
+                logger.debug("批次内输出文件重名，改为: {} -> {}", imagePath, renamed);
+                outputPath = renamed;
+            }
+            plannedOutputs.put(imagePath, outputPath);
+        }
+        return plannedOutputs;
+    }
+    
+    /**
+     * 获取源文件内容哈希，已预读时直接使用内存中的内容
+     */
+    private String getContentHash(File source, byte[] sourceData) throws Exception {
+        return sourceData != null
+                ? imageService.getContentHash(source, sourceData)
+                : imageService.getContentHash(source);
+    }
+    
+    /**
+     * 处理已完成的渲染和写入
+     * 按提交顺序处理，遇到未完成的项时等待，直到剩余的项不超过keep个且最早的一项尚未完成
+     * 
+     * @param keep 允许留在队列中的未完成项数，0表示等待全部完成
+     */
+    private void drainPendingWrites(Deque<PendingWrite> pendingWrites, Map<String, PendingWrite> pendingByKey,
+                                    Map<String, String> renderedOutputs, List<ExportFingerprint> pendingFingerprints,
+                                    BatchExportResult result, String configHash, int keep, ItemListener listener)
+            throws InterruptedException {
+        while (!pendingWrites.isEmpty() && (pendingWrites.size() > keep || pendingWrites.peek().isDone())) {
+            PendingWrite pending = pendingWrites.poll();
+            if (pending.dedupeKey != null && pendingByKey.get(pending.dedupeKey) == pending) {
+                pendingByKey.remove(pending.dedupeKey);
+            }
+            
+            try {
+                pending.await();
+            } catch (ExecutionException e) {
+                result.incrementFailure();
+                String status = ExportItemResult.STATUS_FAILED;
+                if (pending.quarantineReason != null) {
+                    result.incrementQuarantined();
+                    status = ExportItemResult.STATUS_QUARANTINED;
+                }
+                notifyItem(listener, pending.toItemResult(status, e.getCause() != null ? e.getCause() : e));
+                logger.error("导出图片失败: {} -> {}", pending.source, pending.output, e.getCause());
+                continue;
+            }
+            
+            if (!pending.historyRecorded) {
+                historyService.record(pending.source.getAbsolutePath(), pending.output.getPath(), null,
+                                      System.currentTimeMillis() - pending.startTime);
+                logger.info("图片处理完成: {}", pending.output.getPath());
+            }
+            completeExport(pending.source, pending.output, pending.dedupeKey, pending.contentHash, configHash,
+                           renderedOutputs, pendingFingerprints, result);
+            notifyItem(listener, pending.toItemResult(ExportItemResult.STATUS_SUCCESS, null));
+        }
+    }
+    
+    /**
+     * 等待一张处理中的图片写完，不处理队列中的其他项（结果仍由drainPendingWrites按顺序汇总）
+     * 
+     * @return 写完的输出文件路径，渲染或写入失败时返回null
+     */
+    private static String awaitOutput(PendingWrite pending) throws InterruptedException {
+        try {
+            pending.await();
+            return pending.output.getAbsolutePath();
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * 通知单张图片的处理结果，监听器抛出的异常不影响导出
+     */
+    private static void notifyItem(ItemListener listener, ExportItemResult item) {
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.onItem(item);
+        } catch (Exception e) {
+            logger.warn("导出结果监听器执行失败: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * 生成单张图片的结果，成功时记录输出文件大小，失败时记录异常类名和原因
+     */
+    private static ExportItemResult newItemResult(String sourcePath, String outputPath, String status,
+                                                  long elapsedMs, Throwable error) {
+        ExportItemResult item = new ExportItemResult(sourcePath, outputPath, status,
+                                                     error != null ? error.getMessage() : null, elapsedMs);
+        if (error != null) {
+            item.setErrorClass(error.getClass().getName());
+        } else if (outputPath != null) {
+            item.setOutputBytes(new File(outputPath).length());
+        }
+        return item;
+    }
+    
+    /**
+     * 在渲染线程上渲染一张图片
+     * 开始前检查文件头声明的尺寸，按图片尺寸从渲染预算中申请内存，编码结果交给后写队列；
+     * 未预读（超过缓冲上限或读取失败）或需要分块渲染的图片直接读写文件。
+     * 读取文件头和解码渲染分别由看门狗计时，超时后不再等待该图片
+     */
+    private CompletableFuture<Future<File>> renderAsync(PendingWrite pending, byte[] sourceData, String outputPath,
+                                                        RenderStage stage) {
+        CompletableFuture<Future<File>> rendered = new CompletableFuture<>();
+        AtomicInteger heldPermits = new AtomicInteger();
+        stage.executor.execute(() -> {
+            try {
+                rendered.complete(render(pending, sourceData, outputPath, stage, rendered, heldPermits));
+            } catch (Throwable e) {
+                rendered.completeExceptionally(e);
+            } finally {
+                int permits = heldPermits.getAndSet(0);
+                if (permits > 0) {
+                    stage.renderBudget.release(permits);
+                }
+                if (pending.abandoned) {
+                    if (pending.threadAdded) {
+                        stage.removeThread();
+                    }
+                    logger.info("超时的解码已结束: {}", pending.source);
+                }
+            }
+        });
+        return rendered;
+    }
+    
+    private Future<File> render(PendingWrite pending, byte[] sourceData, String outputPath, RenderStage stage,
+                                CompletableFuture<Future<File>> rendered, AtomicInteger heldPermits)
+            throws Exception {
+        ImageHeader header;
+        long headerTimeout = stage.limits.timeoutFor(null);
+        try (DecodeWatchdog.Watch watch = stage.watchdog.watch(headerTimeout, () ->
+                abandon(pending, rendered, stage, "读取文件头超过 " + headerTimeout + " 毫秒"))) {
+            header = readHeader(pending.source, sourceData);
+            if (watch.isExpired()) {
+                throw new TimeoutException("读取文件头超时: " + pending.source.getPath());
+            }
+        }
+        String violation = header != null ? stage.limits.checkHeader(header) : null;
+        if (violation != null) {
+            if (stage.quarantine) {
+                recordQuarantine(pending, QuarantinedSource.REASON_PIXEL_LIMIT, violation);
+            }
+            throw new IOException(violation);
+        }
+        
+        int permits = estimatePermits(header, stage.budgetPermits);
+        stage.renderBudget.acquire(permits);
+        heldPermits.set(permits);
+        pending.renderStartedAt = System.currentTimeMillis();
+        
+        long timeout = stage.limits.timeoutFor(header);
+        DecodeWatchdog.Watch watch = stage.watchdog.watch(timeout, () ->
+                abandon(pending, rendered, stage, "解码渲染超过 " + timeout + " 毫秒"));
+        byte[] encoded;
+        try {
+            encoded = sourceData == null ? null : watermarkService.renderToBytes(
+                    pending.source, sourceData, stage.config, outputPath, stage.encodeOptions);
+            if (encoded == null) {
+                // 直接读写文件时读取和写入都计入渲染阶段
+                watermarkService.renderToFile(pending.source.getPath(), stage.config, outputPath, stage.encodeOptions);
+                pending.historyRecorded = true;
+            }
+        } finally {
+            watch.close();
+        }
+        if (watch.isExpired()) {
+            // 已按超时报告并隔离，迟到的结果不再写出
+            if (encoded == null) {
+                Files.deleteIfExists(pending.output.toPath());
+            }
+            throw new TimeoutException("解码渲染超时: " + pending.source.getPath());
+        }
+        
+        pending.renderFinishedAt = System.currentTimeMillis();
+        if (encoded != null) {
+            return stage.writer.submit(pending.output, encoded, () -> pending.writtenAt = System.currentTimeMillis());
+        }
+        return CompletableFuture.completedFuture(pending.output);
+    }
+    
+    /**
+     * 看门狗超时处理：按超时结束该图片并隔离源文件，补充一个渲染线程（不超过上限）。
+     * 超时的解码仍持有其图片数据，占用的渲染预算在渲染任务实际结束后才释放
+     */
+    private void abandon(PendingWrite pending, CompletableFuture<Future<File>> rendered, RenderStage stage,
+                         String message) {
+        pending.abandoned = true;
+        pending.threadAdded = stage.addThread();
+        if (stage.quarantine) {
+            recordQuarantine(pending, QuarantinedSource.REASON_TIMEOUT, message);
+        }
+        logger.warn("解码超时，放弃等待: {} ({})", pending.source, message);
+        rendered.completeExceptionally(new TimeoutException(message + ": " + pending.source.getPath()));
+    }
+    
+    private void recordQuarantine(PendingWrite pending, String reason, String message) {
+        pending.quarantineReason = reason;
+        try {
+            quarantineService.quarantine(pending.source, reason, message);
+        } catch (Exception e) {
+            logger.warn("记录隔离文件失败: {}", pending.source);
+        }
+    }
+    
+    /**
+     * 加载本批次中已隔离的源文件
+     * 
+     * @param retry 是否解除这些文件的隔离并重新处理（再次超过限制时重新隔离）
+     * @return 源文件绝对路径 -> 隔离记录
+     */
+    private Map<String, QuarantinedSource> loadQuarantined(List<String> imagePaths, boolean retry) {
+        List<String> sourcePaths = new ArrayList<>(imagePaths.size());
+        for (String imagePath : imagePaths) {
+            sourcePaths.add(new File(imagePath).getAbsolutePath());
+        }
+        try {
+            Map<String, QuarantinedSource> quarantined = quarantineService.findBySourcePaths(sourcePaths);
+            if (retry) {
+                for (String sourcePath : quarantined.keySet()) {
+                    quarantineService.release(sourcePath);
+                }
+                return Collections.emptyMap();
+            }
+            return quarantined;
+        } catch (Exception e) {
+            logger.warn("加载隔离文件列表失败，本次不跳过隔离文件: {}", e.getMessage());
+            return Collections.emptyMap();
+        }
+    }
+    
+    /**
+     * 读取前检查源文件：仍是隔离时的文件（大小和修改时间未变化）时跳过，超过字节上限时隔离
+     * 
+     * @return 不处理的原因，需要处理时返回null
+     */
+    private String checkSource(File source, Map<String, QuarantinedSource> quarantined, DecodeLimits limits,
+                               boolean quarantine) {
+        QuarantinedSource entry = quarantined.get(source.getAbsolutePath());
+        if (entry != null && entry.matches(source.length(), source.lastModified())) {
+            return "已隔离的源文件（" + entry.getReason() + "）: " + entry.getMessage();
+        }
+        String violation = limits.checkSourceSize(source.length());
+        if (violation != null && quarantine) {
+            try {
+                quarantineService.quarantine(source, QuarantinedSource.REASON_SOURCE_SIZE, violation);
+            } catch (Exception e) {
+                logger.warn("记录隔离文件失败: {}", source);
+            }
+        }
+        return violation;
+    }
+    
+    /**
+     * 读取图片头信息，无法读取时返回null（由解码报告错误）
+     */
+    private static ImageHeader readHeader(File source, byte[] sourceData) {
+        try {
+            return sourceData != null ? ImageHeader.read(sourceData) : ImageHeader.read(source);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+    
+    /**
+     * 按图片尺寸估算渲染所需的预算许可数（每个许可1KB），无法读取尺寸时按整个预算计算
+     */
+    private static int estimatePermits(ImageHeader header, int totalPermits) {
+        long estimate = header != null ? header.getPixelCount() * DECODED_BYTES_PER_PIXEL / 1024 : Long.MAX_VALUE;
+        return (int) Math.max(1, Math.min(estimate, totalPermits));
+    }
+    
+    private static int budgetPermits(long budgetBytes) {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, budgetBytes / 1024));
+    }
+    
+    private static boolean isOutputPending(Deque<PendingWrite> pendingWrites, File output) {
+        for (PendingWrite pending : pendingWrites) {
+            if (pending.output.equals(output)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static ThreadPoolExecutor createRenderExecutor(int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                                      runnable -> {
+                                          Thread thread = new Thread(runnable, "batch-render-" + threadCount.incrementAndGet());
+                                          thread.setDaemon(true);
+                                          return thread;
+                                      });
+    }
+    
+    /**
+     * 输出文件写入完成后计数、登记可复用的结果并记录指纹
+     */
+    private void completeExport(File source, File output, String dedupeKey, String contentHash, String configHash,
+                                Map<String, String> renderedOutputs, List<ExportFingerprint> pendingFingerprints,
+                                BatchExportResult result) {
+        result.incrementSuccess();
+        if (dedupeKey != null) {
+            renderedOutputs.put(dedupeKey, output.getAbsolutePath());
+        }
+        
+        pendingFingerprints.add(fingerprintService.capture(source, output, configHash, contentHash));
+        if (pendingFingerprints.size() >= FINGERPRINT_FLUSH_SIZE) {
+            flushFingerprints(pendingFingerprints);
+        }
+    }
+    
+    /**
+     * 尝试复用已有的渲染结果
+     * 先查找本批次中的结果，再查找历史批次中仍然完好的输出文件
+     * 
+     * @return 是否已通过复制完成导出
+     */
+    private boolean reuseRenderedOutput(File source, File output, String dedupeKey, String batchOutput,
+                                        String contentHash, String configHash) {
+        String format = dedupeKey.substring(dedupeKey.lastIndexOf(':') + 1);
+        String candidate = batchOutput;
+        
+        if (candidate == null) {
+            try {
+                for (ExportFingerprint stored : fingerprintService.findByContent(contentHash, configHash)) {
+                    if (!stored.getOutputPath().equals(output.getAbsolutePath())
+                            && format.equals(watermarkService.getOutputFormat(stored.getOutputPath()))
+                            && fingerprintService.isOutputIntact(stored)) {
+                        candidate = stored.getOutputPath();
+                        break;
+                    }
+                }
+            } catch (Exception e) {
+                logger.warn("查找可复用的导出结果失败: {}", e.getMessage());
+            }
+        }
+        
+        if (candidate == null || candidate.equals(output.getAbsolutePath())) {
+            return false;
+        }
+        
+        try {
+            long startTime = System.currentTimeMillis();
+            File parentDir = output.getAbsoluteFile().getParentFile();
+            if (parentDir != null && !parentDir.exists()) {
+                parentDir.mkdirs();
+            }
+            Files.copy(Paths.get(candidate), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            
+            historyService.record(source.getAbsolutePath(), output.getAbsolutePath(), null,
+                                  System.currentTimeMillis() - startTime);
+            logger.debug("复用重复内容的导出结果: {} -> {}", candidate, output);
+            return true;
+            
+        } catch (Exception e) {
+            logger.warn("复制已有导出结果失败，改为重新渲染: {}", e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * 加载本批次输出路径已有的导出指纹
+     * 只查询批次中的图片对应的输出，分批导出大型清单时不会每批都载入整个输出目录的指纹
+     */
+    private Map<String, ExportFingerprint> loadFingerprints(List<String> imagePaths, WatermarkConfigData configData,
+                                                            boolean incremental) {
+        if (!incremental) {
+            return Collections.emptyMap();
+        }
+        if (configData.outputPath == null || configData.outputPath.isEmpty()) {
+            return new HashMap<>();
+        }
+        
+        try {
+            Set<String> outputPaths = new HashSet<>(imagePaths.size() * 2);
+            for (String imagePath : imagePaths) {
+                outputPaths.add(new File(watermarkService.resolveOutputPath(imagePath, configData)).getAbsolutePath());
+            }
+            return fingerprintService.loadByOutputPaths(outputPaths);
+        } catch (Exception e) {
+            logger.warn("加载导出指纹失败，本次执行全量导出: {}", e.getMessage());
+            return new HashMap<>();
+        }
+    }
+    
+    /**
+     * 获取指定输出路径的指纹，预加载的指纹中没有时查询数据库并缓存结果
+     */
+    private ExportFingerprint findFingerprint(Map<String, ExportFingerprint> storedFingerprints, String outputPath) {
+        if (storedFingerprints.containsKey(outputPath)) {
+            return storedFingerprints.get(outputPath);
+        }
+        ExportFingerprint stored = null;
+        try {
+            stored = fingerprintService.loadByOutputPaths(Collections.singletonList(outputPath)).get(outputPath);
+        } catch (Exception e) {
+            logger.warn("查询导出指纹失败: {}", e.getMessage());
+        }
+        storedFingerprints.put(outputPath, stored);
+        return stored;
+    }
+    
+    /**
+     * 写入并清空待保存的指纹
+     * 指纹写入失败只影响下次的增量判断，不影响本次导出结果
+     */
+    private void flushFingerprints(List<ExportFingerprint> pendingFingerprints) {
+        try {
+            fingerprintService.saveAll(pendingFingerprints);
+        } catch (Exception e) {
+            logger.warn("保存导出指纹失败: {}", e.getMessage());
+        }
+        pendingFingerprints.clear();
+    }
+}
@@ -92,19 +92,138 @@ public class DatabaseService {
                 "FOREIGN KEY (template_id) REFERENCES watermark_templates(id) ON DELETE SET NULL" +
                 ")";
         
+        // 创建导出指纹表（增量导出）
+        String createFingerprintTable = "CREATE TABLE IF NOT EXISTS export_fingerprints (" +
+                "output_path TEXT PRIMARY KEY," +
+                "output_dir TEXT NOT NULL," +
+                "source_path TEXT NOT NULL," +
+                "source_size INTEGER NOT NULL," +
+                "source_mtime INTEGER NOT NULL," +
+                "content_hash TEXT," +
+                "config_hash TEXT NOT NULL," +
+                "output_size INTEGER NOT NULL," +
+                "output_mtime INTEGER NOT NULL," +
+                "updated_at DATETIME DEFAULT CURRENT_TIMESTAMP" +
+                ")";
+        
+        // 创建图片目录表（已导入图片的信息）
+        String createImageCatalogTable = "CREATE TABLE IF NOT EXISTS image_catalog (" +
+                "id TEXT PRIMARY KEY," +
+                "file_path TEXT NOT NULL UNIQUE," +
+                "file_name TEXT NOT NULL," +
+                "thumbnail_path TEXT," +
+                "file_size INTEGER NOT NULL," +
+                "width INTEGER NOT NULL," +
+                "height INTEGER NOT NULL," +
+                "format TEXT," +
+                "has_alpha INTEGER NOT NULL DEFAULT 0," +
+                "last_modified INTEGER NOT NULL," +
+                "content_hash TEXT," +
+                "import_time TEXT" +
+                ")";
+        
+        // 创建导出任务表（任务服务模式）
+        String createExportJobsTable = "CREATE TABLE IF NOT EXISTS export_jobs (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "status TEXT NOT NULL," +
+                "template_id INTEGER," +
+                "config_json TEXT NOT NULL," +
+                "total INTEGER NOT NULL DEFAULT 0," +
+                "success_count INTEGER NOT NULL DEFAULT 0," +
+                "failure_count INTEGER NOT NULL DEFAULT 0," +
+                "skipped_count INTEGER NOT NULL DEFAULT 0," +
+                "deduplicated_count INTEGER NOT NULL DEFAULT 0," +
+                "quarantined_count INTEGER NOT NULL DEFAULT 0," +
+                "message TEXT," +
+                "report_path TEXT," +
+                "created_at INTEGER NOT NULL," +
+                "started_at INTEGER," +
+                "finished_at INTEGER," +
+                "owner TEXT," +
+                "heartbeat_at INTEGER" +
+                ")";
+        
+        // 创建导出任务项表（清单任务的逐张图片，处理前落盘，任务大小不受堆内存限制）
+        String createExportJobItemsTable = "CREATE TABLE IF NOT EXISTS export_job_items (" +
+                "job_id INTEGER NOT NULL," +
+                "seq INTEGER NOT NULL," +
+                "source_path TEXT NOT NULL," +
+                "overrides_json TEXT," +
+                "status TEXT," +
+                "output_path TEXT," +
+                "message TEXT," +
+                "error_class TEXT," +
+                "output_bytes INTEGER," +
+                "elapsed_ms INTEGER," +
+                "PRIMARY KEY (job_id, seq)," +
+                "FOREIGN KEY (job_id) REFERENCES export_jobs(id) ON DELETE CASCADE" +
+                ")";
+        
+        // 创建隔离源文件表（解码超时或超过尺寸限制的文件，之后的导出跳过）
+        String createQuarantineTable = "CREATE TABLE IF NOT EXISTS quarantined_sources (" +
+                "source_path TEXT PRIMARY KEY," +
+                "source_size INTEGER NOT NULL," +
+                "source_mtime INTEGER NOT NULL," +
+                "reason TEXT NOT NULL," +
+                "message TEXT," +
+                "quarantined_at INTEGER NOT NULL" +
+                ")";
+        
+        // 创建分片任务已汇总分片表（与汇总的处理历史在同一事务中写入，每个分片只汇总一次）
+        String createSpoolMergedTable = "CREATE TABLE IF NOT EXISTS spool_merged (" +
+                "spool TEXT NOT NULL," +
+                "chunk TEXT NOT NULL," +
+                "merged_at INTEGER NOT NULL," +
+                "PRIMARY KEY (spool, chunk)" +
+                ")";
+        
         try (Statement stmt = connection.createStatement()) {
             stmt.execute(createTemplatesTable);
             stmt.execute(createSettingsTable);
             stmt.execute(createHistoryTable);
+            stmt.execute(createFingerprintTable);
+            stmt.execute(createImageCatalogTable);
+            stmt.execute(createExportJobsTable);
+            stmt.execute(createExportJobItemsTable);
+            stmt.execute(createQuarantineTable);
+            stmt.execute(createSpoolMergedTable);
+            
+            // 旧版本创建的表补充新增的列
+            addColumnIfMissing(stmt, "export_jobs", "report_path", "TEXT");
+            addColumnIfMissing(stmt, "export_jobs", "quarantined_count", "INTEGER NOT NULL DEFAULT 0");
+            addColumnIfMissing(stmt, "export_jobs", "owner", "TEXT");
+            addColumnIfMissing(stmt, "export_jobs", "heartbeat_at", "INTEGER");
+            addColumnIfMissing(stmt, "export_job_items", "error_class", "TEXT");
+            addColumnIfMissing(stmt, "export_job_items", "output_bytes", "INTEGER");
             
             // 创建索引
             stmt.execute("CREATE INDEX IF NOT EXISTS idx_templates_type ON watermark_templates(type)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_templates_created_at ON watermark_templates(created_at DESC, id DESC)");
             stmt.execute("CREATE INDEX IF NOT EXISTS idx_history_processed_at ON processing_history(processed_at)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_fingerprints_output_dir ON export_fingerprints(output_dir)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_fingerprints_content ON export_fingerprints(content_hash, config_hash)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_export_jobs_status ON export_jobs(status)");
+            stmt.execute("CREATE UNIQUE INDEX IF NOT EXISTS idx_export_job_items_source ON export_job_items(job_id, source_path)");
             
             logger.info("数据库表结构创建完成");
         }
     }
     
+    /**
+     * 表中没有指定列时添加该列
+     */
+    private void addColumnIfMissing(Statement stmt, String table, String column, String definition) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return;
+                }
+            }
+        }
+        stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+        logger.info("数据库表 {} 已添加列 {}", table, column);
+    }
+    
     /**
      * 插入默认数据
      */
@@ -1,7 +1,13 @@
 package com.watermark.service;
 
+import com.alibaba.fastjson2.JSON;
+import com.watermark.encoder.ImageEncodeOptions;
+import com.watermark.encoder.JpegEncodeOptions;
+import com.watermark.encoder.PngEncodeOptions;
+import com.watermark.encoder.TiffEncodeOptions;
 import com.watermark.model.ImageInfo;
 import com.watermark.model.WatermarkConfig;
+import com.watermark.util.OutputPathPlanner;
 import com.watermark.util.PathManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,13 +26,17 @@ public class ExportService {
     
     private static final Logger logger = LoggerFactory.getLogger(ExportService.class);
     
+    private static final long OUTPUT_LISTING_IDLE_MS = 30 * 1000L; // 输出目录列表的最长空闲时间
+    
     private static ExportService instance;
     private final ImageService imageService;
     private final WatermarkService watermarkService;
+    private final OutputPathPlanner outputPathPlanner;
     
     private ExportService() {
         this.imageService = ImageService.getInstance();
         this.watermarkService = WatermarkService.getInstance();
+        this.outputPathPlanner = new OutputPathPlanner(OUTPUT_LISTING_IDLE_MS);
     }
     
     public static synchronized ExportService getInstance() {
@@ -44,8 +54,16 @@ public class ExportService {
         private String fileNamePattern = "original"; // original, prefix, suffix
         private String customPrefix = "wm_";
         private String customSuffix = "_watermarked";
-        private String outputFormat = "original"; // original, jpg, png
+        private String outputFormat = "original"; // original, jpg, png, tiff
         private int jpegQuality = 90; // 0-100
+        private boolean progressive = false; // JPEG渐进式编码
+        private String chromaSubsampling = "420"; // JPEG色度子采样: 420, 422, 444
+        private boolean jpegBlockPatch = false; // JPEG源图片只重新编码水印覆盖的块
+        private String pngPreset; // PNG预设: fast, small，为空时使用默认参数（单核主机上改用较快的级别和过滤方式）
+        private int pngCompressionLevel = -1; // PNG压缩级别 0-9，-1表示使用预设
+        private String pngFilter; // PNG过滤方式: none, sub, up, average, paeth, adaptive
+        private boolean parallelEncoding = true; // 大图并行压缩
+        private String tiffCompression = "lzw"; // TIFF压缩: none, lzw, deflate, packbits
         private boolean preventOverwrite = true;
         
         // Getters and setters
@@ -69,6 +87,53 @@ public class ExportService {
             this.jpegQuality = Math.max(1, Math.min(100, jpegQuality)); 
         }
         
+        public boolean isProgressive() { return progressive; }
+        public void setProgressive(boolean progressive) { this.progressive = progressive; }
+        
+        public String getChromaSubsampling() { return chromaSubsampling; }
+        public void setChromaSubsampling(String chromaSubsampling) { this.chromaSubsampling = chromaSubsampling; }
+        
+        public boolean isJpegBlockPatch() { return jpegBlockPatch; }
+        public void setJpegBlockPatch(boolean jpegBlockPatch) { this.jpegBlockPatch = jpegBlockPatch; }
+        
+        public String getPngPreset() { return pngPreset; }
+        public void setPngPreset(String pngPreset) { this.pngPreset = pngPreset; }
+        
+        public int getPngCompressionLevel() { return pngCompressionLevel; }
+        public void setPngCompressionLevel(int pngCompressionLevel) { this.pngCompressionLevel = pngCompressionLevel; }
+        
+        public String getPngFilter() { return pngFilter; }
+        public void setPngFilter(String pngFilter) { this.pngFilter = pngFilter; }
+        
+        public boolean isParallelEncoding() { return parallelEncoding; }
+        public void setParallelEncoding(boolean parallelEncoding) { this.parallelEncoding = parallelEncoding; }
+        
+        public String getTiffCompression() { return tiffCompression; }
+        public void setTiffCompression(String tiffCompression) { this.tiffCompression = tiffCompression; }
+        
+        /**
+         * 创建编码参数
+         */
+        public ImageEncodeOptions toEncodeOptions() {
+            JpegEncodeOptions jpeg = new JpegEncodeOptions(jpegQuality);
+            jpeg.setProgressive(progressive);
+            jpeg.setChromaSubsampling(JpegEncodeOptions.parseChromaSubsampling(chromaSubsampling));
+            jpeg.setBlockPatch(jpegBlockPatch);
+            
+            PngEncodeOptions png = PngEncodeOptions.fromPreset(pngPreset);
+            if (pngCompressionLevel >= 0) {
+                png.setCompressionLevel(pngCompressionLevel);
+            }
+            if (pngFilter != null) {
+                png.setFilterStrategy(PngEncodeOptions.parseFilterStrategy(pngFilter));
+            }
+            png.setParallel(parallelEncoding);
+            
+            TiffEncodeOptions tiff = new TiffEncodeOptions(TiffEncodeOptions.parseCompression(tiffCompression));
+            
+            return new ImageEncodeOptions(jpeg, png, tiff);
+        }
+        
         public boolean isPreventOverwrite() { return preventOverwrite; }
         public void setPreventOverwrite(boolean preventOverwrite) { this.preventOverwrite = preventOverwrite; }
     }
@@ -95,13 +160,13 @@ public class ExportService {
         // 生成输出文件路径
         String outputPath = generateOutputPath(imageInfo, exportConfig);
         
-        // 检查文件是否已存在
-        if (exportConfig.isPreventOverwrite() && new File(outputPath).exists()) {
-            outputPath = generateUniqueOutputPath(outputPath);
+        // 避免覆盖已有文件：在目录列表和已预留的名称中查找可用的文件名
+        if (exportConfig.isPreventOverwrite()) {
+            outputPath = outputPathPlanner.reserveUnique(outputPath);
         }
         
         // 处理并保存图片
-        watermarkService.processAndSaveImage(imageId, watermarkConfig, outputPath);
+        watermarkService.processAndSaveImage(imageId, watermarkConfig, outputPath, exportConfig.toEncodeOptions());
         
         logger.info("图片导出完成: {} -> {}", imageInfo.getFileName(), outputPath);
         return outputPath;
@@ -111,17 +176,18 @@ public class ExportService {
      * 解析导出配置JSON
      */
     private ExportConfig parseExportConfig(String configJson) throws Exception {
-        // 这里应该使用Jackson解析JSON，为简化起见使用默认配置
-        ExportConfig config = new ExportConfig();
-        
-        // 简单解析 - 实际应用中应该使用完整的JSON解析
-        if (configJson != null && configJson.contains("outputDirectory")) {
-            // 提取输出目录路径
-            String outputDir = extractJsonValue(configJson, "outputDirectory");
-            if (outputDir != null) {
-                config.setOutputDirectory(outputDir);
+        ExportConfig config = null;
+        
+        if (configJson != null && !configJson.trim().isEmpty()) {
+            try {
+                config = JSON.parseObject(configJson, ExportConfig.class);
+            } catch (Exception e) {
+                logger.warn("解析导出配置失败，使用默认配置: {}", e.getMessage());
             }
         }
+        if (config == null) {
+            config = new ExportConfig();
+        }
         
         // 设置默认输出目录
         if (config.getOutputDirectory() == null) {
@@ -131,24 +197,6 @@ public class ExportService {
         return config;
     }
     
-    /**
-     * 简单的JSON值提取（实际应用中应该使用Jackson）
-     */
-    private String extractJsonValue(String json, String key) {
-        String searchKey = "\"" + key + "\":";
-        int startIndex = json.indexOf(searchKey);
-        if (startIndex == -1) return null;
-        
-        startIndex += searchKey.length();
-        int valueStart = json.indexOf("\"", startIndex);
-        if (valueStart == -1) return null;
-        
-        int valueEnd = json.indexOf("\"", valueStart + 1);
-        if (valueEnd == -1) return null;
-        
-        return json.substring(valueStart + 1, valueEnd);
-    }
-    
     /**
      * 生成输出文件路径
      */
@@ -183,6 +231,10 @@ public class ExportService {
                 outputExt = "png";
                 outputFileName = changeFileExtension(outputFileName, outputExt);
                 break;
+            case "tiff":
+                outputExt = "tiff";
+                outputFileName = changeFileExtension(outputFileName, outputExt);
+                break;
             case "original":
             default:
                 outputExt = originalExt;
@@ -203,28 +255,6 @@ public class ExportService {
         return fileName.substring(0, lastDot + 1) + newExt;
     }
     
-    /**
-     * 生成唯一的输出文件路径（避免覆盖）
-     */
-    private String generateUniqueOutputPath(String originalPath) {
-        File originalFile = new File(originalPath);
-        String parentDir = originalFile.getParent();
-        String fileName = originalFile.getName();
-        String nameWithoutExt = fileName.substring(0, fileName.lastIndexOf('.'));
-        String ext = PathManager.getFileExtension(fileName);
-        
-        int counter = 1;
-        String uniquePath;
-        
-        do {
-            String uniqueFileName = nameWithoutExt + "_(" + counter + ")." + ext;
-            uniquePath = Paths.get(parentDir, uniqueFileName).toString();
-            counter++;
-        } while (new File(uniquePath).exists() && counter < 1000); // 最多尝试1000次
-        
-        return uniquePath;
-    }
-    
     /**
      * 验证导出配置
      */
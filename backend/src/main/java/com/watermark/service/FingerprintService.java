@@ -0,0 +1,322 @@
+package com.watermark.service;
+
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.watermark.dto.WatermarkConfigData;
+import com.watermark.model.ExportFingerprint;
+import com.watermark.util.HashUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 导出指纹服务
+ * 保存每个输出文件对应的源文件和配置指纹，增量导出时据此跳过未变化的项
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class FingerprintService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(FingerprintService.class);
+    
+    // 渲染版本号：水印绘制或编码方式变化导致输出不同时递增，使旧指纹全部失效
+    private static final int RENDER_VERSION = 3;
+    
+    private static final int LOOKUP_BATCH_SIZE = 500; // 按路径查询时每条语句的参数个数，低于SQLite的参数上限
+    
+    private static final String UPSERT_SQL = "INSERT OR REPLACE INTO export_fingerprints " +
+            "(output_path, output_dir, source_path, source_size, source_mtime, content_hash, " +
+            "config_hash, output_size, output_mtime, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP)";
+    
+    private static FingerprintService instance;
+    private final DatabaseService databaseService;
+    private final ObjectMapper canonicalMapper;
+    
+    private FingerprintService() {
+        this.databaseService = DatabaseService.getInstance();
+        this.canonicalMapper = new ObjectMapper();
+        this.canonicalMapper.configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true);
+        this.canonicalMapper.configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+    }
+    
+    public static synchronized FingerprintService getInstance() {
+        if (instance == null) {
+            instance = new FingerprintService();
+        }
+        return instance;
+    }
+    
+    /**
+     * 计算规范化的配置哈希
+     * 属性按字母排序，不包含输出目录（输出目录已体现在输出路径中）；
+     * 图片水印会附加水印图片的大小和修改时间，替换水印图片后也会重新导出
+     */
+    public String computeConfigHash(WatermarkConfigData configData) {
+        ObjectNode node = canonicalMapper.valueToTree(configData);
+        node.remove("outputPath");
+        node.put("renderVersion", RENDER_VERSION);
+        
+        if ("IMAGE".equalsIgnoreCase(configData.type) && configData.imagePath != null
+                && !configData.imagePath.isEmpty()) {
+            File watermarkFile = new File(configData.imagePath);
+            node.put("watermarkImageSize", watermarkFile.length());
+            node.put("watermarkImageMtime", watermarkFile.lastModified());
+        }
+        
+        try {
+            return HashUtils.sha256Hex(canonicalMapper.writeValueAsString(node));
+        } catch (Exception e) {
+            throw new IllegalStateException("计算配置哈希失败", e);
+        }
+    }
+    
+    /**
+     * 加载某个输出目录下的全部导出指纹
+     * 
+     * @return 以输出路径为键的指纹表
+     */
+    public Map<String, ExportFingerprint> loadByOutputDirectory(String outputDir) throws Exception {
+        String sql = "SELECT * FROM export_fingerprints WHERE output_dir = ?";
+        Map<String, ExportFingerprint> fingerprints = new HashMap<>();
+        
+        try (Connection conn = databaseService.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setString(1, normalizeDirectory(outputDir));
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ExportFingerprint fingerprint = mapResultSetToFingerprint(rs);
+                    fingerprints.put(fingerprint.getOutputPath(), fingerprint);
+                }
+            }
+            
+            logger.debug("加载导出指纹: {} 条, 目录: {}", fingerprints.size(), outputDir);
+            return fingerprints;
+            
+        } catch (Exception e) {
+            logger.error("加载导出指纹失败: {}", outputDir, e);
+            throw e;
+        }
+    }
+    
+    /**
+     * 按输出路径加载导出指纹，每次查询最多LOOKUP_BATCH_SIZE个路径
+     * 只需要一个批次的指纹时使用，不随输出目录中已有文件的数量增长
+     * 
+     * @param outputPaths 输出文件的绝对路径
+     * @return 以输出路径为键的指纹表（只包含已有指纹的路径）
+     */
+    public Map<String, ExportFingerprint> loadByOutputPaths(Collection<String> outputPaths) throws Exception {
+        Map<String, ExportFingerprint> fingerprints = new HashMap<>();
+        List<String> paths = new ArrayList<>(outputPaths);
+        
+        try (Connection conn = databaseService.getConnection()) {
+            for (int start = 0; start < paths.size(); start += LOOKUP_BATCH_SIZE) {
+                List<String> batch = paths.subList(start, Math.min(paths.size(), start + LOOKUP_BATCH_SIZE));
+                StringBuilder sql = new StringBuilder("SELECT * FROM export_fingerprints WHERE output_path IN (");
+                for (int i = 0; i < batch.size(); i++) {
+                    sql.append(i == 0 ? "?" : ", ?");
+                }
+                sql.append(")");
+                
+                try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        stmt.setString(i + 1, batch.get(i));
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            ExportFingerprint fingerprint = mapResultSetToFingerprint(rs);
+                            fingerprints.put(fingerprint.getOutputPath(), fingerprint);
+                        }
+                    }
+                }
+            }
+            
+            logger.debug("按输出路径加载导出指纹: {} / {} 条", fingerprints.size(), paths.size());
+            return fingerprints;
+            
+        } catch (Exception e) {
+            logger.error("按输出路径加载导出指纹失败", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * 查找由相同内容和相同配置生成的历史输出
+     * 用于跨批次复用内容完全相同的源图片的导出结果
+     */
+    public List<ExportFingerprint> findByContent(String contentHash, String configHash) throws Exception {
+        String sql = "SELECT * FROM export_fingerprints WHERE content_hash = ? AND config_hash = ?";
+        List<ExportFingerprint> fingerprints = new ArrayList<>();
+        
+        try (Connection conn = databaseService.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setString(1, contentHash);
+            stmt.setString(2, configHash);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    fingerprints.add(mapResultSetToFingerprint(rs));
+                }
+            }
+            return fingerprints;
+            
+        } catch (Exception e) {
+            logger.error("按内容查找导出指纹失败: {}", contentHash, e);
+            throw e;
+        }
+    }
+    
+    /**
+     * 判断指纹记录的输出文件是否仍存在且未被外部修改
+     */
+    public boolean isOutputIntact(ExportFingerprint stored) {
+        File output = new File(stored.getOutputPath());
+        return output.isFile()
+                && output.length() == stored.getOutputSize()
+                && output.lastModified() == stored.getOutputMtime();
+    }
+    
+    /**
+     * 根据当前文件状态生成指纹
+     * 
+     * @param contentHash 源文件内容哈希，不需要时传null
+     */
+    public ExportFingerprint capture(File source, File output, String configHash, String contentHash) {
+        ExportFingerprint fingerprint = new ExportFingerprint();
+        fingerprint.setOutputPath(output.getAbsolutePath());
+        fingerprint.setOutputDir(normalizeDirectory(output.getAbsoluteFile().getParent()));
+        fingerprint.setSourcePath(source.getAbsolutePath());
+        fingerprint.setSourceSize(source.length());
+        fingerprint.setSourceMtime(source.lastModified());
+        fingerprint.setContentHash(contentHash);
+        fingerprint.setConfigHash(configHash);
+        fingerprint.setOutputSize(output.length());
+        fingerprint.setOutputMtime(output.lastModified());
+        return fingerprint;
+    }
+    
+    /**
+     * 判断输出文件是否仍然是最新的
+     * 要求源文件、配置都未变化，且输出文件仍存在并未被外部修改
+     * 
+     * @param contentHash 源文件内容哈希，为null时只比较大小和修改时间
+     */
+    public boolean isUpToDate(ExportFingerprint stored, File source, File output,
+                              String configHash, String contentHash) {
+        if (stored == null) {
+            return false;
+        }
+        
+        if (!configHash.equals(stored.getConfigHash())
+                || !source.getAbsolutePath().equals(stored.getSourcePath())
+                || source.length() != stored.getSourceSize()
+                || source.lastModified() != stored.getSourceMtime()) {
+            return false;
+        }
+        
+        if (contentHash != null && stored.getContentHash() != null
+                && !contentHash.equals(stored.getContentHash())) {
+            return false;
+        }
+        
+        return output.getAbsolutePath().equals(stored.getOutputPath()) && isOutputIntact(stored);
+    }
+    
+    /**
+     * 在单个事务中批量保存导出指纹
+     */
+    public void saveAll(Collection<ExportFingerprint> fingerprints) throws Exception {
+        if (fingerprints.isEmpty()) {
+            return;
+        }
+        
+        try (Connection conn = databaseService.getConnection()) {
+            conn.setAutoCommit(false);
+            
+            try (PreparedStatement stmt = conn.prepareStatement(UPSERT_SQL)) {
+                for (ExportFingerprint fingerprint : fingerprints) {
+                    stmt.setString(1, fingerprint.getOutputPath());
+                    stmt.setString(2, fingerprint.getOutputDir());
+                    stmt.setString(3, fingerprint.getSourcePath());
+                    stmt.setLong(4, fingerprint.getSourceSize());
+                    stmt.setLong(5, fingerprint.getSourceMtime());
+                    stmt.setString(6, fingerprint.getContentHash());
+                    stmt.setString(7, fingerprint.getConfigHash());
+                    stmt.setLong(8, fingerprint.getOutputSize());
+                    stmt.setLong(9, fingerprint.getOutputMtime());
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                conn.commit();
+                
+                logger.debug("保存导出指纹: {} 条", fingerprints.size());
+                
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+            
+        } catch (Exception e) {
+            logger.error("保存导出指纹失败", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * 删除某个输出目录下的全部指纹（强制下次全量导出）
+     */
+    public int clearOutputDirectory(String outputDir) throws Exception {
+        String sql = "DELETE FROM export_fingerprints WHERE output_dir = ?";
+        
+        try (Connection conn = databaseService.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setString(1, normalizeDirectory(outputDir));
+            int deleted = stmt.executeUpdate();
+            logger.info("清除导出指纹: {} 条, 目录: {}", deleted, outputDir);
+            return deleted;
+            
+        } catch (Exception e) {
+            logger.error("清除导出指纹失败: {}", outputDir, e);
+            throw e;
+        }
+    }
+    
+    /**
+     * 规范化目录路径
+     */
+    private String normalizeDirectory(String directory) {
+        return new File(directory).getAbsolutePath();
+    }
+    
+    /**
+     * 将ResultSet映射为ExportFingerprint对象
+     */
+    private ExportFingerprint mapResultSetToFingerprint(ResultSet rs) throws SQLException {
+        ExportFingerprint fingerprint = new ExportFingerprint();
+        fingerprint.setOutputPath(rs.getString("output_path"));
+        fingerprint.setOutputDir(rs.getString("output_dir"));
+        fingerprint.setSourcePath(rs.getString("source_path"));
+        fingerprint.setSourceSize(rs.getLong("source_size"));
+        fingerprint.setSourceMtime(rs.getLong("source_mtime"));
+        fingerprint.setContentHash(rs.getString("content_hash"));
+        fingerprint.setConfigHash(rs.getString("config_hash"));
+        fingerprint.setOutputSize(rs.getLong("output_size"));
+        fingerprint.setOutputMtime(rs.getLong("output_mtime"));
+        return fingerprint;
+    }
+}
@@ -0,0 +1,392 @@
+package com.watermark.service;
+
+import com.watermark.dto.PageResult;
+import com.watermark.model.ProcessingRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.*;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 处理历史服务
+ * 通过单个后台写入线程批量写入processing_history表，
+ * 导出线程只需将记录放入队列，不直接竞争SQLite写锁
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class HistoryService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(HistoryService.class);
+    
+    private static final int QUEUE_CAPACITY = 65536;   // 待写入队列容量
+    private static final int MAX_BATCH_SIZE = 500;     // 单个事务最多写入的记录数
+    private static final int MAX_PAGE_SIZE = 500;      // 分页查询的最大页大小
+    
+    private static final String INSERT_SQL = "INSERT INTO processing_history " +
+            "(source_path, output_path, template_id, processing_time_ms, processed_at) " +
+            "VALUES (?, ?, ?, ?, datetime(? / 1000, 'unixepoch'))";
+    private static final String INSERT_MERGED_SQL = "INSERT OR IGNORE INTO spool_merged (spool, chunk, merged_at) " +
+            "VALUES (?, ?, ?)";
+    
+    private static HistoryService instance;
+    private final DatabaseService databaseService;
+    
+    private final BlockingQueue<ProcessingRecord> pendingRecords = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    private final Object flushLock = new Object();
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    
+    private Thread writerThread;
+    private volatile boolean running = false;
+    private volatile boolean recording = true;
+    
+    private HistoryService() {
+        this.databaseService = DatabaseService.getInstance();
+    }
+    
+    public static synchronized HistoryService getInstance() {
+        if (instance == null) {
+            instance = new HistoryService();
+            instance.start();
+        }
+        return instance;
+    }
+    
+    /**
+     * 记录一次图片导出
+     * 非阻塞，队列已满时丢弃并记录警告
+     */
+    public void record(String sourcePath, String outputPath, Long templateId, long processingTimeMs) {
+        record(new ProcessingRecord(sourcePath, outputPath, templateId, processingTimeMs));
+    }
+    
+    /**
+     * 记录一次图片导出
+     */
+    public void record(ProcessingRecord record) {
+        if (!recording) {
+            return;
+        }
+        if (!running) {
+            logger.warn("历史写入线程未运行，丢弃记录: {}", record);
+            droppedCount.incrementAndGet();
+            return;
+        }
+        
+        if (pendingRecords.offer(record)) {
+            submittedCount.incrementAndGet();
+        } else {
+            long dropped = droppedCount.incrementAndGet();
+            if (dropped == 1 || dropped % 1000 == 0) {
+                logger.warn("历史记录队列已满，已丢弃 {} 条记录", dropped);
+            }
+        }
+    }
+    
+    /**
+     * 设置是否记录处理历史
+     * 分片工作进程关闭记录，由协调进程从各工作进程的结果账本汇总写入
+     */
+    public void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+    
+    /**
+     * 等待当前已提交的记录全部写入数据库
+     */
+    public void flush(long timeoutMillis) throws InterruptedException {
+        long target = submittedCount.get();
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        
+        synchronized (flushLock) {
+            while (writtenCount.get() + failedCount.get() < target) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0 || !running) {
+                    logger.warn("等待历史记录写入超时，剩余 {} 条", pendingRecords.size());
+                    return;
+                }
+                flushLock.wait(remaining);
+            }
+        }
+    }
+    
+    /**
+     * 登记分片任务中已汇总的分片并写入该分片的处理历史，两者在同一事务中提交（不经过写入队列）；
+     * 分片已登记（其他协调进程或之前的运行已汇总）时不写入，进程在任意位置退出都不会重复写入
+     * 
+     * @param spool 分片任务目录
+     * @return 是否写入了该分片
+     */
+    public boolean recordMergedChunk(String spool, String chunk, List<ProcessingRecord> records) throws SQLException {
+        try (Connection conn = databaseService.getConnection()) {
+            conn.setAutoCommit(false);
+            
+            try (PreparedStatement mergedStmt = conn.prepareStatement(INSERT_MERGED_SQL);
+                 PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+                mergedStmt.setString(1, spool);
+                mergedStmt.setString(2, chunk);
+                mergedStmt.setLong(3, System.currentTimeMillis());
+                if (mergedStmt.executeUpdate() == 0) {
+                    conn.rollback();
+                    return false;
+                }
+                
+                for (ProcessingRecord record : records) {
+                    bindRecord(stmt, record);
+                    stmt.addBatch();
+                }
+                if (!records.isEmpty()) {
+                    stmt.executeBatch();
+                }
+                conn.commit();
+                return true;
+                
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+    
+    /**
+     * 获取分片任务中已汇总的分片
+     */
+    public Set<String> findMergedChunks(String spool) throws SQLException {
+        Set<String> chunks = new HashSet<>();
+        try (Connection conn = databaseService.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT chunk FROM spool_merged WHERE spool = ?")) {
+            
+            stmt.setString(1, spool);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    chunks.add(rs.getString(1));
+                }
+            }
+        }
+        return chunks;
+    }
+    
+    /**
+     * 分页查询处理历史
+     * 按ID倒序（即处理时间倒序）进行keyset分页
+     * 
+     * @param cursor 上一页返回的游标，为空时从第一页开始
+     * @param limit 每页数量
+     */
+    public PageResult<ProcessingRecord> getHistory(String cursor, int limit) throws Exception {
+        int pageSize = Math.max(1, Math.min(MAX_PAGE_SIZE, limit));
+        Long beforeId = null;
+        if (cursor != null && !cursor.trim().isEmpty()) {
+            try {
+                beforeId = Long.parseLong(cursor.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("无效的分页游标: " + cursor, e);
+            }
+        }
+        
+        String sql = "SELECT id, source_path, output_path, template_id, processing_time_ms, processed_at " +
+                     "FROM processing_history ";
+        if (beforeId != null) {
+            sql += "WHERE id < ? ";
+        }
+        sql += "ORDER BY id DESC LIMIT ?";
+        
+        try (Connection conn = databaseService.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            int index = 1;
+            if (beforeId != null) {
+                stmt.setLong(index++, beforeId);
+            }
+            // 多取一条用于判断是否还有下一页
+            stmt.setInt(index, pageSize + 1);
+            
+            List<ProcessingRecord> records = new ArrayList<>();
+            boolean hasMore = false;
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    if (records.size() == pageSize) {
+                        hasMore = true;
+                        break;
+                    }
+                    records.add(mapResultSetToRecord(rs));
+                }
+            }
+            
+            String nextCursor = hasMore ? String.valueOf(records.get(records.size() - 1).getId()) : null;
+            return new PageResult<>(records, nextCursor);
+            
+        } catch (Exception e) {
+            logger.error("查询处理历史失败: cursor={}", cursor, e);
+            throw e;
+        }
+    }
+    
+    /**
+     * 获取待写入的记录数
+     */
+    public int getPendingCount() {
+        return pendingRecords.size();
+    }
+    
+    /**
+     * 获取已写入的记录数
+     */
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+    
+    /**
+     * 获取被丢弃的记录数（队列已满或写入失败）
+     */
+    public long getDroppedCount() {
+        return droppedCount.get() + failedCount.get();
+    }
+    
+    /**
+     * 启动后台写入线程
+     */
+    private synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        writerThread = new Thread(this::writerLoop, "history-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        logger.info("历史记录写入线程已启动");
+    }
+    
+    /**
+     * 停止后台写入线程，写完队列中剩余的记录后返回
+     */
+    public synchronized void shutdown(long timeoutMillis) {
+        if (!running) {
+            return;
+        }
+        running = false;
+        writerThread.interrupt();
+        try {
+            writerThread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("历史记录写入线程已停止: 写入 {} 条, 丢弃 {} 条", writtenCount.get(), getDroppedCount());
+    }
+    
+    /**
+     * 写入线程主循环：阻塞等待第一条记录，然后尽量多地取出一批在同一事务中写入
+     */
+    private void writerLoop() {
+        List<ProcessingRecord> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        
+        while (running || !pendingRecords.isEmpty()) {
+            try {
+                ProcessingRecord first = pendingRecords.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                pendingRecords.drainTo(batch, MAX_BATCH_SIZE - 1);
+            } catch (InterruptedException e) {
+                // 关闭时被中断：写完剩余记录后退出
+                pendingRecords.drainTo(batch, MAX_BATCH_SIZE);
+                if (batch.isEmpty() && pendingRecords.isEmpty()) {
+                    break;
+                }
+            }
+            
+            writeBatch(batch);
+            batch.clear();
+        }
+        
+        synchronized (flushLock) {
+            flushLock.notifyAll();
+        }
+    }
+    
+    /**
+     * 在单个事务中写入一批记录
+     */
+    private void writeBatch(List<ProcessingRecord> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        
+        try (Connection conn = databaseService.getConnection()) {
+            conn.setAutoCommit(false);
+            
+            try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+                for (ProcessingRecord record : batch) {
+                    bindRecord(stmt, record);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                conn.commit();
+                
+                writtenCount.addAndGet(batch.size());
+                logger.debug("写入 {} 条处理历史记录", batch.size());
+                
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+            
+        } catch (Exception e) {
+            failedCount.addAndGet(batch.size());
+            logger.error("写入处理历史失败，丢弃 {} 条记录", batch.size(), e);
+        }
+        
+        synchronized (flushLock) {
+            flushLock.notifyAll();
+        }
+    }
+    
+    private static void bindRecord(PreparedStatement stmt, ProcessingRecord record) throws SQLException {
+        stmt.setString(1, record.getSourcePath());
+        stmt.setString(2, record.getOutputPath());
+        if (record.getTemplateId() != null) {
+            stmt.setLong(3, record.getTemplateId());
+        } else {
+            stmt.setNull(3, Types.INTEGER);
+        }
+        stmt.setLong(4, record.getProcessingTimeMs());
+        stmt.setLong(5, record.getProcessedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+    }
+    
+    /**
+     * 将ResultSet映射为ProcessingRecord对象
+     */
+    private ProcessingRecord mapResultSetToRecord(ResultSet rs) throws SQLException {
+        ProcessingRecord record = new ProcessingRecord();
+        
+        record.setId(rs.getLong("id"));
+        record.setSourcePath(rs.getString("source_path"));
+        record.setOutputPath(rs.getString("output_path"));
+        
+        long templateId = rs.getLong("template_id");
+        record.setTemplateId(rs.wasNull() ? null : templateId);
+        
+        record.setProcessingTimeMs(rs.getLong("processing_time_ms"));
+        
+        Timestamp processedAt = rs.getTimestamp("processed_at");
+        if (processedAt != null) {
+            record.setProcessedAt(processedAt.toLocalDateTime());
+        }
+        
+        return record;
+    }
+}
@@ -0,0 +1,202 @@
+package com.watermark.service;
+
+import com.watermark.model.ImageInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 图片目录服务
+ * 持久化已导入图片的信息，内存中的图片注册表淘汰的条目可按ID从这里重新加载
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class ImageCatalogService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ImageCatalogService.class);
+    
+    private static final String UPSERT_SQL = "INSERT OR REPLACE INTO image_catalog " +
+            "(id, file_path, file_name, thumbnail_path, file_size, width, height, format, " +
+            "has_alpha, last_modified, content_hash, import_time) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    
+    // 单条IN查询的参数个数，低于SQLite的默认参数上限
+    private static final int LOOKUP_CHUNK_SIZE = 500;
+    
+    private static ImageCatalogService instance;
+    private final DatabaseService databaseService;
+    
+    private ImageCatalogService() {
+        this.databaseService = DatabaseService.getInstance();
+    }
+    
+    public static synchronized ImageCatalogService getInstance() {
+        if (instance == null) {
+            instance = new ImageCatalogService();
+        }
+        return instance;
+    }
+    
+    /**
+     * 在单个事务中批量保存图片信息，同一路径的旧记录被替换
+     */
+    public void saveAll(Collection<ImageInfo> imageInfos) throws Exception {
+        if (imageInfos.isEmpty()) {
+            return;
+        }
+        
+        try (Connection conn = databaseService.getConnection()) {
+            conn.setAutoCommit(false);
+            
+            try (PreparedStatement stmt = conn.prepareStatement(UPSERT_SQL)) {
+                for (ImageInfo imageInfo : imageInfos) {
+                    stmt.setString(1, imageInfo.getId());
+                    stmt.setString(2, imageInfo.getFilePath());
+                    stmt.setString(3, imageInfo.getFileName());
+                    stmt.setString(4, imageInfo.getThumbnailPath());
+                    stmt.setLong(5, imageInfo.getFileSize());
+                    stmt.setInt(6, imageInfo.getWidth());
+                    stmt.setInt(7, imageInfo.getHeight());
+                    stmt.setString(8, imageInfo.getFormat());
+                    stmt.setBoolean(9, imageInfo.isHasAlphaChannel());
+                    stmt.setLong(10, imageInfo.getLastModified());
+                    stmt.setString(11, imageInfo.getContentHash());
+                    stmt.setString(12, imageInfo.getImportTime() != null ? imageInfo.getImportTime().toString() : null);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                conn.commit();
+                
+                logger.debug("保存图片目录: {} 条", imageInfos.size());
+                
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+            
+        } catch (Exception e) {
+            logger.error("保存图片目录失败", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * 根据ID查找图片信息
+     * 
+     * @return 图片信息，不存在时返回null
+     */
+    public ImageInfo findById(String id) throws Exception {
+        String sql = "SELECT * FROM image_catalog WHERE id = ?";
+        
+        try (Connection conn = databaseService.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setString(1, id);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? mapResultSetToImageInfo(rs) : null;
+            }
+            
+        } catch (Exception e) {
+            logger.error("查找图片目录失败: {}", id, e);
+            throw e;
+        }
+    }
+    
+    /**
+     * 根据文件路径查找图片信息
+     * 
+     * @return 图片信息，不存在时返回null
+     */
+    public ImageInfo findByPath(String filePath) throws Exception {
+        String sql = "SELECT * FROM image_catalog WHERE file_path = ?";
+        
+        try (Connection conn = databaseService.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setString(1, filePath);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? mapResultSetToImageInfo(rs) : null;
+            }
+            
+        } catch (Exception e) {
+            logger.error("按路径查找图片目录失败: {}", filePath, e);
+            throw e;
+        }
+    }
+    
+    /**
+     * 按文件路径批量查找图片信息，使用同一个连接分块查询
+     * 
+     * @return 文件路径 -> 图片信息，目录中没有的路径不包含在结果中
+     */
+    public Map<String, ImageInfo> findByPaths(Collection<String> filePaths) throws Exception {
+        Map<String, ImageInfo> result = new HashMap<>(filePaths.size() * 2);
+        if (filePaths.isEmpty()) {
+            return result;
+        }
+        
+        List<String> paths = new ArrayList<>(filePaths);
+        try (Connection conn = databaseService.getConnection()) {
+            for (int start = 0; start < paths.size(); start += LOOKUP_CHUNK_SIZE) {
+                List<String> chunk = paths.subList(start, Math.min(start + LOOKUP_CHUNK_SIZE, paths.size()));
+                StringBuilder sql = new StringBuilder("SELECT * FROM image_catalog WHERE file_path IN (");
+                for (int i = 0; i < chunk.size(); i++) {
+                    sql.append(i == 0 ? "?" : ", ?");
+                }
+                sql.append(")");
+                
+                try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        stmt.setString(i + 1, chunk.get(i));
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            ImageInfo imageInfo = mapResultSetToImageInfo(rs);
+                            result.put(imageInfo.getFilePath(), imageInfo);
+                        }
+                    }
+                }
+            }
+            
+            logger.debug("批量查找图片目录: {} 个路径, 命中 {} 条", paths.size(), result.size());
+            return result;
+            
+        } catch (Exception e) {
+            logger.error("批量查找图片目录失败", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * 将ResultSet映射为ImageInfo对象
+     */
+    private ImageInfo mapResultSetToImageInfo(ResultSet rs) throws SQLException {
+        ImageInfo imageInfo = new ImageInfo();
+        imageInfo.setId(rs.getString("id"));
+        imageInfo.setFilePath(rs.getString("file_path"));
+        imageInfo.setFileName(rs.getString("file_name"));
+        imageInfo.setThumbnailPath(rs.getString("thumbnail_path"));
+        imageInfo.setFileSize(rs.getLong("file_size"));
+        imageInfo.setWidth(rs.getInt("width"));
+        imageInfo.setHeight(rs.getInt("height"));
+        imageInfo.setFormat(rs.getString("format"));
+        imageInfo.setHasAlphaChannel(rs.getBoolean("has_alpha"));
+        imageInfo.setLastModified(rs.getLong("last_modified"));
+        imageInfo.setContentHash(rs.getString("content_hash"));
+        String importTime = rs.getString("import_time");
+        if (importTime != null) {
+            imageInfo.setImportTime(LocalDateTime.parse(importTime));
+        }
+        return imageInfo;
+    }
+}
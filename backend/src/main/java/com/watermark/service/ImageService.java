@@ -1,18 +1,49 @@
 package com.watermark.service;
 
+import com.watermark.dto.ImageQuery;
+import com.watermark.dto.PageResult;
 import com.watermark.model.ImageInfo;
+import com.watermark.util.CompactImageCatalog;
+import com.watermark.util.DecodedImageCache;
+import com.watermark.util.HashUtils;
+import com.watermark.util.ImageHeader;
 import com.watermark.util.PathManager;
+import com.watermark.util.SingleFlight;
 import net.coobird.thumbnailator.Thumbnails;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.event.IIOReadProgressListener;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 图片服务
@@ -25,11 +56,53 @@ public class ImageService {
     
     private static final Logger logger = LoggerFactory.getLogger(ImageService.class);
     
+    private static final int THUMBNAIL_SIZE = 150; // 缩略图最大尺寸
+    private static final int REGISTRY_MAX_ENTRIES = 2000; // 以完整对象保留的图片信息条数，其余只保留在紧凑列表中
+    private static final long DECODED_CACHE_MAX_BYTES = 512L * 1024 * 1024; // 解码图片缓存的字节上限
+    private static final int DECODED_CACHE_HEAP_FRACTION = 4;               // 解码图片缓存不超过最大堆内存的该分之一
+    private static final int MAX_PAGE_SIZE = 500;         // 分页查询的最大页大小
+    private static final int MAX_LIST_SNAPSHOTS = 16;     // 保留的分页列表快照个数
+    
     private static ImageService instance;
-    private final ConcurrentHashMap<String, ImageInfo> imageCache = new ConcurrentHashMap<>();
+    private final TiledRenderService tiledRenderService;
+    // 合并同一文件的并发解码和缩略图生成；解码结果放入缓存共享，不再为每个调用方复制
+    private final SingleFlight<String, BufferedImage> decodeFlights = new SingleFlight<>("image-decode");
+    private final SingleFlight<String, String> thumbnailFlights = new SingleFlight<>("thumbnail");
+    private final ImageCatalogService imageCatalogService;
+    // 文件路径到图片ID的索引（与注册表同步修改，由imageCache加锁保护）
+    private final Map<String, String> pathIndex = new HashMap<>();
+    // 已导入图片的注册表：按访问顺序排列，超过上限时淘汰最久未使用的条目，被淘汰的条目可按ID从图片目录重新加载
+    private final LinkedHashMap<String, ImageInfo> imageCache = new LinkedHashMap<String, ImageInfo>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ImageInfo> eldest) {
+            if (size() <= REGISTRY_MAX_ENTRIES) {
+                return false;
+            }
+            pathIndex.remove(eldest.getValue().getFilePath(), eldest.getKey());
+            registryEvictions.incrementAndGet();
+            return true;
+        }
+    };
+    private final AtomicLong registryEvictions = new AtomicLong();
+    private final AtomicLong registryRehydrations = new AtomicLong();
+    
+    private final DecodedImageCache decodedImageCache;
+    // 本次会话导入的全部图片，按列紧凑保存，供大列表的查询、排序和分页使用
+    private final CompactImageCatalog sessionImages = new CompactImageCatalog();
+    // 分页中的图片列表快照（快照ID -> 行号），翻页期间新导入的图片不改变已打开列表的顺序，只保留最近使用的几个
+    private final AtomicLong snapshotSequence = new AtomicLong();
+    private final LinkedHashMap<Long, int[]> listSnapshots = new LinkedHashMap<Long, int[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, int[]> eldest) {
+            return size() > MAX_LIST_SNAPSHOTS;
+        }
+    };
     
     private ImageService() {
-        // 私有构造函数，单例模式
+        this.tiledRenderService = TiledRenderService.getInstance();
+        this.imageCatalogService = ImageCatalogService.getInstance();
+        this.decodedImageCache = new DecodedImageCache(
+                Math.min(DECODED_CACHE_MAX_BYTES, Runtime.getRuntime().maxMemory() / DECODED_CACHE_HEAP_FRACTION), true);
     }
     
     public static synchronized ImageService getInstance() {
@@ -43,49 +116,145 @@ public class ImageService {
      * 处理图片文件列表
      */
     public List<ImageInfo> processImageFiles(List<File> files) {
-        List<ImageInfo> imageInfos = new ArrayList<>();
-        
+        List<ScannedFile> scannedFiles = new ArrayList<>(files.size());
         for (File file : files) {
+            if (!PathManager.isSupportedImageFormat(file.getName())) {
+                logger.warn("不支持的图片格式: {}", file.getName());
+                continue;
+            }
             try {
-                if (PathManager.isSupportedImageFormat(file.getName())) {
-                    ImageInfo imageInfo = processImageFile(file);
-                    if (imageInfo != null) {
-                        imageInfos.add(imageInfo);
-                        imageCache.put(imageInfo.getId(), imageInfo);
-                    }
+                BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                scannedFiles.add(new ScannedFile(file.getAbsoluteFile(), attributes));
+            } catch (Exception e) {
+                logger.error("处理图片文件失败: {}", file.getAbsolutePath(), e);
+            }
+        }
+        return processScannedFiles(scannedFiles);
+    }
+    
+    /**
+     * 处理已取得文件属性的图片
+     * 图片目录中大小和修改时间都未变化且缩略图仍在的文件直接沿用目录记录（保持原ID），
+     * 不读取文件头、不计算哈希；只有新增或已变化的文件重新探测，也只有这些文件写回目录
+     */
+    private List<ImageInfo> processScannedFiles(List<ScannedFile> scannedFiles) {
+        List<ImageInfo> imageInfos = new ArrayList<>(scannedFiles.size());
+        List<ImageInfo> changedInfos = new ArrayList<>();
+        
+        Map<String, ImageInfo> catalog = loadCatalog(scannedFiles);
+        Set<String> thumbnailNames = catalog.isEmpty() ? Collections.<String>emptySet() : listThumbnailNames();
+        int reused = 0;
+        
+        for (ScannedFile scannedFile : scannedFiles) {
+            File file = scannedFile.file;
+            try {
+                ImageInfo cached = catalog.get(file.getPath());
+                ImageInfo imageInfo;
+                if (cached != null && cached.getFileSize() == scannedFile.size
+                        && cached.getLastModified() == scannedFile.lastModified
+                        && cached.getThumbnailPath() != null
+                        && thumbnailNames.contains(new File(cached.getThumbnailPath()).getName())) {
+                    imageInfo = cached;
+                    reused++;
                 } else {
-                    logger.warn("不支持的图片格式: {}", file.getName());
+                    imageInfo = processImageFile(scannedFile);
+                    if (imageInfo == null) {
+                        continue;
+                    }
+                    if (cached != null) {
+                        // 文件内容已变化，沿用原ID使已有的引用仍然有效
+                        imageInfo.setId(cached.getId());
+                    }
+                    changedInfos.add(imageInfo);
                 }
+                imageInfos.add(imageInfo);
+                register(imageInfo);
             } catch (Exception e) {
                 logger.error("处理图片文件失败: {}", file.getAbsolutePath(), e);
             }
         }
         
-        logger.info("成功处理 {} 个图片文件", imageInfos.size());
+        // 写入图片目录，注册表淘汰的条目之后可按ID重新加载
+        try {
+            imageCatalogService.saveAll(changedInfos);
+        } catch (Exception e) {
+            logger.warn("保存图片目录失败，被淘汰的图片信息将无法按ID重新加载: {}", e.getMessage());
+        }
+        
+        logger.info("成功处理 {} 个图片文件（沿用目录记录 {} 个，重新探测 {} 个）",
+                imageInfos.size(), reused, changedInfos.size());
         return imageInfos;
     }
     
+    /**
+     * 批量读取图片目录中这些文件的记录，读取失败时全部重新探测
+     */
+    private Map<String, ImageInfo> loadCatalog(List<ScannedFile> scannedFiles) {
+        List<String> paths = new ArrayList<>(scannedFiles.size());
+        for (ScannedFile scannedFile : scannedFiles) {
+            paths.add(scannedFile.file.getPath());
+        }
+        try {
+            return imageCatalogService.findByPaths(paths);
+        } catch (Exception e) {
+            logger.warn("读取图片目录失败，将重新探测全部图片: {}", e.getMessage());
+            return Collections.emptyMap();
+        }
+    }
+    
+    /**
+     * 列出缩略图目录中的文件名，代替逐个检查缩略图是否存在
+     */
+    private Set<String> listThumbnailNames() {
+        String[] names = new File(PathManager.getThumbnailsDir()).list();
+        return names != null ? new HashSet<>(Arrays.asList(names)) : Collections.<String>emptySet();
+    }
+    
+    /**
+     * 登记导入的图片：写入紧凑列表，并放入注册表
+     */
+    private void register(ImageInfo imageInfo) {
+        sessionImages.put(imageInfo);
+        cacheInfo(imageInfo);
+    }
+    
+    /**
+     * 将图片信息放入注册表，超过上限时淘汰最久未使用的条目
+     */
+    private void cacheInfo(ImageInfo imageInfo) {
+        synchronized (imageCache) {
+            imageCache.put(imageInfo.getId(), imageInfo);
+            pathIndex.put(imageInfo.getFilePath(), imageInfo.getId());
+        }
+    }
+    
     /**
      * 处理单个图片文件
      */
-    private ImageInfo processImageFile(File file) throws IOException {
-        // 读取图片信息
-        BufferedImage image = ImageIO.read(file);
-        if (image == null) {
+    private ImageInfo processImageFile(ScannedFile scannedFile) throws IOException {
+        File file = scannedFile.file;
+        
+        // 只读取文件头获取图片信息，不解码像素数据
+        ImageHeader header = ImageHeader.read(file);
+        if (header == null) {
             logger.warn("无法读取图片: {}", file.getAbsolutePath());
             return null;
         }
         
         // 创建ImageInfo对象
         ImageInfo imageInfo = new ImageInfo(file.getName(), file.getAbsolutePath());
-        imageInfo.setFileSize(file.length());
-        imageInfo.setWidth(image.getWidth());
-        imageInfo.setHeight(image.getHeight());
+        imageInfo.setFileSize(scannedFile.size);
+        imageInfo.setWidth(header.getWidth());
+        imageInfo.setHeight(header.getHeight());
         imageInfo.setFormat(PathManager.getFileExtension(file.getName()).toUpperCase());
-        imageInfo.setHasAlphaChannel(image.getColorModel().hasAlpha());
+        imageInfo.setHasAlphaChannel(header.hasAlpha());
+        imageInfo.setLastModified(scannedFile.lastModified);
+        
+        // 计算内容哈希，用于识别内容完全相同的重复图片
+        imageInfo.setContentHash(HashUtils.sha256Hex(file));
         
-        // 生成缩略图
-        String thumbnailPath = generateThumbnail(file, imageInfo.getId());
+        // 生成缩略图（同一文件的并发请求合并为一次生成）
+        String thumbnailPath = generateThumbnailOnce(file, header);
         imageInfo.setThumbnailPath(thumbnailPath);
         
         logger.debug("处理图片完成: {}", imageInfo);
@@ -96,33 +265,70 @@ public class ImageService {
      * 处理图片文件夹
      */
     public List<ImageInfo> processImageFolder(File directory) {
-        List<File> imageFiles = new ArrayList<>();
+        List<ScannedFile> imageFiles = new ArrayList<>();
         collectImageFiles(directory, imageFiles);
         
         logger.info("在文件夹 {} 中找到 {} 个图片文件", directory.getAbsolutePath(), imageFiles.size());
-        return processImageFiles(imageFiles);
+        return processScannedFiles(imageFiles);
     }
     
     /**
-     * 递归收集图片文件
+     * 递归收集图片文件，文件大小和修改时间随目录遍历一并取得，不再逐个stat
      */
-    private void collectImageFiles(File directory, List<File> imageFiles) {
-        File[] files = directory.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                if (file.isDirectory()) {
-                    collectImageFiles(file, imageFiles);
-                } else if (PathManager.isSupportedImageFormat(file.getName())) {
-                    imageFiles.add(file);
+    private void collectImageFiles(File directory, List<ScannedFile> imageFiles) {
+        try {
+            Files.walkFileTree(directory.getAbsoluteFile().toPath(), new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path path, BasicFileAttributes attributes) {
+                    if (attributes.isRegularFile() && PathManager.isSupportedImageFormat(path.getFileName().toString())) {
+                        imageFiles.add(new ScannedFile(path.toFile(), attributes));
+                    }
+                    return FileVisitResult.CONTINUE;
                 }
-            }
+                
+                @Override
+                public FileVisitResult visitFileFailed(Path path, IOException e) {
+                    logger.warn("无法访问: {}", path, e);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            logger.error("遍历图片文件夹失败: {}", directory.getAbsolutePath(), e);
+        }
+    }
+    
+    /**
+     * 扫描得到的图片文件及其大小和修改时间
+     */
+    private static final class ScannedFile {
+        final File file;
+        final long size;
+        final long lastModified;
+        
+        ScannedFile(File file, BasicFileAttributes attributes) {
+            this.file = file;
+            this.size = attributes.size();
+            this.lastModified = attributes.lastModifiedTime().toMillis();
+        }
+    }
+    
+    /**
+     * 生成缩略图，同一文件同时只生成一次，并发的请求共享生成结果
+     */
+    private String generateThumbnailOnce(File originalFile, ImageHeader header) {
+        String key = originalFile.getAbsolutePath() + ":" + originalFile.lastModified();
+        try {
+            return awaitFlight(thumbnailFlights, key, () -> generateThumbnail(originalFile, header));
+        } catch (IOException e) {
+            logger.error("生成缩略图失败: {}", originalFile.getAbsolutePath(), e);
+            return null;
         }
     }
     
     /**
      * 生成缩略图
      */
-    private String generateThumbnail(File originalFile, String imageId) {
+    private String generateThumbnail(File originalFile, ImageHeader header) {
         try {
             String thumbnailPath = PathManager.generateThumbnailPath(originalFile.getAbsolutePath());
             
@@ -134,12 +340,19 @@ public class ImageService {
                 return thumbnailPath;
             }
             
+            // 超大图片先按降采样读取，不整幅解码
+            Thumbnails.Builder<?> builder;
+            if (tiledRenderService.requiresTiling(header)) {
+                builder = Thumbnails.of(tiledRenderService.readSubsampled(originalFile, THUMBNAIL_SIZE * 4));
+            } else {
+                builder = Thumbnails.of(originalFile);
+            }
+            
             // 生成150x150的缩略图，保持宽高比
-            Thumbnails.of(originalFile)
-                      .size(150, 150)
-                      .outputFormat("jpg")
-                      .outputQuality(0.8)
-                      .toFile(thumbnailFile);
+            builder.size(THUMBNAIL_SIZE, THUMBNAIL_SIZE)
+                   .outputFormat("jpg")
+                   .outputQuality(0.8)
+                   .toFile(thumbnailFile);
             
             logger.debug("生成缩略图: {}", thumbnailPath);
             return thumbnailPath;
@@ -154,14 +367,326 @@ public class ImageService {
      * 根据ID获取图片信息
      */
     public ImageInfo getImageInfo(String imageId) {
-        return imageCache.get(imageId);
+        if (imageId == null) {
+            return null;
+        }
+        synchronized (imageCache) {
+            ImageInfo imageInfo = imageCache.get(imageId);
+            if (imageInfo != null) {
+                return imageInfo;
+            }
+        }
+        ImageInfo imageInfo = sessionImages.findById(imageId);
+        if (imageInfo != null) {
+            cacheInfo(imageInfo);
+            return imageInfo;
+        }
+        return rehydrate(imageId);
+    }
+    
+    /**
+     * 从图片目录重新加载已被注册表淘汰的图片信息
+     */
+    private ImageInfo rehydrate(String imageId) {
+        try {
+            ImageInfo imageInfo = imageCatalogService.findById(imageId);
+            if (imageInfo != null) {
+                register(imageInfo);
+                registryRehydrations.incrementAndGet();
+                logger.debug("从图片目录重新加载图片信息: {}", imageId);
+            }
+            return imageInfo;
+        } catch (Exception e) {
+            logger.warn("从图片目录加载图片信息失败: {} ({})", imageId, e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * 根据文件路径获取已导入的图片信息
+     * 只查找内存中的注册表和紧凑列表（批量导出时逐个文件调用，不查询数据库），本次会话未导入的图片返回null
+     */
+    public ImageInfo getImageInfoByPath(String filePath) {
+        String absolutePath = new File(filePath).getAbsolutePath();
+        synchronized (imageCache) {
+            String imageId = pathIndex.get(absolutePath);
+            if (imageId != null) {
+                return imageCache.get(imageId);
+            }
+        }
+        ImageInfo imageInfo = sessionImages.findByPath(absolutePath);
+        if (imageInfo != null) {
+            cacheInfo(imageInfo);
+        }
+        return imageInfo;
+    }
+    
+    /**
+     * 按条件过滤和排序本次会话导入的图片
+     * 返回的列表只保存行号，读取元素时才生成ImageInfo；清空缓存后之前的查询结果失效
+     */
+    public List<ImageInfo> queryImages(ImageQuery query) {
+        int[] rows = sessionImages.query(query != null ? query : new ImageQuery());
+        return new AbstractList<ImageInfo>() {
+            @Override
+            public ImageInfo get(int index) {
+                return sessionImages.get(rows[index]);
+            }
+            
+            @Override
+            public int size() {
+                return rows.length;
+            }
+        };
+    }
+    
+    /**
+     * 按条件过滤和排序本次会话导入的图片，返回第一页
+     * 
+     * @param limit 每页数量
+     */
+    public PageResult<ImageInfo> openImagePage(ImageQuery query, int limit) {
+        return openSnapshot(sessionImages.query(query != null ? query : new ImageQuery()), limit);
+    }
+    
+    /**
+     * 为刚导入的一组图片打开分页列表，返回第一页
+     * 
+     * @param limit 每页数量
+     */
+    public PageResult<ImageInfo> openImagePage(List<ImageInfo> images, int limit) {
+        int[] rows = new int[images.size()];
+        int count = 0;
+        for (ImageInfo imageInfo : images) {
+            int row = sessionImages.rowOf(imageInfo.getFilePath());
+            if (row >= 0) {
+                rows[count++] = row;
+            }
+        }
+        return openSnapshot(Arrays.copyOf(rows, count), limit);
+    }
+    
+    /**
+     * 获取分页列表的下一页
+     * 
+     * @param cursor 上一页返回的游标
+     * @param limit 每页数量
+     * @throws IllegalArgumentException 游标无效或对应的列表已失效（需重新打开列表）
+     */
+    public PageResult<ImageInfo> getImagePage(String cursor, int limit) {
+        long snapshotId;
+        int offset;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            snapshotId = Long.parseLong(raw.substring(0, separator));
+            offset = Integer.parseInt(raw.substring(separator + 1));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("无效的分页游标: " + cursor, e);
+        }
+        
+        int[] rows;
+        synchronized (listSnapshots) {
+            rows = listSnapshots.get(snapshotId);
+        }
+        if (rows == null || offset < 0 || offset > rows.length) {
+            throw new IllegalArgumentException("分页列表已失效，请重新获取: " + cursor);
+        }
+        return page(snapshotId, rows, offset, limit);
+    }
+    
+    private PageResult<ImageInfo> openSnapshot(int[] rows, int limit) {
+        long snapshotId = snapshotSequence.incrementAndGet();
+        synchronized (listSnapshots) {
+            listSnapshots.put(snapshotId, rows);
+        }
+        return page(snapshotId, rows, 0, limit);
+    }
+    
+    /**
+     * 只为当前页的图片生成ImageInfo
+     */
+    private PageResult<ImageInfo> page(long snapshotId, int[] rows, int offset, int limit) {
+        int pageSize = Math.max(1, Math.min(MAX_PAGE_SIZE, limit));
+        int end = Math.min(rows.length, offset + pageSize);
+        List<ImageInfo> items = new ArrayList<>(end - offset);
+        try {
+            for (int i = offset; i < end; i++) {
+                items.add(sessionImages.get(rows[i]));
+            }
+        } catch (IndexOutOfBoundsException e) {
+            // 打开列表之后缓存被清空
+            throw new IllegalArgumentException("分页列表已失效，请重新获取", e);
+        }
+        
+        String nextCursor = null;
+        if (end < rows.length) {
+            String raw = snapshotId + ":" + end;
+            nextCursor = Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+        return new PageResult<>(items, nextCursor, rows.length);
+    }
+    
+    /**
+     * 获取文件内容哈希
+     * 文件已导入且大小、修改时间未变时直接使用导入时计算的哈希，否则重新计算
+     */
+    public String getContentHash(File file) throws IOException {
+        String cached = getCachedContentHash(file);
+        return cached != null ? cached : HashUtils.sha256Hex(file);
+    }
+    
+    /**
+     * 获取文件内容哈希，需要重新计算时使用已读入内存的文件内容，不再读取磁盘
+     */
+    public String getContentHash(File file, byte[] data) {
+        String cached = getCachedContentHash(file);
+        return cached != null ? cached : HashUtils.sha256Hex(data);
+    }
+    
+    /**
+     * 文件已导入且大小、修改时间未变时返回导入时计算的哈希，否则返回null
+     */
+    private String getCachedContentHash(File file) {
+        ImageInfo imageInfo = getImageInfoByPath(file.getAbsolutePath());
+        if (imageInfo != null && imageInfo.getContentHash() != null
+                && imageInfo.getFileSize() == file.length()
+                && imageInfo.getLastModified() == file.lastModified()) {
+            return imageInfo.getContentHash();
+        }
+        return null;
     }
     
     /**
      * 读取图片文件
+     * 返回调用方独占的副本，可以直接在其上绘制；只读使用时应调用loadSharedImage避免复制
      */
     public BufferedImage loadImage(String imagePath) throws IOException {
-        return ImageIO.read(new File(imagePath));
+        return copyImage(loadSharedImage(imagePath));
+    }
+    
+    /**
+     * 读取图片文件，返回与其他调用方共享的解码结果，调用方不得修改
+     * 先查找解码图片缓存；未命中时同一文件的并发读取合并为一次解码，解码结果放入缓存
+     */
+    public BufferedImage loadSharedImage(String imagePath) throws IOException {
+        File file = new File(imagePath).getAbsoluteFile();
+        String key = decodeKey(file);
+        BufferedImage cached = decodedImageCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        return awaitFlight(decodeFlights, key, () -> {
+            BufferedImage image = decodeImage(file);
+            decodedImageCache.put(key, image);
+            return image;
+        });
+    }
+    
+    /**
+     * 读取图片文件（根据ImageInfo），返回共享的解码结果，调用方不得修改
+     */
+    public BufferedImage loadSharedImage(ImageInfo imageInfo) throws IOException {
+        return loadSharedImage(imageInfo.getFilePath());
+    }
+    
+    /**
+     * 只查找解码图片缓存，不解码
+     * 
+     * @return 共享的解码结果（调用方不得修改），未缓存时返回null
+     */
+    public BufferedImage getCachedImage(File file) {
+        return decodedImageCache.get(decodeKey(file.getAbsoluteFile()));
+    }
+    
+    /**
+     * 解码图片缓存的统计信息
+     */
+    public String getDecodedCacheStats() {
+        return decodedImageCache.toString();
+    }
+    
+    /**
+     * 解码结果的键：路径、大小和修改时间，文件变化后旧的结果不再命中
+     */
+    private static String decodeKey(File file) {
+        return file.getPath() + ":" + file.length() + ":" + file.lastModified();
+    }
+    
+    /**
+     * 解码图片文件，解码线程被中断（所有请求方都已放弃或超时）时中止解码
+     * 
+     * @return 解码结果，没有可用的解码器时返回null
+     */
+    static BufferedImage decodeImage(File file) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            if (input == null) {
+                throw new IOException("无法打开图片文件: " + file.getPath());
+            }
+            return decodeImage(input, file);
+        }
+    }
+    
+    /**
+     * 解码已读入内存的图片文件内容，解码线程被中断时中止解码
+     * 
+     * @param file 源文件（仅用于错误信息）
+     * @return 解码结果，没有可用的解码器时返回null
+     */
+    static BufferedImage decodeImage(byte[] data, File file) throws IOException {
+        try (ImageInputStream input = new MemoryCacheImageInputStream(new ByteArrayInputStream(data))) {
+            return decodeImage(input, file);
+        }
+    }
+    
+    private static BufferedImage decodeImage(ImageInputStream input, File file) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            return null;
+        }
+        
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(input, true, true);
+            reader.addIIOReadProgressListener(AbortOnInterrupt.INSTANCE);
+            BufferedImage image = reader.read(0);
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("解码已取消: " + file.getPath());
+            }
+            return image;
+        } finally {
+            reader.dispose();
+        }
+    }
+    
+    /**
+     * 复制图片，供需要修改图片的调用方使用
+     */
+    private static BufferedImage copyImage(BufferedImage image) {
+        if (image == null) {
+            return null;
+        }
+        ColorModel colorModel = image.getColorModel();
+        return new BufferedImage(colorModel, image.copyData(null), colorModel.isAlphaPremultiplied(), null);
+    }
+    
+    /**
+     * 通过合并加载器等待结果，异常统一转换为IOException
+     */
+    private static <V> V awaitFlight(SingleFlight<String, V> flights, String key, Callable<V> loader)
+            throws IOException {
+        try {
+            return flights.load(key, loader);
+        } catch (IOException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待图片加载时被中断: " + key);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e.getMessage(), e);
+        }
     }
     
     /**
@@ -175,7 +700,15 @@ public class ImageService {
      * 清空图片缓存
      */
     public void clearCache() {
-        imageCache.clear();
+        synchronized (imageCache) {
+            imageCache.clear();
+            pathIndex.clear();
+        }
+        sessionImages.clear();
+        synchronized (listSnapshots) {
+            listSnapshots.clear();
+        }
+        decodedImageCache.clear();
         logger.info("图片缓存已清空");
     }
     
@@ -183,13 +716,82 @@ public class ImageService {
      * 获取缓存的图片数量
      */
     public int getCacheSize() {
-        return imageCache.size();
+        synchronized (imageCache) {
+            return imageCache.size();
+        }
     }
     
     /**
-     * 获取所有缓存的图片信息
+     * 获取注册表中的所有图片信息（不含已被淘汰的条目）
      */
     public List<ImageInfo> getAllCachedImages() {
-        return new ArrayList<>(imageCache.values());
+        synchronized (imageCache) {
+            return new ArrayList<>(imageCache.values());
+        }
+    }
+    
+    /**
+     * 图片注册表和解码图片缓存的统计信息
+     */
+    public Map<String, Object> getRegistryMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("size", getCacheSize());
+        metrics.put("maxSize", REGISTRY_MAX_ENTRIES);
+        metrics.put("evictions", registryEvictions.get());
+        metrics.put("rehydrations", registryRehydrations.get());
+        metrics.put("sessionImages", sessionImages.size());
+        metrics.put("sessionImagesBytes", sessionImages.estimateBytes());
+        metrics.put("decodedCacheEntries", decodedImageCache.size());
+        metrics.put("decodedCacheBytes", decodedImageCache.getCurrentBytes());
+        metrics.put("decodedCacheHits", decodedImageCache.getHitCount() + decodedImageCache.getSoftHitCount());
+        metrics.put("decodedCacheMisses", decodedImageCache.getMissCount());
+        metrics.put("decodedCacheEvictions", decodedImageCache.getEvictionCount());
+        return metrics;
+    }
+    
+    /**
+     * 解码进度回调中检查线程中断状态，被中断时中止解码
+     */
+    static final class AbortOnInterrupt implements IIOReadProgressListener {
+        static final AbortOnInterrupt INSTANCE = new AbortOnInterrupt();
+        
+        @Override
+        public void imageProgress(ImageReader source, float percentageDone) {
+            if (Thread.currentThread().isInterrupted()) {
+                source.abort();
+            }
+        }
+        
+        @Override
+        public void sequenceStarted(ImageReader source, int minIndex) {
+        }
+        
+        @Override
+        public void sequenceComplete(ImageReader source) {
+        }
+        
+        @Override
+        public void imageStarted(ImageReader source, int imageIndex) {
+        }
+        
+        @Override
+        public void imageComplete(ImageReader source) {
+        }
+        
+        @Override
+        public void thumbnailStarted(ImageReader source, int imageIndex, int thumbnailIndex) {
+        }
+        
+        @Override
+        public void thumbnailProgress(ImageReader source, float percentageDone) {
+        }
+        
+        @Override
+        public void thumbnailComplete(ImageReader source) {
+        }
+        
+        @Override
+        public void readAborted(ImageReader source) {
+        }
     }
-}
\ No newline at end of file
+}
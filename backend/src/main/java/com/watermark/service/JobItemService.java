@@ -0,0 +1,249 @@
+package com.watermark.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.watermark.dto.ExportItemResult;
+import com.watermark.model.ExportJob;
+import com.watermark.model.ExportJobItem;
+import com.watermark.util.ManifestReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 导出任务项服务
+ * 清单任务的源图片逐行写入export_job_items表，执行时按序号分页读取，
+ * 任务大小只受磁盘限制，不需要把整个清单放在内存中；
+ * 任务结束后只保留失败和被隔离的项，其余项删除，数据库不随任务数量无限增长
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class JobItemService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(JobItemService.class);
+    
+    private static final int SPILL_BATCH_SIZE = 5000; // 每个事务写入的清单行数
+    
+    private static final String INSERT_SQL = "INSERT OR IGNORE INTO export_job_items " +
+            "(job_id, seq, source_path, overrides_json) VALUES (?, ?, ?, ?)";
+    
+    private static final String UPDATE_SQL = "UPDATE export_job_items SET status = ?, output_path = ?, " +
+            "message = ?, error_class = ?, output_bytes = ?, elapsed_ms = ? WHERE job_id = ? AND seq = ?";
+    
+    // 压缩时删除的项：成功、跳过、复用重复内容和未处理的项
+    private static final String COMPACTABLE = "(status IS NULL OR status NOT IN (?, ?))";
+    
+    private static JobItemService instance;
+    private final DatabaseService databaseService;
+    private final ObjectMapper objectMapper;
+    
+    private JobItemService() {
+        this.databaseService = DatabaseService.getInstance();
+        this.objectMapper = new ObjectMapper();
+    }
+    
+    public static synchronized JobItemService getInstance() {
+        if (instance == null) {
+            instance = new JobItemService();
+        }
+        return instance;
+    }
+    
+    /**
+     * 把清单逐行写入任务项表
+     * 每SPILL_BATCH_SIZE行提交一次，同一任务中重复的源图片路径只保留第一次出现的行
+     * 
+     * @return 写入的任务项数
+     */
+    public int spill(long jobId, ManifestReader manifest) throws Exception {
+        long seq = 0;
+        int inserted = 0;
+        int batched = 0;
+        
+        try (Connection conn = databaseService.getConnection()) {
+            conn.setAutoCommit(false);
+            
+            try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+                while (manifest.hasNext()) {
+                    ManifestReader.Entry entry = manifest.next();
+                    stmt.setLong(1, jobId);
+                    stmt.setLong(2, ++seq);
+                    stmt.setString(3, entry.getPath());
+                    stmt.setString(4, entry.getOverrides().isEmpty() ? null
+                            : objectMapper.writeValueAsString(entry.getOverrides()));
+                    stmt.addBatch();
+                    
+                    if (++batched >= SPILL_BATCH_SIZE) {
+                        inserted += countInserted(stmt.executeBatch());
+                        conn.commit();
+                        batched = 0;
+                    }
+                }
+                if (batched > 0) {
+                    inserted += countInserted(stmt.executeBatch());
+                }
+                conn.commit();
+                
+            } catch (Exception e) {
+                conn.rollback();
+                throw e;
+            }
+            
+            logger.info("清单已写入任务项表: jobId={}, {} 行, {} 项", jobId, seq, inserted);
+            return inserted;
+            
+        } catch (Exception e) {
+            logger.error("写入任务项失败: jobId={}", jobId, e);
+            throw e;
+        }
+    }
+    
+    /**
+     * 按序号读取尚未处理的任务项
+     * 
+     * @param afterSeq 只读取序号大于afterSeq的项
+     * @param limit 最多读取的项数
+     */
+    public List<ExportJobItem> findPending(long jobId, long afterSeq, int limit) throws Exception {
+        String sql = "SELECT * FROM export_job_items WHERE job_id = ? AND seq > ? AND status IS NULL " +
+                     "ORDER BY seq LIMIT ?";
+        List<ExportJobItem> items = new ArrayList<>();
+        
+        try (Connection conn = databaseService.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setLong(1, jobId);
+            stmt.setLong(2, afterSeq);
+            stmt.setInt(3, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    items.add(mapResultSetToItem(rs));
+                }
+            }
+            return items;
+            
+        } catch (Exception e) {
+            logger.error("读取任务项失败: jobId={}, afterSeq={}", jobId, afterSeq, e);
+            throw e;
+        }
+    }
+    
+    /**
+     * 在单个事务中保存已处理项的结果，未处理的项（status为空）跳过
+     */
+    public void saveResults(List<ExportJobItem> items) throws Exception {
+        try (Connection conn = databaseService.getConnection()) {
+            conn.setAutoCommit(false);
+            
+            try (PreparedStatement stmt = conn.prepareStatement(UPDATE_SQL)) {
+                for (ExportJobItem item : items) {
+                    if (item.getStatus() == null) {
+                        continue;
+                    }
+                    stmt.setString(1, item.getStatus());
+                    stmt.setString(2, item.getOutputPath());
+                    stmt.setString(3, item.getMessage());
+                    stmt.setString(4, item.getErrorClass());
+                    setNullableLong(stmt, 5, item.getOutputBytes());
+                    setNullableLong(stmt, 6, item.getElapsedMs());
+                    stmt.setLong(7, item.getJobId());
+                    stmt.setLong(8, item.getSeq());
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                conn.commit();
+                
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+            
+        } catch (Exception e) {
+            logger.error("保存任务项结果失败", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * 压缩已结束任务的任务项，只保留失败和被隔离的项
+     * 删除释放的空间由SQLite在之后的写入中复用
+     * 
+     * @return 删除的项数
+     */
+    public int compact(long jobId) throws SQLException {
+        String sql = "DELETE FROM export_job_items WHERE job_id = ? AND " + COMPACTABLE;
+        
+        try (Connection conn = databaseService.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setLong(1, jobId);
+            stmt.setString(2, ExportItemResult.STATUS_FAILED);
+            stmt.setString(3, ExportItemResult.STATUS_QUARANTINED);
+            int deleted = stmt.executeUpdate();
+            if (deleted > 0) {
+                logger.info("已压缩任务项: jobId={}, 删除 {} 项", jobId, deleted);
+            }
+            return deleted;
+        }
+    }
+    
+    /**
+     * 压缩所有已结束任务的任务项
+     * 任务服务启动时执行，回收执行中途退出的进程和旧版本留下的任务项
+     * 
+     * @return 删除的项数
+     */
+    public int compactFinishedJobs() throws SQLException {
+        String sql = "DELETE FROM export_job_items WHERE " + COMPACTABLE +
+                " AND job_id IN (SELECT id FROM export_jobs WHERE status IN (?, ?))";
+        
+        try (Connection conn = databaseService.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setString(1, ExportItemResult.STATUS_FAILED);
+            stmt.setString(2, ExportItemResult.STATUS_QUARANTINED);
+            stmt.setString(3, ExportJob.STATUS_COMPLETED);
+            stmt.setString(4, ExportJob.STATUS_FAILED);
+            return stmt.executeUpdate();
+        }
+    }
+    
+    private static void setNullableLong(PreparedStatement stmt, int index, Long value) throws SQLException {
+        if (value != null) {
+            stmt.setLong(index, value);
+        } else {
+            stmt.setNull(index, Types.INTEGER);
+        }
+    }
+    
+    private static int countInserted(int[] counts) {
+        int inserted = 0;
+        for (int count : counts) {
+            // 部分驱动对批量语句返回SUCCESS_NO_INFO
+            if (count > 0 || count == Statement.SUCCESS_NO_INFO) {
+                inserted++;
+            }
+        }
+        return inserted;
+    }
+    
+    private ExportJobItem mapResultSetToItem(ResultSet rs) throws SQLException {
+        ExportJobItem item = new ExportJobItem();
+        item.setJobId(rs.getLong("job_id"));
+        item.setSeq(rs.getLong("seq"));
+        item.setSourcePath(rs.getString("source_path"));
+        item.setOverridesJson(rs.getString("overrides_json"));
+        item.setStatus(rs.getString("status"));
+        item.setOutputPath(rs.getString("output_path"));
+        item.setMessage(rs.getString("message"));
+        item.setErrorClass(rs.getString("error_class"));
+        long outputBytes = rs.getLong("output_bytes");
+        item.setOutputBytes(rs.wasNull() ? null : outputBytes);
+        long elapsedMs = rs.getLong("elapsed_ms");
+        item.setElapsedMs(rs.wasNull() ? null : elapsedMs);
+        return item;
+    }
+}
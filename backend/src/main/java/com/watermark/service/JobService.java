@@ -0,0 +1,822 @@
+package com.watermark.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.watermark.dto.BatchExportResult;
+import com.watermark.dto.ExportItemResult;
+import com.watermark.model.ExportJob;
+import com.watermark.model.ExportJobItem;
+import com.watermark.model.WatermarkTemplate;
+import com.watermark.util.ExportReportWriter;
+import com.watermark.util.ManifestReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 导出任务服务
+ * 接收批量导出任务并在固定数量的工作线程上排队执行，任务状态保存在export_jobs表中；
+ * 执行中和最近完成的任务在内存中保留逐张图片的处理结果，供调用方实时获取进度；
+ * 清单任务的源图片先写入export_job_items表，执行时分页读取，任务大小不受堆内存限制，
+ * 任务结束后任务项只保留失败和被隔离的项（任务服务启动时再清理一遍已结束任务遗留的项）；
+ * 逐张结果同时写入输出目录旁的NDJSON报告（配置中 "report": false 时不生成）；
+ * 多个进程（界面、任务服务器、命令行）共用同一个数据库，每个任务记录创建它的进程并由该进程定期续期，
+ * 只有续期超时（进程已退出）的未完成任务才会被其他进程标记为失败
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class JobService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(JobService.class);
+    
+    private static final int MAX_RETAINED_PROGRESS = 64; // 内存中保留逐张结果的已完成任务数
+    private static final int MANIFEST_BUFFERED_ITEMS = 10000; // 清单任务在内存中保留的最近逐张结果数
+    private static final int ITEM_PAGE_SIZE = 2000;      // 清单任务每批从任务项表读取并导出的图片数
+    private static final long LEASE_MILLIS = 60000;      // 未完成任务的租约时长，超过该时间未续期视为进程已退出
+    private static final long LEASE_RENEW_MILLIS = LEASE_MILLIS / 4;
+    
+    private static final String UPDATE_SQL = "UPDATE export_jobs SET status = ?, total = ?, success_count = ?, " +
+            "failure_count = ?, skipped_count = ?, deduplicated_count = ?, quarantined_count = ?, message = ?, " +
+            "report_path = ?, started_at = ?, finished_at = ? WHERE id = ?";
+    
+    private static JobService instance;
+    private final DatabaseService databaseService;
+    private final BatchExportService batchExportService;
+    private final JobItemService jobItemService;
+    private final ObjectMapper objectMapper;
+    // 本进程的标识（进程号@主机名:启动时间），写入本进程创建的任务
+    private final String ownerId;
+    private ScheduledExecutorService leaseRenewer;
+    
+    // 任务ID -> 进度；执行中的任务始终保留，已完成的按完成顺序淘汰
+    private final Map<Long, JobProgress> progressById = new LinkedHashMap<>();
+    private ExecutorService jobExecutor;
+    private int renderThreads;
+    private long memoryBudgetBytes;
+    
+    /**
+     * 一个任务的进度：逐张图片的结果按完成顺序追加，读取方可以等待新结果；
+     * 限制了保留条数时只保留最近的结果（清单任务的全部结果保存在任务项表中）
+     */
+    public static final class JobProgress {
+        private final ExportJob job;
+        private final List<ExportItemResult> items = new ArrayList<>();
+        private final int maxItems;
+        private int firstIndex; // items中第一条结果的序号
+        
+        JobProgress(ExportJob job) {
+            this(job, Integer.MAX_VALUE);
+        }
+        
+        JobProgress(ExportJob job, int maxItems) {
+            this.job = job;
+            this.maxItems = maxItems;
+        }
+        
+        synchronized void add(ExportItemResult item) {
+            items.add(item);
+            if (items.size() - maxItems >= maxItems) {
+                // 超出上限一倍时一次丢弃较早的一半，均摊为常数时间
+                int dropped = items.size() - maxItems;
+                items.subList(0, dropped).clear();
+                firstIndex += dropped;
+            }
+            switch (item.getStatus()) {
+                case ExportItemResult.STATUS_SUCCESS:
+                    job.setSuccessCount(job.getSuccessCount() + 1);
+                    break;
+                case ExportItemResult.STATUS_DEDUPLICATED:
+                    job.setSuccessCount(job.getSuccessCount() + 1);
+                    job.setDeduplicatedCount(job.getDeduplicatedCount() + 1);
+                    break;
+                case ExportItemResult.STATUS_SKIPPED:
+                    job.setSkippedCount(job.getSkippedCount() + 1);
+                    break;
+                case ExportItemResult.STATUS_QUARANTINED:
+                    job.setFailureCount(job.getFailureCount() + 1);
+                    job.setQuarantinedCount(job.getQuarantinedCount() + 1);
+                    break;
+                default:
+                    job.setFailureCount(job.getFailureCount() + 1);
+                    break;
+            }
+            notifyAll();
+        }
+        
+        synchronized void update(Runnable change) {
+            change.run();
+            notifyAll();
+        }
+        
+        /**
+         * 获取任务状态的副本
+         */
+        public synchronized ExportJob snapshot() {
+            ExportJob copy = new ExportJob();
+            copy.setId(job.getId());
+            copy.setStatus(job.getStatus());
+            copy.setTemplateId(job.getTemplateId());
+            copy.setConfigJson(job.getConfigJson());
+            copy.setTotal(job.getTotal());
+            copy.setSuccessCount(job.getSuccessCount());
+            copy.setFailureCount(job.getFailureCount());
+            copy.setSkippedCount(job.getSkippedCount());
+            copy.setDeduplicatedCount(job.getDeduplicatedCount());
+            copy.setQuarantinedCount(job.getQuarantinedCount());
+            copy.setMessage(job.getMessage());
+            copy.setReportPath(job.getReportPath());
+            copy.setCreatedAt(job.getCreatedAt());
+            copy.setStartedAt(job.getStartedAt());
+            copy.setFinishedAt(job.getFinishedAt());
+            return copy;
+        }
+        
+        public synchronized boolean isFinished() {
+            return job.isFinished();
+        }
+        
+        public synchronized int itemCount() {
+            return firstIndex + items.size();
+        }
+        
+        /**
+         * 获取从from开始的结果，没有新结果且任务未结束时最多等待timeoutMillis；
+         * from之后的部分结果已不在内存中时从仍保留的第一条开始
+         */
+        public synchronized List<ExportItemResult> awaitItems(int from, long timeoutMillis) throws InterruptedException {
+            List<ExportItemResult> result = new ArrayList<>();
+            awaitItems(from, timeoutMillis, result);
+            return result;
+        }
+        
+        /**
+         * 获取从from开始的结果并追加到into
+         * 
+         * @return into中第一条结果的序号（from之后的部分结果已不在内存中时大于from）
+         */
+        public synchronized int awaitItems(int from, long timeoutMillis, List<ExportItemResult> into)
+                throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            long remaining = timeoutMillis;
+            while (itemCount() <= from && !job.isFinished() && remaining > 0) {
+                wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+            int start = Math.max(from, firstIndex);
+            if (itemCount() > start) {
+                into.addAll(items.subList(start - firstIndex, items.size()));
+            }
+            return start;
+        }
+    }
+    
+    private JobService() {
+        this.databaseService = DatabaseService.getInstance();
+        this.batchExportService = BatchExportService.getInstance();
+        this.jobItemService = JobItemService.getInstance();
+        this.objectMapper = new ObjectMapper();
+        this.ownerId = ManagementFactory.getRuntimeMXBean().getName() + ":"
+                + ManagementFactory.getRuntimeMXBean().getStartTime();
+    }
+    
+    public static synchronized JobService getInstance() {
+        if (instance == null) {
+            instance = new JobService();
+        }
+        return instance;
+    }
+    
+    /**
+     * 启动任务执行线程
+     * 租约已过期的未完成任务（创建它的进程已退出）标记为失败，其他进程正在执行的任务不受影响；
+     * 已结束任务遗留的任务项只保留失败和被隔离的项
+     * 
+     * @param workers 同时执行的任务数
+     * @param renderThreads 每个任务的渲染线程数
+     * @param memoryBudgetBytes 每个任务的内存预算
+     */
+    public synchronized void start(int workers, int renderThreads, long memoryBudgetBytes) throws SQLException {
+        if (jobExecutor != null) {
+            return;
+        }
+        this.renderThreads = renderThreads;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        
+        int interrupted = markInterruptedJobs();
+        if (interrupted > 0) {
+            logger.warn("有 {} 个任务的执行进程已退出，已标记为失败", interrupted);
+        }
+        int compacted = jobItemService.compactFinishedJobs();
+        if (compacted > 0) {
+            logger.info("已清理已结束任务的任务项: {} 项", compacted);
+        }
+        
+        AtomicInteger threadCount = new AtomicInteger();
+        jobExecutor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "export-job-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.info("导出任务服务已启动: workers={}, renderThreads={}, memoryBudget={}",
+                    workers, renderThreads, memoryBudgetBytes);
+    }
+    
+    /**
+     * 停止接收任务并等待执行中的任务完成
+     */
+    public void shutdown(long timeoutMillis) {
+        ExecutorService executor;
+        synchronized (this) {
+            executor = jobExecutor;
+            jobExecutor = null;
+        }
+        if (executor == null) {
+            return;
+        }
+        
+        // 不持有锁等待，任务结束时需要获取锁更新进度表
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                logger.warn("导出任务未在 {} 毫秒内完成，强制停止", timeoutMillis);
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+        logger.info("导出任务服务已停止");
+    }
+    
+    /**
+     * 提交导出任务
+     * 
+     * @param imagePaths 源图片路径列表
+     * @param templateId 模板ID（与configJson二选一）
+     * @param configJson 水印配置JSON（与templateId二选一）
+     * @param outputPath 输出目录（为空时使用配置中的outputPath）
+     */
+    public ExportJob submit(List<String> imagePaths, Long templateId, String configJson, String outputPath)
+            throws Exception {
+        if (imagePaths == null || imagePaths.isEmpty()) {
+            throw new IllegalArgumentException("图片列表为空");
+        }
+        
+        ExportJob job = newJob(templateId, resolveConfig(templateId, configJson, outputPath));
+        job.setTotal(imagePaths.size());
+        insert(job);
+        
+        JobProgress progress = new JobProgress(job);
+        List<String> paths = new ArrayList<>(imagePaths);
+        enqueue(progress, listener -> batchExportService.exportImages(paths, job.getConfigJson(),
+                renderThreads, memoryBudgetBytes, listener));
+        
+        logger.info("导出任务已提交: id={}, 图片 {} 张", job.getId(), paths.size());
+        return progress.snapshot();
+    }
+    
+    /**
+     * 提交清单任务
+     * 清单在提交时逐行写入任务项表，执行时每次读取ITEM_PAGE_SIZE项导出，清单大小不受堆内存限制
+     * 
+     * @param manifest 清单文件路径（纯文本或带配置覆盖列的CSV，见ManifestReader）
+     * @param templateId 模板ID（与configJson二选一）
+     * @param configJson 水印配置JSON（与templateId二选一）
+     * @param outputPath 输出目录（为空时使用配置中的outputPath）
+     */
+    public ExportJob submitManifest(String manifest, Long templateId, String configJson, String outputPath)
+            throws Exception {
+        ExportJob job = createManifestJob(manifest, templateId, configJson, outputPath);
+        
+        JobProgress progress = new JobProgress(job, MANIFEST_BUFFERED_ITEMS);
+        enqueue(progress, listener -> exportManifestItems(job, renderThreads, memoryBudgetBytes, listener));
+        
+        logger.info("清单任务已提交: id={}, 图片 {} 张", job.getId(), job.getTotal());
+        return progress.snapshot();
+    }
+    
+    /**
+     * 在调用线程上执行清单任务，不需要先启动任务服务（命令行和界面使用）
+     * 
+     * @param listener 单张图片结果监听器（可为null）
+     * @return 结束后的任务状态
+     */
+    public ExportJob runManifest(String manifest, Long templateId, String configJson, String outputPath,
+                                 int renderThreads, long memoryBudgetBytes,
+                                 BatchExportService.ItemListener listener) throws Exception {
+        ExportJob job = createManifestJob(manifest, templateId, configJson, outputPath);
+        
+        // 只统计计数，不保留逐张结果
+        JobProgress progress = new JobProgress(job, 0);
+        runJob(progress, progressListener -> exportManifestItems(job, renderThreads, memoryBudgetBytes, item -> {
+            progressListener.onItem(item);
+            if (listener != null) {
+                listener.onItem(item);
+            }
+        }));
+        return progress.snapshot();
+    }
+    
+    /**
+     * 获取任务状态，内存中有进度时返回实时计数
+     */
+    public ExportJob getJob(long id) throws Exception {
+        JobProgress progress = getProgress(id);
+        return progress != null ? progress.snapshot() : findById(id);
+    }
+    
+    /**
+     * 获取任务的进度（只保留执行中和最近完成的任务）
+     */
+    public synchronized JobProgress getProgress(long id) {
+        return progressById.get(id);
+    }
+    
+    /**
+     * 获取最近提交的任务
+     */
+    public List<ExportJob> getRecentJobs(int limit) throws Exception {
+        String sql = "SELECT * FROM export_jobs ORDER BY id DESC LIMIT ?";
+        List<ExportJob> jobs = new ArrayList<>();
+        
+        try (Connection conn = databaseService.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setInt(1, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    jobs.add(mapResultSetToJob(rs));
+                }
+            }
+            return jobs;
+            
+        } catch (Exception e) {
+            logger.error("获取导出任务列表失败", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * 任务的执行内容，逐张结果交给listener
+     */
+    private interface JobBody {
+        BatchExportResult run(BatchExportService.ItemListener listener) throws Exception;
+    }
+    
+    /**
+     * 生成导出配置：转换模板或解析配置JSON，并写入输出目录
+     */
+    private ObjectNode resolveConfig(Long templateId, String configJson, String outputPath) throws Exception {
+        if ((templateId == null) == (configJson == null)) {
+            throw new IllegalArgumentException("必须且只能指定templateId或config之一");
+        }
+        
+        ObjectNode config;
+        if (templateId != null) {
+            WatermarkTemplate template = TemplateService.getInstance().getTemplate(templateId);
+            if (template == null || template.getConfig() == null) {
+                throw new IllegalArgumentException("模板不存在: " + templateId);
+            }
+            config = objectMapper.valueToTree(WatermarkService.getInstance().convertToConfigData(template.getConfig()));
+        } else {
+            JsonNode parsed;
+            try {
+                parsed = objectMapper.readTree(configJson);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("config不是有效的JSON: " + e.getMessage());
+            }
+            if (parsed == null || !parsed.isObject()) {
+                throw new IllegalArgumentException("config必须是JSON对象");
+            }
+            config = (ObjectNode) parsed;
+        }
+        if (outputPath != null && !outputPath.isEmpty()) {
+            config.put("outputPath", outputPath);
+        }
+        if (!config.hasNonNull("outputPath") || config.get("outputPath").asText().isEmpty()) {
+            throw new IllegalArgumentException("缺少输出目录");
+        }
+        return config;
+    }
+    
+    private ExportJob newJob(Long templateId, ObjectNode config) throws Exception {
+        ExportJob job = new ExportJob();
+        job.setStatus(ExportJob.STATUS_QUEUED);
+        job.setTemplateId(templateId);
+        job.setConfigJson(objectMapper.writeValueAsString(config));
+        job.setCreatedAt(System.currentTimeMillis());
+        return job;
+    }
+    
+    /**
+     * 创建清单任务并把清单写入任务项表
+     * 清单无法读取或格式错误时任务标记为失败
+     */
+    private ExportJob createManifestJob(String manifest, Long templateId, String configJson, String outputPath)
+            throws Exception {
+        ExportJob job = newJob(templateId, resolveConfig(templateId, configJson, outputPath));
+        
+        try (ManifestReader reader = ManifestReader.open(manifest)) {
+            insert(job);
+            try {
+                job.setTotal(jobItemService.spill(job.getId(), reader));
+            } catch (Exception e) {
+                job.setStatus(ExportJob.STATUS_FAILED);
+                job.setMessage("读取清单失败: " + e.getMessage());
+                job.setFinishedAt(System.currentTimeMillis());
+                saveQuietly(job);
+                compactItemsQuietly(job);
+                throw e;
+            }
+        }
+        if (job.getTotal() == 0) {
+            job.setStatus(ExportJob.STATUS_FAILED);
+            job.setMessage("清单为空");
+            job.setFinishedAt(System.currentTimeMillis());
+            saveQuietly(job);
+            throw new IllegalArgumentException("清单为空: " + manifest);
+        }
+        saveQuietly(job);
+        return job;
+    }
+    
+    /**
+     * 按序号分批导出清单任务中尚未处理的项
+     * 每批内配置覆盖项相同的图片一起导出，每批结束后把结果写回任务项表
+     */
+    private BatchExportResult exportManifestItems(ExportJob job, int renderThreads, long memoryBudgetBytes,
+                                                  BatchExportService.ItemListener listener) throws Exception {
+        long startTime = System.currentTimeMillis();
+        BatchExportResult total = new BatchExportResult(job.getTotal());
+        ObjectNode baseConfig = (ObjectNode) objectMapper.readTree(job.getConfigJson());
+        
+        long afterSeq = 0;
+        List<ExportJobItem> page;
+        while (!Thread.currentThread().isInterrupted()
+                && !(page = jobItemService.findPending(job.getId(), afterSeq, ITEM_PAGE_SIZE)).isEmpty()) {
+            afterSeq = page.get(page.size() - 1).getSeq();
+            
+            // 覆盖项JSON -> 该组的任务项（源图片路径 -> 任务项），保持清单顺序
+            Map<String, Map<String, ExportJobItem>> groups = new LinkedHashMap<>();
+            for (ExportJobItem item : page) {
+                String key = item.getOverridesJson() != null ? item.getOverridesJson() : "";
+                groups.computeIfAbsent(key, k -> new LinkedHashMap<>()).put(item.getSourcePath(), item);
+            }
+            
+            for (Map.Entry<String, Map<String, ExportJobItem>> group : groups.entrySet()) {
+                Map<String, ExportJobItem> itemsByPath = group.getValue();
+                String groupConfig = group.getKey().isEmpty() ? job.getConfigJson()
+                        : applyOverrides(baseConfig, group.getKey());
+                BatchExportResult result = batchExportService.exportImages(new ArrayList<>(itemsByPath.keySet()),
+                        groupConfig, renderThreads, memoryBudgetBytes, item -> {
+                            ExportJobItem jobItem = itemsByPath.get(item.getSourcePath());
+                            if (jobItem != null) {
+                                jobItem.setStatus(item.getStatus());
+                                jobItem.setOutputPath(item.getOutputPath());
+                                jobItem.setMessage(item.getMessage());
+                                jobItem.setErrorClass(item.getErrorClass());
+                                jobItem.setOutputBytes(item.getErrorClass() == null ? item.getOutputBytes() : null);
+                                jobItem.setElapsedMs(item.getElapsedMs());
+                            }
+                            if (listener != null) {
+                                listener.onItem(item);
+                            }
+                        });
+                total.setSuccessCount(total.getSuccessCount() + result.getSuccessCount());
+                total.setFailureCount(total.getFailureCount() + result.getFailureCount());
+                total.setSkippedCount(total.getSkippedCount() + result.getSkippedCount());
+                total.setDeduplicatedCount(total.getDeduplicatedCount() + result.getDeduplicatedCount());
+                total.setQuarantinedCount(total.getQuarantinedCount() + result.getQuarantinedCount());
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+            }
+            jobItemService.saveResults(page);
+        }
+        
+        total.setElapsedMs(System.currentTimeMillis() - startTime);
+        return total;
+    }
+    
+    /**
+     * 把任务项的覆盖项写入配置副本，outputConfig.fileSuffix 形式的键写入嵌套对象
+     */
+    private String applyOverrides(ObjectNode baseConfig, String overridesJson) throws Exception {
+        ObjectNode config = baseConfig.deepCopy();
+        Map<String, String> overrides = objectMapper.readValue(overridesJson,
+                objectMapper.getTypeFactory().constructMapType(HashMap.class, String.class, String.class));
+        for (Map.Entry<String, String> override : overrides.entrySet()) {
+            String[] keys = override.getKey().split("\\.");
+            ObjectNode target = config;
+            for (int i = 0; i < keys.length - 1; i++) {
+                target = target.with(keys[i]);
+            }
+            target.put(keys[keys.length - 1], override.getValue());
+        }
+        return objectMapper.writeValueAsString(config);
+    }
+    
+    /**
+     * 登记任务进度并交给工作线程执行
+     */
+    private synchronized void enqueue(JobProgress progress, JobBody body) {
+        if (jobExecutor == null) {
+            throw new IllegalStateException("导出任务服务未启动");
+        }
+        retainProgress(progress.job.getId(), progress);
+        try {
+            jobExecutor.execute(() -> runJob(progress, body));
+        } catch (RejectedExecutionException e) {
+            progressById.remove(progress.job.getId());
+            throw new IllegalStateException("导出任务服务正在停止", e);
+        }
+    }
+    
+    /**
+     * 执行任务并更新任务状态
+     */
+    private void runJob(JobProgress progress, JobBody body) {
+        ExportJob job = progress.job;
+        ExportReportWriter report = openReport(job);
+        progress.update(() -> {
+            job.setStatus(ExportJob.STATUS_RUNNING);
+            job.setStartedAt(System.currentTimeMillis());
+            if (report != null) {
+                job.setReportPath(report.getReportFile().getPath());
+            }
+        });
+        saveQuietly(progress.snapshot());
+        
+        try {
+            BatchExportResult result = body.run(item -> {
+                progress.add(item);
+                if (report != null) {
+                    report.write(item);
+                }
+            });
+            progress.update(() -> {
+                job.setSuccessCount(result.getSuccessCount());
+                job.setFailureCount(result.getFailureCount());
+                job.setSkippedCount(result.getSkippedCount());
+                job.setDeduplicatedCount(result.getDeduplicatedCount());
+                job.setQuarantinedCount(result.getQuarantinedCount());
+                job.setStatus(ExportJob.STATUS_COMPLETED);
+                job.setFinishedAt(System.currentTimeMillis());
+            });
+            logger.info("导出任务完成: id={}, {}", job.getId(), result);
+        } catch (Exception e) {
+            logger.error("导出任务失败: id={}", job.getId(), e);
+            progress.update(() -> {
+                job.setStatus(ExportJob.STATUS_FAILED);
+                job.setMessage(e.getMessage());
+                job.setFinishedAt(System.currentTimeMillis());
+            });
+        }
+        
+        if (report != null) {
+            report.close();
+        }
+        saveQuietly(progress.snapshot());
+        compactItemsQuietly(job);
+        synchronized (this) {
+            evictFinishedProgress();
+        }
+    }
+    
+    /**
+     * 在输出目录旁创建任务的报告文件，配置中关闭报告或无法创建时返回null
+     */
+    private ExportReportWriter openReport(ExportJob job) {
+        try {
+            ObjectNode config = (ObjectNode) objectMapper.readTree(job.getConfigJson());
+            if (!config.path("report").asBoolean(true)) {
+                return null;
+            }
+            File reportFile = ExportReportWriter.defaultReportFile(config.path("outputPath").asText(),
+                                                                   "job" + job.getId());
+            return new ExportReportWriter(reportFile);
+        } catch (Exception e) {
+            logger.warn("无法创建导出报告，任务继续执行: id={}, {}", job.getId(), e.getMessage());
+            return null;
+        }
+    }
+    
+    private void retainProgress(long id, JobProgress progress) {
+        progressById.put(id, progress);
+        evictFinishedProgress();
+    }
+    
+    /**
+     * 已完成任务的进度超过上限时，从最早提交的开始淘汰
+     */
+    private void evictFinishedProgress() {
+        int finished = 0;
+        for (JobProgress progress : progressById.values()) {
+            if (progress.isFinished()) {
+                finished++;
+            }
+        }
+        Iterator<JobProgress> iterator = progressById.values().iterator();
+        while (finished > MAX_RETAINED_PROGRESS && iterator.hasNext()) {
+            if (iterator.next().isFinished()) {
+                iterator.remove();
+                finished--;
+            }
+        }
+    }
+    
+    private void insert(ExportJob job) throws Exception {
+        String sql = "INSERT INTO export_jobs (status, template_id, config_json, total, created_at, owner, heartbeat_at) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?)";
+        startLeaseRenewer();
+        
+        try (Connection conn = databaseService.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setString(1, job.getStatus());
+            if (job.getTemplateId() != null) {
+                stmt.setLong(2, job.getTemplateId());
+            } else {
+                stmt.setNull(2, Types.INTEGER);
+            }
+            stmt.setString(3, job.getConfigJson());
+            stmt.setInt(4, job.getTotal());
+            stmt.setLong(5, job.getCreatedAt());
+            stmt.setString(6, ownerId);
+            stmt.setLong(7, System.currentTimeMillis());
+            stmt.executeUpdate();
+            
+            // 使用SQLite特有的方式获取生成的ID
+            try (PreparedStatement lastIdStmt = conn.prepareStatement("SELECT last_insert_rowid()");
+                 ResultSet rs = lastIdStmt.executeQuery()) {
+                if (rs.next()) {
+                    job.setId(rs.getLong(1));
+                } else {
+                    throw new SQLException("保存导出任务失败，无法获取生成的ID");
+                }
+            }
+            
+        } catch (Exception e) {
+            logger.error("保存导出任务失败", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * 保存任务状态，失败只记录日志，不影响任务执行
+     */
+    private void saveQuietly(ExportJob job) {
+        try (Connection conn = databaseService.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(UPDATE_SQL)) {
+            
+            stmt.setString(1, job.getStatus());
+            stmt.setInt(2, job.getTotal());
+            stmt.setInt(3, job.getSuccessCount());
+            stmt.setInt(4, job.getFailureCount());
+            stmt.setInt(5, job.getSkippedCount());
+            stmt.setInt(6, job.getDeduplicatedCount());
+            stmt.setInt(7, job.getQuarantinedCount());
+            stmt.setString(8, job.getMessage());
+            stmt.setString(9, job.getReportPath());
+            setNullableLong(stmt, 10, job.getStartedAt());
+            setNullableLong(stmt, 11, job.getFinishedAt());
+            stmt.setLong(12, job.getId());
+            stmt.executeUpdate();
+            
+        } catch (Exception e) {
+            logger.warn("更新导出任务状态失败: id={}, {}", job.getId(), e.getMessage());
+        }
+    }
+    
+    /**
+     * 任务结束后压缩其任务项，失败只记录日志（任务服务下次启动时会再次清理）
+     */
+    private void compactItemsQuietly(ExportJob job) {
+        try {
+            jobItemService.compact(job.getId());
+        } catch (Exception e) {
+            logger.warn("压缩任务项失败: id={}, {}", job.getId(), e.getMessage());
+        }
+    }
+    
+    private ExportJob findById(long id) throws Exception {
+        String sql = "SELECT * FROM export_jobs WHERE id = ?";
+        
+        try (Connection conn = databaseService.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setLong(1, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? mapResultSetToJob(rs) : null;
+            }
+            
+        } catch (Exception e) {
+            logger.error("获取导出任务失败: {}", id, e);
+            throw e;
+        }
+    }
+    
+    /**
+     * 启动租约续期线程，定期刷新本进程创建的未完成任务的心跳时间
+     */
+    private synchronized void startLeaseRenewer() {
+        if (leaseRenewer != null) {
+            return;
+        }
+        leaseRenewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "export-job-lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+        leaseRenewer.scheduleWithFixedDelay(this::renewLeases, LEASE_RENEW_MILLIS, LEASE_RENEW_MILLIS,
+                                            TimeUnit.MILLISECONDS);
+    }
+    
+    private void renewLeases() {
+        String sql = "UPDATE export_jobs SET heartbeat_at = ? WHERE owner = ? AND status IN (?, ?)";
+        
+        try (Connection conn = databaseService.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setLong(1, System.currentTimeMillis());
+            stmt.setString(2, ownerId);
+            stmt.setString(3, ExportJob.STATUS_QUEUED);
+            stmt.setString(4, ExportJob.STATUS_RUNNING);
+            stmt.executeUpdate();
+            
+        } catch (Exception e) {
+            logger.warn("导出任务续期失败: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * 将其他进程创建、租约已过期的未完成任务标记为失败（旧版本创建的任务没有租约，视为已过期）
+     */
+    private int markInterruptedJobs() throws SQLException {
+        String sql = "UPDATE export_jobs SET status = ?, message = ?, finished_at = ? WHERE status IN (?, ?) " +
+                "AND (owner IS NULL OR owner <> ?) AND (heartbeat_at IS NULL OR heartbeat_at < ?)";
+        
+        try (Connection conn = databaseService.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            long now = System.currentTimeMillis();
+            stmt.setString(1, ExportJob.STATUS_FAILED);
+            stmt.setString(2, "执行任务的进程已退出，任务未完成");
+            stmt.setLong(3, now);
+            stmt.setString(4, ExportJob.STATUS_QUEUED);
+            stmt.setString(5, ExportJob.STATUS_RUNNING);
+            stmt.setString(6, ownerId);
+            stmt.setLong(7, now - LEASE_MILLIS);
+            return stmt.executeUpdate();
+        }
+    }
+    
+    private static void setNullableLong(PreparedStatement stmt, int index, Long value) throws SQLException {
+        if (value != null) {
+            stmt.setLong(index, value);
+        } else {
+            stmt.setNull(index, Types.INTEGER);
+        }
+    }
+    
+    private ExportJob mapResultSetToJob(ResultSet rs) throws SQLException {
+        ExportJob job = new ExportJob();
+        job.setId(rs.getLong("id"));
+        job.setStatus(rs.getString("status"));
+        long templateId = rs.getLong("template_id");
+        job.setTemplateId(rs.wasNull() ? null : templateId);
+        job.setConfigJson(rs.getString("config_json"));
+        job.setTotal(rs.getInt("total"));
+        job.setSuccessCount(rs.getInt("success_count"));
+        job.setFailureCount(rs.getInt("failure_count"));
+        job.setSkippedCount(rs.getInt("skipped_count"));
+        job.setDeduplicatedCount(rs.getInt("deduplicated_count"));
+        job.setQuarantinedCount(rs.getInt("quarantined_count"));
+        job.setMessage(rs.getString("message"));
+        job.setReportPath(rs.getString("report_path"));
+        job.setCreatedAt(rs.getLong("created_at"));
+        long startedAt = rs.getLong("started_at");
+        job.setStartedAt(rs.wasNull() ? null : startedAt);
+        long finishedAt = rs.getLong("finished_at");
+        job.setFinishedAt(rs.wasNull() ? null : finishedAt);
+        return job;
+    }
+}
@@ -0,0 +1,193 @@
+package com.watermark.service;
+
+import com.watermark.model.QuarantinedSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 源文件隔离服务
+ * 记录解码超时或超过尺寸限制的源文件，之后的批量导出在文件未变化时直接跳过，
+ * 不再让同一个损坏或恶意构造的文件占用渲染线程
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class QuarantineService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(QuarantineService.class);
+    
+    private static final int LOOKUP_BATCH_SIZE = 500; // 按路径查询时每条语句的参数个数，低于SQLite的参数上限
+    
+    private static final String UPSERT_SQL = "INSERT OR REPLACE INTO quarantined_sources " +
+            "(source_path, source_size, source_mtime, reason, message, quarantined_at) VALUES (?, ?, ?, ?, ?, ?)";
+    
+    private static QuarantineService instance;
+    private final DatabaseService databaseService;
+    
+    private QuarantineService() {
+        this.databaseService = DatabaseService.getInstance();
+    }
+    
+    public static synchronized QuarantineService getInstance() {
+        if (instance == null) {
+            instance = new QuarantineService();
+        }
+        return instance;
+    }
+    
+    /**
+     * 隔离源文件，记录当前的文件大小和修改时间；已隔离的文件更新原因
+     */
+    public QuarantinedSource quarantine(File source, String reason, String message) throws Exception {
+        QuarantinedSource entry = new QuarantinedSource();
+        entry.setSourcePath(source.getAbsolutePath());
+        entry.setSourceSize(source.length());
+        entry.setSourceMtime(source.lastModified());
+        entry.setReason(reason);
+        entry.setMessage(message);
+        entry.setQuarantinedAt(System.currentTimeMillis());
+        
+        try (Connection conn = databaseService.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(UPSERT_SQL)) {
+            
+            stmt.setString(1, entry.getSourcePath());
+            stmt.setLong(2, entry.getSourceSize());
+            stmt.setLong(3, entry.getSourceMtime());
+            stmt.setString(4, entry.getReason());
+            stmt.setString(5, entry.getMessage());
+            stmt.setLong(6, entry.getQuarantinedAt());
+            stmt.executeUpdate();
+            
+            logger.warn("源文件已隔离: {} ({}: {})", entry.getSourcePath(), reason, message);
+            return entry;
+            
+        } catch (Exception e) {
+            logger.error("隔离源文件失败: {}", source, e);
+            throw e;
+        }
+    }
+    
+    /**
+     * 按源文件路径查找隔离记录，每次查询最多LOOKUP_BATCH_SIZE个路径
+     * 
+     * @param sourcePaths 源文件的绝对路径
+     * @return 以源文件路径为键的隔离记录（只包含已隔离的路径，不检查文件是否已变化）
+     */
+    public Map<String, QuarantinedSource> findBySourcePaths(Collection<String> sourcePaths) throws Exception {
+        Map<String, QuarantinedSource> entries = new HashMap<>();
+        List<String> paths = new ArrayList<>(sourcePaths);
+        
+        try (Connection conn = databaseService.getConnection()) {
+            for (int start = 0; start < paths.size(); start += LOOKUP_BATCH_SIZE) {
+                List<String> batch = paths.subList(start, Math.min(paths.size(), start + LOOKUP_BATCH_SIZE));
+                StringBuilder sql = new StringBuilder("SELECT * FROM quarantined_sources WHERE source_path IN (");
+                for (int i = 0; i < batch.size(); i++) {
+                    sql.append(i == 0 ? "?" : ", ?");
+                }
+                sql.append(")");
+                
+                try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        stmt.setString(i + 1, batch.get(i));
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            QuarantinedSource entry = mapResultSetToEntry(rs);
+                            entries.put(entry.getSourcePath(), entry);
+                        }
+                    }
+                }
+            }
+            return entries;
+            
+        } catch (Exception e) {
+            logger.error("查询隔离源文件失败", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * 获取全部隔离记录，按隔离时间倒序排列
+     */
+    public List<QuarantinedSource> findAll() throws Exception {
+        String sql = "SELECT * FROM quarantined_sources ORDER BY quarantined_at DESC";
+        List<QuarantinedSource> entries = new ArrayList<>();
+        
+        try (Connection conn = databaseService.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            
+            while (rs.next()) {
+                entries.add(mapResultSetToEntry(rs));
+            }
+            return entries;
+            
+        } catch (Exception e) {
+            logger.error("获取隔离源文件列表失败", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * 解除隔离，下次导出时重新处理该文件
+     * 
+     * @return 是否存在该隔离记录
+     */
+    public boolean release(String sourcePath) throws Exception {
+        String sql = "DELETE FROM quarantined_sources WHERE source_path = ?";
+        
+        try (Connection conn = databaseService.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setString(1, new File(sourcePath).getAbsolutePath());
+            boolean released = stmt.executeUpdate() > 0;
+            if (released) {
+                logger.info("源文件已解除隔离: {}", sourcePath);
+            }
+            return released;
+            
+        } catch (Exception e) {
+            logger.error("解除隔离失败: {}", sourcePath, e);
+            throw e;
+        }
+    }
+    
+    /**
+     * 解除全部隔离
+     */
+    public int releaseAll() throws Exception {
+        try (Connection conn = databaseService.getConnection();
+             Statement stmt = conn.createStatement()) {
+            
+            int released = stmt.executeUpdate("DELETE FROM quarantined_sources");
+            logger.info("已解除全部隔离: {} 个文件", released);
+            return released;
+            
+        } catch (Exception e) {
+            logger.error("解除全部隔离失败", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * 将ResultSet映射为QuarantinedSource对象
+     */
+    private QuarantinedSource mapResultSetToEntry(ResultSet rs) throws SQLException {
+        QuarantinedSource entry = new QuarantinedSource();
+        entry.setSourcePath(rs.getString("source_path"));
+        entry.setSourceSize(rs.getLong("source_size"));
+        entry.setSourceMtime(rs.getLong("source_mtime"));
+        entry.setReason(rs.getString("reason"));
+        entry.setMessage(rs.getString("message"));
+        entry.setQuarantinedAt(rs.getLong("quarantined_at"));
+        return entry;
+    }
+}
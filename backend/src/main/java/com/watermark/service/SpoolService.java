@@ -0,0 +1,403 @@
+package com.watermark.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.watermark.dto.BatchExportResult;
+import com.watermark.dto.ExportItemResult;
+import com.watermark.model.ProcessingRecord;
+import com.watermark.util.SpoolDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 多进程分片导出服务
+ * 工作进程从共享的任务目录（SpoolDirectory）领取分片并导出，逐张结果追加到自己的结果账本，
+ * 不写处理历史；协调进程回收租约过期的分片，并把已完成分片的账本记录汇总写入processing_history。
+ * 
+ * 账本每行一个JSON：分片开始（start）、单张结果（item）、分片完成（done）。
+ * 分片先写完成标记再改名到done，进程在两步之间退出时分片会被回收重做，
+ * 汇总时每个分片只采用第一个完成标记对应的结果。已汇总的分片登记在spool_merged表中，
+ * 与该分片的处理历史在同一事务中提交，协调进程中途退出或多个协调进程同时汇总时都不会重复写入
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class SpoolService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(SpoolService.class);
+    
+    private static final String TYPE_START = "start";
+    private static final String TYPE_ITEM = "item";
+    private static final String TYPE_DONE = "done";
+    
+    private static SpoolService instance;
+    private final BatchExportService batchExportService;
+    private final HistoryService historyService;
+    private final ObjectMapper objectMapper;
+    
+    // 协调进程已读取到的账本位置及尚未完成的分片结果，同一进程内多次汇总时只读取新追加的内容
+    private final Map<String, Long> ledgerOffsets = new HashMap<>();
+    private final Map<String, Map<String, List<JsonNode>>> openChunks = new HashMap<>();
+    
+    private SpoolService() {
+        this.batchExportService = BatchExportService.getInstance();
+        this.historyService = HistoryService.getInstance();
+        this.objectMapper = new ObjectMapper();
+    }
+    
+    public static synchronized SpoolService getInstance() {
+        if (instance == null) {
+            instance = new SpoolService();
+        }
+        return instance;
+    }
+    
+    /**
+     * 创建分片任务
+     * 
+     * @param configJson 导出配置JSON（含outputPath）
+     * @param templateId 模板ID，汇总处理历史时记录（可为null）
+     * @return 分片数
+     */
+    public int createJob(File spoolDir, List<String> imagePaths, String configJson, Long templateId, int chunkSize)
+            throws IOException {
+        ObjectNode job = objectMapper.createObjectNode();
+        if (templateId != null) {
+            job.put("templateId", templateId);
+        }
+        job.put("total", imagePaths.size());
+        job.put("chunkSize", chunkSize);
+        job.put("createdAt", System.currentTimeMillis());
+        job.set("config", objectMapper.readTree(configJson));
+        return new SpoolDirectory(spoolDir).create(objectMapper.writeValueAsString(job), imagePaths, chunkSize);
+    }
+    
+    /**
+     * 以工作进程身份处理分片，直到没有可领取的分片
+     * 没有待处理分片但仍有其他进程领取的分片时，waitForLeases为true则等待其完成或租约过期后回收处理。
+     * 处理中的分片续期失败时中断导出并放弃该分片（不写完成标记，计入lostLeases）
+     * 
+     * @return 本进程的处理统计
+     */
+    public Map<String, Object> runWorker(File spoolDir, String workerId, int renderThreads, long memoryBudgetBytes,
+                                         long leaseMillis, boolean waitForLeases) throws Exception {
+        SpoolDirectory spool = new SpoolDirectory(spoolDir);
+        String id = SpoolDirectory.sanitizeWorkerId(workerId);
+        String configJson = objectMapper.writeValueAsString(objectMapper.readTree(spool.readJob()).get("config"));
+        
+        // 处理历史由协调进程从账本汇总
+        historyService.setRecording(false);
+        
+        // 续期失败说明分片已被回收、可能正由其他进程处理：标记后中断导出，放弃该分片
+        AtomicReference<SpoolDirectory.Claim> current = new AtomicReference<>();
+        AtomicBoolean leaseLost = new AtomicBoolean();
+        Object leaseLock = new Object();
+        Thread worker = Thread.currentThread();
+        ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "spool-lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long renewMillis = Math.max(1000, leaseMillis / 3);
+        heartbeat.scheduleWithFixedDelay(() -> {
+            synchronized (leaseLock) {
+                SpoolDirectory.Claim claim = current.get();
+                if (claim != null && !leaseLost.get() && !spool.renew(claim)) {
+                    logger.warn("分片租约续期失败（可能已被回收），放弃该分片: {}", claim.getChunk());
+                    leaseLost.set(true);
+                    worker.interrupt();
+                }
+            }
+        }, renewMillis, renewMillis, TimeUnit.MILLISECONDS);
+        
+        int chunks = 0;
+        int lostLeases = 0;
+        BatchExportResult totals = new BatchExportResult();
+        long startTime = System.currentTimeMillis();
+        
+        try (FileOutputStream ledger = new FileOutputStream(spool.getLedgerFile(id), true)) {
+            while (true) {
+                SpoolDirectory.Claim claim = spool.claimNext(id);
+                if (claim == null) {
+                    if (!waitForLeases || spool.countClaimed() == 0) {
+                        break;
+                    }
+                    if (spool.reclaimExpired(leaseMillis) == 0) {
+                        Thread.sleep(Math.min(renewMillis, 2000));
+                    }
+                    continue;
+                }
+                
+                current.set(claim);
+                String chunk = claim.getChunk();
+                List<String> imagePaths = spool.readChunk(claim);
+                writeLedgerLine(ledger, ledgerLine(TYPE_START, chunk, id));
+                
+                AtomicReference<IOException> ledgerError = new AtomicReference<>();
+                BatchExportResult result = batchExportService.exportImages(imagePaths, configJson,
+                        renderThreads, memoryBudgetBytes, item -> {
+                            try {
+                                ObjectNode line = objectMapper.valueToTree(item);
+                                line.put("type", TYPE_ITEM);
+                                line.put("chunk", chunk);
+                                line.put("processedAt", System.currentTimeMillis());
+                                writeLedgerLine(ledger, line);
+                            } catch (IOException e) {
+                                ledgerError.compareAndSet(null, e);
+                            }
+                        });
+                
+                boolean lost;
+                synchronized (leaseLock) {
+                    current.set(null);
+                    lost = leaseLost.getAndSet(false);
+                }
+                if (lost) {
+                    // 不写完成标记，已写入账本的结果在汇总时丢弃；清除为放弃分片设置的中断后继续领取
+                    Thread.interrupted();
+                    lostLeases++;
+                    logger.warn("分片租约已失效，已放弃: {} (放弃前处理 {} 张)", chunk,
+                                result.getSuccessCount() + result.getFailureCount() + result.getSkippedCount());
+                    continue;
+                }
+                // 账本不完整时不标记完成，分片在租约过期后由其他进程重做
+                if (ledgerError.get() != null) {
+                    throw ledgerError.get();
+                }
+                
+                // 先把结果和完成标记写到磁盘，再把分片改名为已完成
+                writeLedgerLine(ledger, ledgerLine(TYPE_DONE, chunk, id));
+                ledger.getFD().sync();
+                if (!spool.complete(claim)) {
+                    lostLeases++;
+                    logger.warn("分片完成前租约已被回收，结果以先完成的进程为准: {}", chunk);
+                }
+                
+                chunks++;
+                totals.setTotal(totals.getTotal() + result.getTotal());
+                totals.setSuccessCount(totals.getSuccessCount() + result.getSuccessCount());
+                totals.setFailureCount(totals.getFailureCount() + result.getFailureCount());
+                totals.setSkippedCount(totals.getSkippedCount() + result.getSkippedCount());
+                totals.setDeduplicatedCount(totals.getDeduplicatedCount() + result.getDeduplicatedCount());
+                totals.setQuarantinedCount(totals.getQuarantinedCount() + result.getQuarantinedCount());
+                logger.info("分片处理完成: {} ({})", chunk, result);
+            }
+        } finally {
+            heartbeat.shutdownNow();
+        }
+        
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("workerId", id);
+        summary.put("chunks", chunks);
+        summary.put("lostLeases", lostLeases);
+        summary.put("total", totals.getTotal());
+        summary.put("successCount", totals.getSuccessCount());
+        summary.put("failureCount", totals.getFailureCount());
+        summary.put("skippedCount", totals.getSkippedCount());
+        summary.put("deduplicatedCount", totals.getDeduplicatedCount());
+        summary.put("quarantinedCount", totals.getQuarantinedCount());
+        summary.put("elapsedMs", System.currentTimeMillis() - startTime);
+        return summary;
+    }
+    
+    /**
+     * 协调：回收租约过期的分片并汇总账本，直到全部分片完成
+     * 
+     * @param once 只执行一轮
+     * @return 任务目录的状态
+     */
+    public Map<String, Object> coordinate(File spoolDir, long leaseMillis, long pollMillis, boolean once)
+            throws Exception {
+        SpoolDirectory spool = new SpoolDirectory(spoolDir);
+        int mergedRecords = 0;
+        int mergedChunks = 0;
+        while (true) {
+            spool.reclaimExpired(leaseMillis);
+            boolean finished = spool.countPending() == 0 && spool.countClaimed() == 0;
+            
+            int[] merged = mergeLedgers(spool);
+            mergedChunks += merged[0];
+            mergedRecords += merged[1];
+            
+            if (once || finished) {
+                break;
+            }
+            Thread.sleep(pollMillis);
+        }
+        
+        Map<String, Object> status = getStatus(spool);
+        status.put("mergedChunksThisRun", mergedChunks);
+        status.put("mergedRecordsThisRun", mergedRecords);
+        return status;
+    }
+    
+    /**
+     * 获取任务目录的状态
+     */
+    public Map<String, Object> getStatus(SpoolDirectory spool) throws Exception {
+        JsonNode job = objectMapper.readTree(spool.readJob());
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("spool", spool.getRoot().getAbsolutePath());
+        status.put("total", job.path("total").asInt());
+        status.put("pendingChunks", spool.countPending());
+        status.put("claimedChunks", spool.countClaimed());
+        status.put("doneChunks", spool.countDone());
+        status.put("mergedChunks", historyService.findMergedChunks(spoolKey(spool)).size());
+        return status;
+    }
+    
+    /**
+     * 汇总各账本中新完成的分片，每个分片的处理历史与其汇总登记在同一事务中写入
+     * 
+     * @return {新汇总的分片数, 写入的历史记录数}
+     */
+    private synchronized int[] mergeLedgers(SpoolDirectory spool) throws Exception {
+        JsonNode job = objectMapper.readTree(spool.readJob());
+        Long templateId = job.hasNonNull("templateId") ? job.get("templateId").asLong() : null;
+        String spoolKey = spoolKey(spool);
+        Set<String> merged = historyService.findMergedChunks(spoolKey);
+        int mergedChunks = 0;
+        int records = 0;
+        
+        for (File ledgerFile : spool.getLedgerFiles()) {
+            String key = ledgerFile.getAbsolutePath();
+            Map<String, List<JsonNode>> open = openChunks.computeIfAbsent(key, k -> new HashMap<>());
+            
+            for (JsonNode line : readNewLines(ledgerFile)) {
+                String chunk = line.path("chunk").asText();
+                switch (line.path("type").asText()) {
+                    case TYPE_START:
+                        // 同一进程重新领取了分片：丢弃上一次未完成的结果
+                        open.put(chunk, new ArrayList<>());
+                        break;
+                    case TYPE_ITEM:
+                        open.computeIfAbsent(chunk, c -> new ArrayList<>()).add(line);
+                        break;
+                    case TYPE_DONE:
+                        List<JsonNode> items = open.remove(chunk);
+                        if (items == null || !merged.add(chunk)) {
+                            break;
+                        }
+                        List<ProcessingRecord> history = toHistory(items, templateId);
+                        if (historyService.recordMergedChunk(spoolKey, chunk, history)) {
+                            mergedChunks++;
+                            records += history.size();
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        
+        if (mergedChunks > 0) {
+            logger.info("汇总分片结果: {} 个分片, {} 条处理历史", mergedChunks, records);
+        }
+        return new int[] {mergedChunks, records};
+    }
+    
+    /**
+     * 分片的处理历史，只有导出成功（含复用重复内容）的结果写入
+     */
+    private List<ProcessingRecord> toHistory(List<JsonNode> items, Long templateId) {
+        List<ProcessingRecord> history = new ArrayList<>();
+        for (JsonNode item : items) {
+            String status = item.path("status").asText();
+            if (!ExportItemResult.STATUS_SUCCESS.equals(status)
+                    && !ExportItemResult.STATUS_DEDUPLICATED.equals(status)) {
+                continue;
+            }
+            ProcessingRecord record = new ProcessingRecord(item.path("sourcePath").asText(),
+                    item.path("outputPath").asText(), templateId, item.path("elapsedMs").asLong());
+            record.setProcessedAt(LocalDateTime.ofInstant(
+                    Instant.ofEpochMilli(item.path("processedAt").asLong()), ZoneId.systemDefault()));
+            history.add(record);
+        }
+        return history;
+    }
+    
+    /**
+     * spool_merged表中标识分片任务的键（任务目录的规范路径）
+     */
+    private static String spoolKey(SpoolDirectory spool) throws IOException {
+        return spool.getRoot().getCanonicalPath();
+    }
+    
+    /**
+     * 读取账本中上次读取之后追加的完整行；工作进程正在写的最后一行留到下次读取
+     */
+    private List<JsonNode> readNewLines(File ledgerFile) throws IOException {
+        String key = ledgerFile.getAbsolutePath();
+        long offset = ledgerOffsets.getOrDefault(key, 0L);
+        if (ledgerFile.length() <= offset) {
+            return Collections.emptyList();
+        }
+        
+        byte[] data;
+        try (RandomAccessFile file = new RandomAccessFile(ledgerFile, "r")) {
+            file.seek(offset);
+            data = new byte[(int) Math.min(Integer.MAX_VALUE - 8, file.length() - offset)];
+            file.readFully(data);
+        }
+        
+        List<JsonNode> lines = new ArrayList<>();
+        int lineStart = 0;
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] != '\n') {
+                continue;
+            }
+            if (i > lineStart) {
+                try {
+                    lines.add(objectMapper.readTree(new String(data, lineStart, i - lineStart, StandardCharsets.UTF_8)));
+                } catch (IOException e) {
+                    logger.warn("忽略无法解析的账本行: {} @ {}", ledgerFile.getName(), offset + lineStart);
+                }
+            }
+            lineStart = i + 1;
+        }
+        ledgerOffsets.put(key, offset + lineStart);
+        return lines;
+    }
+    
+    private ObjectNode ledgerLine(String type, String chunk, String workerId) {
+        ObjectNode line = objectMapper.createObjectNode();
+        line.put("type", type);
+        line.put("chunk", chunk);
+        line.put("workerId", workerId);
+        line.put("time", System.currentTimeMillis());
+        return line;
+    }
+    
+    /**
+     * 追加一行到账本；每行一次写入，进程中途退出时最多留下不完整的最后一行
+     */
+    private void writeLedgerLine(FileOutputStream ledger, JsonNode line) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(line);
+        byte[] buffer = new byte[bytes.length + 1];
+        System.arraycopy(bytes, 0, buffer, 0, bytes.length);
+        buffer[bytes.length] = '\n';
+        ledger.write(buffer);
+    }
+}
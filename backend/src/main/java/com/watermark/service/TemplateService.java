@@ -2,15 +2,24 @@ package com.watermark.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.watermark.dto.PageResult;
+import com.watermark.dto.TemplateSummary;
 import com.watermark.model.TextWatermarkConfig;
 import com.watermark.model.WatermarkTemplate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 /**
  * 模板服务
@@ -23,10 +32,28 @@ public class TemplateService {
     
     private static final Logger logger = LoggerFactory.getLogger(TemplateService.class);
     
+    // 摘要分页的最大页大小
+    private static final int MAX_PAGE_SIZE = 500;
+    
+    // 模板排序规则：创建时间倒序，相同时按ID倒序
+    private static final Comparator<WatermarkTemplate> TEMPLATE_ORDER =
+        Comparator.comparing(WatermarkTemplate::getCreatedAt, Comparator.nullsLast(Comparator.<LocalDateTime>reverseOrder()))
+                  .thenComparing(WatermarkTemplate::getId, Comparator.nullsLast(Comparator.<Long>reverseOrder()));
+    
     private static TemplateService instance;
     private final DatabaseService databaseService;
     private final ObjectMapper objectMapper;
     
+    // 模板内存缓存（写穿透）：首次访问时从数据库全量加载，之后随保存/删除/复制同步更新。
+    // 缓存中的对象不直接返回给调用方（返回副本）；全量加载在锁内构建新表后整体替换，写入缓存同样持有该锁
+    private volatile Map<Long, WatermarkTemplate> templateCache = new ConcurrentHashMap<>();
+    private final AtomicLong cacheVersion = new AtomicLong();
+    private volatile boolean cacheLoaded = false;
+    
+    // 预序列化的模板列表JSON及其对应的缓存版本
+    private volatile String templatesJson;
+    private volatile long templatesJsonVersion = -1;
+    
     private TemplateService() {
         this.databaseService = DatabaseService.getInstance();
         this.objectMapper = new ObjectMapper();
@@ -63,7 +90,7 @@ public class TemplateService {
             
             // 将配置对象序列化为JSON
             String configJson = objectMapper.writeValueAsString(template.getConfig());
-
+            
             System.out.println("Serialized config JSON: " + configJson);
             
             stmt.setString(1, template.getName());
@@ -96,6 +123,17 @@ public class TemplateService {
             }
             
             logger.info("模板保存成功: {}", template);
+            
+            // 写穿透：重新读取该行，保证缓存中的时间戳与数据库一致
+            WatermarkTemplate stored = queryTemplate(conn, template.getId());
+            synchronized (this) {
+                if (stored != null) {
+                    templateCache.put(stored.getId(), stored);
+                } else {
+                    templateCache.remove(template.getId());
+                }
+                cacheVersion.incrementAndGet();
+            }
             return template;
             
         } catch (Exception e) {
@@ -105,23 +143,28 @@ public class TemplateService {
     }
     
     /**
-     * 根据ID获取模板
+     * 根据ID获取模板（返回副本，修改不影响缓存）
+     * 只加载单个模板的完整配置，不触发全量缓存加载
      */
     public WatermarkTemplate getTemplate(long id) throws Exception {
-        String sql = "SELECT * FROM watermark_templates WHERE id = ?";
+        WatermarkTemplate cached = templateCache.get(id);
+        if (cached != null) {
+            return cached.deepCopy();
+        }
         
-        try (Connection conn = databaseService.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setLong(1, id);
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return mapResultSetToTemplate(rs);
-                } else {
-                    return null;
+        long version = cacheVersion.get();
+        try (Connection conn = databaseService.getConnection()) {
+            WatermarkTemplate template = queryTemplate(conn, id);
+            if (template == null) {
+                return null;
+            }
+            synchronized (this) {
+                // 查询期间缓存有变更（如该模板被保存或删除）时不写入，避免用旧数据覆盖或恢复已删除的模板
+                if (cacheVersion.get() == version && templateCache.putIfAbsent(id, template) == null) {
+                    cacheVersion.incrementAndGet();
                 }
             }
+            return template.deepCopy();
             
         } catch (Exception e) {
             logger.error("获取模板失败: id={}", id, e);
@@ -131,55 +174,150 @@ public class TemplateService {
     
     /**
      * 获取所有模板
+     * 从内存缓存返回副本，按创建时间倒序排列
      */
     public List<WatermarkTemplate> getAllTemplates() throws Exception {
-        String sql = "SELECT * FROM watermark_templates ORDER BY created_at DESC";
         List<WatermarkTemplate> templates = new ArrayList<>();
+        for (WatermarkTemplate template : sortedCachedTemplates()) {
+            templates.add(template.deepCopy());
+        }
         
-        try (Connection conn = databaseService.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
-            
-            while (rs.next()) {
-                templates.add(mapResultSetToTemplate(rs));
+        logger.debug("获取到 {} 个模板", templates.size());
+        return templates;
+    }
+    
+    /**
+     * 缓存中的全部模板（缓存中的对象本身，只在本类内只读使用），按创建时间倒序排列
+     */
+    private List<WatermarkTemplate> sortedCachedTemplates() throws Exception {
+        ensureCacheLoaded();
+        List<WatermarkTemplate> templates = new ArrayList<>(templateCache.values());
+        templates.sort(TEMPLATE_ORDER);
+        return templates;
+    }
+    
+    /**
+     * 获取所有模板的JSON字符串
+     * 缓存版本未变化时直接返回上次序列化的结果
+     */
+    public String getAllTemplatesJson() throws Exception {
+        ensureCacheLoaded();
+        long version = cacheVersion.get();
+        String json = templatesJson;
+        if (json != null && templatesJsonVersion == version) {
+            return json;
+        }
+        
+        json = objectMapper.writeValueAsString(sortedCachedTemplates());
+        synchronized (this) {
+            // 序列化期间若有新的写入，则不覆盖为过期的结果
+            if (cacheVersion.get() == version) {
+                templatesJson = json;
+                templatesJsonVersion = version;
             }
-            
-            logger.debug("获取到 {} 个模板", templates.size());
-            return templates;
-            
-        } catch (Exception e) {
-            logger.error("获取模板列表失败", e);
-            throw e;
         }
+        return json;
     }
     
     /**
-     * 根据类型获取模板
+     * 分页获取模板摘要
+     * 只查询列表展示所需的列，不解析配置JSON；按创建时间、ID倒序进行keyset分页
+     * 
+     * @param cursor 上一页返回的游标，为空时从第一页开始
+     * @param limit 每页数量
      */
-    public List<WatermarkTemplate> getTemplatesByType(String type) throws Exception {
-        String sql = "SELECT * FROM watermark_templates WHERE type = ? ORDER BY created_at DESC";
-        List<WatermarkTemplate> templates = new ArrayList<>();
+    public PageResult<TemplateSummary> getTemplateSummaries(String cursor, int limit) throws Exception {
+        return queryPage("id, name, description, type, created_at, updated_at", cursor, limit,
+                this::mapResultSetToSummary, TemplateSummary::getId);
+    }
+    
+    /**
+     * 分页获取完整模板（含配置），排序和游标与getTemplateSummaries相同
+     * 
+     * @param cursor 上一页返回的游标，为空时从第一页开始
+     * @param limit 每页数量
+     */
+    public PageResult<WatermarkTemplate> getTemplatesPage(String cursor, int limit) throws Exception {
+        return queryPage("*", cursor, limit, this::mapResultSetToTemplate, WatermarkTemplate::getId);
+    }
+    
+    /**
+     * 按创建时间、ID倒序进行keyset分页查询
+     */
+    private <T> PageResult<T> queryPage(String columns, String cursor, int limit,
+                                        RowMapper<T> rowMapper, Function<T, Long> idGetter) throws Exception {
+        int pageSize = Math.max(1, Math.min(MAX_PAGE_SIZE, limit));
+        String[] keys = decodeCursor(cursor);
+        
+        String sql = "SELECT " + columns + " FROM watermark_templates ";
+        if (keys != null) {
+            sql += "WHERE (created_at < ? OR (created_at = ? AND id < ?)) ";
+        }
+        sql += "ORDER BY created_at DESC, id DESC LIMIT ?";
         
         try (Connection conn = databaseService.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             
-            stmt.setString(1, type);
+            int index = 1;
+            if (keys != null) {
+                stmt.setString(index++, keys[0]);
+                stmt.setString(index++, keys[0]);
+                stmt.setLong(index++, Long.parseLong(keys[1]));
+            }
+            // 多取一条用于判断是否还有下一页
+            stmt.setInt(index, pageSize + 1);
+            
+            List<T> items = new ArrayList<>();
+            String lastCreatedAt = null;
+            boolean hasMore = false;
             
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    templates.add(mapResultSetToTemplate(rs));
+                    if (items.size() == pageSize) {
+                        hasMore = true;
+                        break;
+                    }
+                    lastCreatedAt = rs.getString("created_at");
+                    items.add(rowMapper.map(rs));
                 }
             }
             
-            logger.debug("获取到 {} 个 {} 类型的模板", templates.size(), type);
-            return templates;
+            String nextCursor = null;
+            if (hasMore) {
+                nextCursor = encodeCursor(lastCreatedAt, idGetter.apply(items.get(items.size() - 1)));
+            }
+            
+            logger.debug("分页获取模板: {} 条, hasMore={}", items.size(), hasMore);
+            return new PageResult<>(items, nextCursor);
             
         } catch (Exception e) {
-            logger.error("根据类型获取模板失败: type={}", type, e);
+            logger.error("分页获取模板失败: cursor={}", cursor, e);
             throw e;
         }
     }
     
+    /**
+     * 将ResultSet当前行映射为对象
+     */
+    private interface RowMapper<T> {
+        T map(ResultSet rs) throws Exception;
+    }
+    
+    /**
+     * 根据类型获取模板
+     */
+    public List<WatermarkTemplate> getTemplatesByType(String type) throws Exception {
+        List<WatermarkTemplate> templates = new ArrayList<>();
+        for (WatermarkTemplate template : sortedCachedTemplates()) {
+            if (template.getConfig() != null && template.getConfig().getType().name().equals(type)) {
+                templates.add(template.deepCopy());
+            }
+        }
+        
+        logger.debug("获取到 {} 个 {} 类型的模板", templates.size(), type);
+        return templates;
+    }
+    
     /**
      * 删除模板
      */
@@ -193,6 +331,11 @@ public class TemplateService {
             int affectedRows = stmt.executeUpdate();
             
             boolean success = affectedRows > 0;
+            synchronized (this) {
+                if (templateCache.remove(id) != null || success) {
+                    cacheVersion.incrementAndGet();
+                }
+            }
             if (success) {
                 logger.info("模板删除成功: id={}", id);
             } else {
@@ -251,6 +394,128 @@ public class TemplateService {
         return false;
     }
     
+    /**
+     * 清空模板缓存，下次访问时重新从数据库加载
+     */
+    public synchronized void invalidateCache() {
+        templateCache = new ConcurrentHashMap<>();
+        cacheLoaded = false;
+        cacheVersion.incrementAndGet();
+        logger.info("模板缓存已失效");
+    }
+    
+    /**
+     * 获取当前缓存版本号（每次缓存变更递增）
+     */
+    public long getCacheVersion() {
+        return cacheVersion.get();
+    }
+    
+    /**
+     * 确保模板缓存已从数据库加载
+     * 在锁内查询并构建新表后整体替换：加载期间的写入等待加载完成后再更新缓存，不会被加载结果覆盖，
+     * 读取方也不会看到清空后尚未填充完的缓存
+     */
+    private void ensureCacheLoaded() throws Exception {
+        if (cacheLoaded) {
+            return;
+        }
+        synchronized (this) {
+            if (cacheLoaded) {
+                return;
+            }
+            
+            String sql = "SELECT * FROM watermark_templates";
+            try (Connection conn = databaseService.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql);
+                 ResultSet rs = stmt.executeQuery()) {
+                
+                Map<Long, WatermarkTemplate> loaded = new ConcurrentHashMap<>();
+                while (rs.next()) {
+                    WatermarkTemplate template = mapResultSetToTemplate(rs);
+                    loaded.put(template.getId(), template);
+                }
+                templateCache = loaded;
+                cacheLoaded = true;
+                cacheVersion.incrementAndGet();
+                
+                logger.info("模板缓存加载完成: {} 个模板", loaded.size());
+                
+            } catch (Exception e) {
+                logger.error("加载模板缓存失败", e);
+                throw e;
+            }
+        }
+    }
+    
+    /**
+     * 从数据库查询单个模板
+     */
+    private WatermarkTemplate queryTemplate(Connection conn, long id) throws Exception {
+        String sql = "SELECT * FROM watermark_templates WHERE id = ?";
+        
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, id);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? mapResultSetToTemplate(rs) : null;
+            }
+        }
+    }
+    
+    /**
+     * 编码分页游标
+     */
+    private String encodeCursor(String createdAt, long id) {
+        String raw = (createdAt != null ? createdAt : "") + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * 解码分页游标，返回 [created_at, id]
+     */
+    private String[] decodeCursor(String cursor) {
+        if (cursor == null || cursor.trim().isEmpty()) {
+            return null;
+        }
+        
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('|');
+            if (separator < 0) {
+                throw new IllegalArgumentException("无效的分页游标: " + cursor);
+            }
+            Long.parseLong(raw.substring(separator + 1));
+            return new String[] { raw.substring(0, separator), raw.substring(separator + 1) };
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("无效的分页游标: " + cursor, e);
+        }
+    }
+    
+    /**
+     * 将ResultSet映射为TemplateSummary对象
+     */
+    private TemplateSummary mapResultSetToSummary(ResultSet rs) throws SQLException {
+        TemplateSummary summary = new TemplateSummary();
+        
+        summary.setId(rs.getLong("id"));
+        summary.setName(rs.getString("name"));
+        summary.setDescription(rs.getString("description"));
+        summary.setType(rs.getString("type"));
+        
+        Timestamp createdAt = rs.getTimestamp("created_at");
+        if (createdAt != null) {
+            summary.setCreatedAt(createdAt.toLocalDateTime());
+        }
+        
+        Timestamp updatedAt = rs.getTimestamp("updated_at");
+        if (updatedAt != null) {
+            summary.setUpdatedAt(updatedAt.toLocalDateTime());
+        }
+        
+        return summary;
+    }
+    
     /**
      * 将ResultSet映射为WatermarkTemplate对象
      */
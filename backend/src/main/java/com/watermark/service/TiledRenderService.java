@@ -0,0 +1,478 @@
+package com.watermark.service;
+
+import com.watermark.encoder.ImageEncodeOptions;
+import com.watermark.encoder.PngImageEncoder;
+import com.watermark.encoder.TiffEncodeOptions;
+import com.watermark.encoder.TiffImageEncoder;
+import com.watermark.model.WatermarkConfig;
+import com.watermark.strategy.WatermarkRenderer;
+import com.watermark.strategy.WatermarkStrategyFactory;
+import com.watermark.util.ImageHeader;
+import com.watermark.util.ImageTypePolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.Vector;
+
+/**
+ * 分块渲染服务
+ * 处理解码后超出可用内存的超大图片：按整行宽度的条带读取源图片，只在与水印区域相交的条带上绘制水印，
+ * 并将条带依次交给支持逐块写入的PNG/TIFF编码器，同一时刻内存中只保留一个条带
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class TiledRenderService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(TiledRenderService.class);
+    
+    private static final long MAX_STRIP_BYTES = 32L * 1024 * 1024; // 每个条带的最大目标大小
+    private static final int STRIP_HEAP_FRACTION = 16;              // 条带不超过最大堆内存的该分之一
+    private static final int MIN_STRIP_ROWS = 16;               // 条带最少行数
+    private static final int BYTES_PER_PIXEL = 4;               // 估算解码后内存占用时每像素的字节数
+    
+    private static TiledRenderService instance;
+    private final PngImageEncoder pngEncoder;
+    private final TiffImageEncoder tiffEncoder;
+    
+    private TiledRenderService() {
+        this.pngEncoder = PngImageEncoder.getInstance();
+        this.tiffEncoder = TiffImageEncoder.getInstance();
+    }
+    
+    public static synchronized TiledRenderService getInstance() {
+        if (instance == null) {
+            instance = new TiledRenderService();
+        }
+        return instance;
+    }
+    
+    /**
+     * 判断图片是否需要分块处理（只读取文件头）
+     */
+    public boolean requiresTiling(File file) throws IOException {
+        ImageHeader header = ImageHeader.read(file);
+        return header != null && requiresTiling(header);
+    }
+    
+    /**
+     * 判断图片是否需要分块处理
+     * 整幅解码的源图片加上水印画布超过最大堆内存的一半时分块处理
+     */
+    public boolean requiresTiling(ImageHeader header) {
+        long estimatedBytes = header.getPixelCount() * BYTES_PER_PIXEL * 2;
+        return estimatedBytes > Runtime.getRuntime().maxMemory() / 2;
+    }
+    
+    /**
+     * 判断输出格式能否分块写入
+     * JPEG编码器需要完整的栅格数据，只有PNG和TIFF可以逐条带写出
+     */
+    public static boolean supportsFormat(String format) {
+        return "png".equals(format) || "tiff".equals(format);
+    }
+    
+    /**
+     * 分块读取源图片、应用水印并写入输出文件
+     * 
+     * @param sourceFile 源图片文件
+     * @param config 水印配置
+     * @param outputFile 输出文件
+     * @param format 输出格式（png或tiff）
+     * @param encodeOptions 编码参数
+     */
+    public void render(File sourceFile, WatermarkConfig config, File outputFile, String format,
+                       ImageEncodeOptions encodeOptions) throws Exception {
+        if (!supportsFormat(format)) {
+            throw new IllegalArgumentException("图片尺寸过大，仅支持输出PNG或TIFF格式: " + sourceFile.getName());
+        }
+        
+        // 确保输出目录存在
+        File parentDir = outputFile.getParentFile();
+        if (parentDir != null && !parentDir.exists()) {
+            parentDir.mkdirs();
+        }
+        
+        try (ImageInputStream input = ImageIO.createImageInputStream(sourceFile)) {
+            ImageReader reader = openReader(input, sourceFile);
+            try {
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                WatermarkRenderer renderer = WatermarkStrategyFactory.getStrategy(config.getType())
+                        .prepare(width, height, config);
+                
+                // 条带为本次新读取，可直接在其上绘制
+                ImageTypePolicy typePolicy = ImageTypePolicy.forFormat(format, true);
+                ImageTypeSpecifier stripType = typePolicy.getStripType(ImageHeader.hasAlpha(reader));
+                StripedImage image = new StripedImage(reader, width, height, stripRows(width),
+                                                      stripType, typePolicy, renderer);
+                
+                if ("png".equals(format)) {
+                    pngEncoder.write(image, outputFile, encodeOptions.getPng());
+                } else {
+                    tiffEncoder.write(image, outputFile, streamingTiffOptions(encodeOptions.getTiff()));
+                }
+                
+                logger.info("分块渲染完成: {} ({}x{}, 读取条带 {} 次, 绘制水印 {} 次)", outputFile.getName(),
+                            width, height, image.stripsRead, image.stripsWatermarked);
+                
+            } catch (UncheckedIOException e) {
+                // 条带在编码器回调中读取，读取失败时还原为原始的IO异常
+                throw e.getCause();
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+    
+    /**
+     * 获取逐块写入时的TIFF编码参数
+     * TIFF写入器逐块写入多个分块时生成的LZW数据无法正确解码，改用同为无损压缩的Deflate
+     */
+    private TiffEncodeOptions streamingTiffOptions(TiffEncodeOptions options) {
+        if (options.getCompression() != TiffEncodeOptions.Compression.LZW) {
+            return options;
+        }
+        logger.debug("超大图片逐块写入TIFF，LZW压缩改用Deflate");
+        return new TiffEncodeOptions(TiffEncodeOptions.Compression.DEFLATE);
+    }
+    
+    /**
+     * 生成超大图片的水印预览
+     * 按降采样读取源图片，再在缩放后的坐标系中按原始尺寸绘制水印，保证水印与原图的相对位置和大小一致
+     * 
+     * @param maxSize 降采样后的最大边长
+     */
+    public BufferedImage renderPreview(File sourceFile, WatermarkConfig config, int maxSize) throws Exception {
+        try (ImageInputStream input = ImageIO.createImageInputStream(sourceFile)) {
+            ImageReader reader = openReader(input, sourceFile);
+            try {
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                
+                // 预览以JPEG输出，不需要透明通道；降采样图片为本次新读取，可直接在其上绘制
+                BufferedImage canvas = ImageTypePolicy.forFormat("jpg", true)
+                        .createCanvas(readSubsampled(reader, maxSize));
+                
+                WatermarkRenderer renderer = WatermarkStrategyFactory.getStrategy(config.getType())
+                        .prepare(width, height, config);
+                if (renderer != null) {
+                    Graphics2D g2d = canvas.createGraphics();
+                    try {
+                        g2d.scale((double) canvas.getWidth() / width, (double) canvas.getHeight() / height);
+                        renderer.draw(g2d);
+                    } finally {
+                        g2d.dispose();
+                    }
+                }
+                return canvas;
+                
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+    
+    /**
+     * 按降采样读取图片，结果的最大边长不超过maxSize
+     * 降采样为隔行隔列取样，调用方需要平滑效果时应读取更大的尺寸再缩放
+     */
+    public BufferedImage readSubsampled(File sourceFile, int maxSize) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(sourceFile)) {
+            ImageReader reader = openReader(input, sourceFile);
+            try {
+                return readSubsampled(reader, maxSize);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+    
+    private BufferedImage readSubsampled(ImageReader reader, int maxSize) throws IOException {
+        int longestSide = Math.max(reader.getWidth(0), reader.getHeight(0));
+        int step = Math.max(1, (int) Math.ceil((double) longestSide / maxSize));
+        
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceSubsampling(step, step, 0, 0);
+        return reader.read(0, param);
+    }
+    
+    /**
+     * 为图片输入流创建解码器，解码线程被中断时中止解码
+     */
+    private ImageReader openReader(ImageInputStream input, File sourceFile) throws IOException {
+        if (input == null) {
+            throw new IOException("无法打开图片文件: " + sourceFile.getAbsolutePath());
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            throw new IOException("无法读取图片文件: " + sourceFile.getAbsolutePath());
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(input, false, true);
+        reader.addIIOReadProgressListener(ImageService.AbortOnInterrupt.INSTANCE);
+        return reader;
+    }
+    
+    /**
+     * 计算条带行数
+     * 条带大小取MAX_STRIP_BYTES与最大堆内存的1/STRIP_HEAP_FRACTION中的较小值，
+     * 读取、类型转换和补齐最后一个条带时可能同时存在两三份条带数据
+     */
+    private static int stripRows(int width) {
+        long stripBytes = Math.min(MAX_STRIP_BYTES, Runtime.getRuntime().maxMemory() / STRIP_HEAP_FRACTION);
+        long rows = stripBytes / ((long) width * BYTES_PER_PIXEL);
+        return (int) Math.max(MIN_STRIP_ROWS, Math.min(Integer.MAX_VALUE, rows));
+    }
+    
+    /**
+     * 按条带懒加载的图片
+     * 每个分块为整行宽度的条带，被编码器请求时才从源图片读取对应区域并绘制水印；
+     * 只缓存最近一个条带，编码器需按从上到下的顺序请求
+     */
+    private static class StripedImage implements RenderedImage {
+        private final ImageReader reader;
+        private final int width;
+        private final int height;
+        private final int stripRows;
+        private final ImageTypeSpecifier stripType;
+        private final boolean decodesToStripType; // 解码器能否直接解码为条带类型
+        private final ImageTypePolicy typePolicy;
+        private final WatermarkRenderer renderer;
+        private final Rectangle watermarkBounds;
+        private final ColorModel colorModel;
+        private final SampleModel sampleModel;
+        
+        private int cachedIndex = -1;
+        private Raster cachedStrip;
+        int stripsRead;
+        int stripsWatermarked;
+        
+        StripedImage(ImageReader reader, int width, int height, int stripRows, ImageTypeSpecifier stripType,
+                     ImageTypePolicy typePolicy, WatermarkRenderer renderer) throws IOException {
+            this.reader = reader;
+            this.width = width;
+            this.height = height;
+            this.stripRows = Math.min(stripRows, height);
+            this.stripType = stripType;
+            this.decodesToStripType = offersType(reader, stripType);
+            this.typePolicy = typePolicy;
+            this.renderer = renderer;
+            this.watermarkBounds = renderer != null ? renderer.getBounds() : null;
+            this.colorModel = stripType.getColorModel();
+            this.sampleModel = stripType.getSampleModel(width, this.stripRows);
+        }
+        
+        /**
+         * 判断解码器是否支持直接解码为指定类型
+         */
+        private static boolean offersType(ImageReader reader, ImageTypeSpecifier type) throws IOException {
+            Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+            while (types != null && types.hasNext()) {
+                if (type.equals(types.next())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        @Override
+        public synchronized Raster getTile(int tileX, int tileY) {
+            if (tileX != 0 || tileY < 0 || tileY >= getNumYTiles()) {
+                throw new IllegalArgumentException("分块索引超出范围: (" + tileX + ", " + tileY + ")");
+            }
+            if (tileY != cachedIndex) {
+                // 先释放上一个条带，避免读取新条带时同时持有两个
+                cachedStrip = null;
+                try {
+                    cachedStrip = readStrip(tileY);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                cachedIndex = tileY;
+            }
+            return cachedStrip;
+        }
+        
+        /**
+         * 读取第index个条带并在需要时绘制水印
+         * 线程被中断（如解码超时）时不再读取后续条带
+         */
+        private Raster readStrip(int index) throws IOException {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("分块渲染已取消");
+            }
+            int y0 = index * stripRows;
+            int rows = Math.min(stripRows, height - y0);
+            
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceRegion(new Rectangle(0, y0, width, rows));
+            if (decodesToStripType) {
+                param.setDestinationType(stripType);
+            }
+            BufferedImage decoded = reader.read(0, param);
+            if (Thread.currentThread().isInterrupted()) {
+                // 解码被中止时得到的是不完整的条带
+                throw new InterruptedIOException("分块渲染已取消");
+            }
+            BufferedImage strip = typePolicy.createCanvas(decoded, stripType);
+            stripsRead++;
+            
+            if (watermarkBounds != null && watermarkBounds.intersects(0, y0, width, rows)) {
+                Graphics2D g2d = strip.createGraphics();
+                try {
+                    // 平移到整幅图片坐标系，超出条带的部分被裁剪
+                    g2d.translate(0, -y0);
+                    renderer.draw(g2d);
+                } finally {
+                    g2d.dispose();
+                }
+                stripsWatermarked++;
+            }
+            
+            WritableRaster raster = strip.getRaster();
+            if (rows < stripRows) {
+                // 最后一个条带补齐到完整的分块高度
+                WritableRaster full = Raster.createWritableRaster(sampleModel, null);
+                full.setRect(raster);
+                raster = full;
+            }
+            return raster.createWritableTranslatedChild(0, y0);
+        }
+        
+        @Override
+        public Raster getData() {
+            return getData(new Rectangle(0, 0, width, height));
+        }
+        
+        @Override
+        public Raster getData(Rectangle rect) {
+            WritableRaster raster = Raster.createWritableRaster(
+                    sampleModel.createCompatibleSampleModel(rect.width, rect.height), rect.getLocation());
+            return copyData(raster);
+        }
+        
+        @Override
+        public WritableRaster copyData(WritableRaster raster) {
+            if (raster == null) {
+                raster = Raster.createWritableRaster(sampleModel.createCompatibleSampleModel(width, height), null);
+            }
+            Rectangle target = raster.getBounds().intersection(new Rectangle(0, 0, width, height));
+            if (target.isEmpty()) {
+                return raster;
+            }
+            int firstStrip = target.y / stripRows;
+            int lastStrip = (target.y + target.height - 1) / stripRows;
+            for (int index = firstStrip; index <= lastStrip; index++) {
+                Raster strip = getTile(0, index);
+                Rectangle part = strip.getBounds().intersection(target);
+                raster.setRect(strip.createChild(part.x, part.y, part.width, part.height, part.x, part.y, null));
+            }
+            return raster;
+        }
+        
+        @Override
+        public Vector<RenderedImage> getSources() {
+            return null;
+        }
+        
+        @Override
+        public Object getProperty(String name) {
+            return Image.UndefinedProperty;
+        }
+        
+        @Override
+        public String[] getPropertyNames() {
+            return null;
+        }
+        
+        @Override
+        public ColorModel getColorModel() {
+            return colorModel;
+        }
+        
+        @Override
+        public SampleModel getSampleModel() {
+            return sampleModel;
+        }
+        
+        @Override
+        public int getWidth() {
+            return width;
+        }
+        
+        @Override
+        public int getHeight() {
+            return height;
+        }
+        
+        @Override
+        public int getMinX() {
+            return 0;
+        }
+        
+        @Override
+        public int getMinY() {
+            return 0;
+        }
+        
+        @Override
+        public int getNumXTiles() {
+            return 1;
+        }
+        
+        @Override
+        public int getNumYTiles() {
+            return (height + stripRows - 1) / stripRows;
+        }
+        
+        @Override
+        public int getMinTileX() {
+            return 0;
+        }
+        
+        @Override
+        public int getMinTileY() {
+            return 0;
+        }
+        
+        @Override
+        public int getTileWidth() {
+            return width;
+        }
+        
+        @Override
+        public int getTileHeight() {
+            return stripRows;
+        }
+        
+        @Override
+        public int getTileGridXOffset() {
+            return 0;
+        }
+        
+        @Override
+        public int getTileGridYOffset() {
+            return 0;
+        }
+    }
+}
@@ -2,14 +2,27 @@ package com.watermark.service;
 
 import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.JSONObject;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.watermark.model.ImageInfo;
 import com.watermark.model.WatermarkConfig;
 import com.watermark.model.TextWatermarkConfig;
 import com.watermark.model.ImageWatermarkConfig;
 import com.watermark.dto.WatermarkConfigData;
+import com.watermark.encoder.ImageEncodeOptions;
+import com.watermark.encoder.JpegBlockPatcher;
+import com.watermark.encoder.JpegEncodeOptions;
+import com.watermark.encoder.JpegImageEncoder;
+import com.watermark.encoder.PngEncodeOptions;
+import com.watermark.encoder.PngImageEncoder;
+import com.watermark.encoder.TiffEncodeOptions;
+import com.watermark.encoder.TiffImageEncoder;
+import com.watermark.strategy.WatermarkRenderer;
 import com.watermark.strategy.WatermarkStrategy;
 import com.watermark.strategy.WatermarkStrategyFactory;
+import com.watermark.util.ImageHeader;
+import com.watermark.util.ImageTypePolicy;
 import com.watermark.util.PathManager;
+import com.watermark.util.SingleFlight;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,6 +32,8 @@ import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -32,11 +47,29 @@ public class WatermarkService {
     
     private static final Logger logger = LoggerFactory.getLogger(WatermarkService.class);
     
+    private static final int PREVIEW_JPEG_QUALITY = 80; // 预览图JPEG质量
+    private static final int PREVIEW_MAX_SIZE = 800;     // 预览图最大尺寸
+    
     private static WatermarkService instance;
     private final ImageService imageService;
+    private final HistoryService historyService;
+    private final JpegImageEncoder jpegEncoder;
+    private final PngImageEncoder pngEncoder;
+    private final TiffImageEncoder tiffEncoder;
+    private final JpegBlockPatcher jpegBlockPatcher;
+    private final TiledRenderService tiledRenderService;
+    // 合并相同图片和配置的并发预览请求
+    private final SingleFlight<String, String> previewFlights = new SingleFlight<>("preview");
+    private final ObjectMapper previewKeyMapper = new ObjectMapper();
     
     private WatermarkService() {
         this.imageService = ImageService.getInstance();
+        this.historyService = HistoryService.getInstance();
+        this.jpegEncoder = JpegImageEncoder.getInstance();
+        this.pngEncoder = PngImageEncoder.getInstance();
+        this.tiffEncoder = TiffImageEncoder.getInstance();
+        this.jpegBlockPatcher = JpegBlockPatcher.getInstance();
+        this.tiledRenderService = TiledRenderService.getInstance();
     }
     
     public static synchronized WatermarkService getInstance() {
@@ -48,32 +81,58 @@ public class WatermarkService {
     
     /**
      * 异步生成水印预览
+     * 同一图片和配置的并发请求共享一次生成，取消返回的Future表示不再需要该预览
      */
     public CompletableFuture<String> generatePreviewAsync(String imageId, WatermarkConfig config) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                return generatePreview(imageId, config);
-            } catch (Exception e) {
-                logger.error("异步生成预览失败", e);
-                throw new RuntimeException(e);
+        CompletableFuture<String> future = previewFlights.submit(previewKey(imageId, config),
+                                                                 () -> renderPreview(imageId, config));
+        future.whenComplete((preview, error) -> {
+            if (error != null && !future.isCancelled()) {
+                logger.error("异步生成预览失败", error);
             }
         });
+        return future;
     }
     
     /**
      * 生成水印预览
+     * 同一图片和配置的并发请求共享一次生成
      */
     public String generatePreview(String imageId, WatermarkConfig config) throws Exception {
+        return previewFlights.load(previewKey(imageId, config), () -> renderPreview(imageId, config));
+    }
+    
+    /**
+     * 预览请求的键：图片ID、源文件修改时间和水印配置
+     */
+    private String previewKey(String imageId, WatermarkConfig config) {
+        ImageInfo imageInfo = imageService.getImageInfo(imageId);
+        long lastModified = imageInfo != null ? new File(imageInfo.getFilePath()).lastModified() : 0;
+        try {
+            return imageId + ":" + lastModified + ":" + previewKeyMapper.writeValueAsString(config);
+        } catch (Exception e) {
+            throw new IllegalStateException("序列化水印配置失败", e);
+        }
+    }
+    
+    private String renderPreview(String imageId, WatermarkConfig config) throws Exception {
         ImageInfo imageInfo = imageService.getImageInfo(imageId);
         if (imageInfo == null) {
             throw new IllegalArgumentException("图片不存在: " + imageId);
         }
         
-        // 加载原始图片
-        BufferedImage originalImage = imageService.loadImage(imageInfo);
-        
-        // 应用水印
-        BufferedImage watermarkedImage = applyWatermark(originalImage, config);
+        BufferedImage watermarkedImage;
+        File sourceFile = new File(imageInfo.getFilePath());
+        if (tiledRenderService.requiresTiling(sourceFile)) {
+            // 超大图片按降采样读取后绘制水印，读取两倍预览尺寸以便后续平滑缩放
+            watermarkedImage = tiledRenderService.renderPreview(sourceFile, config, PREVIEW_MAX_SIZE * 2);
+        } else {
+            // 加载原始图片（优先使用解码图片缓存）
+            BufferedImage originalImage = imageService.loadSharedImage(imageInfo);
+            
+            // 应用水印（预览以JPEG输出，不需要透明通道；原图与缓存共享，绘制在新画布上）
+            watermarkedImage = applyWatermark(originalImage, config, ImageTypePolicy.forFormat("jpg", false));
+        }
         
         // 生成预览图（缩小到合适的大小）
         BufferedImage previewImage = createPreviewImage(watermarkedImage);
@@ -86,42 +145,136 @@ public class WatermarkService {
      * 应用水印到图片
      */
     public BufferedImage applyWatermark(BufferedImage originalImage, WatermarkConfig config) throws Exception {
+        return applyWatermark(originalImage, config, ImageTypePolicy.PRESERVE_ALPHA);
+    }
+    
+    /**
+     * 按输出图片类型策略应用水印到图片
+     */
+    public BufferedImage applyWatermark(BufferedImage originalImage, WatermarkConfig config,
+                                        ImageTypePolicy typePolicy) throws Exception {
         // 使用策略模式选择合适的水印处理器
         logger.debug("应用水印，配置类型: {}, 配置对象类型: {}", config.getType(), config.getClass().getSimpleName());
         
         WatermarkStrategy strategy = WatermarkStrategyFactory.getStrategy(config.getType());
         logger.debug("选择的水印策略: {}", strategy.getClass().getSimpleName());
         
-        return strategy.applyWatermark(originalImage, config);
+        return strategy.applyWatermark(originalImage, config, typePolicy);
     }
     
     /**
      * 处理并保存带水印的图片
      */
     public String processAndSaveImage(String imageId, WatermarkConfig config, String outputPath) throws Exception {
+        return processAndSaveImage(imageId, config, outputPath, new ImageEncodeOptions());
+    }
+    
+    /**
+     * 处理并保存带水印的图片（指定编码参数）
+     */
+    public String processAndSaveImage(String imageId, WatermarkConfig config, String outputPath,
+                                      ImageEncodeOptions encodeOptions) throws Exception {
         ImageInfo imageInfo = imageService.getImageInfo(imageId);
         if (imageInfo == null) {
             throw new IllegalArgumentException("图片不存在: " + imageId);
         }
         
-        // 加载原始图片
-        BufferedImage originalImage = imageService.loadImage(imageInfo);
+        long startTime = System.currentTimeMillis();
+        String format = getOutputFormat(outputPath);
+        File sourceFile = new File(imageInfo.getFilePath());
         
-        // 应用水印
-        BufferedImage watermarkedImage = applyWatermark(originalImage, config);
+        if (tryPatchJpeg(sourceFile, config, outputPath, format, encodeOptions)) {
+            // JPEG源图片已在DCT域修补并写出，只重新编码了水印覆盖的块
+        } else if (tiledRenderService.requiresTiling(sourceFile)) {
+            // 超大图片分块读取、绘制和写出，不整幅解码
+            tiledRenderService.render(sourceFile, config, new File(outputPath), format, encodeOptions);
+        } else {
+            // 加载原始图片（优先使用解码图片缓存）
+            BufferedImage originalImage = imageService.loadSharedImage(imageInfo);
+            
+            // 应用水印（仅在输出格式支持时保留透明通道；原图与缓存共享，绘制在新画布上）
+            BufferedImage watermarkedImage = applyWatermark(originalImage, config, ImageTypePolicy.forFormat(format, false));
+            
+            // 保存图片
+            saveImage(watermarkedImage, outputPath, format, encodeOptions);
+        }
         
-        // 保存图片
-        saveImage(watermarkedImage, outputPath, getOutputFormat(outputPath));
+        // 记录处理历史（异步写入）
+        historyService.record(imageInfo.getFilePath(), outputPath, null, System.currentTimeMillis() - startTime);
         
         logger.info("水印图片保存完成: {}", outputPath);
         return outputPath;
     }
     
+    /**
+     * JPEG源图片输出为JPEG且启用块修补时，只重新编码水印覆盖的块，其余块的系数原样保留
+     * 
+     * @return 是否已写出；未启用或源图片不支持块修补时返回false，由调用方完整重新编码
+     */
+    private boolean tryPatchJpeg(File sourceFile, WatermarkConfig config, String outputPath, String format,
+                                 ImageEncodeOptions encodeOptions) throws Exception {
+        if (!"jpg".equals(format) || !encodeOptions.getJpeg().isBlockPatch()) {
+            return false;
+        }
+        ImageHeader header = ImageHeader.read(sourceFile);
+        if (header == null || !"jpeg".equalsIgnoreCase(header.getFormatName())) {
+            return false;
+        }
+        
+        WatermarkStrategy strategy = WatermarkStrategyFactory.getStrategy(config.getType());
+        WatermarkRenderer renderer = strategy.prepare(header.getWidth(), header.getHeight(), config);
+        return jpegBlockPatcher.patch(sourceFile, new File(outputPath), renderer);
+    }
+    
+    /**
+     * 由已读入内存的源文件内容应用水印并编码为输出格式，供批量导出的预读和后写流程使用
+     * 输出由调用方写入，处理历史也由调用方在写入完成后记录
+     * 
+     * @param sourceFile 源文件（仅用于日志和历史记录）
+     * @param sourceData 源文件的完整内容
+     * @return 编码后的输出内容；超大图片需要分块渲染时返回null，由调用方改用renderToFile
+     */
+    public byte[] renderToBytes(File sourceFile, byte[] sourceData, WatermarkConfig config, String outputPath,
+                                ImageEncodeOptions encodeOptions) throws Exception {
+        String format = getOutputFormat(outputPath);
+        ImageHeader header = ImageHeader.read(sourceData);
+        
+        byte[] output = null;
+        if ("jpg".equals(format) && encodeOptions.getJpeg().isBlockPatch()
+                && header != null && "jpeg".equalsIgnoreCase(header.getFormatName())) {
+            // JPEG源图片在DCT域修补，只重新编码水印覆盖的块；不支持修补时返回null，继续完整重新编码
+            WatermarkStrategy strategy = WatermarkStrategyFactory.getStrategy(config.getType());
+            WatermarkRenderer renderer = strategy.prepare(header.getWidth(), header.getHeight(), config);
+            output = jpegBlockPatcher.patch(sourceData, renderer);
+        }
+        if (output == null) {
+            if (header != null && tiledRenderService.requiresTiling(header)) {
+                return null;
+            }
+            
+            // 编辑过程中已解码的图片直接使用缓存（与缓存共享，绘制在新画布上），否则从内存中的文件内容解码
+            BufferedImage originalImage = imageService.getCachedImage(sourceFile);
+            boolean sourceReusable = originalImage == null;
+            if (sourceReusable) {
+                originalImage = ImageService.decodeImage(sourceData, sourceFile);
+            }
+            if (originalImage == null) {
+                throw new RuntimeException("无法读取图片文件: " + sourceFile.getPath());
+            }
+            
+            // 应用水印（仅在输出格式支持时保留透明通道）
+            BufferedImage watermarkedImage = applyWatermark(originalImage, config,
+                                                            ImageTypePolicy.forFormat(format, sourceReusable));
+            output = encodeImage(watermarkedImage, format, encodeOptions);
+        }
+        return output;
+    }
+    
     /**
      * 创建预览图片（限制尺寸以提高性能）
      */
     private BufferedImage createPreviewImage(BufferedImage originalImage) {
-        int maxSize = 800; // 预览图最大尺寸
+        int maxSize = PREVIEW_MAX_SIZE;
         int originalWidth = originalImage.getWidth();
         int originalHeight = originalImage.getHeight();
         
@@ -148,16 +301,23 @@ public class WatermarkService {
      * 将图片转换为Base64字符串
      */
     private String imageToBase64(BufferedImage image, String format) throws Exception {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ImageIO.write(image, format, baos);
-        byte[] imageBytes = baos.toByteArray();
+        byte[] imageBytes;
+        if ("jpg".equals(format)) {
+            imageBytes = jpegEncoder.encode(image, new JpegEncodeOptions(PREVIEW_JPEG_QUALITY));
+        } else {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ImageIO.write(image, format, baos);
+            imageBytes = baos.toByteArray();
+        }
         return "data:image/" + format + ";base64," + Base64.getEncoder().encodeToString(imageBytes);
     }
     
     /**
      * 保存图片文件
+     * JPEG、PNG、TIFF通过对应的编码器写出并应用编码参数，其他格式使用ImageIO
      */
-    private void saveImage(BufferedImage image, String outputPath, String format) throws Exception {
+    private void saveImage(BufferedImage image, String outputPath, String format,
+                           ImageEncodeOptions encodeOptions) throws Exception {
         File outputFile = new File(outputPath);
         
         // 确保输出目录存在
@@ -166,16 +326,49 @@ public class WatermarkService {
             parentDir.mkdirs();
         }
         
-        // 保存图片
-        if (!ImageIO.write(image, format, outputFile)) {
+        // 保存图片（不支持透明通道的格式先去除透明通道）
+        if (!ImageTypePolicy.supportsAlpha(format)) {
+            image = ImageTypePolicy.toOpaque(image);
+        }
+        if ("jpg".equals(format)) {
+            jpegEncoder.write(image, outputFile, encodeOptions.getJpeg());
+        } else if ("png".equals(format)) {
+            pngEncoder.write(image, outputFile, encodeOptions.getPng());
+        } else if ("tiff".equals(format)) {
+            tiffEncoder.write(image, outputFile, encodeOptions.getTiff());
+        } else if (!ImageIO.write(image, format, outputFile)) {
             throw new Exception("不支持的图片格式: " + format);
         }
     }
     
+    /**
+     * 将图片编码为输出格式的字节
+     * JPEG、PNG、TIFF通过对应的编码器编码并应用编码参数，其他格式使用ImageIO
+     */
+    private byte[] encodeImage(BufferedImage image, String format, ImageEncodeOptions encodeOptions) throws Exception {
+        // 不支持透明通道的格式先去除透明通道
+        if (!ImageTypePolicy.supportsAlpha(format)) {
+            image = ImageTypePolicy.toOpaque(image);
+        }
+        if ("jpg".equals(format)) {
+            return jpegEncoder.encode(image, encodeOptions.getJpeg());
+        } else if ("png".equals(format)) {
+            return pngEncoder.encode(image, encodeOptions.getPng());
+        } else if ("tiff".equals(format)) {
+            return tiffEncoder.encode(image, encodeOptions.getTiff());
+        }
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, format, baos)) {
+            throw new Exception("不支持的图片格式: " + format);
+        }
+        return baos.toByteArray();
+    }
+    
     /**
      * 根据文件路径获取输出格式
      */
-    private String getOutputFormat(String outputPath) {
+    public String getOutputFormat(String outputPath) {
         String extension = PathManager.getFileExtension(outputPath);
         switch (extension.toLowerCase()) {
             case "jpg":
@@ -204,26 +397,13 @@ public class WatermarkService {
             // 解析JSON配置为WatermarkConfigData对象
             WatermarkConfigData configData = parseWatermarkConfig(configJson);
             
-            // 加载原始图片
-            BufferedImage originalImage = ImageIO.read(new File(imagePath));
-            if (originalImage == null) {
-                throw new RuntimeException("无法读取图片文件: " + imagePath);
-            }
-            
             // 将DTO转换为WatermarkConfig
             WatermarkConfig config = convertToWatermarkConfig(configData);
             
-            // 应用水印
-            BufferedImage watermarkedImage = applyWatermark(originalImage, config);
-            
             // 生成输出路径
-            String outputPath = generateOutputPath(imagePath, configData.outputPath, configData.outputConfig);
-            
-            // 保存图片
-            saveImage(watermarkedImage, outputPath, getOutputFormat(outputPath));
+            String outputPath = resolveOutputPath(imagePath, configData);
             
-            logger.info("图片处理完成: {}", outputPath);
-            return outputPath;
+            return renderToFile(imagePath, config, outputPath, createEncodeOptions(configData));
             
         } catch (Exception e) {
             logger.error("图片处理失败: " + e.getMessage(), e);
@@ -231,10 +411,84 @@ public class WatermarkService {
         }
     }
     
+    /**
+     * 读取源图片、应用水印并保存到指定路径
+     */
+    public String renderToFile(String imagePath, WatermarkConfig config, String outputPath,
+                               ImageEncodeOptions encodeOptions) throws Exception {
+        long startTime = System.currentTimeMillis();
+        String format = getOutputFormat(outputPath);
+        File sourceFile = new File(imagePath);
+        
+        if (tryPatchJpeg(sourceFile, config, outputPath, format, encodeOptions)) {
+            // JPEG源图片已在DCT域修补并写出，只重新编码了水印覆盖的块
+        } else if (tiledRenderService.requiresTiling(sourceFile)) {
+            // 超大图片分块读取、绘制和写出，不整幅解码
+            tiledRenderService.render(sourceFile, config, new File(outputPath), format, encodeOptions);
+        } else {
+            // 加载原始图片：已缓存时与缓存共享，绘制在新画布上；否则直接解码，不放入缓存，可直接在其上绘制
+            BufferedImage originalImage = imageService.getCachedImage(sourceFile);
+            boolean sourceReusable = originalImage == null;
+            if (sourceReusable) {
+                originalImage = ImageService.decodeImage(sourceFile);
+            }
+            if (originalImage == null) {
+                throw new RuntimeException("无法读取图片文件: " + imagePath);
+            }
+            
+            // 应用水印（仅在输出格式支持时保留透明通道）
+            BufferedImage watermarkedImage = applyWatermark(originalImage, config,
+                                                            ImageTypePolicy.forFormat(format, sourceReusable));
+            
+            // 保存图片
+            saveImage(watermarkedImage, outputPath, format, encodeOptions);
+        }
+        
+        // 记录处理历史（异步写入）
+        historyService.record(new File(imagePath).getAbsolutePath(), outputPath, null,
+                              System.currentTimeMillis() - startTime);
+        
+        logger.info("图片处理完成: {}", outputPath);
+        return outputPath;
+    }
+    
+    /**
+     * 根据输出配置创建编码参数
+     */
+    public ImageEncodeOptions createEncodeOptions(WatermarkConfigData configData) {
+        WatermarkConfigData.OutputConfig outputConfig = configData.outputConfig;
+        
+        JpegEncodeOptions jpeg = new JpegEncodeOptions(outputConfig.jpegQuality);
+        jpeg.setProgressive(outputConfig.progressive);
+        jpeg.setChromaSubsampling(JpegEncodeOptions.parseChromaSubsampling(outputConfig.chromaSubsampling));
+        jpeg.setBlockPatch(outputConfig.jpegBlockPatch);
+        
+        // 预设决定默认值，单独指定的压缩级别和过滤方式覆盖预设
+        PngEncodeOptions png = PngEncodeOptions.fromPreset(outputConfig.pngPreset);
+        if (outputConfig.pngCompressionLevel >= 0) {
+            png.setCompressionLevel(outputConfig.pngCompressionLevel);
+        }
+        if (outputConfig.pngFilter != null) {
+            png.setFilterStrategy(PngEncodeOptions.parseFilterStrategy(outputConfig.pngFilter));
+        }
+        png.setParallel(outputConfig.parallelEncoding);
+        
+        TiffEncodeOptions tiff = new TiffEncodeOptions(TiffEncodeOptions.parseCompression(outputConfig.tiffCompression));
+        
+        return new ImageEncodeOptions(jpeg, png, tiff);
+    }
+    
+    /**
+     * 根据配置生成图片的输出路径
+     */
+    public String resolveOutputPath(String imagePath, WatermarkConfigData configData) {
+        return generateOutputPath(imagePath, configData.outputPath, configData.outputConfig);
+    }
+    
     /**
      * 解析JSON配置为WatermarkConfigData对象
      */
-    private WatermarkConfigData parseWatermarkConfig(String configJson) {
+    public WatermarkConfigData parseWatermarkConfig(String configJson) {
         try {
             logger.debug("开始解析JSON配置: {}", configJson);
             
@@ -297,6 +551,27 @@ public class WatermarkService {
                 
                 config.outputConfig.fileSuffix = outputConfigJson.getString("fileSuffix");
                 if (config.outputConfig.fileSuffix == null) config.outputConfig.fileSuffix = "_watermarked";
+                
+                if (outputConfigJson.containsKey("jpegQuality")) {
+                    config.outputConfig.jpegQuality = Math.max(1, Math.min(100, outputConfigJson.getIntValue("jpegQuality")));
+                }
+                config.outputConfig.progressive = outputConfigJson.getBooleanValue("progressive");
+                
+                String chromaSubsampling = outputConfigJson.getString("chromaSubsampling");
+                if (chromaSubsampling != null) config.outputConfig.chromaSubsampling = chromaSubsampling;
+                config.outputConfig.jpegBlockPatch = outputConfigJson.getBooleanValue("jpegBlockPatch");
+                
+                config.outputConfig.pngPreset = outputConfigJson.getString("pngPreset");
+                if (outputConfigJson.containsKey("pngCompressionLevel")) {
+                    config.outputConfig.pngCompressionLevel = outputConfigJson.getIntValue("pngCompressionLevel");
+                }
+                config.outputConfig.pngFilter = outputConfigJson.getString("pngFilter");
+                if (outputConfigJson.containsKey("parallelEncoding")) {
+                    config.outputConfig.parallelEncoding = outputConfigJson.getBooleanValue("parallelEncoding");
+                }
+                
+                String tiffCompression = outputConfigJson.getString("tiffCompression");
+                if (tiffCompression != null) config.outputConfig.tiffCompression = tiffCompression;
             }
             
             logger.debug("JSON解析完成: type={}, text={}, position={}, outputPath={}, namingRule={}", 
@@ -326,7 +601,7 @@ public class WatermarkService {
     /**
      * 将DTO转换为WatermarkConfig对象
      */
-    private WatermarkConfig convertToWatermarkConfig(WatermarkConfigData configData) {
+    public WatermarkConfig convertToWatermarkConfig(WatermarkConfigData configData) {
         logger.debug("转换水印配置，类型: {}", configData.type);
         
         if ("IMAGE".equalsIgnoreCase(configData.type)) {
@@ -405,6 +680,42 @@ public class WatermarkService {
         }
     }
     
+    /**
+     * 将WatermarkConfig对象转换为导出配置的字段（convertToWatermarkConfig的逆过程），
+     * 用于以保存的模板在命令行或任务服务中导出；颜色写为 #RRGGBB
+     */
+    public Map<String, Object> convertToConfigData(WatermarkConfig config) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("type", config.getType().name());
+        data.put("position", config.getPosition().name());
+        data.put("offsetX", config.getOffsetX());
+        data.put("offsetY", config.getOffsetY());
+        data.put("opacity", config.getOpacity());
+        data.put("rotation", config.getRotation());
+        data.put("scale", config.getScale());
+        
+        if (config instanceof TextWatermarkConfig) {
+            TextWatermarkConfig text = (TextWatermarkConfig) config;
+            data.put("text", text.getText());
+            data.put("fontFamily", text.getFontFamily());
+            data.put("fontSize", text.getFontSize());
+            data.put("bold", text.isBold());
+            data.put("italic", text.isItalic());
+            data.put("fontColor", toHexColor(text.getColor()));
+        } else if (config instanceof ImageWatermarkConfig) {
+            ImageWatermarkConfig image = (ImageWatermarkConfig) config;
+            data.put("imagePath", image.getImagePath());
+            data.put("watermarkWidth", image.getWidth());
+            data.put("watermarkHeight", image.getHeight());
+            data.put("maintainAspectRatio", image.isMaintainAspectRatio());
+        }
+        return data;
+    }
+    
+    private static String toHexColor(Color color) {
+        return color != null ? String.format("#%02X%02X%02X", color.getRed(), color.getGreen(), color.getBlue()) : null;
+    }
+    
     /**
      * 生成输出路径（支持自定义命名规则）
      */
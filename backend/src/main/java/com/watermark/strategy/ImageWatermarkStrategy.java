@@ -7,6 +7,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.imageio.ImageIO;
 import java.awt.*;
+import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.io.File;
 
@@ -21,7 +22,7 @@ public class ImageWatermarkStrategy implements WatermarkStrategy {
     private static final Logger logger = LoggerFactory.getLogger(ImageWatermarkStrategy.class);
     
     @Override
-    public BufferedImage applyWatermark(BufferedImage originalImage, WatermarkConfig config) throws Exception {
+    public WatermarkRenderer prepare(int imageWidth, int imageHeight, WatermarkConfig config) throws Exception {
         if (!(config instanceof ImageWatermarkConfig)) {
             throw new IllegalArgumentException("配置类型不匹配，期望ImageWatermarkConfig");
         }
@@ -31,45 +32,68 @@ public class ImageWatermarkStrategy implements WatermarkStrategy {
         // 验证水印图片路径
         if (imageConfig.getImagePath() == null || imageConfig.getImagePath().trim().isEmpty()) {
             logger.warn("水印图片路径为空，跳过处理");
-            return originalImage;
+            return null;
         }
         
         // 加载水印图片
         BufferedImage watermarkImage = loadWatermarkImage(imageConfig.getImagePath());
         if (watermarkImage == null) {
             logger.error("无法加载水印图片: {}", imageConfig.getImagePath());
-            return originalImage;
+            return null;
         }
         
-        // 创建带水印的图片副本
-        BufferedImage watermarkedImage = new BufferedImage(
-            originalImage.getWidth(),
-            originalImage.getHeight(),
-            BufferedImage.TYPE_INT_ARGB
+        // 缩放水印图片（只缩放一次，分块绘制时复用）
+        BufferedImage scaledWatermark = scaleWatermarkImage(watermarkImage, imageConfig);
+        
+        // 计算水印位置
+        Point watermarkPosition = imageConfig.calculatePosition(
+            imageWidth,
+            imageHeight,
+            scaledWatermark.getWidth(),
+            scaledWatermark.getHeight()
         );
         
-        Graphics2D g2d = watermarkedImage.createGraphics();
+        return new ImageRenderer(imageConfig, scaledWatermark, watermarkPosition);
+    }
+    
+    /**
+     * 图片水印绘制器
+     */
+    private class ImageRenderer implements WatermarkRenderer {
+        private final ImageWatermarkConfig imageConfig;
+        private final BufferedImage scaledWatermark;
+        private final Point watermarkPosition;
+        
+        ImageRenderer(ImageWatermarkConfig imageConfig, BufferedImage scaledWatermark, Point watermarkPosition) {
+            this.imageConfig = imageConfig;
+            this.scaledWatermark = scaledWatermark;
+            this.watermarkPosition = watermarkPosition;
+        }
         
-        try {
-            // 绘制原始图片
-            g2d.drawImage(originalImage, 0, 0, null);
+        @Override
+        public Rectangle getBounds() {
+            Rectangle bounds = new Rectangle(watermarkPosition.x - 1, watermarkPosition.y - 1,
+                                             scaledWatermark.getWidth() + 2, scaledWatermark.getHeight() + 2);
             
+            // 水印绕自身中心旋转
+            if (imageConfig.getRotation() != 0) {
+                int centerX = watermarkPosition.x + scaledWatermark.getWidth() / 2;
+                int centerY = watermarkPosition.y + scaledWatermark.getHeight() / 2;
+                AffineTransform rotation = AffineTransform.getRotateInstance(
+                    Math.toRadians(imageConfig.getRotation()), centerX, centerY);
+                bounds = rotation.createTransformedShape(bounds).getBounds();
+                bounds.grow(1, 1);
+            }
+            return bounds;
+        }
+        
+        @Override
+        public void draw(Graphics2D g2d) {
             // 设置渲染质量
             g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
             g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
             g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
             
-            // 缩放水印图片
-            BufferedImage scaledWatermark = scaleWatermarkImage(watermarkImage, imageConfig);
-            
-            // 计算水印位置
-            Point watermarkPosition = imageConfig.calculatePosition(
-                originalImage.getWidth(),
-                originalImage.getHeight(),
-                scaledWatermark.getWidth(),
-                scaledWatermark.getHeight()
-            );
-            
             // 应用旋转变换（如果需要）
             if (imageConfig.getRotation() != 0) {
                 applyRotation(g2d, watermarkPosition, scaledWatermark, imageConfig.getRotation(), imageConfig.getOpacity());
@@ -80,12 +104,7 @@ public class ImageWatermarkStrategy implements WatermarkStrategy {
             }
             
             logger.debug("图片水印应用完成: {}", imageConfig);
-            
-        } finally {
-            g2d.dispose();
         }
-        
-        return watermarkedImage;
     }
     
     /**
@@ -162,7 +181,7 @@ public class ImageWatermarkStrategy implements WatermarkStrategy {
         int centerY = position.y + watermark.getHeight() / 2;
         
         // 保存当前变换
-        java.awt.geom.AffineTransform originalTransform = g2d.getTransform();
+        AffineTransform originalTransform = g2d.getTransform();
         
         try {
             // 应用旋转
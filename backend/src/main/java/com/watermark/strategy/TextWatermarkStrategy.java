@@ -7,6 +7,7 @@ import org.slf4j.LoggerFactory;
 
 import java.awt.*;
 import java.awt.font.FontRenderContext;
+import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 
 /**
@@ -20,7 +21,7 @@ public class TextWatermarkStrategy implements WatermarkStrategy {
     private static final Logger logger = LoggerFactory.getLogger(TextWatermarkStrategy.class);
     
     @Override
-    public BufferedImage applyWatermark(BufferedImage originalImage, WatermarkConfig config) throws Exception {
+    public WatermarkRenderer prepare(int imageWidth, int imageHeight, WatermarkConfig config) throws Exception {
         if (!(config instanceof TextWatermarkConfig)) {
             throw new IllegalArgumentException("配置类型不匹配，期望TextWatermarkConfig");
         }
@@ -30,35 +31,74 @@ public class TextWatermarkStrategy implements WatermarkStrategy {
         // 验证文本配置
         if (textConfig.getText() == null || textConfig.getText().trim().isEmpty()) {
             logger.warn("文本水印内容为空，跳过处理");
-            return originalImage;
+            return null;
         }
         
-        // 创建带水印的图片副本
-        BufferedImage watermarkedImage = new BufferedImage(
-            originalImage.getWidth(),
-            originalImage.getHeight(),
-            BufferedImage.TYPE_INT_ARGB
-        );
+        return new TextRenderer(textConfig, imageWidth, imageHeight);
+    }
+    
+    /**
+     * 文本水印绘制器
+     */
+    private class TextRenderer implements WatermarkRenderer {
+        private final TextWatermarkConfig textConfig;
+        private final int imageWidth;
+        private final int imageHeight;
+        private final Font font;
         
-        Graphics2D g2d = watermarkedImage.createGraphics();
+        TextRenderer(TextWatermarkConfig textConfig, int imageWidth, int imageHeight) {
+            this.textConfig = textConfig;
+            this.imageWidth = imageWidth;
+            this.imageHeight = imageHeight;
+            this.font = textConfig.createFont();
+        }
         
-        try {
-            // 绘制原始图片
-            g2d.drawImage(originalImage, 0, 0, null);
-            
+        @Override
+        public Rectangle getBounds() {
+            // 使用一个临时画布按相同的渲染设置测量文本
+            BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g2d = scratch.createGraphics();
+            try {
+                applyRenderingHints(g2d);
+                FontMetrics fontMetrics = g2d.getFontMetrics(font);
+                int textWidth = fontMetrics.stringWidth(textConfig.getText());
+                int textHeight = fontMetrics.getHeight();
+                Point textPosition = textConfig.calculatePosition(imageWidth, imageHeight, textWidth, textHeight);
+                
+                // 留出阴影、描边以及字形超出字宽部分的余量
+                int padding = textConfig.getStrokeWidth() + font.getSize() / 4 + 2;
+                if (textConfig.isHasShadow()) {
+                    padding += Math.max(Math.abs(textConfig.getShadowOffsetX()), Math.abs(textConfig.getShadowOffsetY()))
+                            + textConfig.getShadowBlur();
+                }
+                Rectangle bounds = new Rectangle(textPosition.x - padding, textPosition.y - padding,
+                                                 textWidth + padding * 2, textHeight + padding * 2);
+                
+                // 文本绕整幅图片中心旋转
+                if (textConfig.getRotation() != 0) {
+                    AffineTransform rotation = AffineTransform.getRotateInstance(
+                        Math.toRadians(textConfig.getRotation()), imageWidth / 2, imageHeight / 2);
+                    bounds = rotation.createTransformedShape(bounds).getBounds();
+                }
+                return bounds;
+                
+            } finally {
+                g2d.dispose();
+            }
+        }
+        
+        @Override
+        public void draw(Graphics2D g2d) {
             // 设置渲染质量
-            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-            g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            applyRenderingHints(g2d);
             
             // 应用旋转变换
             if (textConfig.getRotation() != 0) {
-                Point center = new Point(originalImage.getWidth() / 2, originalImage.getHeight() / 2);
+                Point center = new Point(imageWidth / 2, imageHeight / 2);
                 g2d.rotate(Math.toRadians(textConfig.getRotation()), center.x, center.y);
             }
             
             // 设置字体
-            Font font = textConfig.createFont();
             g2d.setFont(font);
             
             // 计算文本尺寸
@@ -69,12 +109,7 @@ public class TextWatermarkStrategy implements WatermarkStrategy {
             int ascent = fontMetrics.getAscent();
             
             // 计算文本位置
-            Point textPosition = textConfig.calculatePosition(
-                originalImage.getWidth(),
-                originalImage.getHeight(),
-                textWidth,
-                textHeight
-            );
+            Point textPosition = textConfig.calculatePosition(imageWidth, imageHeight, textWidth, textHeight);
             
             // 绘制阴影（如果启用）
             if (textConfig.isHasShadow()) {
@@ -90,12 +125,16 @@ public class TextWatermarkStrategy implements WatermarkStrategy {
             drawMainText(g2d, text, textPosition, textConfig, ascent);
             
             logger.debug("文本水印应用完成: {}", textConfig);
-            
-        } finally {
-            g2d.dispose();
         }
-        
-        return watermarkedImage;
+    }
+    
+    /**
+     * 设置文本渲染质量
+     */
+    private void applyRenderingHints(Graphics2D g2d) {
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
     }
     
     /**
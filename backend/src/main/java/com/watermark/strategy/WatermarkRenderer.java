@@ -0,0 +1,26 @@
+package com.watermark.strategy;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+
+/**
+ * 已准备好的水印绘制器
+ * 由水印策略根据整幅图片的尺寸创建，水印资源（字体、水印图片等）只准备一次，
+ * 可在整幅画布或分块画布上重复绘制
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public interface WatermarkRenderer {
+    
+    /**
+     * 获取水印在整幅图片坐标系中可能覆盖的区域（保守估计，可能略大于实际绘制区域）
+     */
+    Rectangle getBounds();
+    
+    /**
+     * 在整幅图片坐标系中绘制水印
+     * 绘制到分块画布时，调用方需先将坐标原点平移到分块左上角的相反位置
+     */
+    void draw(Graphics2D g2d);
+}
@@ -1,7 +1,9 @@
 package com.watermark.strategy;
 
 import com.watermark.model.WatermarkConfig;
+import com.watermark.util.ImageTypePolicy;
 
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 
 /**
@@ -13,13 +15,56 @@ import java.awt.image.BufferedImage;
  */
 public interface WatermarkStrategy {
     
+    /**
+     * 根据整幅图片的尺寸准备水印绘制器
+     * 
+     * @param imageWidth 整幅图片宽度
+     * @param imageHeight 整幅图片高度
+     * @param config 水印配置
+     * @return 水印绘制器，没有需要绘制的内容时（如文本为空、水印图片无法加载）返回null
+     * @throws Exception 处理异常
+     */
+    WatermarkRenderer prepare(int imageWidth, int imageHeight, WatermarkConfig config) throws Exception;
+    
     /**
      * 应用水印到图片
+     * 不修改原始图片，仅在原始图片带透明通道时保留透明通道
+     * 
+     * @param originalImage 原始图片
+     * @param config 水印配置
+     * @return 应用水印后的图片
+     * @throws Exception 处理异常
+     */
+    default BufferedImage applyWatermark(BufferedImage originalImage, WatermarkConfig config) throws Exception {
+        return applyWatermark(originalImage, config, ImageTypePolicy.PRESERVE_ALPHA);
+    }
+    
+    /**
+     * 按输出图片类型策略应用水印到图片
      * 
      * @param originalImage 原始图片
      * @param config 水印配置
+     * @param typePolicy 输出图片类型策略，决定画布类型以及能否直接在原始图片上绘制
      * @return 应用水印后的图片
      * @throws Exception 处理异常
      */
-    BufferedImage applyWatermark(BufferedImage originalImage, WatermarkConfig config) throws Exception;
-}
\ No newline at end of file
+    default BufferedImage applyWatermark(BufferedImage originalImage, WatermarkConfig config,
+                                         ImageTypePolicy typePolicy) throws Exception {
+        WatermarkRenderer renderer = prepare(originalImage.getWidth(), originalImage.getHeight(), config);
+        if (renderer == null) {
+            return typePolicy.conform(originalImage);
+        }
+        
+        // 获取绘制画布（按策略复用原始图片或创建合适类型的副本）
+        BufferedImage watermarkedImage = typePolicy.createCanvas(originalImage);
+        
+        Graphics2D g2d = watermarkedImage.createGraphics();
+        try {
+            renderer.draw(g2d);
+        } finally {
+            g2d.dispose();
+        }
+        
+        return watermarkedImage;
+    }
+}
@@ -0,0 +1,157 @@
+package com.watermark.test;
+
+import com.watermark.encoder.PngEncodeOptions;
+import com.watermark.encoder.PngImageEncoder;
+import com.watermark.encoder.TiffEncodeOptions;
+import com.watermark.encoder.TiffImageEncoder;
+
+import javax.imageio.ImageIO;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+/**
+ * 无损编码器基准测试
+ * 比较ImageIO默认PNG写入与PngImageEncoder各参数组合、以及各TIFF压缩方式的编码吞吐量和输出体积，
+ * 并校验解码结果与原图逐像素一致
+ * 
+ * 用法: EncoderBenchmark [宽度] [高度] [迭代次数]
+ */
+public class EncoderBenchmark {
+    
+    private interface Encoder {
+        byte[] encode(BufferedImage image) throws Exception;
+    }
+    
+    public static void main(String[] args) throws Exception {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 3000;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        
+        System.out.println("======== Lossless Encoder Benchmark ========");
+        System.out.println("Size: " + width + "x" + height + ", iterations: " + iterations
+                + ", cpus: " + Runtime.getRuntime().availableProcessors());
+        
+        BufferedImage photo = createPhotoImage(width, height);
+        BufferedImage logo = createLogoImage(width, height);
+        
+        runSuite("photo (RGB)", photo, iterations);
+        runSuite("logo (ARGB)", logo, iterations);
+    }
+    
+    private static void runSuite(String name, BufferedImage image, int iterations) throws Exception {
+        System.out.println();
+        System.out.println("=== " + name + " ===");
+        System.out.println(String.format("%-28s %10s %10s %12s", "encoder", "ms", "MP/s", "bytes"));
+        
+        PngImageEncoder png = PngImageEncoder.getInstance();
+        TiffImageEncoder tiff = TiffImageEncoder.getInstance();
+        
+        run("ImageIO png", image, iterations, img -> {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ImageIO.write(img, "png", baos);
+            return baos.toByteArray();
+        });
+        run("png fast serial", image, iterations, img -> png.encode(img, serial(PngEncodeOptions.fast())));
+        run("png fast parallel", image, iterations, img -> png.encode(img, PngEncodeOptions.fast()));
+        run("png default serial", image, iterations, img -> png.encode(img, serial(new PngEncodeOptions())));
+        run("png default parallel", image, iterations, img -> png.encode(img, new PngEncodeOptions()));
+        run("png level6 adaptive serial", image, iterations, img -> png.encode(img,
+                serial(new PngEncodeOptions(PngEncodeOptions.DEFAULT_COMPRESSION_LEVEL, PngEncodeOptions.FilterStrategy.ADAPTIVE))));
+        run("png small serial", image, iterations, img -> png.encode(img, serial(PngEncodeOptions.small())));
+        run("png small parallel", image, iterations, img -> png.encode(img, PngEncodeOptions.small()));
+        
+        for (TiffEncodeOptions.Compression compression : TiffEncodeOptions.Compression.values()) {
+            TiffEncodeOptions options = new TiffEncodeOptions(compression);
+            run("tiff " + compression.name().toLowerCase(), image, iterations, img -> tiff.encode(img, options));
+        }
+    }
+    
+    private static PngEncodeOptions serial(PngEncodeOptions options) {
+        options.setParallel(false);
+        return options;
+    }
+    
+    private static void run(String name, BufferedImage image, int iterations, Encoder encoder) throws Exception {
+        // 预热一次，同时校验解码结果
+        byte[] encoded = encoder.encode(image);
+        boolean identical = samePixels(image, ImageIO.read(new ByteArrayInputStream(encoded)));
+        
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            encoded = encoder.encode(image);
+        }
+        double millis = (System.nanoTime() - start) / 1e6 / iterations;
+        double megapixels = (double) image.getWidth() * image.getHeight() / 1e6;
+        
+        System.out.println(String.format("%-28s %10.1f %10.1f %12d%s", name, millis,
+                megapixels / (millis / 1000), encoded.length, identical ? "" : "  MISMATCH"));
+    }
+    
+    private static boolean samePixels(BufferedImage expected, BufferedImage actual) {
+        if (actual == null || expected.getWidth() != actual.getWidth() || expected.getHeight() != actual.getHeight()) {
+            return false;
+        }
+        int width = expected.getWidth();
+        int[] expectedRow = new int[width];
+        int[] actualRow = new int[width];
+        for (int y = 0; y < expected.getHeight(); y++) {
+            expected.getRGB(0, y, width, 1, expectedRow, 0, width);
+            actual.getRGB(0, y, width, 1, actualRow, 0, width);
+            for (int x = 0; x < width; x++) {
+                // 全透明像素的颜色分量没有意义，只比较alpha
+                if (expectedRow[x] != actualRow[x]
+                        && !((expectedRow[x] >>> 24) == 0 && (actualRow[x] >>> 24) == 0)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * 生成类似照片的图片：平滑渐变叠加少量噪声
+     */
+    private static BufferedImage createPhotoImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = (x * 255 / width + random.nextInt(9)) & 0xFF;
+                int g = (y * 255 / height + random.nextInt(9)) & 0xFF;
+                int b = ((x + y) * 127 / (width + height) + 64 + random.nextInt(9)) & 0xFF;
+                row[x] = (r << 16) | (g << 8) | b;
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return image;
+    }
+    
+    /**
+     * 生成类似透明Logo的图片：大面积透明背景上的图形和文字
+     */
+    private static BufferedImage createLogoImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        
+        g2d.setPaint(new GradientPaint(0, 0, new Color(30, 144, 255, 200), width, height, new Color(255, 69, 0, 120)));
+        g2d.fillOval(width / 8, height / 8, width * 3 / 4, height * 3 / 4);
+        g2d.setStroke(new BasicStroke(Math.max(2, width / 200f)));
+        g2d.setColor(new Color(255, 255, 255, 220));
+        g2d.drawOval(width / 8, height / 8, width * 3 / 4, height * 3 / 4);
+        g2d.setFont(new Font(Font.SANS_SERIF, Font.BOLD, Math.max(12, height / 8)));
+        g2d.drawString("Watermark", width / 5, height / 2);
+        g2d.dispose();
+        return image;
+    }
+}
@@ -0,0 +1,203 @@
+package com.watermark.test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.watermark.server.JobServer;
+import com.watermark.util.PathManager;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 导出任务服务压力测试
+ * 多个客户端在指定时间内不断提交任务并读取进度流直到任务结束，统计持续的任务吞吐量（每秒完成的任务数）、
+ * 每个统计窗口的吞吐量和任务延迟；任务关闭增量导出，每次都实际渲染。访问令牌从本机的服务令牌文件读取
+ * 
+ * 用法: JobServerLoadTest 源图片目录 输出目录 [服务地址] [客户端数] [持续秒数] [每个任务的图片数]
+ */
+public class JobServerLoadTest {
+    
+    private static final int WINDOW_SECONDS = 5;
+    
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    
+    private static String token;
+    
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("用法: JobServerLoadTest 源图片目录 输出目录 [服务地址] [客户端数] [持续秒数] [每个任务的图片数]");
+            return;
+        }
+        File sourceDir = new File(args[0]);
+        String outputDir = new File(args[1]).getAbsolutePath();
+        String baseUrl = args.length > 2 ? args[2] : "http://127.0.0.1:8765";
+        int clients = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 30;
+        int imagesPerJob = args.length > 5 ? Integer.parseInt(args[5]) : 4;
+        token = JobServer.readToken(new URL(baseUrl).getPort());
+        
+        List<String> images = new ArrayList<>();
+        File[] files = sourceDir.listFiles();
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                if (file.isFile() && PathManager.isSupportedImageFormat(file.getName())) {
+                    images.add(file.getAbsolutePath());
+                }
+            }
+        }
+        if (images.isEmpty()) {
+            System.out.println("没有找到源图片: " + sourceDir);
+            return;
+        }
+        
+        System.out.println("======== Job Server Load Test ========");
+        System.out.println("url: " + baseUrl + ", clients: " + clients + ", duration: " + seconds
+                + "s, images/job: " + imagesPerJob + ", source images: " + images.size());
+        
+        long start = System.currentTimeMillis();
+        long deadline = start + seconds * 1000L;
+        AtomicLongArray completedPerWindow = new AtomicLongArray(seconds / WINDOW_SECONDS + 2);
+        AtomicInteger items = new AtomicInteger();
+        AtomicInteger failedItems = new AtomicInteger();
+        AtomicInteger failedJobs = new AtomicInteger();
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        for (int c = 0; c < clients; c++) {
+            int client = c;
+            executor.execute(() -> {
+                int round = 0;
+                while (System.currentTimeMillis() < deadline) {
+                    List<String> jobFiles = new ArrayList<>();
+                    for (int i = 0; i < imagesPerJob; i++) {
+                        jobFiles.add(images.get((client * 31 + round * imagesPerJob + i) % images.size()));
+                    }
+                    String jobOutput = outputDir + File.separator + "client" + client;
+                    round++;
+                    
+                    long jobStart = System.currentTimeMillis();
+                    try {
+                        long id = submit(baseUrl, jobFiles, jobOutput);
+                        JsonNode job = awaitJob(baseUrl, id, items, failedItems);
+                        long end = System.currentTimeMillis();
+                        if (!"COMPLETED".equals(job.path("status").asText())) {
+                            failedJobs.incrementAndGet();
+                            continue;
+                        }
+                        latencies.add(end - jobStart);
+                        int window = (int) ((end - start) / 1000 / WINDOW_SECONDS);
+                        if (window < completedPerWindow.length()) {
+                            completedPerWindow.incrementAndGet(window);
+                        }
+                    } catch (Exception e) {
+                        failedJobs.incrementAndGet();
+                        System.out.println("client " + client + " 任务失败: " + e.getMessage());
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(seconds + 600L, TimeUnit.SECONDS);
+        long elapsed = System.currentTimeMillis() - start;
+        
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        int jobs = sorted.size();
+        
+        System.out.println();
+        System.out.println(String.format("%-12s %8s", "window", "jobs/s"));
+        double minRate = Double.MAX_VALUE;
+        int fullWindows = seconds / WINDOW_SECONDS;
+        for (int w = 0; w < fullWindows; w++) {
+            double rate = completedPerWindow.get(w) / (double) WINDOW_SECONDS;
+            minRate = Math.min(minRate, rate);
+            System.out.println(String.format("%3ds-%3ds    %8.2f", w * WINDOW_SECONDS, (w + 1) * WINDOW_SECONDS, rate));
+        }
+        
+        System.out.println();
+        System.out.println("jobs completed: " + jobs + ", jobs failed: " + failedJobs.get()
+                + ", items: " + items.get() + ", items failed: " + failedItems.get());
+        System.out.println(String.format("throughput: %.2f jobs/s, %.2f images/s, lowest %ds window: %.2f jobs/s",
+                jobs * 1000.0 / elapsed, items.get() * 1000.0 / elapsed, WINDOW_SECONDS,
+                fullWindows > 0 ? minRate : 0.0));
+        if (jobs > 0) {
+            System.out.println(String.format("latency ms: p50=%d p95=%d max=%d",
+                    sorted.get(jobs / 2), sorted.get(Math.min(jobs - 1, (int) (jobs * 0.95))), sorted.get(jobs - 1)));
+        }
+    }
+    
+    private static long submit(String baseUrl, List<String> files, String outputPath) throws IOException {
+        ObjectNode config = objectMapper.createObjectNode();
+        config.put("type", "TEXT");
+        config.put("text", "Load Test");
+        config.put("position", "BOTTOM_RIGHT");
+        config.put("opacity", 0.7);
+        config.put("fontSize", 36);
+        config.put("fontColor", "#FFFFFF");
+        config.put("incremental", false);
+        config.put("deduplicate", false);
+        
+        ObjectNode request = objectMapper.createObjectNode();
+        request.set("config", config);
+        ArrayNode fileArray = request.putArray("files");
+        files.forEach(fileArray::add);
+        request.put("outputPath", outputPath);
+        
+        HttpURLConnection conn = (HttpURLConnection) new URL(baseUrl + "/jobs").openConnection();
+        conn.setRequestMethod("POST");
+        conn.setDoOutput(true);
+        conn.setRequestProperty("Content-Type", "application/json");
+        conn.setRequestProperty(JobServer.TOKEN_HEADER, token);
+        try (OutputStream out = conn.getOutputStream()) {
+            out.write(objectMapper.writeValueAsBytes(request));
+        }
+        if (conn.getResponseCode() != 202) {
+            throw new IOException("提交任务失败: HTTP " + conn.getResponseCode());
+        }
+        return objectMapper.readTree(conn.getInputStream()).path("id").asLong();
+    }
+    
+    /**
+     * 读取进度流直到任务结束，返回任务状态
+     */
+    private static JsonNode awaitJob(String baseUrl, long id, AtomicInteger items, AtomicInteger failedItems)
+            throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(baseUrl + "/jobs/" + id + "/events").openConnection();
+        conn.setRequestProperty(JobServer.TOKEN_HEADER, token);
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                JsonNode event = objectMapper.readTree(line);
+                String type = event.path("event").asText();
+                if ("item".equals(type)) {
+                    items.incrementAndGet();
+                    if ("FAILED".equals(event.path("status").asText())) {
+                        failedItems.incrementAndGet();
+                    }
+                } else if ("job".equals(type)) {
+                    return event.path("job");
+                }
+            }
+        }
+        throw new IOException("进度流意外结束: 任务 " + id);
+    }
+}
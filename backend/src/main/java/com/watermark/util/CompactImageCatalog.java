@@ -0,0 +1,725 @@
+package com.watermark.util;
+
+import com.watermark.dto.ImageQuery;
+import com.watermark.model.ImageInfo;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 紧凑的图片列表
+ * 按列保存图片信息：尺寸、大小和时间存放在基本类型数组中，格式和所在目录只保存一次并以序号引用，
+ * ID、文件名等字符串以UTF-8写入同一个字节池，SHA-256哈希按32字节原始值保存，与默认规则一致的缩略图路径不单独保存。
+ * 每张图片只占用约一两百字节，而一个ImageInfo对象连同其字符串和LocalDateTime通常接近一千字节
+ * 
+ * 按ID和文件路径的查找使用开放寻址的整数散列表，不为每张图片创建Map条目；
+ * 查询在各列上直接过滤和排序，只有需要返回的图片才生成ImageInfo。
+ * 行号在clear之前保持不变，同一路径再次放入时原地更新；
+ * 更新替换下的字符串计为字节池中的空洞，空洞超过池的一半时整理字节池
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class CompactImageCatalog {
+    
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int NO_STRING = -1;
+    private static final int REMOVED_SLOT = -1;     // 散列表中已删除的位置
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private static final int PACKED_HASH_BYTES = 32;
+    private static final int COMPACT_MIN_DEAD_BYTES = 64 * 1024; // 空洞少于该值时不整理字节池
+    
+    private static final int FLAG_ALPHA = 1;
+    private static final int FLAG_DERIVED_THUMBNAIL = 2; // 缩略图路径与PathManager生成的默认路径一致
+    private static final int FLAG_PACKED_HASH = 4;       // 内容哈希为十六进制SHA-256，按原始字节保存
+    
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    
+    private int size;
+    private int[] widths;
+    private int[] heights;
+    private long[] fileSizes;
+    private long[] lastModifieds;
+    private long[] importTimes;     // UTC偏移下的毫秒值，仅用于还原LocalDateTime
+    private byte[] formatRefs;      // formatTable中的序号+1，0表示没有格式
+    private byte[] flags;
+    private int[] directoryRefs;
+    private int[] idRefs;
+    private int[] nameRefs;
+    private int[] thumbnailRefs;
+    private int[] hashRefs;
+    
+    // 字符串池：每个字符串为 变长长度 + UTF-8字节
+    private byte[] pool;
+    private int poolSize;
+    private int deadPoolBytes;      // 已被替换、不再引用的字节数
+    
+    private final List<String> formatTable = new ArrayList<>();
+    private final Map<String, Integer> formatIndex = new HashMap<>();
+    private final List<String> directoryTable = new ArrayList<>();
+    private final Map<String, Integer> directoryIndex = new HashMap<>();
+    
+    // 开放寻址散列表，保存行号+1，0表示空位
+    private int[] idSlots;
+    private int[] pathSlots;
+    private int usedIdSlots;
+    
+    public CompactImageCatalog() {
+        clear();
+    }
+    
+    /**
+     * 放入图片信息，同一文件路径已存在时原地更新
+     * 
+     * @return 行号
+     */
+    public synchronized int put(ImageInfo imageInfo) {
+        String[] location = splitPath(imageInfo.getFilePath());
+        int directoryRef = directoryRef(location[0]);
+        byte[] name = utf8(location[1]);
+        
+        int row = findPath(directoryRef, location[1], name);
+        if (row < 0) {
+            ensureCapacity(size + 1);
+            row = size++;
+            directoryRefs[row] = directoryRef;
+            nameRefs[row] = putString(name);
+            idRefs[row] = NO_STRING;
+            thumbnailRefs[row] = NO_STRING;
+            hashRefs[row] = NO_STRING;
+            flags[row] = 0;
+            insertPathSlot(row, location[1]);
+        }
+        
+        String id = imageInfo.getId();
+        if (!stringEquals(idRefs[row], id)) {
+            if (idRefs[row] != NO_STRING) {
+                removeIdSlot(row);
+                releaseString(idRefs[row]);
+            }
+            idRefs[row] = putString(id);
+            if (id != null) {
+                insertIdSlot(row);
+            }
+        }
+        
+        widths[row] = imageInfo.getWidth();
+        heights[row] = imageInfo.getHeight();
+        fileSizes[row] = imageInfo.getFileSize();
+        lastModifieds[row] = imageInfo.getLastModified();
+        LocalDateTime importTime = imageInfo.getImportTime();
+        importTimes[row] = importTime != null
+                ? importTime.toEpochSecond(ZoneOffset.UTC) * 1000 + importTime.getNano() / 1000000 : NO_TIME;
+        formatRefs[row] = formatRef(imageInfo.getFormat());
+        
+        int rowFlags = imageInfo.isHasAlphaChannel() ? FLAG_ALPHA : 0;
+        String thumbnailPath = imageInfo.getThumbnailPath();
+        if (thumbnailPath != null && thumbnailPath.equals(derivedThumbnailPath(imageInfo.getFilePath()))) {
+            rowFlags |= FLAG_DERIVED_THUMBNAIL;
+            releaseString(thumbnailRefs[row]);
+            thumbnailRefs[row] = NO_STRING;
+        } else if (!stringEquals(thumbnailRefs[row], thumbnailPath)) {
+            releaseString(thumbnailRefs[row]);
+            thumbnailRefs[row] = putString(thumbnailPath);
+        }
+        
+        boolean packedBefore = (flags[row] & FLAG_PACKED_HASH) != 0;
+        byte[] packedHash = packHash(imageInfo.getContentHash());
+        if (packedHash != null) {
+            rowFlags |= FLAG_PACKED_HASH;
+            if (!packedBefore || !packedEquals(hashRefs[row], packedHash)) {
+                releaseHash(hashRefs[row], packedBefore);
+                hashRefs[row] = putRaw(packedHash);
+            }
+        } else if (packedBefore || !stringEquals(hashRefs[row], imageInfo.getContentHash())) {
+            releaseHash(hashRefs[row], packedBefore);
+            hashRefs[row] = putString(imageInfo.getContentHash());
+        }
+        flags[row] = (byte) rowFlags;
+        
+        if (deadPoolBytes >= COMPACT_MIN_DEAD_BYTES && deadPoolBytes * 2 > poolSize) {
+            compactPool();
+        }
+        return row;
+    }
+    
+    /**
+     * 按行号生成图片信息
+     */
+    public synchronized ImageInfo get(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("行号超出范围: " + row + " (size=" + size + ")");
+        }
+        
+        ImageInfo imageInfo = new ImageInfo();
+        String filePath = filePath(row);
+        imageInfo.setId(readString(idRefs[row]));
+        imageInfo.setFileName(readString(nameRefs[row]));
+        imageInfo.setFilePath(filePath);
+        imageInfo.setThumbnailPath((flags[row] & FLAG_DERIVED_THUMBNAIL) != 0
+                ? derivedThumbnailPath(filePath) : readString(thumbnailRefs[row]));
+        imageInfo.setFileSize(fileSizes[row]);
+        imageInfo.setWidth(widths[row]);
+        imageInfo.setHeight(heights[row]);
+        imageInfo.setFormat(formatRefs[row] != 0 ? formatTable.get((formatRefs[row] & 0xFF) - 1) : null);
+        imageInfo.setHasAlphaChannel((flags[row] & FLAG_ALPHA) != 0);
+        imageInfo.setLastModified(lastModifieds[row]);
+        imageInfo.setContentHash((flags[row] & FLAG_PACKED_HASH) != 0
+                ? readPackedHash(hashRefs[row]) : readString(hashRefs[row]));
+        long importTime = importTimes[row];
+        imageInfo.setImportTime(importTime != NO_TIME
+                ? LocalDateTime.ofEpochSecond(Math.floorDiv(importTime, 1000L),
+                        (int) Math.floorMod(importTime, 1000L) * 1000000, ZoneOffset.UTC)
+                : null);
+        return imageInfo;
+    }
+    
+    /**
+     * 按ID查找，不存在时返回null
+     */
+    public synchronized ImageInfo findById(String id) {
+        if (id == null) {
+            return null;
+        }
+        byte[] key = utf8(id);
+        int mask = idSlots.length - 1;
+        for (int i = mix(id.hashCode()) & mask; idSlots[i] != 0; i = (i + 1) & mask) {
+            int row = idSlots[i] - 1;
+            if (idSlots[i] != REMOVED_SLOT && bytesEqual(idRefs[row], key)) {
+                return get(row);
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * 按文件路径查找，不存在时返回null
+     */
+    public synchronized ImageInfo findByPath(String filePath) {
+        int row = rowOf(filePath);
+        return row >= 0 ? get(row) : null;
+    }
+    
+    /**
+     * 文件路径所在的行号，不存在时返回-1
+     */
+    public synchronized int rowOf(String filePath) {
+        if (filePath == null) {
+            return -1;
+        }
+        String[] location = splitPath(filePath);
+        Integer directoryRef = directoryIndex.get(location[0]);
+        if (directoryRef == null) {
+            return -1;
+        }
+        return findPath(directoryRef, location[1], utf8(location[1]));
+    }
+    
+    /**
+     * 按条件过滤并排序
+     * 
+     * @return 符合条件的行号；排序字段相同时保持放入顺序
+     */
+    public synchronized int[] query(ImageQuery query) {
+        String keyword = query.getKeyword() != null && !query.getKeyword().trim().isEmpty()
+                ? query.getKeyword().trim().toLowerCase(Locale.ROOT) : null;
+        boolean[] formatMask = null;
+        if (query.getFormats() != null && !query.getFormats().isEmpty()) {
+            formatMask = new boolean[formatTable.size() + 1];
+            for (String format : query.getFormats()) {
+                Integer index = format != null ? formatIndex.get(format.toUpperCase(Locale.ROOT)) : null;
+                if (index != null) {
+                    formatMask[index + 1] = true;
+                }
+            }
+        }
+        
+        long minFileSize = query.getMinFileSize() != null ? query.getMinFileSize() : Long.MIN_VALUE;
+        long maxFileSize = query.getMaxFileSize() != null ? query.getMaxFileSize() : Long.MAX_VALUE;
+        int minWidth = query.getMinWidth() != null ? query.getMinWidth() : Integer.MIN_VALUE;
+        int maxWidth = query.getMaxWidth() != null ? query.getMaxWidth() : Integer.MAX_VALUE;
+        int minHeight = query.getMinHeight() != null ? query.getMinHeight() : Integer.MIN_VALUE;
+        int maxHeight = query.getMaxHeight() != null ? query.getMaxHeight() : Integer.MAX_VALUE;
+        long modifiedAfter = query.getModifiedAfter() != null ? query.getModifiedAfter() : Long.MIN_VALUE;
+        long modifiedBefore = query.getModifiedBefore() != null ? query.getModifiedBefore() : Long.MAX_VALUE;
+        
+        int[] matched = new int[size];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            if (fileSizes[row] < minFileSize || fileSizes[row] > maxFileSize
+                    || widths[row] < minWidth || widths[row] > maxWidth
+                    || heights[row] < minHeight || heights[row] > maxHeight
+                    || lastModifieds[row] < modifiedAfter || lastModifieds[row] >= modifiedBefore
+                    || (formatMask != null && !formatMask[formatRefs[row] & 0xFF])) {
+                continue;
+            }
+            if (keyword != null && !readString(nameRefs[row]).toLowerCase(Locale.ROOT).contains(keyword)) {
+                continue;
+            }
+            matched[count++] = row;
+        }
+        matched = Arrays.copyOf(matched, count);
+        
+        Comparator<Integer> comparator = comparator(query.getSortBy(), matched);
+        if (comparator == null) {
+            return matched;
+        }
+        if (query.isDescending()) {
+            comparator = comparator.reversed();
+        }
+        Integer[] rows = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            rows[i] = matched[i];
+        }
+        Arrays.sort(rows, comparator.thenComparingInt(Integer::intValue));
+        for (int i = 0; i < count; i++) {
+            matched[i] = rows[i];
+        }
+        return matched;
+    }
+    
+    /**
+     * 排序字段对应的比较器，未指定或无法识别时返回null（保持放入顺序）
+     */
+    private Comparator<Integer> comparator(String sortBy, int[] rows) {
+        if (sortBy == null) {
+            return null;
+        }
+        switch (sortBy) {
+            case ImageQuery.SORT_NAME: {
+                // 文件名只为参与排序的行解码一次
+                String[] names = new String[size];
+                for (int row : rows) {
+                    names[row] = readString(nameRefs[row]);
+                }
+                return (a, b) -> String.CASE_INSENSITIVE_ORDER.compare(names[a], names[b]);
+            }
+            case ImageQuery.SORT_SIZE:
+                return (a, b) -> Long.compare(fileSizes[a], fileSizes[b]);
+            case ImageQuery.SORT_WIDTH:
+                return (a, b) -> Integer.compare(widths[a], widths[b]);
+            case ImageQuery.SORT_HEIGHT:
+                return (a, b) -> Integer.compare(heights[a], heights[b]);
+            case ImageQuery.SORT_PIXELS:
+                return (a, b) -> Long.compare((long) widths[a] * heights[a], (long) widths[b] * heights[b]);
+            case ImageQuery.SORT_FORMAT:
+                return (a, b) -> compareFormats(formatRefs[a] & 0xFF, formatRefs[b] & 0xFF);
+            case ImageQuery.SORT_MODIFIED:
+                return (a, b) -> Long.compare(lastModifieds[a], lastModifieds[b]);
+            case ImageQuery.SORT_IMPORTED:
+                return (a, b) -> Long.compare(importTimes[a], importTimes[b]);
+            default:
+                return null;
+        }
+    }
+    
+    private int compareFormats(int a, int b) {
+        if (a == b) {
+            return 0;
+        }
+        if (a == 0 || b == 0) {
+            return a == 0 ? -1 : 1;
+        }
+        return formatTable.get(a - 1).compareTo(formatTable.get(b - 1));
+    }
+    
+    public synchronized int size() {
+        return size;
+    }
+    
+    /**
+     * 清空列表并释放占用的数组
+     */
+    public synchronized void clear() {
+        size = 0;
+        widths = new int[INITIAL_CAPACITY];
+        heights = new int[INITIAL_CAPACITY];
+        fileSizes = new long[INITIAL_CAPACITY];
+        lastModifieds = new long[INITIAL_CAPACITY];
+        importTimes = new long[INITIAL_CAPACITY];
+        formatRefs = new byte[INITIAL_CAPACITY];
+        flags = new byte[INITIAL_CAPACITY];
+        directoryRefs = new int[INITIAL_CAPACITY];
+        idRefs = new int[INITIAL_CAPACITY];
+        nameRefs = new int[INITIAL_CAPACITY];
+        thumbnailRefs = new int[INITIAL_CAPACITY];
+        hashRefs = new int[INITIAL_CAPACITY];
+        pool = new byte[INITIAL_CAPACITY * 64];
+        poolSize = 0;
+        deadPoolBytes = 0;
+        formatTable.clear();
+        formatIndex.clear();
+        directoryTable.clear();
+        directoryIndex.clear();
+        idSlots = new int[INITIAL_CAPACITY * 2];
+        pathSlots = new int[INITIAL_CAPACITY * 2];
+        usedIdSlots = 0;
+    }
+    
+    /**
+     * 估算占用的堆内存字节数（数组容量，不含目录和格式表）
+     */
+    public synchronized long estimateBytes() {
+        long perRow = 4L * 2 + 8L * 3 + 2 + 4L * 5;
+        return perRow * widths.length + pool.length + 4L * (idSlots.length + pathSlots.length);
+    }
+    
+    @Override
+    public synchronized String toString() {
+        return "CompactImageCatalog{" +
+                "size=" + size +
+                ", directories=" + directoryTable.size() +
+                ", poolBytes=" + poolSize +
+                ", deadPoolBytes=" + deadPoolBytes +
+                ", estimatedBytes=" + estimateBytes() +
+                '}';
+    }
+    
+    // ---------- 行存储 ----------
+    
+    private void ensureCapacity(int required) {
+        if (required <= widths.length) {
+            return;
+        }
+        int capacity = Math.max(required, widths.length + (widths.length >> 1));
+        widths = Arrays.copyOf(widths, capacity);
+        heights = Arrays.copyOf(heights, capacity);
+        fileSizes = Arrays.copyOf(fileSizes, capacity);
+        lastModifieds = Arrays.copyOf(lastModifieds, capacity);
+        importTimes = Arrays.copyOf(importTimes, capacity);
+        formatRefs = Arrays.copyOf(formatRefs, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        directoryRefs = Arrays.copyOf(directoryRefs, capacity);
+        idRefs = Arrays.copyOf(idRefs, capacity);
+        nameRefs = Arrays.copyOf(nameRefs, capacity);
+        thumbnailRefs = Arrays.copyOf(thumbnailRefs, capacity);
+        hashRefs = Arrays.copyOf(hashRefs, capacity);
+    }
+    
+    private String filePath(int row) {
+        String directory = directoryTable.get(directoryRefs[row]);
+        String name = readString(nameRefs[row]);
+        return directory.isEmpty() ? name : new File(directory, name).getPath();
+    }
+    
+    /**
+     * 拆分为所在目录和文件名；拼接后不能还原原路径时整条路径作为文件名保存
+     */
+    private static String[] splitPath(String filePath) {
+        File file = new File(filePath);
+        String directory = file.getParent();
+        if (directory != null && new File(directory, file.getName()).getPath().equals(filePath)) {
+            return new String[] {directory, file.getName()};
+        }
+        return new String[] {"", filePath};
+    }
+    
+    private int directoryRef(String directory) {
+        Integer ref = directoryIndex.get(directory);
+        if (ref == null) {
+            ref = directoryTable.size();
+            directoryTable.add(directory);
+            directoryIndex.put(directory, ref);
+        }
+        return ref;
+    }
+    
+    private byte formatRef(String format) {
+        if (format == null) {
+            return 0;
+        }
+        Integer ref = formatIndex.get(format);
+        if (ref == null) {
+            if (formatTable.size() >= 255) {
+                throw new IllegalStateException("图片格式种类过多: " + format);
+            }
+            ref = formatTable.size();
+            formatTable.add(format);
+            formatIndex.put(format, ref);
+        }
+        return (byte) (ref + 1);
+    }
+    
+    private static String derivedThumbnailPath(String filePath) {
+        try {
+            return PathManager.generateThumbnailPath(filePath);
+        } catch (RuntimeException e) {
+            // 没有扩展名等无法生成默认路径的文件
+            return null;
+        }
+    }
+    
+    // ---------- 字符串池 ----------
+    
+    private int putString(String value) {
+        return value != null ? putString(utf8(value)) : NO_STRING;
+    }
+    
+    private int putString(byte[] bytes) {
+        ensurePool(5 + bytes.length);
+        int ref = poolSize;
+        int length = bytes.length;
+        while ((length & ~0x7F) != 0) {
+            pool[poolSize++] = (byte) ((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        pool[poolSize++] = (byte) length;
+        System.arraycopy(bytes, 0, pool, poolSize, bytes.length);
+        poolSize += bytes.length;
+        return ref;
+    }
+    
+    private int putRaw(byte[] bytes) {
+        ensurePool(bytes.length);
+        int ref = poolSize;
+        System.arraycopy(bytes, 0, pool, poolSize, bytes.length);
+        poolSize += bytes.length;
+        return ref;
+    }
+    
+    private void ensurePool(int additional) {
+        if (poolSize + additional > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(poolSize + additional, pool.length + (pool.length >> 1)));
+        }
+    }
+    
+    /**
+     * 字符串被替换后计为空洞
+     */
+    private void releaseString(int ref) {
+        if (ref != NO_STRING) {
+            deadPoolBytes += entryLength(pool, ref);
+        }
+    }
+    
+    private void releaseHash(int ref, boolean packed) {
+        if (packed) {
+            deadPoolBytes += PACKED_HASH_BYTES;
+        } else {
+            releaseString(ref);
+        }
+    }
+    
+    /**
+     * 池中一个字符串占用的字节数（长度前缀加内容）
+     */
+    private static int entryLength(byte[] source, int ref) {
+        int position = ref;
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = source[position++];
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return position - ref + length;
+    }
+    
+    /**
+     * 整理字节池：按行依次复制仍被引用的字符串和哈希，丢弃空洞（每个引用只属于一行的一列，复制后更新该列）
+     */
+    private void compactPool() {
+        byte[] old = pool;
+        int live = poolSize - deadPoolBytes;
+        pool = new byte[Math.max(INITIAL_CAPACITY * 64, live + (live >> 2))];
+        poolSize = 0;
+        deadPoolBytes = 0;
+        for (int row = 0; row < size; row++) {
+            nameRefs[row] = copyEntry(old, nameRefs[row], false);
+            idRefs[row] = copyEntry(old, idRefs[row], false);
+            thumbnailRefs[row] = copyEntry(old, thumbnailRefs[row], false);
+            hashRefs[row] = copyEntry(old, hashRefs[row], (flags[row] & FLAG_PACKED_HASH) != 0);
+        }
+    }
+    
+    private int copyEntry(byte[] source, int ref, boolean packedHash) {
+        if (ref == NO_STRING) {
+            return NO_STRING;
+        }
+        int length = packedHash ? PACKED_HASH_BYTES : entryLength(source, ref);
+        ensurePool(length);
+        int newRef = poolSize;
+        System.arraycopy(source, ref, pool, poolSize, length);
+        poolSize += length;
+        return newRef;
+    }
+    
+    private String readString(int ref) {
+        if (ref == NO_STRING) {
+            return null;
+        }
+        int[] position = {ref};
+        int length = readLength(position);
+        return new String(pool, position[0], length, StandardCharsets.UTF_8);
+    }
+    
+    private int readLength(int[] position) {
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = pool[position[0]++];
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return length;
+    }
+    
+    private boolean stringEquals(int ref, String value) {
+        if (ref == NO_STRING || value == null) {
+            return ref == NO_STRING && value == null;
+        }
+        return bytesEqual(ref, utf8(value));
+    }
+    
+    /**
+     * 池中的字符串是否与给定的UTF-8字节相同
+     */
+    private boolean bytesEqual(int ref, byte[] bytes) {
+        if (ref == NO_STRING) {
+            return false;
+        }
+        int[] position = {ref};
+        return readLength(position) == bytes.length && regionEquals(position[0], bytes);
+    }
+    
+    /**
+     * 池中按原始字节保存的哈希是否与给定值相同
+     */
+    private boolean packedEquals(int ref, byte[] packed) {
+        return ref != NO_STRING && regionEquals(ref, packed);
+    }
+    
+    private boolean regionEquals(int start, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (pool[start + i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+    
+    // ---------- 内容哈希 ----------
+    
+    private static byte[] packHash(String hash) {
+        if (hash == null || hash.length() != 64) {
+            return null;
+        }
+        byte[] packed = new byte[PACKED_HASH_BYTES];
+        for (int i = 0; i < PACKED_HASH_BYTES; i++) {
+            int high = lowerHexValue(hash.charAt(i * 2));
+            int low = lowerHexValue(hash.charAt(i * 2 + 1));
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            packed[i] = (byte) ((high << 4) | low);
+        }
+        return packed;
+    }
+    
+    /**
+     * 小写十六进制字符的值；大写字符按原样保存字符串，保证读出的值与放入的一致
+     */
+    private static int lowerHexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        return c >= 'a' && c <= 'f' ? c - 'a' + 10 : -1;
+    }
+    
+    private String readPackedHash(int ref) {
+        char[] hex = new char[64];
+        for (int i = 0; i < PACKED_HASH_BYTES; i++) {
+            int b = pool[ref + i] & 0xFF;
+            hex[i * 2] = HEX[b >>> 4];
+            hex[i * 2 + 1] = HEX[b & 0x0F];
+        }
+        return new String(hex);
+    }
+    
+    // ---------- 散列索引 ----------
+    
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+    
+    private int pathHash(int directoryRef, String name) {
+        return mix(directoryRef * 31 + name.hashCode());
+    }
+    
+    private int findPath(int directoryRef, String name, byte[] nameBytes) {
+        int mask = pathSlots.length - 1;
+        for (int i = pathHash(directoryRef, name) & mask; pathSlots[i] != 0; i = (i + 1) & mask) {
+            int row = pathSlots[i] - 1;
+            if (directoryRefs[row] == directoryRef && bytesEqual(nameRefs[row], nameBytes)) {
+                return row;
+            }
+        }
+        return -1;
+    }
+    
+    private void insertPathSlot(int row, String name) {
+        if (size * 2 > pathSlots.length) {
+            // 新行已计入size，按新容量重建已有的行后再放入
+            pathSlots = new int[pathSlots.length * 2];
+            for (int existing = 0; existing < row; existing++) {
+                placeSlot(pathSlots, pathHash(directoryRefs[existing], readString(nameRefs[existing])), existing);
+            }
+        }
+        placeSlot(pathSlots, pathHash(directoryRefs[row], name), row);
+    }
+    
+    private void insertIdSlot(int row) {
+        if ((usedIdSlots + 1) * 2 > idSlots.length) {
+            // 重建时丢弃已删除的位置，行数增多时扩容；重建已放入包括该行在内的所有行
+            rebuildIdSlots(Math.max(idSlots.length, Integer.highestOneBit(Math.max(size, 1)) * 4));
+            return;
+        }
+        placeSlot(idSlots, mix(readString(idRefs[row]).hashCode()), row);
+        usedIdSlots++;
+    }
+    
+    private void removeIdSlot(int row) {
+        int mask = idSlots.length - 1;
+        for (int i = mix(readString(idRefs[row]).hashCode()) & mask; idSlots[i] != 0; i = (i + 1) & mask) {
+            if (idSlots[i] == row + 1) {
+                idSlots[i] = REMOVED_SLOT;
+                return;
+            }
+        }
+    }
+    
+    private void rebuildIdSlots(int capacity) {
+        idSlots = new int[capacity];
+        usedIdSlots = 0;
+        for (int row = 0; row < size; row++) {
+            if (idRefs[row] != NO_STRING) {
+                placeSlot(idSlots, mix(readString(idRefs[row]).hashCode()), row);
+                usedIdSlots++;
+            }
+        }
+    }
+    
+    private static void placeSlot(int[] slots, int hash, int row) {
+        int mask = slots.length - 1;
+        int i = hash & mask;
+        while (slots[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        slots[i] = row + 1;
+    }
+}
@@ -0,0 +1,106 @@
+package com.watermark.util;
+
+import com.alibaba.fastjson2.JSONObject;
+
+/**
+ * 源图片解码限制
+ * 批量导出时分阶段检查：读取前检查文件字节数，解码前检查文件头声明的尺寸，
+ * 解码和渲染过程由看门狗限制时间。超过限制的文件判为异常输入，不再占用渲染线程和内存
+ * 
+ * 导出配置中的可选项（0表示不限制）：
+ *   maxSourceBytes   源文件字节数上限
+ *   maxPixels        文件头声明的像素总数上限
+ *   decodeTimeoutMs  单张图片解码和渲染的基础时间上限，按像素数增加（每百万像素 MILLIS_PER_MEGAPIXEL 毫秒）
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public final class DecodeLimits {
+    
+    public static final long DEFAULT_MAX_SOURCE_BYTES = 2L * 1024 * 1024 * 1024; // 2GB
+    public static final long DEFAULT_MAX_PIXELS = 1000L * 1000 * 1000;           // 10亿像素
+    public static final long DEFAULT_DECODE_TIMEOUT_MS = 60000;
+    private static final long MILLIS_PER_MEGAPIXEL = 500;                        // 大图片每百万像素增加的时间
+    
+    private final long maxSourceBytes;
+    private final long maxPixels;
+    private final long decodeTimeoutMs;
+    
+    public DecodeLimits(long maxSourceBytes, long maxPixels, long decodeTimeoutMs) {
+        this.maxSourceBytes = maxSourceBytes;
+        this.maxPixels = maxPixels;
+        this.decodeTimeoutMs = decodeTimeoutMs;
+    }
+    
+    /**
+     * 从导出配置读取解码限制，未指定的项使用默认值
+     */
+    public static DecodeLimits fromOptions(JSONObject options) {
+        return new DecodeLimits(
+                options.containsKey("maxSourceBytes") ? options.getLongValue("maxSourceBytes") : DEFAULT_MAX_SOURCE_BYTES,
+                options.containsKey("maxPixels") ? options.getLongValue("maxPixels") : DEFAULT_MAX_PIXELS,
+                options.containsKey("decodeTimeoutMs") ? options.getLongValue("decodeTimeoutMs") : DEFAULT_DECODE_TIMEOUT_MS);
+    }
+    
+    /**
+     * 检查源文件字节数
+     * 
+     * @return 超过上限时返回原因说明，否则返回null
+     */
+    public String checkSourceSize(long sourceBytes) {
+        if (maxSourceBytes > 0 && sourceBytes > maxSourceBytes) {
+            return "源文件 " + sourceBytes + " 字节，超过上限 " + maxSourceBytes + " 字节";
+        }
+        return null;
+    }
+    
+    /**
+     * 检查文件头声明的尺寸
+     * 
+     * @return 尺寸无效或超过上限时返回原因说明，否则返回null
+     */
+    public String checkHeader(ImageHeader header) {
+        if (header.getWidth() <= 0 || header.getHeight() <= 0) {
+            return "文件头声明的尺寸无效: " + header.getWidth() + "x" + header.getHeight();
+        }
+        if (maxPixels > 0 && header.getPixelCount() > maxPixels) {
+            return "文件头声明 " + header.getWidth() + "x" + header.getHeight() + "，像素数超过上限 " + maxPixels;
+        }
+        return null;
+    }
+    
+    /**
+     * 单张图片解码和渲染的时间上限，按文件头声明的像素数放宽
+     * 
+     * @param header 文件头信息，无法读取时为null
+     * @return 时间上限（毫秒），0表示不限制
+     */
+    public long timeoutFor(ImageHeader header) {
+        if (decodeTimeoutMs <= 0) {
+            return 0;
+        }
+        long megapixels = header != null ? header.getPixelCount() / 1000000 : 0;
+        return decodeTimeoutMs + megapixels * MILLIS_PER_MEGAPIXEL;
+    }
+    
+    public long getMaxSourceBytes() {
+        return maxSourceBytes;
+    }
+    
+    public long getMaxPixels() {
+        return maxPixels;
+    }
+    
+    public long getDecodeTimeoutMs() {
+        return decodeTimeoutMs;
+    }
+    
+    @Override
+    public String toString() {
+        return "DecodeLimits{" +
+                "maxSourceBytes=" + maxSourceBytes +
+                ", maxPixels=" + maxPixels +
+                ", decodeTimeoutMs=" + decodeTimeoutMs +
+                '}';
+    }
+}
@@ -0,0 +1,116 @@
+package com.watermark.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 解码看门狗
+ * 为渲染线程上的单张图片解码和渲染计时，超时后先执行调用方的超时处理（放弃等待该图片、补充渲染线程），
+ * 再中断渲染线程：解码器在进度回调中检查中断并中止解码。无法中止的解码只占住该线程，不再阻塞批次
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class DecodeWatchdog implements AutoCloseable {
+    
+    private static final Logger logger = LoggerFactory.getLogger(DecodeWatchdog.class);
+    
+    private final ScheduledThreadPoolExecutor timer;
+    private final AtomicLong timeoutCount = new AtomicLong();
+    
+    /**
+     * 一次计时，由开始计时的线程关闭
+     */
+    public final class Watch implements AutoCloseable {
+        private final Thread worker;
+        private final Runnable onTimeout;
+        private ScheduledFuture<?> timeout;
+        private boolean closed;
+        private boolean expired;
+        
+        private Watch(Thread worker, Runnable onTimeout) {
+            this.worker = worker;
+            this.onTimeout = onTimeout;
+        }
+        
+        private synchronized void expire() {
+            if (closed) {
+                return;
+            }
+            expired = true;
+            timeoutCount.incrementAndGet();
+            try {
+                onTimeout.run();
+            } catch (Exception e) {
+                logger.warn("解码超时处理失败: {}", e.getMessage());
+            }
+            worker.interrupt();
+        }
+        
+        /**
+         * 是否已超时（关闭后结果不再变化）
+         */
+        public synchronized boolean isExpired() {
+            return expired;
+        }
+        
+        /**
+         * 停止计时；已超时时清除看门狗设置的中断状态，使线程池线程可以继续使用
+         */
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            if (expired && Thread.currentThread() == worker) {
+                Thread.interrupted();
+            }
+        }
+    }
+    
+    public DecodeWatchdog() {
+        this.timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "decode-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timer.setRemoveOnCancelPolicy(true);
+    }
+    
+    /**
+     * 为当前线程开始计时
+     * 
+     * @param timeoutMillis 时间上限，0表示不限制（返回的计时不会超时）
+     * @param onTimeout 超时时在看门狗线程上执行，之后中断当前线程
+     */
+    public Watch watch(long timeoutMillis, Runnable onTimeout) {
+        Watch watch = new Watch(Thread.currentThread(), onTimeout);
+        if (timeoutMillis > 0) {
+            watch.timeout = timer.schedule(watch::expire, timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        return watch;
+    }
+    
+    /**
+     * 已超时的计时数
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+    
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+}
@@ -0,0 +1,181 @@
+package com.watermark.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 解码图片缓存
+ * 按像素数据的总字节数而不是条目数限制大小，超出上限时淘汰最久未使用的图片；
+ * 启用软引用溢出时被淘汰的图片改为软引用保留，内存充足时仍可命中，内存紧张时由GC回收
+ * 
+ * 缓存中的图片由多个调用方共享，调用方不得修改，需要在图片上绘制时应先复制
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class DecodedImageCache {
+    
+    private final long maxBytes;
+    private final boolean softSpillover;
+    
+    // 按访问顺序排列，最久未使用的在前
+    private final LinkedHashMap<String, BufferedImage> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, SoftEntry> softEntries = new HashMap<>();
+    private final ReferenceQueue<BufferedImage> softQueue = new ReferenceQueue<>();
+    private long currentBytes;
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong softHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    
+    /**
+     * 被淘汰后以软引用保留的图片
+     */
+    private static final class SoftEntry extends SoftReference<BufferedImage> {
+        final String key;
+        
+        SoftEntry(String key, BufferedImage image, ReferenceQueue<BufferedImage> queue) {
+            super(image, queue);
+            this.key = key;
+        }
+    }
+    
+    /**
+     * @param maxBytes 强引用保留的像素数据字节上限
+     * @param softSpillover 被淘汰的图片是否以软引用继续保留
+     */
+    public DecodedImageCache(long maxBytes, boolean softSpillover) {
+        this.maxBytes = maxBytes;
+        this.softSpillover = softSpillover;
+    }
+    
+    /**
+     * 查找图片，未命中时返回null
+     */
+    public synchronized BufferedImage get(String key) {
+        BufferedImage image = entries.get(key);
+        if (image != null) {
+            hits.incrementAndGet();
+            return image;
+        }
+        
+        purgeCollected();
+        SoftEntry softEntry = softEntries.remove(key);
+        image = softEntry != null ? softEntry.get() : null;
+        if (image != null) {
+            softHits.incrementAndGet();
+            insert(key, image);
+            return image;
+        }
+        
+        misses.incrementAndGet();
+        return null;
+    }
+    
+    /**
+     * 放入图片，超过字节上限的单张图片不缓存
+     */
+    public synchronized void put(String key, BufferedImage image) {
+        if (image == null || sizeOf(image) > maxBytes) {
+            return;
+        }
+        purgeCollected();
+        softEntries.remove(key);
+        insert(key, image);
+    }
+    
+    /**
+     * 清空缓存（统计计数保留）
+     */
+    public synchronized void clear() {
+        entries.clear();
+        softEntries.clear();
+        currentBytes = 0;
+    }
+    
+    public long getHitCount() {
+        return hits.get();
+    }
+    
+    public long getSoftHitCount() {
+        return softHits.get();
+    }
+    
+    public long getMissCount() {
+        return misses.get();
+    }
+    
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+    
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+    
+    public synchronized int size() {
+        return entries.size();
+    }
+    
+    private void insert(String key, BufferedImage image) {
+        BufferedImage previous = entries.put(key, image);
+        if (previous != null) {
+            currentBytes -= sizeOf(previous);
+        }
+        currentBytes += sizeOf(image);
+        
+        Iterator<Map.Entry<String, BufferedImage>> iterator = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, BufferedImage> eldest = iterator.next();
+            if (eldest.getKey().equals(key)) {
+                continue;
+            }
+            iterator.remove();
+            currentBytes -= sizeOf(eldest.getValue());
+            evictions.incrementAndGet();
+            if (softSpillover) {
+                softEntries.put(eldest.getKey(), new SoftEntry(eldest.getKey(), eldest.getValue(), softQueue));
+            }
+        }
+    }
+    
+    /**
+     * 移除已被GC回收的软引用条目
+     */
+    private void purgeCollected() {
+        SoftEntry collected;
+        while ((collected = (SoftEntry) softQueue.poll()) != null) {
+            softEntries.remove(collected.key, collected);
+        }
+    }
+    
+    /**
+     * 图片像素数据占用的字节数
+     */
+    public static long sizeOf(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+    
+    @Override
+    public synchronized String toString() {
+        return "DecodedImageCache{" +
+                "entries=" + entries.size() +
+                ", bytes=" + currentBytes +
+                ", maxBytes=" + maxBytes +
+                ", softEntries=" + softEntries.size() +
+                ", hits=" + hits.get() +
+                ", softHits=" + softHits.get() +
+                ", misses=" + misses.get() +
+                ", evictions=" + evictions.get() +
+                '}';
+    }
+}
@@ -0,0 +1,171 @@
+package com.watermark.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.watermark.dto.ExportItemResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 导出报告写入器
+ * 逐张图片的处理结果以NDJSON格式（每行一个JSON对象）写入报告文件。调用方只把结果放入内存队列，
+ * 由后台线程批量序列化并写入，队列空闲时刷新到磁盘，导出过程中即可读取已完成的部分。
+ * 队列已满（磁盘明显慢于导出）时write阻塞，避免积压的结果占满内存
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class ExportReportWriter implements AutoCloseable {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ExportReportWriter.class);
+    
+    private static final int QUEUE_CAPACITY = 16384;   // 等待写入的结果数上限
+    private static final int BUFFER_SIZE = 64 * 1024;  // 文件写入缓冲
+    private static final long IDLE_FLUSH_MILLIS = 500; // 没有新结果时刷新的间隔
+    
+    // 队列结束标记
+    private static final ExportItemResult END = new ExportItemResult();
+    
+    private final File reportFile;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BlockingQueue<ExportItemResult> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    private final OutputStream out;
+    private final Thread writerThread;
+    private volatile IOException failure;
+    private boolean closed;
+    
+    /**
+     * 创建报告文件并启动写入线程，文件已存在时覆盖
+     */
+    public ExportReportWriter(File reportFile) throws IOException {
+        this.reportFile = reportFile.getAbsoluteFile();
+        File parentDir = this.reportFile.getParentFile();
+        if (parentDir != null && !parentDir.exists()) {
+            parentDir.mkdirs();
+        }
+        this.out = new BufferedOutputStream(new FileOutputStream(this.reportFile), BUFFER_SIZE);
+        this.writerThread = new Thread(this::drain, "export-report");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+    
+    /**
+     * 获取输出目录旁的默认报告文件：与输出目录同级的 目录名.report-yyyyMMdd-HHmmss.ndjson，
+     * 输出目录没有上级目录时放在输出目录中
+     * 
+     * @param tag 附加在时间之后的标识（如任务ID），可为null
+     */
+    public static File defaultReportFile(String outputDirectory, String tag) {
+        File outputDir = new File(outputDirectory).getAbsoluteFile();
+        String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        String name = (outputDir.getName().isEmpty() ? "export" : outputDir.getName())
+                + ".report-" + timestamp + (tag != null ? "-" + tag : "") + ".ndjson";
+        File parentDir = outputDir.getParentFile();
+        return new File(parentDir != null ? parentDir : outputDir, name);
+    }
+    
+    public File getReportFile() {
+        return reportFile;
+    }
+    
+    /**
+     * 加入一条结果，写入线程已失败时丢弃
+     */
+    public void write(ExportItemResult item) {
+        if (failure != null) {
+            return;
+        }
+        try {
+            if (!queue.offer(item)) {
+                queue.put(item);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * 写完已加入的结果后关闭文件
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            // 写入线程已因失败退出时不再等待队列空间
+            while (writerThread.isAlive() && !queue.offer(END, 100, TimeUnit.MILLISECONDS)) {
+                // 等待写入线程取走结果
+            }
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            logger.warn("导出报告写入不完整: {}, {}", reportFile, failure.getMessage());
+        } else {
+            logger.info("导出报告已写入: {}", reportFile);
+        }
+    }
+    
+    /**
+     * 写入线程：每次取出队列中已有的全部结果一起写入，空闲时刷新
+     */
+    private void drain() {
+        List<ExportItemResult> batch = new ArrayList<>();
+        try {
+            boolean ended = false;
+            while (!ended) {
+                ExportItemResult first = queue.poll(IDLE_FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    out.flush();
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch);
+                for (ExportItemResult item : batch) {
+                    if (item == END) {
+                        ended = true;
+                        break;
+                    }
+                    out.write(objectMapper.writeValueAsBytes(item));
+                    out.write('\n');
+                }
+                batch.clear();
+                if (queue.isEmpty()) {
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+            logger.error("写入导出报告失败: {}", reportFile, e);
+            // 丢弃剩余结果，使write和close不会因队列已满阻塞
+            queue.clear();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                out.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+    }
+}
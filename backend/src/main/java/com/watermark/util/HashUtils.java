@@ -0,0 +1,120 @@
+package com.watermark.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 哈希工具类
+ * 提供字符串和文件内容的摘要计算
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class HashUtils {
+    
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    // 超过该大小的文件使用内存映射读取
+    private static final long MMAP_THRESHOLD = 4L * 1024 * 1024;
+    // 每次映射的窗口大小，避免一次映射整个大文件占用过多地址空间
+    private static final long MMAP_WINDOW = 64L * 1024 * 1024;
+    
+    private HashUtils() {
+        // 工具类，禁止实例化
+    }
+    
+    /**
+     * 计算字符串的SHA-256摘要（十六进制）
+     */
+    public static String sha256Hex(String text) {
+        MessageDigest digest = newSha256();
+        return toHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+    
+    /**
+     * 计算已读入内存的文件内容的SHA-256摘要（十六进制），与sha256Hex(File)的结果一致
+     */
+    public static String sha256Hex(byte[] data) {
+        return toHex(newSha256().digest(data));
+    }
+    
+    /**
+     * 流式计算文件内容的SHA-256摘要（十六进制）
+     * 小文件使用缓冲流读取，大文件按窗口内存映射读取
+     */
+    public static String sha256Hex(File file) throws IOException {
+        MessageDigest digest = newSha256();
+        
+        if (file.length() >= MMAP_THRESHOLD) {
+            digestMapped(file, digest);
+        } else {
+            digestStream(file, digest);
+        }
+        
+        return toHex(digest.digest());
+    }
+    
+    /**
+     * 通过缓冲流更新摘要
+     */
+    private static void digestStream(File file, MessageDigest digest) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+    }
+    
+    /**
+     * 通过内存映射窗口更新摘要
+     */
+    private static void digestMapped(File file, MessageDigest digest) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long length = Math.min(MMAP_WINDOW, size - position);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                digest.update(buffer);
+                position += length;
+            }
+        }
+    }
+    
+    /**
+     * 字节数组转十六进制字符串
+     */
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0x0F];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0x0F];
+        }
+        return new String(chars);
+    }
+    
+    /**
+     * 创建SHA-256摘要实例
+     */
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.watermark.util;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * 图片头信息
+ * 只读取文件头获取尺寸和透明通道信息，不解码像素数据，适用于任意大小的图片
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public final class ImageHeader {
+    
+    private final int width;
+    private final int height;
+    private final boolean hasAlpha;
+    private final String formatName;
+    
+    private ImageHeader(int width, int height, boolean hasAlpha, String formatName) {
+        this.width = width;
+        this.height = height;
+        this.hasAlpha = hasAlpha;
+        this.formatName = formatName;
+    }
+    
+    /**
+     * 读取图片头信息
+     * 
+     * @return 图片头信息，没有可用的解码器时返回null
+     */
+    public static ImageHeader read(File file) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            return input == null ? null : read(input);
+        }
+    }
+    
+    /**
+     * 从已读入内存的文件内容读取图片头信息
+     * 
+     * @return 图片头信息，没有可用的解码器时返回null
+     */
+    public static ImageHeader read(byte[] data) throws IOException {
+        try (ImageInputStream input = new MemoryCacheImageInputStream(new ByteArrayInputStream(data))) {
+            return read(input);
+        }
+    }
+    
+    private static ImageHeader read(ImageInputStream input) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            return null;
+        }
+        
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(input, true, true);
+            return new ImageHeader(reader.getWidth(0), reader.getHeight(0),
+                                   hasAlpha(reader), reader.getFormatName());
+        } finally {
+            reader.dispose();
+        }
+    }
+    
+    /**
+     * 根据解码器提供的首选图片类型判断是否带透明通道
+     */
+    public static boolean hasAlpha(ImageReader reader) throws IOException {
+        Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+        return types != null && types.hasNext() && types.next().getColorModel().hasAlpha();
+    }
+    
+    public int getWidth() {
+        return width;
+    }
+    
+    public int getHeight() {
+        return height;
+    }
+    
+    /**
+     * 像素总数
+     */
+    public long getPixelCount() {
+        return (long) width * height;
+    }
+    
+    public boolean hasAlpha() {
+        return hasAlpha;
+    }
+    
+    public String getFormatName() {
+        return formatName;
+    }
+    
+    @Override
+    public String toString() {
+        return "ImageHeader{" +
+                "width=" + width +
+                ", height=" + height +
+                ", hasAlpha=" + hasAlpha +
+                ", formatName='" + formatName + '\'' +
+                '}';
+    }
+}
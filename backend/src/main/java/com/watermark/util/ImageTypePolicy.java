@@ -0,0 +1,192 @@
+package com.watermark.util;
+
+import javax.imageio.ImageTypeSpecifier;
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.SampleModel;
+
+/**
+ * 输出图片类型策略
+ * 决定水印绘制所用画布的像素类型：只有源图片带透明通道且输出格式支持透明时才保留alpha，
+ * 否则使用不带alpha的三字节BGR画布（与JPEG解码结果、JPEG编码器的原生格式一致），
+ * 源图片可被修改且类型合适时直接在源图片上绘制，省去一次整帧复制
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public final class ImageTypePolicy {
+    
+    /**
+     * 保留透明通道，不修改源图片（预览等源图片可能被复用的场景）
+     */
+    public static final ImageTypePolicy PRESERVE_ALPHA = new ImageTypePolicy(true, false);
+    
+    /**
+     * 去除透明通道，不修改源图片
+     */
+    public static final ImageTypePolicy OPAQUE = new ImageTypePolicy(false, false);
+    
+    private static final Color FLATTEN_BACKGROUND = Color.WHITE; // 去除透明通道时的背景色
+    private static final int[] RGB_BAND_OFFSETS = {0, 1, 2};
+    private static final int[] RGBA_BAND_OFFSETS = {0, 1, 2, 3};
+    
+    private final boolean alphaSupported;
+    private final boolean sourceReusable;
+    
+    private ImageTypePolicy(boolean alphaSupported, boolean sourceReusable) {
+        this.alphaSupported = alphaSupported;
+        this.sourceReusable = sourceReusable;
+    }
+    
+    /**
+     * 根据输出格式创建策略
+     * 
+     * @param format 输出格式（jpg、png、bmp、tiff）
+     * @param sourceReusable 源图片是否为本次处理独占、可以直接在其上绘制
+     */
+    public static ImageTypePolicy forFormat(String format, boolean sourceReusable) {
+        return new ImageTypePolicy(supportsAlpha(format), sourceReusable);
+    }
+    
+    /**
+     * 判断输出格式是否支持透明通道
+     */
+    public static boolean supportsAlpha(String format) {
+        if (format == null) {
+            return false;
+        }
+        switch (format.toLowerCase()) {
+            case "png":
+            case "tiff":
+            case "tif":
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    public boolean isAlphaSupported() {
+        return alphaSupported;
+    }
+    
+    public boolean isSourceReusable() {
+        return sourceReusable;
+    }
+    
+    /**
+     * 判断对该源图片是否保留透明通道
+     */
+    public boolean keepsAlpha(BufferedImage source) {
+        return alphaSupported && source.getColorModel().hasAlpha();
+    }
+    
+    /**
+     * 获取用于绘制水印的画布
+     * 源图片可复用且类型满足要求时直接返回源图片，否则创建新画布并绘制源图片；
+     * 去除透明通道时先以白色填充背景
+     */
+    public BufferedImage createCanvas(BufferedImage source) {
+        boolean keepAlpha = keepsAlpha(source);
+        if (sourceReusable && isCanvasType(source.getType(), keepAlpha)) {
+            return source;
+        }
+        
+        BufferedImage canvas = new BufferedImage(source.getWidth(), source.getHeight(),
+                keepAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_3BYTE_BGR);
+        return drawCanvas(source, canvas, keepAlpha);
+    }
+    
+    /**
+     * 获取指定像素类型的画布（分块处理时各条带需使用一致的类型）
+     * 源图片可复用且像素布局一致时直接返回源图片
+     */
+    public BufferedImage createCanvas(BufferedImage source, ImageTypeSpecifier canvasType) {
+        if (sourceReusable && hasLayout(source, canvasType)) {
+            return source;
+        }
+        return drawCanvas(source, canvasType.createBufferedImage(source.getWidth(), source.getHeight()),
+                          keepsAlpha(source));
+    }
+    
+    /**
+     * 获取分块处理时条带画布的像素类型
+     * 按R、G、B(、A)顺序交错存储的8位字节，与PNG扫描行的字节顺序一致，TIFF写入器也按该顺序逐块写出
+     */
+    public ImageTypeSpecifier getStripType(boolean sourceHasAlpha) {
+        boolean keepAlpha = alphaSupported && sourceHasAlpha;
+        return ImageTypeSpecifier.createInterleaved(ColorSpace.getInstance(ColorSpace.CS_sRGB),
+                keepAlpha ? RGBA_BAND_OFFSETS : RGB_BAND_OFFSETS, DataBuffer.TYPE_BYTE, keepAlpha, false);
+    }
+    
+    /**
+     * 判断图片的像素布局是否与指定类型一致
+     */
+    private static boolean hasLayout(BufferedImage image, ImageTypeSpecifier type) {
+        SampleModel sampleModel = image.getSampleModel();
+        return type.getColorModel().equals(image.getColorModel())
+                && type.getSampleModel(sampleModel.getWidth(), sampleModel.getHeight()).equals(sampleModel);
+    }
+    
+    /**
+     * 在画布上绘制源图片
+     */
+    private static BufferedImage drawCanvas(BufferedImage source, BufferedImage canvas, boolean keepAlpha) {
+        Graphics2D g2d = canvas.createGraphics();
+        try {
+            if (keepAlpha) {
+                g2d.setComposite(AlphaComposite.Src);
+                g2d.drawImage(source, 0, 0, null);
+            } else {
+                g2d.drawImage(source, 0, 0, FLATTEN_BACKGROUND, null);
+            }
+        } finally {
+            g2d.dispose();
+        }
+        return canvas;
+    }
+    
+    /**
+     * 使图片符合本策略的透明通道要求（不在其上绘制时使用）
+     * 图片本身已满足要求时原样返回，不做复制
+     */
+    public BufferedImage conform(BufferedImage image) {
+        if (keepsAlpha(image) == image.getColorModel().hasAlpha()) {
+            return image;
+        }
+        return createCanvas(image);
+    }
+    
+    /**
+     * 将图片转换为不带透明通道的图片，已是不透明图片时原样返回
+     */
+    public static BufferedImage toOpaque(BufferedImage image) {
+        if (!image.getColorModel().hasAlpha()) {
+            return image;
+        }
+        return OPAQUE.createCanvas(image);
+    }
+    
+    /**
+     * 判断图片类型能否直接作为画布
+     */
+    private static boolean isCanvasType(int type, boolean keepAlpha) {
+        if (keepAlpha) {
+            return type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_4BYTE_ABGR;
+        }
+        return type == BufferedImage.TYPE_3BYTE_BGR
+                || type == BufferedImage.TYPE_INT_RGB
+                || type == BufferedImage.TYPE_INT_BGR;
+    }
+    
+    @Override
+    public String toString() {
+        return "ImageTypePolicy{" +
+                "alphaSupported=" + alphaSupported +
+                ", sourceReusable=" + sourceReusable +
+                '}';
+    }
+}
@@ -0,0 +1,227 @@
+package com.watermark.util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+/**
+ * 清单文件读取器
+ * 逐行读取，不把整个清单载入内存，支持两种格式：
+ * 
+ *   纯文本：每行一个源图片路径，空行和 # 开头的行忽略
+ *   CSV（扩展名为.csv）：首行为列名，path列为源图片路径，其余列为该行的水印配置覆盖项，
+ *        如 text、opacity、position，outputConfig.fileSuffix 形式的列名覆盖嵌套字段；空单元格不覆盖
+ * 
+ * 相对路径按当前工作目录解析为绝对路径，"-" 表示从标准输入读取纯文本清单
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class ManifestReader implements Iterator<ManifestReader.Entry>, Closeable {
+    
+    private static final String PATH_COLUMN = "path";
+    
+    private final BufferedReader reader;
+    private final boolean closeReader;
+    private final boolean csv;
+    private final String name;
+    private List<String> columns;
+    private int pathColumn = -1;
+    private long lineNumber;
+    private Entry next;
+    
+    /**
+     * 清单中的一项
+     */
+    public static final class Entry {
+        private final String path;
+        private final Map<String, String> overrides;
+        
+        Entry(String path, Map<String, String> overrides) {
+            this.path = path;
+            this.overrides = overrides;
+        }
+        
+        public String getPath() {
+            return path;
+        }
+        
+        /**
+         * 该行的配置覆盖项（按列名排序，没有时为空）
+         */
+        public Map<String, String> getOverrides() {
+            return overrides;
+        }
+    }
+    
+    private ManifestReader(BufferedReader reader, boolean closeReader, boolean csv, String name) {
+        this.reader = reader;
+        this.closeReader = closeReader;
+        this.csv = csv;
+        this.name = name;
+    }
+    
+    /**
+     * 打开清单文件，"-" 表示标准输入
+     */
+    public static ManifestReader open(String manifest) throws IOException {
+        if ("-".equals(manifest)) {
+            return new ManifestReader(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)),
+                                      false, false, "标准输入");
+        }
+        File file = new File(manifest);
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("清单文件不存在: " + manifest);
+        }
+        boolean csv = file.getName().toLowerCase(Locale.ROOT).endsWith(".csv");
+        return new ManifestReader(Files.newBufferedReader(Paths.get(manifest), StandardCharsets.UTF_8),
+                                  true, csv, file.getPath());
+    }
+    
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = readEntry();
+            } catch (IOException e) {
+                throw new UncheckedIOException("读取清单失败: " + name, e);
+            }
+        }
+        return next != null;
+    }
+    
+    @Override
+    public Entry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Entry entry = next;
+        next = null;
+        return entry;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if (closeReader) {
+            reader.close();
+        }
+    }
+    
+    private Entry readEntry() throws IOException {
+        if (!csv) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    return new Entry(new File(line).getAbsolutePath(), Collections.emptyMap());
+                }
+            }
+            return null;
+        }
+        
+        if (columns == null) {
+            readHeader();
+        }
+        List<String> fields;
+        while ((fields = readRecord()) != null) {
+            String path = pathColumn < fields.size() ? fields.get(pathColumn).trim() : "";
+            if (path.isEmpty()) {
+                continue;
+            }
+            Map<String, String> overrides = new TreeMap<>();
+            for (int i = 0; i < columns.size() && i < fields.size(); i++) {
+                if (i != pathColumn && !columns.get(i).isEmpty() && !fields.get(i).isEmpty()) {
+                    overrides.put(columns.get(i), fields.get(i));
+                }
+            }
+            return new Entry(new File(path).getAbsolutePath(),
+                             overrides.isEmpty() ? Collections.emptyMap() : overrides);
+        }
+        return null;
+    }
+    
+    private void readHeader() throws IOException {
+        List<String> header = readRecord();
+        if (header == null) {
+            columns = Collections.emptyList();
+            return;
+        }
+        columns = new ArrayList<>(header.size());
+        for (String column : header) {
+            columns.add(column.trim().replace("\uFEFF", ""));
+        }
+        pathColumn = columns.indexOf(PATH_COLUMN);
+        if (pathColumn < 0) {
+            throw new IllegalArgumentException("CSV清单缺少path列: " + name);
+        }
+    }
+    
+    /**
+     * 读取一条CSV记录，引号内的字段可以包含逗号、换行和 "" 转义的引号
+     */
+    private List<String> readRecord() throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            return null;
+        }
+        lineNumber++;
+        
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int i = 0;
+        while (true) {
+            if (i >= line.length()) {
+                if (!quoted) {
+                    break;
+                }
+                // 引号内的换行
+                line = reader.readLine();
+                if (line == null) {
+                    throw new IllegalArgumentException("CSV清单第 " + lineNumber + " 行的引号未闭合: " + name);
+                }
+                lineNumber++;
+                field.append('\n');
+                i = 0;
+                continue;
+            }
+            char c = line.charAt(i++);
+            if (quoted) {
+                if (c == '"') {
+                    if (i < line.length() && line.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,175 @@
+package com.watermark.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * 输出路径规划器
+ * 每个目标目录只列出一次文件名，之后在内存中判断重名并为冲突的输出生成 name_(n).ext 形式的新名称，
+ * 不再逐个调用exists()试探。已预留的名称对同一规划器的所有调用方可见，并发预留同一目录时互斥，
+ * 同一批次中重名的输出在规划时即可发现
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class OutputPathPlanner {
+    
+    private static final Logger logger = LoggerFactory.getLogger(OutputPathPlanner.class);
+    
+    // 与java.io.File的路径比较规则一致：Windows上文件名不区分大小写
+    private static final boolean CASE_INSENSITIVE = new File("a").equals(new File("A"));
+    
+    private final long maxIdleMillis;
+    private final Map<String, DirectoryState> directories = new ConcurrentHashMap<>();
+    
+    /**
+     * 目录中已存在和已预留的文件名
+     */
+    private static final class DirectoryState {
+        final Set<String> existing;
+        final Set<String> reserved = new HashSet<>();
+        final Map<String, Integer> nextIndex = new HashMap<>(); // 去掉序号的文件名 -> 下一个尝试的序号
+        volatile long lastUsed;
+        
+        DirectoryState(Set<String> existing) {
+            this.existing = existing;
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
+    
+    /**
+     * 创建单批次使用的规划器，目录列表在规划器的生命周期内不会重新读取
+     */
+    public OutputPathPlanner() {
+        this(0);
+    }
+    
+    /**
+     * 创建长期使用的规划器
+     * 目录空闲超过maxIdleMillis后重新列出；列出之后目录可能被外部修改，因此选定的路径会再检查一次是否存在
+     * 
+     * @param maxIdleMillis 目录列表的最长空闲时间，0表示不过期且不再检查
+     */
+    public OutputPathPlanner(long maxIdleMillis) {
+        this.maxIdleMillis = maxIdleMillis;
+    }
+    
+    /**
+     * 预留指定路径，不检查磁盘上是否已有同名文件
+     * 
+     * @return 是否预留成功；该路径已被本规划器预留（批次内重名）时返回false
+     */
+    public boolean claim(String path) {
+        File file = new File(path).getAbsoluteFile();
+        DirectoryState state = directory(file.getParentFile());
+        synchronized (state) {
+            return state.reserved.add(key(file.getName()));
+        }
+    }
+    
+    /**
+     * 预留一个不与已有文件和已预留路径冲突的路径
+     * 原路径可用时原样返回，否则依次尝试 name_(1).ext、name_(2).ext ...
+     */
+    public String reserveUnique(String path) {
+        return reserveUnique(path, file -> false);
+    }
+    
+    /**
+     * 预留一个不与已预留路径冲突的路径，磁盘上已有的文件只在reusable判断为可覆盖时使用
+     * 
+     * @param reusable 判断磁盘上已有的文件能否被覆盖（例如上次导出时同一源图片的输出）
+     */
+    public String reserveUnique(String path, Predicate<File> reusable) {
+        File file = new File(path).getAbsoluteFile();
+        File parentDir = file.getParentFile();
+        String fileName = file.getName();
+        int dotIndex = fileName.lastIndexOf('.');
+        String name = dotIndex > 0 ? fileName.substring(0, dotIndex) : fileName;
+        String extension = dotIndex > 0 ? fileName.substring(dotIndex) : "";
+        
+        DirectoryState state = directory(parentDir);
+        synchronized (state) {
+            if (tryReserve(state, parentDir, fileName, reusable)) {
+                return new File(parentDir, fileName).getPath();
+            }
+            
+            // 序号小于nextIndex的名称都已预留，从该位置继续查找
+            String baseKey = key(fileName);
+            int index = state.nextIndex.getOrDefault(baseKey, 1);
+            while (true) {
+                String candidate = name + "_(" + index + ")" + extension;
+                index++;
+                if (tryReserve(state, parentDir, candidate, reusable)) {
+                    state.nextIndex.put(baseKey, index);
+                    return new File(parentDir, candidate).getPath();
+                }
+            }
+        }
+    }
+    
+    /**
+     * 名称未被预留且磁盘上不存在（或可覆盖）时预留该名称
+     */
+    private boolean tryReserve(DirectoryState state, File parentDir, String fileName, Predicate<File> reusable) {
+        String key = key(fileName);
+        if (state.reserved.contains(key)) {
+            return false;
+        }
+        
+        File file = new File(parentDir, fileName);
+        boolean exists = state.existing.contains(key);
+        if (!exists && maxIdleMillis > 0 && file.exists()) {
+            // 目录列出之后由外部新建的文件
+            state.existing.add(key);
+            exists = true;
+        }
+        if (exists && !reusable.test(file)) {
+            return false;
+        }
+        
+        state.reserved.add(key);
+        return true;
+    }
+    
+    /**
+     * 获取目录状态，首次使用或空闲过期时列出目录
+     */
+    private DirectoryState directory(File dir) {
+        String dirKey = key(dir.getPath());
+        long now = System.currentTimeMillis();
+        DirectoryState state = directories.compute(dirKey, (k, current) -> {
+            if (current != null && (maxIdleMillis <= 0 || now - current.lastUsed <= maxIdleMillis)) {
+                return current;
+            }
+            return new DirectoryState(listNames(dir));
+        });
+        state.lastUsed = now;
+        return state;
+    }
+    
+    private static Set<String> listNames(File dir) {
+        String[] names = dir.list();
+        Set<String> keys = new HashSet<>(names != null ? names.length * 2 : 16);
+        if (names != null) {
+            for (String name : names) {
+                keys.add(key(name));
+            }
+        }
+        logger.debug("列出输出目录: {} ({} 个文件)", dir, keys.size());
+        return keys;
+    }
+    
+    private static String key(String name) {
+        return CASE_INSENSITIVE ? name.toLowerCase(Locale.ROOT) : name;
+    }
+}
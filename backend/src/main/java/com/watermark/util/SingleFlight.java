@@ -0,0 +1,185 @@
+package com.watermark.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+/**
+ * 合并相同请求的加载器
+ * 同一个键同时只有一次计算在进行，期间到达的请求等待这次计算并共享结果；计算完成后不保留结果，
+ * 之后的请求重新计算。所有等待方都取消或被中断时中断计算线程并丢弃这次计算
+ * 
+ * 计算结果可变时通过shareFunction为第一个之外的等待方各生成一份副本，避免多个调用方修改同一对象
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class SingleFlight<K, V> {
+    
+    private static final Logger logger = LoggerFactory.getLogger(SingleFlight.class);
+    
+    private final String name;
+    private final UnaryOperator<V> shareFunction;
+    private final ConcurrentHashMap<K, Flight> flights = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+    
+    /**
+     * 进行中的一次计算
+     */
+    private final class Flight {
+        final K key;
+        final CompletableFuture<V> result = new CompletableFuture<>();
+        final AtomicBoolean delivered = new AtomicBoolean();
+        Future<?> task;
+        int waiters;
+        volatile boolean abandoned;
+        
+        Flight(K key) {
+            this.key = key;
+        }
+    }
+    
+    /**
+     * 创建结果不可变（可直接共享）的加载器
+     * 
+     * @param name 名称，用于计算线程名和日志
+     */
+    public SingleFlight(String name) {
+        this(name, UnaryOperator.identity());
+    }
+    
+    /**
+     * @param name 名称，用于计算线程名和日志
+     * @param shareFunction 为第一个之外的等待方生成结果副本
+     */
+    public SingleFlight(String name, UnaryOperator<V> shareFunction) {
+        this.name = name;
+        this.shareFunction = shareFunction;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * 加载并等待结果
+     * 等待时被中断则放弃本次请求，其他等待方也都放弃时取消计算
+     * 
+     * @throws Exception 计算抛出的异常
+     */
+    public V load(K key, Callable<V> loader) throws Exception {
+        CompletableFuture<V> future = submit(key, loader);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * 提交加载请求
+     * 返回的Future只属于本次请求，取消它表示本请求不再需要结果
+     */
+    public CompletableFuture<V> submit(K key, Callable<V> loader) {
+        while (true) {
+            Flight flight = flights.computeIfAbsent(key, Flight::new);
+            synchronized (flight) {
+                if (flight.abandoned) {
+                    // 计算刚被取消，等待其移除后重新发起
+                    flights.remove(key, flight);
+                    continue;
+                }
+                flight.waiters++;
+                if (flight.task == null) {
+                    flight.task = executor.submit(() -> run(flight, loader));
+                } else {
+                    logger.debug("合并相同的{}请求: {}", name, key);
+                }
+            }
+            return join(flight);
+        }
+    }
+    
+    /**
+     * 进行中的计算个数
+     */
+    public int getInFlightCount() {
+        return flights.size();
+    }
+    
+    private CompletableFuture<V> join(Flight flight) {
+        CompletableFuture<V> waiter = new CompletableFuture<>();
+        flight.result.whenComplete((value, error) -> {
+            if (error != null) {
+                waiter.completeExceptionally(unwrap(error));
+            } else if (flight.delivered.compareAndSet(false, true)) {
+                waiter.complete(value);
+            } else {
+                try {
+                    waiter.complete(shareFunction.apply(value));
+                } catch (RuntimeException e) {
+                    waiter.completeExceptionally(e);
+                }
+            }
+        });
+        waiter.whenComplete((value, error) -> {
+            if (waiter.isCancelled()) {
+                leave(flight);
+            }
+        });
+        return waiter;
+    }
+    
+    /**
+     * 一个等待方放弃，最后一个等待方放弃时取消计算
+     */
+    private void leave(Flight flight) {
+        synchronized (flight) {
+            if (--flight.waiters > 0 || flight.result.isDone()) {
+                return;
+            }
+            flight.abandoned = true;
+        }
+        flights.remove(flight.key, flight);
+        flight.task.cancel(true);
+        flight.result.cancel(false);
+        logger.debug("所有请求均已放弃，取消{}: {}", name, flight.key);
+    }
+    
+    private void run(Flight flight, Callable<V> loader) {
+        try {
+            if (!flight.abandoned) {
+                flight.result.complete(loader.call());
+            }
+        } catch (Throwable e) {
+            flight.result.completeExceptionally(e);
+        } finally {
+            flights.remove(flight.key, flight);
+        }
+    }
+    
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null
+                ? error.getCause() : error;
+    }
+}
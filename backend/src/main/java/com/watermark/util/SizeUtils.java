@@ -0,0 +1,46 @@
+package com.watermark.util;
+
+import java.util.Locale;
+
+/**
+ * 大小参数工具类
+ * 解析命令行和服务参数中 512m、2g 形式的字节数
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class SizeUtils {
+    
+    private SizeUtils() {
+        // 工具类，禁止实例化
+    }
+    
+    /**
+     * 解析 512m、2g 形式的大小（后缀k/m/g按1024进位，无后缀为字节数）
+     * 
+     * @throws IllegalArgumentException 格式无效或大小不大于0
+     */
+    public static long parseSize(String text) {
+        String value = text.trim().toLowerCase(Locale.ROOT);
+        long multiplier = 1;
+        if (value.endsWith("k")) {
+            multiplier = 1024L;
+        } else if (value.endsWith("m")) {
+            multiplier = 1024L * 1024;
+        } else if (value.endsWith("g")) {
+            multiplier = 1024L * 1024 * 1024;
+        }
+        if (multiplier > 1) {
+            value = value.substring(0, value.length() - 1);
+        }
+        try {
+            long size = Long.parseLong(value) * multiplier;
+            if (size <= 0) {
+                throw new IllegalArgumentException("大小必须大于0: " + text);
+            }
+            return size;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("无效的大小: " + text);
+        }
+    }
+}
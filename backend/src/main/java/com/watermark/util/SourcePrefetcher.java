@@ -0,0 +1,195 @@
+package com.watermark.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * 源文件预读器
+ * 后台线程按顺序提前读取后续若干个源文件的内容，使磁盘读取与解码、编码并行进行。
+ * 预读的文件个数和缓冲字节数都有上限，超过字节上限的单个文件不预读，由调用方直接从文件读取
+ * 
+ * 调用方必须按构造时的顺序调用take，跳过的文件会被丢弃
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class SourcePrefetcher implements AutoCloseable {
+    
+    private static final Logger logger = LoggerFactory.getLogger(SourcePrefetcher.class);
+    
+    // 超过该大小的文件使用内存映射读取
+    private static final long MMAP_THRESHOLD = 4L * 1024 * 1024;
+    // 小文件每次读取的字节数，避免FileChannel为大块堆内缓冲分配同样大小的临时直接缓冲
+    private static final int READ_CHUNK = 1024 * 1024;
+    
+    private final List<String> paths;
+    private final int maxFiles;
+    private final long maxBytes;
+    private final Deque<Entry> ready = new ArrayDeque<>();
+    private final Object lock = new Object();
+    private final Thread readerThread;
+    
+    private long bufferedBytes;
+    private boolean finished;
+    private boolean closed;
+    
+    /**
+     * 已读取（或放弃读取）的文件
+     */
+    private static final class Entry {
+        final String path;
+        final byte[] data;
+        final long reservedBytes;
+        
+        Entry(String path, byte[] data, long reservedBytes) {
+            this.path = path;
+            this.data = data;
+            this.reservedBytes = reservedBytes;
+        }
+    }
+    
+    /**
+     * 创建预读器并立即开始读取
+     * 
+     * @param paths 源文件路径，按处理顺序排列
+     * @param maxFiles 最多预读的文件个数
+     * @param maxBytes 预读缓冲的字节上限
+     */
+    public SourcePrefetcher(List<String> paths, int maxFiles, long maxBytes) {
+        this.paths = new ArrayList<>(paths);
+        this.maxFiles = Math.max(1, maxFiles);
+        this.maxBytes = Math.max(1, maxBytes);
+        this.readerThread = new Thread(this::readLoop, "source-prefetch");
+        this.readerThread.setDaemon(true);
+        this.readerThread.start();
+    }
+    
+    /**
+     * 取出指定文件的内容，尚未读完时等待
+     * 
+     * @return 文件内容；文件超过缓冲上限、读取失败或预读器已关闭时返回null
+     */
+    public byte[] take(String path) throws InterruptedException {
+        synchronized (lock) {
+            while (true) {
+                while (ready.isEmpty()) {
+                    if (finished || closed) {
+                        return null;
+                    }
+                    lock.wait();
+                }
+                
+                Entry entry = ready.poll();
+                bufferedBytes -= entry.reservedBytes;
+                lock.notifyAll();
+                if (entry.path.equals(path)) {
+                    return entry.data;
+                }
+                logger.debug("丢弃未使用的预读文件: {}", entry.path);
+            }
+        }
+    }
+    
+    /**
+     * 停止预读并释放缓冲
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            ready.clear();
+            bufferedBytes = 0;
+            lock.notifyAll();
+        }
+        readerThread.interrupt();
+    }
+    
+    /**
+     * 读取线程主循环：在缓冲个数和字节数允许时按顺序读取下一个文件
+     */
+    private void readLoop() {
+        try {
+            for (String path : paths) {
+                File file = new File(path);
+                long size = file.length();
+                boolean eligible = size > 0 && size <= maxBytes && size <= Integer.MAX_VALUE;
+                long reserved = eligible ? size : 0;
+                
+                synchronized (lock) {
+                    while (!closed && (ready.size() >= maxFiles
+                            || (bufferedBytes > 0 && bufferedBytes + reserved > maxBytes))) {
+                        lock.wait();
+                    }
+                    if (closed) {
+                        return;
+                    }
+                    bufferedBytes += reserved;
+                }
+                
+                byte[] data = null;
+                if (eligible) {
+                    try {
+                        data = read(file);
+                    } catch (IOException e) {
+                        logger.debug("预读文件失败，改为直接读取: {} ({})", path, e.getMessage());
+                    }
+                }
+                
+                synchronized (lock) {
+                    if (closed) {
+                        return;
+                    }
+                    ready.add(new Entry(path, data, reserved));
+                    lock.notifyAll();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (lock) {
+                finished = true;
+                lock.notifyAll();
+            }
+        }
+    }
+    
+    /**
+     * 读取整个文件，大文件通过内存映射读取
+     */
+    private static byte[] read(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("文件过大: " + size);
+            }
+            byte[] data = new byte[(int) size];
+            
+            if (size >= MMAP_THRESHOLD) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                buffer.get(data);
+            } else {
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.position() < data.length) {
+                    buffer.limit(Math.min(buffer.position() + READ_CHUNK, data.length));
+                    if (channel.read(buffer) < 0) {
+                        throw new IOException("文件在读取过程中被截断");
+                    }
+                }
+            }
+            return data;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.watermark.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 分片任务的共享目录
+ * 多个进程（可以在共享同一文件系统的不同机器上）通过原子重命名领取清单分片，目录结构：
+ * 
+ *   job.json                   导出配置
+ *   pending/chunk-000000.txt   待处理的分片（每行一个源图片路径）
+ *   claimed/chunk-000000.txt@worker  已领取的分片，文件修改时间即租约的最后续期时间
+ *   done/chunk-000000.txt      已完成的分片
+ *   ledgers/worker.ndjson      每个工作进程的结果账本
+ * 
+ * 已汇总到处理历史的分片记录在协调进程数据库的spool_merged表中
+ * 
+ * 领取和回收都是同一文件系统内的原子重命名，同一分片只有一个进程能重命名成功；
+ * 租约过期（工作进程停止续期）的分片可以被任意进程改名回pending重新领取
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class SpoolDirectory {
+    
+    private static final Logger logger = LoggerFactory.getLogger(SpoolDirectory.class);
+    
+    public static final String JOB_FILE = "job.json";
+    
+    private static final String CHUNK_PREFIX = "chunk-";
+    private static final String CHUNK_SUFFIX = ".txt";
+    private static final char CLAIM_SEPARATOR = '@';
+    
+    private final Path root;
+    private final Path pendingDir;
+    private final Path claimedDir;
+    private final Path doneDir;
+    private final Path ledgerDir;
+    
+    /**
+     * 已领取的分片
+     */
+    public static final class Claim {
+        private final String chunk;
+        private final Path file;
+        
+        Claim(String chunk, Path file) {
+            this.chunk = chunk;
+            this.file = file;
+        }
+        
+        public String getChunk() {
+            return chunk;
+        }
+    }
+    
+    public SpoolDirectory(File root) {
+        this.root = root.toPath().toAbsolutePath();
+        this.pendingDir = this.root.resolve("pending");
+        this.claimedDir = this.root.resolve("claimed");
+        this.doneDir = this.root.resolve("done");
+        this.ledgerDir = this.root.resolve("ledgers");
+    }
+    
+    /**
+     * 创建任务目录：写入配置并按chunkSize把源图片列表切分为分片
+     * 分片先写到临时文件再改名，工作进程不会读到写了一半的分片
+     * 
+     * @return 分片数
+     */
+    public int create(String jobJson, List<String> imagePaths, int chunkSize) throws IOException {
+        if (Files.exists(root.resolve(JOB_FILE))) {
+            throw new IllegalArgumentException("任务目录已存在任务: " + root);
+        }
+        Files.createDirectories(pendingDir);
+        Files.createDirectories(claimedDir);
+        Files.createDirectories(doneDir);
+        Files.createDirectories(ledgerDir);
+        writeAtomically(root.resolve(JOB_FILE), Collections.singletonList(jobJson));
+        
+        int chunks = 0;
+        for (int start = 0; start < imagePaths.size(); start += chunkSize) {
+            List<String> chunk = imagePaths.subList(start, Math.min(imagePaths.size(), start + chunkSize));
+            writeAtomically(pendingDir.resolve(String.format("%s%06d%s", CHUNK_PREFIX, chunks, CHUNK_SUFFIX)), chunk);
+            chunks++;
+        }
+        logger.info("分片任务已创建: {}, {} 张图片, {} 个分片", root, imagePaths.size(), chunks);
+        return chunks;
+    }
+    
+    public String readJob() throws IOException {
+        return new String(Files.readAllBytes(root.resolve(JOB_FILE)), StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * 领取下一个待处理的分片
+     * 
+     * @return 领取的分片，没有待处理的分片时返回null
+     */
+    public Claim claimNext(String workerId) throws IOException {
+        for (String chunk : list(pendingDir)) {
+            Path target = claimedDir.resolve(chunk + CLAIM_SEPARATOR + workerId);
+            try {
+                Files.move(pendingDir.resolve(chunk), target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (NoSuchFileException e) {
+                // 被其他进程领取
+                continue;
+            }
+            // 重命名保留原修改时间，领取时立即续期
+            Claim claim = new Claim(chunk, target);
+            renew(claim);
+            return claim;
+        }
+        return null;
+    }
+    
+    public List<String> readChunk(Claim claim) throws IOException {
+        List<String> paths = new ArrayList<>();
+        for (String line : Files.readAllLines(claim.file, StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) {
+                paths.add(line.trim());
+            }
+        }
+        return paths;
+    }
+    
+    /**
+     * 续期租约
+     * 
+     * @return false表示分片已被回收
+     */
+    public boolean renew(Claim claim) {
+        return claim.file.toFile().setLastModified(System.currentTimeMillis());
+    }
+    
+    /**
+     * 标记分片已完成
+     * 
+     * @return false表示租约已过期被回收（分片可能由其他进程重新处理）
+     */
+    public boolean complete(Claim claim) throws IOException {
+        try {
+            Files.move(claim.file, doneDir.resolve(claim.chunk), StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * 把租约过期的分片改回待处理
+     * 
+     * @return 回收的分片数
+     */
+    public int reclaimExpired(long leaseMillis) throws IOException {
+        long now = System.currentTimeMillis();
+        int reclaimed = 0;
+        for (String name : list(claimedDir)) {
+            Path claimed = claimedDir.resolve(name);
+            long lastRenewed = claimed.toFile().lastModified();
+            if (lastRenewed == 0 || now - lastRenewed <= leaseMillis) {
+                continue;
+            }
+            String chunk = name.substring(0, name.indexOf(CLAIM_SEPARATOR));
+            try {
+                Files.move(claimed, pendingDir.resolve(chunk), StandardCopyOption.ATOMIC_MOVE);
+                reclaimed++;
+                logger.warn("回收租约过期的分片: {}（{} 毫秒未续期）", name, now - lastRenewed);
+            } catch (NoSuchFileException e) {
+                // 已完成或已被其他进程回收
+            }
+        }
+        return reclaimed;
+    }
+    
+    public int countPending() throws IOException {
+        return list(pendingDir).size();
+    }
+    
+    public int countClaimed() throws IOException {
+        return list(claimedDir).size();
+    }
+    
+    public int countDone() throws IOException {
+        return list(doneDir).size();
+    }
+    
+    /**
+     * 获取工作进程的结果账本文件
+     */
+    public File getLedgerFile(String workerId) {
+        return ledgerDir.resolve(workerId + ".ndjson").toFile();
+    }
+    
+    public List<File> getLedgerFiles() throws IOException {
+        List<File> files = new ArrayList<>();
+        for (String name : list(ledgerDir)) {
+            files.add(ledgerDir.resolve(name).toFile());
+        }
+        return files;
+    }
+    
+    public File getRoot() {
+        return root.toFile();
+    }
+    
+    /**
+     * 规范化工作进程ID，只保留文件名安全的字符
+     */
+    public static String sanitizeWorkerId(String workerId) {
+        return workerId.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+    
+    private static List<String> list(Path dir) throws IOException {
+        List<String> names = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return names;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (!name.startsWith(".")) {
+                    names.add(name);
+                }
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+    
+    private static void writeAtomically(Path target, List<String> lines) throws IOException {
+        Path temp = target.resolveSibling("." + target.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
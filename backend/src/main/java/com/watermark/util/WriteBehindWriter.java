@@ -0,0 +1,139 @@
+package com.watermark.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 后写队列
+ * 编码完成的数据交给后台线程写入目标目录中的临时文件，写完后原子重命名为最终文件名，
+ * 使编码线程不必等待磁盘写入，目标路径上也不会出现写了一半的文件。
+ * 等待写入的字节数有上限，超过时submit阻塞，直到后台线程写完之前的数据
+ * 
+ * @author Watermark Team
+ * @version 1.0.0
+ */
+public class WriteBehindWriter implements AutoCloseable {
+    
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindWriter.class);
+    
+    private static final String TEMP_SUFFIX = ".tmp";
+    // 每次写入的字节数，避免FileChannel为大块堆内缓冲分配同样大小的临时直接缓冲
+    private static final int WRITE_CHUNK = 1024 * 1024;
+    
+    private final long maxPendingBytes;
+    private final ExecutorService writerExecutor;
+    private final Object lock = new Object();
+    private long pendingBytes;
+    
+    /**
+     * @param maxPendingBytes 等待写入的字节上限
+     */
+    public WriteBehindWriter(long maxPendingBytes) {
+        this.maxPendingBytes = Math.max(1, maxPendingBytes);
+        this.writerExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * 提交写入，等待写入的数据超过上限时阻塞
+     * 
+     * @return 写入完成后得到目标文件，写入失败时get抛出ExecutionException
+     */
+    public Future<File> submit(File target, byte[] data) throws InterruptedException {
+        return submit(target, data, null);
+    }
+    
+    /**
+     * 提交写入，写入成功后在后台线程上执行onWritten
+     * 
+     * @param onWritten 写入完成的回调（可为null），用于记录写入完成的时间
+     */
+    public Future<File> submit(File target, byte[] data, Runnable onWritten) throws InterruptedException {
+        synchronized (lock) {
+            while (pendingBytes > 0 && pendingBytes + data.length > maxPendingBytes) {
+                lock.wait();
+            }
+            pendingBytes += data.length;
+        }
+        
+        return writerExecutor.submit(() -> {
+            try {
+                writeAtomically(target, data);
+                if (onWritten != null) {
+                    onWritten.run();
+                }
+                return target;
+            } finally {
+                synchronized (lock) {
+                    pendingBytes -= data.length;
+                    lock.notifyAll();
+                }
+            }
+        });
+    }
+    
+    /**
+     * 写完所有已提交的数据后关闭
+     */
+    @Override
+    public void close() {
+        writerExecutor.shutdown();
+        try {
+            while (!writerExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.warn("等待后写队列完成写入...");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * 写入同目录下的临时文件后重命名为目标文件
+     */
+    public static void writeAtomically(File target, byte[] data) throws IOException {
+        File parentDir = target.getAbsoluteFile().getParentFile();
+        if (parentDir != null && !parentDir.exists()) {
+            parentDir.mkdirs();
+        }
+        
+        // 临时文件以点开头并带随机后缀，不会与其他输出或并发写入冲突；按默认权限创建，重命名后与直接写入的文件一致
+        Path temp = new File(parentDir, "." + target.getName() + "."
+                + Long.toHexString(ThreadLocalRandom.current().nextLong()) + TEMP_SUFFIX).toPath();
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+                                                        StandardOpenOption.CREATE_NEW)) {
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.position() < data.length) {
+                    buffer.limit(Math.min(buffer.position() + WRITE_CHUNK, data.length));
+                    channel.write(buffer);
+                }
+            }
+            
+            try {
+                Files.move(temp, target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}